@@ -0,0 +1,192 @@
+package com.andrew.benchmark;
+
+import com.andrew.business.AccountExecutor;
+import com.andrew.business.AccountHandler;
+import com.andrew.business.AccountLedger;
+import com.andrew.business.AccountLockManager;
+import com.andrew.business.AccountMetrics;
+import com.andrew.business.AccountSnapshots;
+import com.andrew.business.DepositCombiner;
+import com.andrew.business.ExchangeRates;
+import com.andrew.business.HotAccounts;
+import com.andrew.business.ShardedTransactionEngine;
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.Withdraw;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the account operations of {@link AccountHandler}, with the accounts picked either uniformly or from a
+ * Zipf distribution concentrating traffic on a few hot accounts. Comparing both shows how much an operation suffers
+ * from contention on the same accounts, which is what concurrency changes should be judged on. Runs with and without
+ * metrics give the overhead of recording them, and runs with and without the ledger the overhead of keeping
+ * transaction history. With striping, hot accounts are striped once their deposits contend, and with combining,
+ * concurrent deposits to the same account are applied as one balance update, both of which the Zipf distribution
+ * shows.
+ * <p>
+ * Run it through its main method to sweep 1 to 64 threads, e.g.
+ * {@code java -cp benchmarks/target/benchmarks.jar com.andrew.benchmark.AccountHandlerBenchmark -p distribution=zipf}
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountHandlerBenchmark {
+
+  private static final int[] THREADS = {1, 4, 16, 64};
+  private static final int REQUESTS = 1 << 14;
+  private static final Money OPENING_BALANCE = Money.valueOf(1_000_000_000L);
+  private static final Money AMOUNT = Money.parse("0.01");
+
+  @Param({"uniform", "zipf"})
+  private String distribution;
+
+  @Param({"10000"})
+  private int accounts;
+
+  @Param({"heap", "off-heap"})
+  private String store;
+
+  @Param({"true", "false"})
+  private boolean metrics;
+
+  @Param({"64"})
+  private int metricsSampleRate;
+
+  @Param({"true", "false"})
+  private boolean ledger;
+
+  @Param({"false", "true"})
+  private boolean striping;
+
+  @Param({"false", "true"})
+  private boolean combining;
+
+  private final AtomicLong seeds = new AtomicLong();
+  private AccountRepository repository;
+  private AccountHandler handler;
+  private long[] ids;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    repository = "heap".equals(store)
+        ? new InMemoryAccountRepository()
+        : new OffHeapAccountRepository(AccountJournal.disabled(), accounts);
+    handler = new AccountHandler(repository, new AccountLockManager(1024, 500, TimeUnit.MILLISECONDS),
+        AccountJournal.disabled(), ShardedTransactionEngine.disabled(), AccountExecutor.direct(),
+        new AccountMetrics(metrics, metricsSampleRate), new AccountSnapshots(),
+        new AccountLedger(ledger, 256, 65536),
+        new HotAccounts(striping, Runtime.getRuntime().availableProcessors(), 64), ExchangeRates.disabled(),
+        new DepositCombiner(combining));
+
+    ids = new long[accounts];
+    for (int i = 0; i < accounts; i++) {
+      ids[i] = handler.create(new CreateAccount("Account " + i, OPENING_BALANCE)).getId();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (repository instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) repository).close();
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Requests of a benchmark thread, built up front so that only the handler is measured
+   */
+  @State(Scope.Thread)
+  public static class Requests {
+
+    private final Deposit[] deposits = new Deposit[REQUESTS];
+    private final Withdraw[] withdrawals = new Withdraw[REQUESTS];
+    private final Transfer[] transfers = new Transfer[REQUESTS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountHandlerBenchmark benchmark) {
+      final int[] indexes = KeyDistribution.draw(benchmark.distribution, benchmark.accounts, REQUESTS * 2,
+          benchmark.seeds.incrementAndGet());
+      for (int i = 0; i < REQUESTS; i++) {
+        final long from = benchmark.ids[indexes[2 * i]];
+        int to = indexes[2 * i + 1];
+        if (benchmark.ids[to] == from) {
+          to = (to + 1) % benchmark.accounts;
+        }
+
+        deposits[i] = new Deposit(from, AMOUNT);
+        withdrawals[i] = new Withdraw(from, AMOUNT);
+        transfers[i] = new Transfer(from, benchmark.ids[to], AMOUNT);
+      }
+    }
+
+    private int next() {
+      return next++ & (REQUESTS - 1);
+    }
+  }
+
+  @Benchmark
+  public Account deposit(Requests requests) {
+    return handler.deposit(requests.deposits[requests.next()]);
+  }
+
+  @Benchmark
+  public Account withdraw(Requests requests) {
+    return handler.withdraw(requests.withdrawals[requests.next()]);
+  }
+
+  @Benchmark
+  public Account transfer(Requests requests) {
+    return handler.transfer(requests.transfers[requests.next()]);
+  }
+
+  /**
+   * Run the benchmark once per thread count, passing any other JMH option through
+   */
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    final CommandLineOptions options = new CommandLineOptions(args);
+    for (int threads : THREADS) {
+      new Runner(new OptionsBuilder()
+          .parent(options)
+          .include(AccountHandlerBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build())
+          .run();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.andrew.benchmark;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of creating and looking accounts up in each account store. Stores are emptied before every iteration,
+ * so that creation is measured against a store of a steady size.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AccountRepositoryBenchmark {
+
+  private static final CreateAccount CREATE_ACCOUNT = new CreateAccount("Andrew", Money.valueOf(100));
+
+  @Param({"heap", "off-heap"})
+  private String store;
+
+  @Param({"1000000"})
+  private int accounts;
+
+  private AccountRepository repository;
+  private long firstId;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    repository = "heap".equals(store)
+        ? new InMemoryAccountRepository()
+        : new OffHeapAccountRepository(AccountJournal.disabled(), accounts);
+  }
+
+  @Setup(Level.Iteration)
+  public void fill() {
+    // IDs keep increasing across clears
+    repository.clear();
+    firstId = repository.create(CREATE_ACCOUNT).getId();
+    for (int i = 1; i < accounts; i++) {
+      repository.create(CREATE_ACCOUNT);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (repository instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) repository).close();
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  @Benchmark
+  public Account create() {
+    return repository.create(CREATE_ACCOUNT);
+  }
+
+  @Benchmark
+  public Account findById() {
+    return repository.findById(firstId + ThreadLocalRandom.current().nextInt(accounts));
+  }
+}
@@ -0,0 +1,125 @@
+package com.andrew.benchmark;
+
+import com.andrew.business.AccountExecutor;
+import com.andrew.business.AccountExporter;
+import com.andrew.business.AccountHandler;
+import com.andrew.business.AccountLedger;
+import com.andrew.business.AccountLockManager;
+import com.andrew.business.AccountMetrics;
+import com.andrew.business.AccountSnapshots;
+import com.andrew.business.DepositCombiner;
+import com.andrew.business.ExchangeRates;
+import com.andrew.business.HotAccounts;
+import com.andrew.business.ShardedTransactionEngine;
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.ExportState;
+import com.andrew.dto.ExportStatus;
+import com.andrew.export.AccountExportReader;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to export a million accounts from each account store to a columnar file, and to sum the balances of the file
+ * reading only its balance column.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+  @Param({"1000000"})
+  private int accounts;
+
+  @Param({"heap", "off-heap"})
+  private String store;
+
+  @Param({"65536"})
+  private int rowGroupSize;
+
+  private Path dir;
+  private AccountRepository repository;
+  private AccountExporter exporter;
+  private Path exported;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("export-benchmark");
+    repository = "heap".equals(store)
+        ? new InMemoryAccountRepository(AccountJournal.disabled(), accounts)
+        : new OffHeapAccountRepository(AccountJournal.disabled(), accounts);
+    for (int i = 0; i < accounts; i++) {
+      repository.create(new CreateAccount("Account " + i, Money.valueOf(100)));
+    }
+
+    final AccountHandler handler = new AccountHandler(repository,
+        new AccountLockManager(1024, 10, TimeUnit.SECONDS), AccountJournal.disabled(),
+        ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(),
+        new AccountSnapshots(), AccountLedger.disabled(), HotAccounts.disabled(), ExchangeRates.disabled(),
+        DepositCombiner.disabled());
+    exporter = new AccountExporter(handler, repository, dir, rowGroupSize);
+    exported = exporter.fileOf(export());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    exporter.close();
+    if (repository instanceof AutoCloseable) {
+      ((AutoCloseable) repository).close();
+    }
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public ExportStatus export() {
+    final ExportStatus status = exporter.export();
+    if (status.getState() != ExportState.COMPLETED) {
+      throw new IllegalStateException(status.getError());
+    }
+
+    return status;
+  }
+
+  @Benchmark
+  public long sumBalances() throws IOException {
+    try (AccountExportReader reader = AccountExportReader.open(exported)) {
+      long total = 0;
+      for (int group = 0; group < reader.getRowGroups(); group++) {
+        for (long balance : reader.readBalances(group)) {
+          total += balance;
+        }
+      }
+
+      return total;
+    }
+  }
+}
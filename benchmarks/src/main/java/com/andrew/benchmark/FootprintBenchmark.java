@@ -0,0 +1,64 @@
+package com.andrew.benchmark;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Memory held by each account store once filled with accounts, along with the time spent in garbage collection.
+ * Memory footprint is not something JMH measures, so this is a plain program:
+ * {@code java -Xmx16g -cp benchmarks/target/benchmarks.jar com.andrew.benchmark.FootprintBenchmark off-heap 50000000}
+ *
+ * @author andrew
+ */
+public class FootprintBenchmark {
+
+  public static void main(String[] args) {
+    final String store = args.length > 0 ? args[0] : "heap";
+    final int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+    final long heapBefore = usedHeap();
+    final long start = System.nanoTime();
+    final AccountRepository repository = "off-heap".equals(store)
+        ? new OffHeapAccountRepository(AccountJournal.disabled(), accounts)
+        : new InMemoryAccountRepository();
+    final Money openingBalance = Money.parse("100.25");
+    for (int i = 0; i < accounts; i++) {
+      repository.create(new CreateAccount("Account " + i, openingBalance));
+    }
+    final long elapsed = System.nanoTime() - start;
+
+    final long heap = usedHeap() - heapBefore;
+    final long offHeap = repository instanceof OffHeapAccountRepository
+        ? ((OffHeapAccountRepository) repository).getAllocatedBytes() : 0L;
+
+    System.out.printf("store=%s accounts=%d%n", store, accounts);
+    System.out.printf("heap: %,d bytes (%.1f per account)%n", heap, (double) heap / accounts);
+    System.out.printf("off-heap: %,d bytes (%.1f per account)%n", offHeap, (double) offHeap / accounts);
+    System.out.printf("create: %,d ms, gc: %,d ms%n", elapsed / 1_000_000, gcTime());
+    System.out.println(repository.findById(1L));
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static long gcTime() {
+    long total = 0L;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0L, gc.getCollectionTime());
+    }
+
+    return total;
+  }
+}
@@ -0,0 +1,95 @@
+package com.andrew.benchmark;
+
+import com.andrew.business.AccountImporter;
+import com.andrew.dto.ImportFormat;
+import com.andrew.dto.ImportSummary;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to bulk import accounts from CSV and from newline delimited JSON into an empty store, sized for them up front.
+ * Dividing the number of accounts by the time gives the accounts imported per second.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+
+  @Param({"1000000"})
+  private int accounts;
+
+  @Param({"heap", "off-heap"})
+  private String store;
+
+  @Param({"CSV", "NDJSON"})
+  private ImportFormat format;
+
+  @Param({"4096"})
+  private int batchSize;
+
+  private byte[] input;
+  private AccountRepository repository;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final StringBuilder lines = new StringBuilder(accounts * 48);
+    for (int i = 0; i < accounts; i++) {
+      if (format == ImportFormat.CSV) {
+        lines.append("Account ").append(i).append(",100.00,EUR\n");
+      } else {
+        lines.append("{\"name\":\"Account ").append(i).append("\",\"openingBalance\":100.00,\"currency\":\"EUR\"}\n");
+      }
+    }
+    input = lines.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Setup(Level.Invocation)
+  public void emptyStore() {
+    closeStore();
+    repository = "heap".equals(store)
+        ? new InMemoryAccountRepository(AccountJournal.disabled(), accounts)
+        : new OffHeapAccountRepository(AccountJournal.disabled(), accounts);
+  }
+
+  @TearDown(Level.Trial)
+  public void closeStore() {
+    if (repository instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) repository).close();
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  @Benchmark
+  public ImportSummary importAccounts() {
+    return new AccountImporter(repository, Currency.getInstance("EUR"), batchSize,
+        Runtime.getRuntime().availableProcessors()).importAccounts(new ByteArrayInputStream(input), format);
+  }
+}
@@ -0,0 +1,141 @@
+package com.andrew.benchmark;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.TransferStatus;
+import com.andrew.json.JsonCodec;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the request bodies and writing the responses of the account endpoints with Jackson data binding,
+ * against the streaming {@link JsonCodec} the application uses for account changes.
+ * <p>
+ * Run with {@code -prof gc} to compare allocation rates.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  private static final byte[] CREATE_ACCOUNT_JSON =
+      "{\"name\":\"Andrew\",\"openingBalance\":1000.50}".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] DEPOSIT_JSON =
+      "{\"accountId\":1,\"amount\":125.75}".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TRANSFER_JSON =
+      "{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":125.75}".getBytes(StandardCharsets.UTF_8);
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final ObjectReader createAccountReader = mapper.readerFor(CreateAccount.class);
+  private final ObjectReader depositReader = mapper.readerFor(Deposit.class);
+  private final ObjectReader transferReader = mapper.readerFor(Transfer.class);
+  private final ObjectReader transferBatchReader = mapper.readerFor(new TypeReference<List<Transfer>>() {
+  });
+  private final ObjectWriter writer = mapper.writer();
+  private final JsonCodec codec = new JsonCodec();
+
+  private final Account account = new Account(1L, "Andrew", Money.parse("1000.50"));
+  private final TransferStatus[] statuses = new TransferStatus[BATCH_SIZE];
+  private byte[] transferBatchJson;
+
+  @Setup
+  public void setUp() throws IOException {
+    final List<Transfer> transfers = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      transfers.add(new Transfer((long) i + 1, (long) i + 2, Money.parse("125.75")));
+      statuses[i] = TransferStatus.OK;
+    }
+    transferBatchJson = writer.writeValueAsBytes(transfers);
+  }
+
+  @Benchmark
+  public CreateAccount readCreateAccount() throws IOException {
+    return createAccountReader.readValue(CREATE_ACCOUNT_JSON);
+  }
+
+  @Benchmark
+  public Deposit readDeposit() throws IOException {
+    return depositReader.readValue(DEPOSIT_JSON);
+  }
+
+  @Benchmark
+  public Deposit readDepositStreaming() throws IOException {
+    return codec.readDeposit(DEPOSIT_JSON);
+  }
+
+  @Benchmark
+  public Transfer readTransfer() throws IOException {
+    return transferReader.readValue(TRANSFER_JSON);
+  }
+
+  @Benchmark
+  public Transfer readTransferStreaming() throws IOException {
+    return codec.readTransfer(TRANSFER_JSON);
+  }
+
+  @Benchmark
+  public List<Transfer> readTransferBatch() throws IOException {
+    return transferBatchReader.readValue(transferBatchJson);
+  }
+
+  @Benchmark
+  public List<Transfer> readTransferBatchStreaming() throws IOException {
+    return codec.readTransferBatch(transferBatchJson);
+  }
+
+  @Benchmark
+  public byte[] writeAccount() throws IOException {
+    return writer.writeValueAsBytes(account);
+  }
+
+  @Benchmark
+  public byte[] writeAccountStreaming() throws IOException {
+    return codec.writeAccount(account);
+  }
+
+  /**
+   * Lookup of an account unchanged since its last lookup, answered with the JSON kept in its view
+   */
+  @Benchmark
+  public byte[] writeAccountView() throws IOException {
+    return codec.writeAccount(account.view());
+  }
+
+  @Benchmark
+  public byte[] writeTransferStatuses() throws IOException {
+    return writer.writeValueAsBytes(statuses);
+  }
+
+  @Benchmark
+  public byte[] writeTransferStatusesStreaming() throws IOException {
+    return codec.writeTransferStatuses(statuses);
+  }
+}
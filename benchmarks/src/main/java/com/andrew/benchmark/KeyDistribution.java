@@ -0,0 +1,64 @@
+package com.andrew.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sequences of account indexes drawn either uniformly or from a Zipf distribution, where the account of rank k is
+ * picked with a probability proportional to 1 / k^s, so that a handful of hot accounts get most of the traffic.
+ * <p>
+ * Indexes are drawn up front, so that the benchmarks only pay for an array read per operation.
+ *
+ * @author andrew
+ */
+final class KeyDistribution {
+
+  private static final double ZIPF_EXPONENT = 1.0;
+
+  private KeyDistribution() {
+  }
+
+  /**
+   * @param distribution {@code uniform} or {@code zipf}
+   * @param accounts     number of accounts to pick from
+   * @param length       number of indexes to draw, must be a power of 2
+   * @param seed         seed of the random sequence
+   * @return indexes between 0 and accounts - 1
+   */
+  static int[] draw(String distribution, int accounts, int length, long seed) {
+    final Random random = new Random(seed);
+    final int[] indexes = new int[length];
+    switch (distribution) {
+      case "uniform":
+        for (int i = 0; i < length; i++) {
+          indexes[i] = random.nextInt(accounts);
+        }
+        break;
+      case "zipf":
+        final double[] cumulative = zipfCumulative(accounts);
+        for (int i = 0; i < length; i++) {
+          final int found = Arrays.binarySearch(cumulative, random.nextDouble());
+          indexes[i] = Math.min(found < 0 ? -found - 1 : found, accounts - 1);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown key distribution: " + distribution);
+    }
+
+    return indexes;
+  }
+
+  private static double[] zipfCumulative(int accounts) {
+    final double[] cumulative = new double[accounts];
+    double sum = 0;
+    for (int i = 0; i < accounts; i++) {
+      sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < accounts; i++) {
+      cumulative[i] /= sum;
+    }
+
+    return cumulative;
+  }
+}
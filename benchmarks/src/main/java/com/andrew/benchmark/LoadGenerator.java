@@ -0,0 +1,403 @@
+package com.andrew.benchmark;
+
+import com.andrew.App;
+import com.andrew.business.AccountHandler;
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Money;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator booting {@link App} in-process and reporting latency percentiles and throughput per
+ * endpoint.
+ * <p>
+ * Requests are issued on a fixed schedule at the target rate, whatever the server's response time, over a pool of
+ * keep-alive connections. Each request's latency runs from the time it was scheduled rather than from the time it was
+ * actually sent, so requests waiting for a free connection behind a slow one count their wait too and a stalled server
+ * shows up as latency rather than as a lower request rate (no coordinated omission).
+ * <p>
+ * Settings are passed as {@code key=value} arguments, e.g.
+ * {@code java -cp benchmarks/target/benchmarks.jar com.andrew.benchmark.LoadGenerator rate=20000 connections=1000
+ * mix=deposit:40,withdraw:20,transfer:30,findById:10 distribution=zipf}
+ * <ul>
+ * <li>{@code rate}: requests per second, 1000 by default</li>
+ * <li>{@code duration}, {@code warmup}: measured and unmeasured seconds, 60 and 10 by default</li>
+ * <li>{@code connections}: keep-alive connections, 100 by default</li>
+ * <li>{@code accounts}: accounts created before the run, 10000 by default</li>
+ * <li>{@code distribution}: {@code uniform} or {@code zipf} choice of accounts, uniform by default</li>
+ * <li>{@code mix}: relative weights of the operations, among create, deposit, withdraw, transfer and findById</li>
+ * <li>{@code port}: port the application listens on, 18080 by default</li>
+ * </ul>
+ *
+ * @author andrew
+ */
+public final class LoadGenerator {
+
+  private static final Money OPENING_BALANCE = Money.valueOf(1_000_000);
+  private static final int KEYS = 1 << 20;
+  private static final long DISPATCH_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+  private static final int MAX_RESPONSE_SIZE = 1 << 20;
+
+  private final Map<String, String> settings;
+  private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+  private final Queue<Request> backlog = new ConcurrentLinkedQueue<>();
+  private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicLong outstanding = new AtomicLong();
+  private final LongAdder closedConnections = new LongAdder();
+
+  private final String host;
+  private final Operation[] operations;
+  private final int[] weights;
+  private long[] ids;
+  private int[] keys;
+  private int nextKey;
+
+  private LoadGenerator(Map<String, String> settings) {
+    this.settings = settings;
+    this.host = "localhost:" + setting("port", 18080);
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new Stats());
+    }
+
+    final String[] mix = settings.getOrDefault("mix", "deposit:40,withdraw:20,transfer:30,findById:10").split(",");
+    this.operations = new Operation[mix.length];
+    this.weights = new int[mix.length];
+    int total = 0;
+    for (int i = 0; i < mix.length; i++) {
+      final String[] weighted = mix[i].split(":");
+      operations[i] = Operation.named(weighted[0]);
+      total += Integer.parseInt(weighted[1]);
+      weights[i] = total;
+    }
+    if (total < 1) {
+      throw new IllegalArgumentException("Operation mix must have a positive weight");
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    final Map<String, String> settings = new HashMap<>();
+    for (String arg : args) {
+      final int separator = arg.indexOf('=');
+      if (separator < 1) {
+        throw new IllegalArgumentException("Expected key=value, got: " + arg);
+      }
+      settings.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+
+    new LoadGenerator(settings).run();
+  }
+
+  private void run() throws InterruptedException {
+    final int port = setting("port", 18080);
+    final App app = new App();
+    app.start("server.join=false", "application.port=" + port);
+    final EventLoopGroup group = new NioEventLoopGroup();
+    try {
+      seed(app.require(AccountHandler.class));
+      connect(group, port);
+      drive();
+      report();
+    } finally {
+      group.shutdownGracefully();
+      app.stop();
+    }
+  }
+
+  private void seed(AccountHandler handler) {
+    final int accounts = setting("accounts", 10_000);
+    ids = new long[accounts];
+    for (int i = 0; i < accounts; i++) {
+      ids[i] = handler.create(new CreateAccount("Account " + i, OPENING_BALANCE)).getId();
+    }
+    keys = KeyDistribution.draw(settings.getOrDefault("distribution", "uniform"), accounts, KEYS,
+        System.nanoTime());
+  }
+
+  private void connect(EventLoopGroup group, int port) throws InterruptedException {
+    final Bootstrap bootstrap = new Bootstrap()
+        .group(group)
+        .channel(NioSocketChannel.class)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .handler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            channel.pipeline()
+                .addLast(new HttpClientCodec())
+                .addLast(new HttpObjectAggregator(MAX_RESPONSE_SIZE))
+                .addLast(new Connection(channel));
+          }
+        });
+
+    final int connections = setting("connections", 100);
+    for (int i = 0; i < connections; i++) {
+      idle.add(bootstrap.connect("localhost", port).sync().channel().pipeline().get(Connection.class));
+    }
+  }
+
+  /**
+   * Issue requests on schedule until the end of the run, then wait for the outstanding ones
+   */
+  private void drive() {
+    final double intervalNanos = 1e9 / setting("rate", 1000);
+    final long start = System.nanoTime();
+    final long measureStart = start + TimeUnit.SECONDS.toNanos(setting("warmup", 10));
+    final long end = measureStart + TimeUnit.SECONDS.toNanos(setting("duration", 60));
+
+    long issued = 0;
+    long now;
+    while ((now = System.nanoTime()) < end) {
+      long scheduled;
+      while ((scheduled = start + (long) (issued * intervalNanos)) <= now) {
+        outstanding.incrementAndGet();
+        backlog.add(request(scheduled, scheduled >= measureStart));
+        issued++;
+      }
+      drain();
+      LockSupport.parkNanos(DISPATCH_INTERVAL_NANOS);
+    }
+
+    final long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+    while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+      drain();
+      LockSupport.parkNanos(DISPATCH_INTERVAL_NANOS);
+    }
+  }
+
+  /**
+   * Send waiting requests over idle connections. Called both by the dispatcher after queueing requests and by the
+   * connections after going idle, so that neither can be left waiting for the other.
+   */
+  private void drain() {
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      final Request request = backlog.poll();
+      if (request == null) {
+        idle.add(connection);
+        return;
+      }
+      connection.send(request);
+    }
+  }
+
+  private Request request(long scheduled, boolean measured) {
+    final int index = ThreadLocalRandom.current().nextInt(weights[weights.length - 1]);
+    int choice = 0;
+    while (weights[choice] <= index) {
+      choice++;
+    }
+
+    final Operation operation = operations[choice];
+    final FullHttpRequest http;
+    switch (operation) {
+      case CREATE:
+        http = post("/account", "{\"name\":\"Load\",\"openingBalance\":" + OPENING_BALANCE + "}");
+        break;
+      case DEPOSIT:
+        http = post("/account/deposit", "{\"accountId\":" + nextId() + ",\"amount\":1.00}");
+        break;
+      case WITHDRAW:
+        http = post("/account/withdraw", "{\"accountId\":" + nextId() + ",\"amount\":0.01}");
+        break;
+      case TRANSFER:
+        final long from = nextId();
+        long to = nextId();
+        if (to == from) {
+          to = ids[(int) ((from - ids[0] + 1) % ids.length)];
+        }
+        http = post("/account/transfer",
+            "{\"fromAccountId\":" + from + ",\"toAccountId\":" + to + ",\"amount\":0.01}");
+        break;
+      default:
+        http = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/account/" + nextId());
+        http.headers().set(HttpHeaderNames.HOST, host);
+        http.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, 0);
+    }
+
+    return new Request(operation, scheduled, measured, http);
+  }
+
+  private FullHttpRequest post(String uri, String json) {
+    final ByteBuf content = Unpooled.copiedBuffer(json, StandardCharsets.UTF_8);
+    final FullHttpRequest http = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri, content);
+    http.headers().set(HttpHeaderNames.HOST, host);
+    http.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+    http.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+
+    return http;
+  }
+
+  private long nextId() {
+    return ids[keys[nextKey++ & (KEYS - 1)]];
+  }
+
+  private void complete(Request request, boolean success) {
+    if (request.measured) {
+      final Stats operationStats = stats.get(request.operation);
+      operationStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - request.scheduled));
+      if (!success) {
+        operationStats.errors.increment();
+      }
+    }
+    outstanding.decrementAndGet();
+  }
+
+  private void report() {
+    final double seconds = setting("duration", 60);
+    final Histogram all = new Histogram(3);
+    long errors = 0;
+
+    System.out.println();
+    System.out.printf("%-10s %10s %10s %8s %9s %9s %9s %9s %9s%n",
+        "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+      final Histogram histogram = entry.getValue().latency.getIntervalHistogram();
+      if (histogram.getTotalCount() == 0) {
+        continue;
+      }
+      all.add(histogram);
+      errors += entry.getValue().errors.sum();
+      print(entry.getKey().key, histogram, entry.getValue().errors.sum(), seconds);
+    }
+    print("all", all, errors, seconds);
+
+    System.out.printf("%nincomplete: %d, connections closed: %d%n", outstanding.get(), closedConnections.sum());
+  }
+
+  private static void print(String endpoint, Histogram histogram, long errors, double seconds) {
+    System.out.printf("%-10s %10d %10.0f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+        endpoint, histogram.getTotalCount(), histogram.getTotalCount() / seconds, errors,
+        millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+        millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+        millis(histogram.getMaxValue()));
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+
+  private int setting(String key, int defaultValue) {
+    final String value = settings.get(key);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  private enum Operation {
+    CREATE("create"), DEPOSIT("deposit"), WITHDRAW("withdraw"), TRANSFER("transfer"), FIND_BY_ID("findById");
+
+    private final String key;
+
+    Operation(String key) {
+      this.key = key;
+    }
+
+    private static Operation named(String key) {
+      for (Operation operation : values()) {
+        if (operation.key.equals(key)) {
+          return operation;
+        }
+      }
+      throw new IllegalArgumentException("Unknown operation: " + key);
+    }
+  }
+
+  private static final class Stats {
+
+    private final Recorder latency = new Recorder(3);
+    private final LongAdder errors = new LongAdder();
+  }
+
+  private static final class Request {
+
+    private final Operation operation;
+    private final long scheduled;
+    private final boolean measured;
+    private final FullHttpRequest http;
+
+    private Request(Operation operation, long scheduled, boolean measured, FullHttpRequest http) {
+      this.operation = operation;
+      this.scheduled = scheduled;
+      this.measured = measured;
+      this.http = http;
+    }
+  }
+
+  /**
+   * Keep-alive connection carrying one request at a time
+   */
+  private final class Connection extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    private final Channel channel;
+    private Request current;
+
+    private Connection(Channel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Hand the request over to the event loop, which then owns {@link #current}
+     */
+    private void send(Request request) {
+      channel.eventLoop().execute(() -> {
+        current = request;
+        channel.writeAndFlush(request.http);
+      });
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+      final Request request = current;
+      current = null;
+      complete(request, response.status().code() < 400);
+
+      idle.add(this);
+      drain();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+      closedConnections.increment();
+      if (current != null) {
+        complete(current, false);
+        current = null;
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      ctx.close();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.andrew.benchmark;
+
+import com.andrew.dto.Transfer;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former {@link BigDecimal} balance path with the fixed-point {@link Money} path, both for the balance
+ * arithmetic and for reading a transfer request body.
+ * <p>
+ * Run with {@code -prof gc} to compare allocation rates.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+
+  private static final byte[] TRANSFER_JSON =
+      "{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":125.75}".getBytes(StandardCharsets.UTF_8);
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private BigDecimal bigDecimalBalance = new BigDecimal("1000000.00");
+  private final BigDecimal bigDecimalAmount = new BigDecimal("0.01");
+
+  private long balance = 100000000L;
+  private final Money amount = Money.parse("0.01");
+
+  @Benchmark
+  public BigDecimal bigDecimalDeposit() {
+    if (bigDecimalAmount.signum() < 1) {
+      throw new IllegalArgumentException("Amount must be greater than 0");
+    }
+
+    final BigDecimal newBalance = bigDecimalBalance.add(bigDecimalAmount);
+    if (newBalance.signum() == -1) {
+      throw new IllegalStateException("Insufficient balance");
+    }
+
+    return bigDecimalBalance = newBalance;
+  }
+
+  @Benchmark
+  public long moneyDeposit() {
+    if (amount.signum() < 1) {
+      throw new IllegalArgumentException("Amount must be greater than 0");
+    }
+
+    return balance = Math.addExact(balance, Account.toMinorUnits(amount));
+  }
+
+  @Benchmark
+  public BigDecimalTransfer bigDecimalReadTransfer() throws IOException {
+    return mapper.readValue(TRANSFER_JSON, BigDecimalTransfer.class);
+  }
+
+  @Benchmark
+  public Transfer moneyReadTransfer() throws IOException {
+    return mapper.readValue(TRANSFER_JSON, Transfer.class);
+  }
+
+  /**
+   * Shape of the transfer request body before {@link Money} was introduced
+   */
+  public static class BigDecimalTransfer {
+    public Long fromAccountId;
+    public Long toAccountId;
+    public BigDecimal amount;
+  }
+}
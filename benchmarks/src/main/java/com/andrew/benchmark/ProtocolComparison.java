@@ -0,0 +1,262 @@
+package com.andrew.benchmark;
+
+import com.andrew.App;
+import com.andrew.business.AccountHandler;
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Money;
+import com.andrew.rpc.RpcClient;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop throughput of transfers through the REST API against the binary protocol of
+ * {@link com.andrew.rpc.RpcServer}, booting {@link App} in-process with both enabled.
+ * <p>
+ * REST transfers run over keep-alive connections carrying one request at a time, as HTTP/1.1 clients do; binary
+ * protocol transfers run over a few connections each keeping many requests in flight. Both phases run for the same
+ * time against the same accounts, and print the transfers completed per second and the errors.
+ * <p>
+ * Settings are passed as {@code key=value} arguments, e.g.
+ * {@code java -cp benchmarks/target/benchmarks.jar com.andrew.benchmark.ProtocolComparison connections=256
+ * rpc-connections=4 in-flight=1024}
+ * <ul>
+ * <li>{@code duration}, {@code warmup}: measured and unmeasured seconds of each phase, 30 and 10 by default</li>
+ * <li>{@code connections}: REST keep-alive connections, 256 by default</li>
+ * <li>{@code rpc-connections}: binary protocol connections, 4 by default</li>
+ * <li>{@code in-flight}: transfers kept in flight per binary protocol connection, 1024 by default</li>
+ * <li>{@code accounts}: accounts created before the run, 10000 by default</li>
+ * <li>{@code port}, {@code rpc-port}: ports of the REST API and binary protocol, 18080 and 18090 by default</li>
+ * </ul>
+ *
+ * @author andrew
+ */
+public final class ProtocolComparison {
+
+  private static final Money OPENING_BALANCE = Money.valueOf(1_000_000_000L);
+  private static final Money AMOUNT = Money.parse("0.01");
+  private static final int MAX_RESPONSE_SIZE = 1 << 16;
+
+  private final Map<String, String> settings;
+  private long[] ids;
+
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private volatile boolean running;
+
+  private ProtocolComparison(Map<String, String> settings) {
+    this.settings = settings;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    final Map<String, String> settings = new HashMap<>();
+    for (String arg : args) {
+      final int separator = arg.indexOf('=');
+      if (separator < 1) {
+        throw new IllegalArgumentException("Expected key=value, got: " + arg);
+      }
+      settings.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+
+    new ProtocolComparison(settings).run();
+  }
+
+  private void run() throws InterruptedException {
+    final int port = setting("port", 18080);
+    final int rpcPort = setting("rpc-port", 18090);
+    final App app = new App();
+    app.start("server.join=false", "application.port=" + port, "rpc.enabled=true", "rpc.port=" + rpcPort);
+    try {
+      seed(app.require(AccountHandler.class));
+      report("rest", rest(port));
+      report("rpc", rpc(rpcPort));
+    } finally {
+      app.stop();
+    }
+  }
+
+  private void seed(AccountHandler handler) {
+    final int accounts = setting("accounts", 10_000);
+    ids = new long[accounts];
+    for (int i = 0; i < accounts; i++) {
+      ids[i] = handler.create(new CreateAccount("Account " + i, OPENING_BALANCE)).getId();
+    }
+  }
+
+  /**
+   * @return transfers per second through the REST API
+   */
+  private double rest(int port) throws InterruptedException {
+    final EventLoopGroup group = new NioEventLoopGroup();
+    try {
+      final Bootstrap bootstrap = new Bootstrap()
+          .group(group)
+          .channel(NioSocketChannel.class)
+          .option(ChannelOption.TCP_NODELAY, true)
+          .handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel channel) {
+              channel.pipeline()
+                  .addLast(new HttpClientCodec())
+                  .addLast(new HttpObjectAggregator(MAX_RESPONSE_SIZE))
+                  .addLast(new RestConnection(channel, "localhost:" + port));
+            }
+          });
+
+      final List<RestConnection> connections = new ArrayList<>();
+      for (int i = 0; i < setting("connections", 256); i++) {
+        connections.add(bootstrap.connect("localhost", port).sync().channel().pipeline().get(RestConnection.class));
+      }
+
+      return measure(() -> connections.forEach(RestConnection::send));
+    } finally {
+      group.shutdownGracefully().syncUninterruptibly();
+    }
+  }
+
+  /**
+   * @return transfers per second through the binary protocol
+   */
+  private double rpc(int port) throws InterruptedException {
+    final List<RpcClient> clients = new ArrayList<>();
+    try {
+      for (int i = 0; i < setting("rpc-connections", 4); i++) {
+        clients.add(RpcClient.connect("localhost", port));
+      }
+
+      final int inFlight = setting("in-flight", 1024);
+      return measure(() -> {
+        for (RpcClient client : clients) {
+          for (int i = 0; i < inFlight; i++) {
+            transfer(client);
+          }
+        }
+      });
+    } finally {
+      clients.forEach(RpcClient::close);
+    }
+  }
+
+  private void transfer(RpcClient client) {
+    final long[] pair = pair();
+    client.transfer(pair[0], pair[1], AMOUNT).whenComplete((account, error) -> {
+      completed(error == null);
+      if (running) {
+        transfer(client);
+      }
+    });
+  }
+
+  /**
+   * Start the transfers, then count those completed after the warmup until the end of the phase
+   *
+   * @return transfers completed per second
+   */
+  private double measure(Runnable start) throws InterruptedException {
+    running = true;
+    start.run();
+    TimeUnit.SECONDS.sleep(setting("warmup", 10));
+
+    final long completedBefore = completed.sum();
+    errors.reset();
+    final long measureStart = System.nanoTime();
+    TimeUnit.SECONDS.sleep(setting("duration", 30));
+    final double seconds = (System.nanoTime() - measureStart) / 1e9;
+    final long measured = completed.sum() - completedBefore;
+    running = false;
+
+    // let the transfers in flight drain before the next phase
+    TimeUnit.SECONDS.sleep(1);
+    return measured / seconds;
+  }
+
+  private void completed(boolean success) {
+    completed.increment();
+    if (!success) {
+      errors.increment();
+    }
+  }
+
+  private long[] pair() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int from = random.nextInt(ids.length);
+    final int to = (from + 1 + random.nextInt(ids.length - 1)) % ids.length;
+
+    return new long[]{ids[from], ids[to]};
+  }
+
+  private void report(String protocol, double throughput) {
+    System.out.printf("%-5s %12.0f transfers/s %8d errors%n", protocol, throughput, errors.sum());
+  }
+
+  private int setting(String key, int defaultValue) {
+    final String value = settings.get(key);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /**
+   * Keep-alive connection sending the next transfer as soon as the previous one is answered
+   */
+  private final class RestConnection extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    private final Channel channel;
+    private final String host;
+
+    private RestConnection(Channel channel, String host) {
+      this.channel = channel;
+      this.host = host;
+    }
+
+    private void send() {
+      final long[] pair = pair();
+      final ByteBuf content = Unpooled.copiedBuffer("{\"fromAccountId\":" + pair[0] + ",\"toAccountId\":" + pair[1]
+          + ",\"amount\":" + AMOUNT + "}", StandardCharsets.UTF_8);
+      final FullHttpRequest http = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST,
+          "/account/transfer", content);
+      http.headers().set(HttpHeaderNames.HOST, host);
+      http.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+      http.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+      channel.writeAndFlush(http);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+      completed(response.status().code() < 400);
+      if (running) {
+        send();
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      ctx.close();
+    }
+  }
+}
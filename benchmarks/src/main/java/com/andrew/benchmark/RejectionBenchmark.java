@@ -0,0 +1,100 @@
+package com.andrew.benchmark;
+
+import com.andrew.business.AccountExecutor;
+import com.andrew.business.AccountHandler;
+import com.andrew.business.AccountLedger;
+import com.andrew.business.AccountLockManager;
+import com.andrew.business.AccountMetrics;
+import com.andrew.business.AccountSnapshots;
+import com.andrew.business.DepositCombiner;
+import com.andrew.business.ExchangeRates;
+import com.andrew.business.HotAccounts;
+import com.andrew.business.Outcome;
+import com.andrew.business.ShardedTransactionEngine;
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.Withdraw;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.InMemoryAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of rejected withdrawals and transfers, from accounts without balance, when the rejection is thrown as an
+ * {@link InsufficientBalanceException} as by {@link AccountHandler#withdraw(Withdraw)}, and when it is returned as
+ * an {@link Outcome} as by {@link AccountHandler#tryWithdraw(Withdraw)}. Comparing both gives the cost of capturing a
+ * stack trace for every rejection, which is what clients retrying against empty accounts pay.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RejectionBenchmark {
+
+  private static final Money AMOUNT = Money.valueOf(1);
+
+  private AccountHandler handler;
+  private Withdraw withdraw;
+  private Transfer transfer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    handler = new AccountHandler(new InMemoryAccountRepository(),
+        new AccountLockManager(1024, 500, TimeUnit.MILLISECONDS), AccountJournal.disabled(),
+        ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(), new AccountSnapshots(),
+        AccountLedger.disabled(), HotAccounts.disabled(), ExchangeRates.disabled(), DepositCombiner.disabled());
+
+    final long benefactor = handler.create(new CreateAccount("Benefactor", Money.ZERO)).getId();
+    final long beneficiary = handler.create(new CreateAccount("Beneficiary", Money.ZERO)).getId();
+    withdraw = new Withdraw(benefactor, AMOUNT);
+    transfer = new Transfer(benefactor, beneficiary, AMOUNT);
+  }
+
+  @Benchmark
+  public Object withdrawThrown() {
+    try {
+      return handler.withdraw(withdraw);
+    } catch (InsufficientBalanceException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public Outcome<Account> withdrawReturned() {
+    return handler.tryWithdraw(withdraw);
+  }
+
+  @Benchmark
+  public Object transferThrown() {
+    try {
+      return handler.transfer(transfer);
+    } catch (InsufficientBalanceException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public Outcome<Account> transferReturned() {
+    return handler.tryTransfer(transfer);
+  }
+}
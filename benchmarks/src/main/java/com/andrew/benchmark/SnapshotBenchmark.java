@@ -0,0 +1,87 @@
+package com.andrew.benchmark;
+
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.JournalEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Restart time of a repository whose accounts are all in a snapshot, followed by a short journal tail.
+ *
+ * @author andrew
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+  private static final int BATCH = 1000;
+
+  @Param({"1000000", "10000000"})
+  private int accounts;
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("snapshot-benchmark");
+    try (AccountJournal journal = new AccountJournal(directory, 1L << 30, 256, 0, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+
+      final JournalEvent[] batch = new JournalEvent[BATCH];
+      for (long id = 1; id <= accounts; id += BATCH) {
+        for (int i = 0; i < BATCH; i++) {
+          batch[i] = JournalEvent.create(id + i, "Account " + (id + i), 100_00L);
+        }
+        journal.append(batch);
+      }
+      journal.write(JournalEvent.deposit(1L, 1L));
+      journal.snapshot();
+
+      for (int i = 0; i < BATCH; i++) {
+        journal.append(JournalEvent.transfer(1L, 2L, 1L));
+      }
+      journal.write(JournalEvent.deposit(2L, 1L));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public AccountRepository restart() {
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      return new InMemoryAccountRepository(journal);
+    }
+  }
+}
@@ -1,6 +1,20 @@
 package com.andrew;
 
+import com.andrew.business.AccountExecutor;
+import com.andrew.business.AccountExporter;
+import com.andrew.business.ExchangeRates;
+import com.andrew.business.ShardedTransactionEngine;
 import com.andrew.controller.AccountController;
+import com.andrew.controller.MetricsController;
+import com.andrew.json.JsonCodec;
+import com.andrew.json.JsonCodecParser;
+import com.andrew.json.JsonCodecRenderer;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+import com.andrew.rpc.RpcServer;
+import com.typesafe.config.Config;
 import org.jooby.Jooby;
 import org.jooby.apitool.ApiTool;
 import org.jooby.json.Jackson;
@@ -11,11 +25,41 @@ import org.jooby.json.Jackson;
 public class App extends Jooby {
 
   public App() {
+    use((env, conf, binder) -> binder.bind(AccountRepository.class).to(accountStore(conf)));
+    // ahead of Jackson, which still handles every other body and response
+    final JsonCodec jsonCodec = new JsonCodec();
+    parser(new JsonCodecParser(jsonCodec));
+    renderer(new JsonCodecRenderer(jsonCodec));
     use(new Jackson());
     use(AccountController.class);
+    use(MetricsController.class);
     use(new ApiTool()
         .swagger()
         .raml());
+
+    // replay the journal on startup rather than on first request
+    onStart(registry -> registry.require(AccountRepository.class));
+    onStart(registry -> registry.require(RpcServer.class).start());
+    onStop(registry -> {
+      registry.require(RpcServer.class).close();
+      registry.require(AccountExporter.class).close();
+      registry.require(AccountExecutor.class).close();
+      registry.require(ExchangeRates.class).close();
+      registry.require(ShardedTransactionEngine.class).close();
+      registry.require(AccountJournal.class).close();
+    });
+  }
+
+  private static Class<? extends AccountRepository> accountStore(Config conf) {
+    final String store = conf.getString("account.store");
+    switch (store) {
+      case "heap":
+        return InMemoryAccountRepository.class;
+      case "off-heap":
+        return OffHeapAccountRepository.class;
+      default:
+        throw new IllegalArgumentException("Unknown account store: " + store);
+    }
   }
 
   public static void main(final String[] args) {
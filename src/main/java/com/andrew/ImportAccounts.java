@@ -0,0 +1,71 @@
+package com.andrew;
+
+import com.andrew.business.AccountImporter;
+import com.andrew.business.ExchangeRates;
+import com.andrew.dto.ImportFormat;
+import com.andrew.dto.ImportSummary;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import com.andrew.repository.OffHeapAccountRepository;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Imports accounts from a CSV or newline delimited JSON file into the journal, for onboarding accounts while the
+ * server is stopped: the journal is replayed so that IDs carry on from the last account, the accounts of the file are
+ * appended to it, and the server loads them when it next starts. Settings are read from
+ * {@code conf/application.conf} like the server's, {@code -Dkey=value} overriding them, e.g.
+ * {@code java -Djournal.enabled=true -cp money-transfer-1.0-SNAPSHOT.jar com.andrew.ImportAccounts accounts.csv}
+ *
+ * @author andrew
+ */
+public final class ImportAccounts {
+
+  private ImportAccounts() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: ImportAccounts <file> [csv|ndjson]");
+      System.exit(2);
+    }
+
+    final Path file = Paths.get(args[0]);
+    final ImportFormat format = args.length > 1 ? ImportFormat.valueOf(args[1].toUpperCase(Locale.ROOT))
+        : ImportFormat.of(file.getFileName().toString());
+    final Config config = ConfigFactory.systemProperties()
+        .withFallback(ConfigFactory.parseFile(new File("conf", "application.conf")))
+        .withFallback(ConfigFactory.load())
+        .resolve();
+    if (!config.getBoolean("journal.enabled")) {
+      throw new IllegalStateException("Accounts are imported into the journal, set journal.enabled=true");
+    }
+
+    try (AccountJournal journal = new AccountJournal(config);
+         ExchangeRates exchangeRates = new ExchangeRates(config);
+         InputStream input = Files.newInputStream(file)) {
+      final AccountRepository repository = "off-heap".equals(config.getString("account.store"))
+          ? new OffHeapAccountRepository(journal, config)
+          : new InMemoryAccountRepository(journal, config);
+      try {
+        final ImportSummary summary = new AccountImporter(repository, exchangeRates, config)
+            .importAccounts(input, format);
+        System.out.printf("Imported %d accounts with IDs %s to %s, rejected %d lines%n", summary.getImported(),
+            summary.getFirstId(), summary.getLastId(), summary.getRejected());
+        summary.getErrors().forEach(System.out::println);
+      } finally {
+        if (repository instanceof AutoCloseable) {
+          ((AutoCloseable) repository).close();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package com.andrew.business;
+
+import com.andrew.exception.ServerBusyException;
+import com.andrew.metrics.LatencyHistogram;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs account changes which may block, on account locks or on the journal, away from the request threads.
+ * <p>
+ * Tasks run on a fixed pool of worker threads fed by a bounded queue, or each on its own virtual thread when enabled
+ * and the JVM supports them, with at most as many tasks in flight as there are workers and queue slots. Tasks
+ * submitted beyond that are rejected straight away rather than queued, so that an overloaded server sheds load
+ * instead of letting every request wait.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountExecutor implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccountExecutor.class);
+
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+  private final ExecutorService executor;
+  private final Semaphore permits;
+
+  private final AtomicInteger queued = new AtomicInteger();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LatencyHistogram waits = new LatencyHistogram();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  @Inject
+  public AccountExecutor(Config config) {
+    this(config.getInt("account.executor.threads"), config.getInt("account.executor.queue-size"),
+        config.getBoolean("account.executor.virtual-threads"));
+  }
+
+  /**
+   * @param threads        number of worker threads
+   * @param queueSize      number of tasks which may wait for a worker
+   * @param virtualThreads whether to run each task on its own virtual thread when the JVM supports them
+   */
+  public AccountExecutor(int threads, int queueSize, boolean virtualThreads) {
+    if (threads < 1 || queueSize < 1) {
+      throw new IllegalArgumentException("Number of threads and queue size must be greater than 0");
+    }
+
+    final ExecutorService virtual = virtualThreads ? virtualThreadExecutor() : null;
+    if (virtual != null) {
+      this.executor = virtual;
+      this.permits = new Semaphore(threads + queueSize);
+    } else {
+      final AtomicInteger count = new AtomicInteger();
+      this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueSize), task -> {
+        final Thread thread = new Thread(task, "account-worker-" + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.permits = null;
+    }
+    LOGGER.info("Account changes run on {}", virtual != null ? "virtual threads" : threads + " worker threads");
+  }
+
+  private AccountExecutor() {
+    this.executor = null;
+    this.permits = null;
+  }
+
+  /**
+   * @return executor running every task on the calling thread
+   */
+  public static AccountExecutor direct() {
+    return new AccountExecutor();
+  }
+
+  /**
+   * Run a task on the executor
+   *
+   * @param task task to run
+   * @return future completed with the result of the task, or with the exception it threw, or with a
+   * {@link ServerBusyException} when too many tasks are already waiting
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    if (executor == null) {
+      run(task, result, System.nanoTime());
+      return result;
+    }
+
+    if (permits != null && !permits.tryAcquire()) {
+      return reject(result);
+    }
+
+    final long submitted = System.nanoTime();
+    queued.incrementAndGet();
+    try {
+      executor.execute(() -> {
+        try {
+          run(task, result, submitted);
+        } finally {
+          if (permits != null) {
+            permits.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      queued.decrementAndGet();
+      if (permits != null) {
+        permits.release();
+      }
+      return reject(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * @return number of tasks submitted which have not started yet
+   */
+  public int getQueueDepth() {
+    return queued.get();
+  }
+
+  /**
+   * @return number of tasks run
+   */
+  public long getCompleted() {
+    return completed.sum();
+  }
+
+  /**
+   * @return number of tasks rejected because too many were already waiting
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return total time tasks waited between being submitted and starting, in nanoseconds
+   */
+  public long getWaitNanos() {
+    return waits.getSumNanos();
+  }
+
+  /**
+   * @return time tasks waited between being submitted and starting
+   */
+  public LatencyHistogram getWaits() {
+    return waits;
+  }
+
+  /**
+   * @return longest time a task waited between being submitted and starting, in nanoseconds
+   */
+  public long getMaxWaitNanos() {
+    return maxWaitNanos.get();
+  }
+
+  @Override
+  public void close() {
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.warn("Account changes still running after {}s, giving up waiting", SHUTDOWN_TIMEOUT_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private <T> void run(Supplier<T> task, CompletableFuture<T> result, long submitted) {
+    if (executor != null) {
+      queued.decrementAndGet();
+      final long wait = System.nanoTime() - submitted;
+      waits.record(wait);
+      maxWaitNanos.accumulateAndGet(wait, Math::max);
+    }
+
+    final T value;
+    try {
+      value = task.get();
+    } catch (RuntimeException e) {
+      completed.increment();
+      result.completeExceptionally(e);
+      return;
+    }
+    completed.increment();
+    result.complete(value);
+  }
+
+  private <T> CompletableFuture<T> reject(CompletableFuture<T> result) {
+    rejected.increment();
+    result.completeExceptionally(new ServerBusyException("Server is busy, please retry"));
+    return result;
+  }
+
+  /**
+   * Look virtual threads up reflectively, so that the server still builds and runs on Java 8
+   *
+   * @return executor starting a virtual thread per task, {@code null} when the JVM does not support them
+   */
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+}
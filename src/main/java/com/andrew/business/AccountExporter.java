@@ -0,0 +1,213 @@
+package com.andrew.business;
+
+import com.andrew.dto.ExportState;
+import com.andrew.dto.ExportStatus;
+import com.andrew.export.AccountExportReader;
+import com.andrew.export.AccountExportWriter;
+import com.andrew.model.Account;
+import com.andrew.repository.AccountRepository;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports every account to a columnar file in the export directory, for analytics to read with
+ * {@link AccountExportReader} rather than paging through {@code GET /account}.
+ * <p>
+ * Exports run on a single background thread, one at a time. Balances are read from a {@link BalanceSnapshot} opened
+ * for the export, so they are consistent whatever the traffic meanwhile without holding back transfers, and accounts
+ * are read a page at a time and written a row group at a time, so memory use does not depend on the number of
+ * accounts. Accounts created during the export are included with their opening balance. With the sharded engine,
+ * which does not support snapshots, live balances are exported instead and the file is marked as not consistent.
+ * <p>
+ * A file is written under a temporary name and moved into place once complete, so files of the export directory can
+ * be picked up as soon as they appear.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountExporter implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccountExporter.class);
+
+  private static final int PAGE_SIZE = 1024;
+  private static final String EXTENSION = ".acx";
+
+  private final AccountHandler accountHandler;
+  private final AccountRepository accountRepository;
+  private final Path dir;
+  private final int rowGroupSize;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "account-export");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final AtomicInteger sequence = new AtomicInteger();
+  private final LongAdder exports = new LongAdder();
+  private final LongAdder exported = new LongAdder();
+
+  private volatile ExportStatus status;
+  private volatile long progress;
+
+  @Inject
+  public AccountExporter(AccountHandler accountHandler, AccountRepository accountRepository, Config config) {
+    this(accountHandler, accountRepository, Paths.get(config.getString("export.dir")),
+        config.getInt("export.row-group-size"));
+  }
+
+  /**
+   * @param accountHandler    handler opening the balance snapshots
+   * @param accountRepository store of the exported accounts
+   * @param dir               directory of the exported files, created when missing
+   * @param rowGroupSize      number of accounts per row group
+   */
+  public AccountExporter(AccountHandler accountHandler, AccountRepository accountRepository, Path dir,
+                         int rowGroupSize) {
+    if (rowGroupSize < 1) {
+      throw new IllegalArgumentException("Row group size must be greater than 0");
+    }
+
+    this.accountHandler = accountHandler;
+    this.accountRepository = accountRepository;
+    this.dir = dir;
+    this.rowGroupSize = rowGroupSize;
+  }
+
+  /**
+   * Start an export in the background, unless one is already running
+   *
+   * @return status of the export started, or of the one already running
+   */
+  public synchronized ExportStatus start() {
+    final ExportStatus current = status();
+    if (current != null && current.getState() == ExportState.RUNNING) {
+      return current;
+    }
+
+    final long startedAt = System.currentTimeMillis();
+    final String file = fileName(startedAt);
+    progress = 0;
+    status = new ExportStatus(file, ExportState.RUNNING, 0, startedAt, null, null);
+    executor.execute(() -> status = run(file, startedAt, true));
+
+    return status();
+  }
+
+  /**
+   * Export the accounts on the calling thread
+   *
+   * @return status of the completed or failed export
+   */
+  public ExportStatus export() {
+    final long startedAt = System.currentTimeMillis();
+    return run(fileName(startedAt), startedAt, false);
+  }
+
+  /**
+   * @return status of the last export started, {@code null} when none was
+   */
+  public ExportStatus status() {
+    final ExportStatus current = status;
+    if (current == null || current.getState() != ExportState.RUNNING) {
+      return current;
+    }
+
+    return new ExportStatus(current.getFile(), ExportState.RUNNING, progress, current.getStartedAt(), null, null);
+  }
+
+  /**
+   * @param status status of a completed export
+   * @return location of the exported file
+   */
+  public Path fileOf(ExportStatus status) {
+    return dir.resolve(status.getFile());
+  }
+
+  /**
+   * @return number of exports completed
+   */
+  public long getExports() {
+    return exports.sum();
+  }
+
+  /**
+   * @return number of accounts written by completed exports
+   */
+  public long getExported() {
+    return exported.sum();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return name of the file of an export, unique even for exports started within the same millisecond
+   */
+  private String fileName(long startedAt) {
+    return "accounts-" + startedAt + "-" + sequence.incrementAndGet() + EXTENSION;
+  }
+
+  private ExportStatus run(String file, long startedAt, boolean background) {
+    final Path target = dir.resolve(file);
+    final Path temporary = dir.resolve(file + ".tmp");
+    try {
+      Files.createDirectories(dir);
+      final long accounts = write(temporary, background);
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+
+      exports.increment();
+      exported.add(accounts);
+      LOGGER.info("Exported {} accounts to {}", accounts, target);
+      return new ExportStatus(file, ExportState.COMPLETED, accounts, startedAt, System.currentTimeMillis(), null);
+    } catch (IOException | RuntimeException e) {
+      try {
+        Files.deleteIfExists(temporary);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      LOGGER.error("Export to {} failed", target, e);
+      return new ExportStatus(file, ExportState.FAILED, 0, startedAt, System.currentTimeMillis(), e.toString());
+    }
+  }
+
+  private long write(Path path, boolean background) throws IOException {
+    try (BalanceSnapshot snapshot = accountHandler.isSnapshotSupported() ? accountHandler.snapshot() : null;
+         AccountExportWriter writer = new AccountExportWriter(path, rowGroupSize)) {
+      long after = 0;
+      List<Account> page;
+      do {
+        page = accountRepository.findPage(after, PAGE_SIZE);
+        for (Account account : page) {
+          after = account.getId();
+          if (snapshot != null && !snapshot.includes(account)) {
+            continue;
+          }
+          final long balance = snapshot == null ? account.balanceUnits() : snapshot.balanceOf(account);
+          writer.write(account.getId(), account.getName(), balance, account.getCurrency());
+        }
+        if (background) {
+          progress = writer.getAccounts();
+        }
+      } while (page.size() == PAGE_SIZE);
+
+      writer.finish(snapshot != null);
+      return writer.getAccounts();
+    }
+  }
+}
@@ -1,19 +1,41 @@
 package com.andrew.business;
 
+import com.andrew.business.AccountMetrics.Operation;
+import com.andrew.dto.AccountTotal;
+import com.andrew.dto.BatchMode;
 import com.andrew.dto.CreateAccount;
 import com.andrew.dto.Deposit;
+import com.andrew.dto.LedgerEntry;
 import com.andrew.dto.Transfer;
+import com.andrew.dto.TransferStatus;
 import com.andrew.dto.Withdraw;
 import com.andrew.exception.AccountNotFoundException;
 import com.andrew.exception.IllegalTransferException;
 import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.exception.LockTimeoutException;
+import com.andrew.exception.ServerBusyException;
 import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
 import com.andrew.repository.AccountRepository;
+import com.andrew.repository.JournalEvent;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.math.BigDecimal;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -23,29 +45,77 @@ import static java.util.Objects.requireNonNull;
 @Singleton
 public class AccountHandler {
 
+  public static final int MAX_PAGE_SIZE = 1000;
+
   private final AccountRepository accountRepository;
+  private final AccountLockManager lockManager;
+  private final AccountJournal journal;
+  private final ShardedTransactionEngine engine;
+  private final AccountExecutor executor;
+  private final AccountMetrics metrics;
+  private final AccountSnapshots snapshots;
+  private final AccountLedger ledger;
+  private final HotAccounts hotAccounts;
+  private final ExchangeRates exchangeRates;
+  private final DepositCombiner combiner;
 
   @Inject
-  public AccountHandler(AccountRepository accountRepository) {
+  public AccountHandler(AccountRepository accountRepository, AccountLockManager lockManager, AccountJournal journal,
+                        ShardedTransactionEngine engine, AccountExecutor executor, AccountMetrics metrics,
+                        AccountSnapshots snapshots, AccountLedger ledger, HotAccounts hotAccounts,
+                        ExchangeRates exchangeRates, DepositCombiner combiner) {
     this.accountRepository = accountRepository;
+    this.lockManager = lockManager;
+    this.journal = journal;
+    this.engine = engine;
+    this.executor = executor;
+    this.metrics = metrics;
+    this.snapshots = snapshots;
+    this.ledger = ledger;
+    this.hotAccounts = hotAccounts;
+    this.exchangeRates = exchangeRates;
+    this.combiner = combiner;
   }
 
   /**
-   * Create a new account
+   * Create a new account, in the default currency unless another one is specified
    *
    * @param createAccount parameters to be used for creating new account
    * @return newly created account
    */
   public Account create(CreateAccount createAccount) {
+    final long start = metrics.start();
+    try {
+      prepare(createAccount, exchangeRates.getDefaultCurrency());
+
+      return accountRepository.create(createAccount);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.CREATE, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.CREATE, start);
+    }
+  }
+
+  /**
+   * Check the parameters of a new account, defaulting its opening balance to 0 and its currency to the default one
+   *
+   * @param createAccount   parameters to be used for creating new account
+   * @param defaultCurrency currency of accounts created without one
+   * @throws NullPointerException     when the name is missing
+   * @throws IllegalArgumentException when the opening balance is negative
+   */
+  static void prepare(CreateAccount createAccount, Currency defaultCurrency) {
     requireNonNull(createAccount.getName(), "Account name cannot be null");
 
     if (createAccount.getOpeningBalance() == null) {
-      createAccount.setOpeningBalance(BigDecimal.ZERO);
+      createAccount.setOpeningBalance(Money.ZERO);
     } else if (createAccount.getOpeningBalance().signum() < 0) {
       throw new IllegalArgumentException("Opening balance cannot be less than 0");
     }
-
-    return accountRepository.create(createAccount);
+    if (createAccount.getCurrency() == null) {
+      createAccount.setCurrency(defaultCurrency);
+    }
   }
 
   /**
@@ -56,14 +126,31 @@ public class AccountHandler {
    * @throws AccountNotFoundException when account is not found for specified ID
    */
   public Account findById(Long id) {
-    requireNonNull(id, "Account ID cannot be null");
+    return tryFindById(id).orElseThrow();
+  }
 
-    final Account account = accountRepository.findById(id);
-    if (account == null) {
-      throw new AccountNotFoundException(String.format("Specified ID: %d not associated with any account", id));
-    }
+  /**
+   * Return account based on specified ID, an unknown ID being returned as a rejection rather than thrown
+   *
+   * @param id account ID
+   * @return outcome with the account associated with the specified ID, or rejected with
+   * {@link TransferStatus#ACCOUNT_NOT_FOUND}
+   */
+  public Outcome<Account> tryFindById(Long id) {
+    final long start = metrics.start();
+    try {
+      final Account account = find(id);
+      if (account == null) {
+        return rejected(Operation.FIND_BY_ID, Outcome.accountNotFound(id));
+      }
 
-    return account;
+      return Outcome.ok(account);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.FIND_BY_ID, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.FIND_BY_ID, start);
+    }
   }
 
   /**
@@ -72,7 +159,135 @@ public class AccountHandler {
    * @return all registered accounts
    */
   public Collection<Account> findAll() {
-    return accountRepository.findAll();
+    final long start = metrics.start();
+    try {
+      return accountRepository.findAll();
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.FIND_ALL, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.FIND_ALL, start);
+    }
+  }
+
+  /**
+   * Open a consistent snapshot of the balances, every change being seen either in full or not at all. Changes carry on
+   * while the snapshot is open, at the cost of taking account locks for single-account changes too.
+   *
+   * @return snapshot of the balances as of now, which must be closed once read
+   * @throws UnsupportedOperationException when the sharded engine is enabled, as transfers between shards are not
+   *                                       applied atomically
+   */
+  public BalanceSnapshot snapshot() {
+    if (!isSnapshotSupported()) {
+      throw new UnsupportedOperationException("Balance snapshots require account.engine.mode = locking");
+    }
+
+    // read first, so that every account below it was created before the snapshot
+    return snapshots.open(accountRepository.getPublishedId());
+  }
+
+  /**
+   * @return whether {@link #snapshot()} is supported by the configured engine
+   */
+  public boolean isSnapshotSupported() {
+    return !engine.isEnabled();
+  }
+
+  /**
+   * Return the number of accounts and the sum of their balances for each currency, as of a single point in time.
+   * Balances in different currencies are not added up.
+   *
+   * @return total of the accounts of each currency, ordered by currency code
+   * @throws UnsupportedOperationException when the sharded engine is enabled
+   * @throws ArithmeticException           when a total overflows
+   */
+  public List<AccountTotal> total() {
+    final long start = metrics.start();
+    try (BalanceSnapshot snapshot = snapshot()) {
+      final Map<Currency, long[]> totals = new TreeMap<>(
+          Comparator.nullsFirst(Comparator.comparing(Currency::getCurrencyCode)));
+      for (Account account : accountRepository.findAll()) {
+        if (!snapshot.includes(account)) {
+          continue;
+        }
+        final Currency currency = account.getCurrency() != null
+            ? account.getCurrency() : exchangeRates.getDefaultCurrency();
+        final long[] total = totals.computeIfAbsent(currency, ignored -> new long[2]);
+        total[0]++;
+        total[1] = Math.addExact(total[1], snapshot.balanceOf(account));
+      }
+
+      final List<AccountTotal> result = new ArrayList<>(totals.size());
+      for (Map.Entry<Currency, long[]> total : totals.entrySet()) {
+        result.add(new AccountTotal(total.getKey(), total.getValue()[0],
+            Money.of(total.getValue()[1], Account.SCALE)));
+      }
+
+      return result;
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.TOTAL, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.TOTAL, start);
+    }
+  }
+
+  /**
+   * Return a page of accounts, ordered by ID
+   *
+   * @param after ID of the last account of the previous page, {@code 0} for the first page
+   * @param limit maximum number of accounts to return
+   * @return accounts following the specified ID, empty past the last account
+   * @throws IllegalArgumentException when the cursor is negative or the limit is not between 1 and
+   *                                  {@value #MAX_PAGE_SIZE}
+   */
+  public List<Account> findPage(long after, int limit) {
+    final long start = metrics.start();
+    try {
+      if (after < 0) {
+        throw new IllegalArgumentException("Cursor cannot be less than 0");
+      } else if (limit < 1 || limit > MAX_PAGE_SIZE) {
+        throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+      }
+
+      return accountRepository.findPage(after, limit);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.FIND_PAGE, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.FIND_PAGE, start);
+    }
+  }
+
+  /**
+   * Return the balance changes of an account within a time range, oldest first
+   *
+   * @param id    account ID
+   * @param from  start of the range, inclusive, in milliseconds since the epoch
+   * @param to    end of the range, exclusive, in milliseconds since the epoch
+   * @param limit maximum number of changes to return
+   * @return balance changes of the account recorded within the range
+   * @throws AccountNotFoundException when account is not found for specified ID
+   * @throws IllegalArgumentException when the range is empty or the limit is not between 1 and
+   *                                  {@value #MAX_PAGE_SIZE}
+   */
+  public List<LedgerEntry> findTransactions(Long id, long from, long to, int limit) {
+    final long start = metrics.start();
+    try {
+      if (from >= to) {
+        throw new IllegalArgumentException("Start of the range must be before its end");
+      } else if (limit < 1 || limit > MAX_PAGE_SIZE) {
+        throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+      }
+
+      return ledger.find(lookup(id).getId(), from, to, limit);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.FIND_TRANSACTIONS, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.FIND_TRANSACTIONS, start);
+    }
   }
 
   /**
@@ -84,16 +299,44 @@ public class AccountHandler {
    * @throws IllegalArgumentException when amount is not greater than 0
    */
   public Account deposit(Deposit deposit) {
-    final BigDecimal amount = deposit.getAmount();
-    validateAmount(amount);
+    return tryDeposit(deposit).orElseThrow();
+  }
 
-    final Account account = findById(deposit.getAccountId());
+  /**
+   * Deposit money in account based on specified ID, business rejections being returned rather than thrown
+   *
+   * @param deposit parameters for depositing money
+   * @return outcome with the account with updated balance, or rejected with {@link TransferStatus#INVALID_AMOUNT}
+   * or {@link TransferStatus#ACCOUNT_NOT_FOUND}
+   */
+  public Outcome<Account> tryDeposit(Deposit deposit) {
+    final long start = metrics.start();
+    try {
+      final long amount = amountOf(deposit.getAmount());
+      if (amount == 0L) {
+        return rejected(Operation.DEPOSIT, Outcome.rejected(TransferStatus.INVALID_AMOUNT));
+      }
 
-    synchronized (account) {
-      account.setBalance(getUpdatedBalance(account, amount));
-    }
+      final Account account = find(deposit.getAccountId());
+      if (account == null) {
+        return rejected(Operation.DEPOSIT, Outcome.accountNotFound(deposit.getAccountId()));
+      }
+      if (combiner.isEnabled()) {
+        combiner.deposit(account, amount, this::depositCombined);
+        return Outcome.ok(account);
+      }
 
-    return account;
+      creditDurably(account, amount, JournalEvent.deposit(account.getId(), amount));
+      hotAccounts.credited(account);
+      ledger.deposited(account, amount);
+
+      return Outcome.ok(account);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.DEPOSIT, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.DEPOSIT, start);
+    }
   }
 
   /**
@@ -106,65 +349,872 @@ public class AccountHandler {
    * @throws InsufficientBalanceException when the specified amount is greater than the account balance
    */
   public Account withdraw(Withdraw withdraw) {
-    final BigDecimal amount = withdraw.getAmount();
-    validateAmount(amount);
+    return tryWithdraw(withdraw).orElseThrow();
+  }
 
-    final Account account = findById(withdraw.getAccountId());
+  /**
+   * Withdraw money from account, business rejections being returned rather than thrown
+   *
+   * @param withdraw parameters for withdrawing money
+   * @return outcome with the account with updated balance, or rejected with {@link TransferStatus#INVALID_AMOUNT},
+   * {@link TransferStatus#ACCOUNT_NOT_FOUND} or {@link TransferStatus#INSUFFICIENT_BALANCE}
+   */
+  public Outcome<Account> tryWithdraw(Withdraw withdraw) {
+    final long start = metrics.start();
+    try {
+      final long amount = amountOf(withdraw.getAmount());
+      if (amount == 0L) {
+        return rejected(Operation.WITHDRAW, Outcome.rejected(TransferStatus.INVALID_AMOUNT));
+      }
 
-    synchronized (account) {
-      account.setBalance(getUpdatedBalance(account, amount.negate()));
-    }
+      final Account account = find(withdraw.getAccountId());
+      if (account == null) {
+        return rejected(Operation.WITHDRAW, Outcome.accountNotFound(withdraw.getAccountId()));
+      }
+      if (!changeIf(account, () -> account.debit(amount))) {
+        return rejected(Operation.WITHDRAW, Outcome.rejected(TransferStatus.INSUFFICIENT_BALANCE));
+      }
+      journalOrUndo(() -> change(account, () -> account.credit(amount)),
+          JournalEvent.withdraw(account.getId(), amount));
+      ledger.withdrew(account, amount);
 
-    return account;
+      return Outcome.ok(account);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.WITHDRAW, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.WITHDRAW, start);
+    }
   }
 
   /**
-   * Transfer money between accounts
+   * Transfer money between accounts. The amount is in the benefactor's currency, and converted to the beneficiary's
+   * at the current exchange rate when their currencies differ.
    *
    * @param transfer parameters for processing money transfer
    * @return benefactor account with updated balance
    * @throws AccountNotFoundException     when account is not found for either benefactor or beneficiary IDs
-   * @throws IllegalArgumentException     when amount is not greater than 0
-   * @throws IllegalTransferException     when fromAccountId and toAccountId are the same
+   * @throws IllegalArgumentException     when amount is not greater than 0, or converts to less than a minor unit
+   * @throws IllegalTransferException     when fromAccountId and toAccountId are the same, or there is no exchange rate
+   *                                      between the currencies of the accounts
    * @throws InsufficientBalanceException when the specified amount is greater than the account balance
+   * @throws ArithmeticException          when the beneficiary's balance would overflow
+   * @throws LockTimeoutException         when the account locks could not be acquired in time
    */
   public Account transfer(Transfer transfer) {
+    return tryTransfer(transfer).orElseThrow();
+  }
+
+  /**
+   * Transfer money between accounts, business rejections being returned rather than thrown
+   *
+   * @param transfer parameters for processing money transfer
+   * @return outcome with the benefactor account with updated balance, or rejected with
+   * {@link TransferStatus#ILLEGAL_TRANSFER}, {@link TransferStatus#INVALID_AMOUNT},
+   * {@link TransferStatus#ACCOUNT_NOT_FOUND}, {@link TransferStatus#NO_EXCHANGE_RATE},
+   * {@link TransferStatus#INSUFFICIENT_BALANCE} or {@link TransferStatus#BALANCE_OVERFLOW}
+   * @throws LockTimeoutException when the account locks could not be acquired in time
+   */
+  public Outcome<Account> tryTransfer(Transfer transfer) {
+    final long start = metrics.start();
+    try {
+      if (transfer.getFromAccountId().equals(transfer.getToAccountId())) {
+        return rejected(Operation.TRANSFER, Outcome.rejected(TransferStatus.ILLEGAL_TRANSFER));
+      }
+      final long amount = amountOf(transfer.getAmount());
+      if (amount == 0L) {
+        return rejected(Operation.TRANSFER, Outcome.rejected(TransferStatus.INVALID_AMOUNT));
+      }
+
+      final Account fromAccount = find(transfer.getFromAccountId());
+      if (fromAccount == null) {
+        return rejected(Operation.TRANSFER, Outcome.accountNotFound(transfer.getFromAccountId()));
+      }
+      final Account toAccount = find(transfer.getToAccountId());
+      if (toAccount == null) {
+        return rejected(Operation.TRANSFER, Outcome.accountNotFound(transfer.getToAccountId()));
+      }
+      final ExchangeRates.Rates rates = exchangeRates.current();
+      if (!rates.hasRate(fromAccount.getCurrency(), toAccount.getCurrency())) {
+        return rejected(Operation.TRANSFER, Outcome.rejected(TransferStatus.NO_EXCHANGE_RATE));
+      }
+      final long toAmount = rates.convert(amount, fromAccount.getCurrency(), toAccount.getCurrency());
+
+      final TransferStatus status;
+      try (AccountLockManager.Locks ignored = lockManager.lock(fromAccount.getId(), toAccount.getId())) {
+        status = applyLocked(() -> {
+          if (!toAccount.canCredit(toAmount)) {
+            return TransferStatus.BALANCE_OVERFLOW;
+          }
+          if (!fromAccount.debit(amount)) {
+            return TransferStatus.INSUFFICIENT_BALANCE;
+          }
+
+          journalOrUndo(() -> fromAccount.credit(amount),
+              JournalEvent.transfer(fromAccount.getId(), toAccount.getId(), amount, toAmount));
+          try {
+            toAccount.credit(toAmount);
+          } catch (ArithmeticException e) {
+            // a lock-free deposit took the room checked above
+            fromAccount.credit(amount);
+            journal.write(JournalEvent.transfer(toAccount.getId(), fromAccount.getId(), toAmount, amount));
+            return TransferStatus.BALANCE_OVERFLOW;
+          }
+          return TransferStatus.OK;
+        }, fromAccount, toAccount);
+      }
+      if (status != TransferStatus.OK) {
+        return rejected(Operation.TRANSFER, Outcome.rejected(status));
+      }
+      ledger.transferred(fromAccount, toAccount, amount, toAmount);
+
+      return Outcome.ok(fromAccount);
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.TRANSFER, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.TRANSFER, start);
+    }
+  }
+
+  /**
+   * Transfer money for a batch of transfers, taking the locks of every involved account once for the whole batch
+   *
+   * @param transfers transfers to process
+   * @param mode      whether the batch is applied atomically or transfer by transfer
+   * @return status of each transfer, in the order of the batch
+   * @throws LockTimeoutException when the account locks could not be acquired in time
+   */
+  public TransferStatus[] transfer(List<Transfer> transfers, BatchMode mode) {
+    final long start = metrics.start();
+    try {
+      requireNonNull(transfers, "Transfers cannot be null");
+      requireNonNull(mode, "Batch mode cannot be null");
+
+      final int size = transfers.size();
+      final TransferStatus[] statuses = new TransferStatus[size];
+      final Account[] fromAccounts = new Account[size];
+      final Account[] toAccounts = new Account[size];
+      final long[] amounts = new long[size];
+      final long[] toAmounts = new long[size];
+      final Map<Long, Account> accounts = new HashMap<>();
+
+      if (!resolveAll(transfers, statuses, accounts, fromAccounts, toAccounts, amounts, toAmounts)
+          && mode == BatchMode.ATOMIC) {
+        metrics.transferred(abortRemaining(statuses));
+        return statuses;
+      }
+
+      final Map<Account, Long> debits = new IdentityHashMap<>();
+      final Map<Account, Long> credits = new IdentityHashMap<>();
+      try (AccountLockManager.Locks ignored = lockManager.lock(accounts.keySet())) {
+        changeLocked(() -> {
+          if (mode == BatchMode.ATOMIC) {
+            applyAtomically(statuses, fromAccounts, toAccounts, amounts, toAmounts, debits, credits);
+          } else {
+            applyEach(statuses, fromAccounts, toAccounts, amounts, toAmounts, debits, credits);
+          }
+          journalOrUndo(() -> refund(debits), journalEvents(statuses, fromAccounts, toAccounts, amounts, toAmounts));
+          creditAll(statuses, fromAccounts, toAccounts, amounts, toAmounts, debits, credits);
+        }, accounts.values().toArray(new Account[0]));
+      }
+      transferred(statuses, fromAccounts, toAccounts, amounts, toAmounts);
+      metrics.transferred(statuses);
+
+      return statuses;
+    } catch (RuntimeException e) {
+      metrics.failed(Operation.TRANSFER_BATCH, e);
+      throw e;
+    } finally {
+      metrics.completed(Operation.TRANSFER_BATCH, start);
+    }
+  }
+
+  /**
+   * Deposit money in account based on specified ID, on the shard owning the account when the sharded engine is enabled
+   * and on the account executor otherwise
+   *
+   * @param deposit parameters for depositing money
+   * @return future completed with the account once its balance is updated, or with the exceptions of
+   * {@link #deposit(Deposit)}, or with a {@link ServerBusyException} when the account executor is saturated
+   */
+  public CompletableFuture<Account> depositAsync(Deposit deposit) {
+    return tryDepositAsync(deposit).thenApply(Outcome::orElseThrow);
+  }
+
+  /**
+   * Deposit money in account based on specified ID like {@link #depositAsync(Deposit)}, business rejections being
+   * returned rather than thrown
+   *
+   * @param deposit parameters for depositing money
+   * @return future completed with the outcome of {@link #tryDeposit(Deposit)}, or with the exceptions of
+   * {@link #depositAsync(Deposit)} for invalid requests and unexpected failures
+   */
+  public CompletableFuture<Outcome<Account>> tryDepositAsync(Deposit deposit) {
+    if (!engine.isEnabled()) {
+      return executor.submit(() -> tryDeposit(deposit));
+    }
+
+    return measuredOutcome(Operation.DEPOSIT, () -> {
+      final long amount = amountOf(deposit.getAmount());
+      if (amount == 0L) {
+        return CompletableFuture.completedFuture(Outcome.rejected(TransferStatus.INVALID_AMOUNT));
+      }
+      final Account account = find(deposit.getAccountId());
+      if (account == null) {
+        return CompletableFuture.completedFuture(Outcome.accountNotFound(deposit.getAccountId()));
+      }
+
+      return engine.deposit(account, amount).thenApply(deposited -> {
+        ledger.deposited(deposited, amount);
+        return Outcome.ok(deposited);
+      });
+    });
+  }
+
+  /**
+   * Withdraw money from account, on the shard owning the account when the sharded engine is enabled and on the
+   * account executor otherwise
+   *
+   * @param withdraw parameters for withdrawing money
+   * @return future completed with the account once its balance is updated, or with the exceptions of
+   * {@link #withdraw(Withdraw)}, or with a {@link ServerBusyException} when the account executor is saturated
+   */
+  public CompletableFuture<Account> withdrawAsync(Withdraw withdraw) {
+    return tryWithdrawAsync(withdraw).thenApply(Outcome::orElseThrow);
+  }
+
+  /**
+   * Withdraw money from account like {@link #withdrawAsync(Withdraw)}, business rejections being returned rather than
+   * thrown
+   *
+   * @param withdraw parameters for withdrawing money
+   * @return future completed with the outcome of {@link #tryWithdraw(Withdraw)}, or with the exceptions of
+   * {@link #withdrawAsync(Withdraw)} for invalid requests and unexpected failures
+   */
+  public CompletableFuture<Outcome<Account>> tryWithdrawAsync(Withdraw withdraw) {
+    if (!engine.isEnabled()) {
+      return executor.submit(() -> tryWithdraw(withdraw));
+    }
+
+    return measuredOutcome(Operation.WITHDRAW, () -> {
+      final long amount = amountOf(withdraw.getAmount());
+      if (amount == 0L) {
+        return CompletableFuture.completedFuture(Outcome.rejected(TransferStatus.INVALID_AMOUNT));
+      }
+      final Account account = find(withdraw.getAccountId());
+      if (account == null) {
+        return CompletableFuture.completedFuture(Outcome.accountNotFound(withdraw.getAccountId()));
+      }
+
+      return engine.withdrawStatus(account, amount).thenApply(status -> {
+        if (status != TransferStatus.OK) {
+          return Outcome.rejected(status);
+        }
+
+        ledger.withdrew(account, amount);
+        return Outcome.ok(account);
+      });
+    });
+  }
+
+  /**
+   * Transfer money between accounts, as a two-phase debit and credit between shards when the sharded engine is
+   * enabled and on the account executor otherwise
+   *
+   * @param transfer parameters for processing money transfer
+   * @return future completed with the benefactor once both balances are updated, or with the exceptions of
+   * {@link #transfer(Transfer)}, or with a {@link ServerBusyException} when the account executor is saturated
+   */
+  public CompletableFuture<Account> transferAsync(Transfer transfer) {
+    return tryTransferAsync(transfer).thenApply(Outcome::orElseThrow);
+  }
+
+  /**
+   * Transfer money between accounts like {@link #transferAsync(Transfer)}, business rejections being returned rather
+   * than thrown
+   *
+   * @param transfer parameters for processing money transfer
+   * @return future completed with the outcome of {@link #tryTransfer(Transfer)}, or with the exceptions of
+   * {@link #transferAsync(Transfer)} for invalid requests and unexpected failures
+   */
+  public CompletableFuture<Outcome<Account>> tryTransferAsync(Transfer transfer) {
+    if (!engine.isEnabled()) {
+      return executor.submit(() -> tryTransfer(transfer));
+    }
+
+    return measuredOutcome(Operation.TRANSFER, () -> {
+      if (transfer.getFromAccountId().equals(transfer.getToAccountId())) {
+        return CompletableFuture.completedFuture(Outcome.rejected(TransferStatus.ILLEGAL_TRANSFER));
+      }
+      final long amount = amountOf(transfer.getAmount());
+      if (amount == 0L) {
+        return CompletableFuture.completedFuture(Outcome.rejected(TransferStatus.INVALID_AMOUNT));
+      }
+
+      final Account fromAccount = find(transfer.getFromAccountId());
+      if (fromAccount == null) {
+        return CompletableFuture.completedFuture(Outcome.accountNotFound(transfer.getFromAccountId()));
+      }
+      final Account toAccount = find(transfer.getToAccountId());
+      if (toAccount == null) {
+        return CompletableFuture.completedFuture(Outcome.accountNotFound(transfer.getToAccountId()));
+      }
+      final ExchangeRates.Rates rates = exchangeRates.current();
+      if (!rates.hasRate(fromAccount.getCurrency(), toAccount.getCurrency())) {
+        return CompletableFuture.completedFuture(Outcome.rejected(TransferStatus.NO_EXCHANGE_RATE));
+      }
+      final long toAmount = rates.convert(amount, fromAccount.getCurrency(), toAccount.getCurrency());
+      return engine.transferStatus(fromAccount, toAccount, amount, toAmount).thenApply(status -> {
+        if (status != TransferStatus.OK) {
+          return Outcome.rejected(status);
+        }
+
+        ledger.transferred(fromAccount, toAccount, amount, toAmount);
+        return Outcome.ok(fromAccount);
+      });
+    });
+  }
+
+  /**
+   * Transfer money for a batch of transfers, through the shards when the sharded engine is enabled and on the
+   * account executor otherwise
+   *
+   * @param transfers transfers to process
+   * @param mode      whether the batch is applied atomically or transfer by transfer
+   * @return future completed with the status of each transfer, in the order of the batch, or with a
+   * {@link ServerBusyException} when the account executor is saturated
+   */
+  public CompletableFuture<TransferStatus[]> transferAsync(List<Transfer> transfers, BatchMode mode) {
+    if (!engine.isEnabled()) {
+      return executor.submit(() -> transfer(transfers, mode));
+    }
+
+    return measured(Operation.TRANSFER_BATCH, () -> {
+      requireNonNull(transfers, "Transfers cannot be null");
+      requireNonNull(mode, "Batch mode cannot be null");
+
+      final int size = transfers.size();
+      final TransferStatus[] statuses = new TransferStatus[size];
+      final Account[] fromAccounts = new Account[size];
+      final Account[] toAccounts = new Account[size];
+      final long[] amounts = new long[size];
+      final long[] toAmounts = new long[size];
+
+      if (!resolveAll(transfers, statuses, new HashMap<>(), fromAccounts, toAccounts, amounts, toAmounts)
+          && mode == BatchMode.ATOMIC) {
+        return CompletableFuture.completedFuture(abortRemaining(statuses));
+      }
+
+      return engine.transfer(statuses, fromAccounts, toAccounts, amounts, toAmounts, mode).thenApply(result -> {
+        transferred(result, fromAccounts, toAccounts, amounts, toAmounts);
+        return result;
+      });
+    }).thenApply(result -> {
+      metrics.transferred(result);
+      return result;
+    });
+  }
+
+  /**
+   * Validate every transfer of the batch and convert its amount, every transfer at the same exchange rates
+   *
+   * @return whether every transfer of the batch is valid
+   */
+  private boolean resolveAll(List<Transfer> transfers, TransferStatus[] statuses, Map<Long, Account> accounts,
+                             Account[] fromAccounts, Account[] toAccounts, long[] amounts, long[] toAmounts) {
+    final ExchangeRates.Rates rates = exchangeRates.current();
+    boolean valid = true;
+    for (int i = 0; i < statuses.length; i++) {
+      statuses[i] = resolve(transfers.get(i), i, accounts, fromAccounts, toAccounts, amounts);
+      if (statuses[i] == null) {
+        statuses[i] = convert(rates, i, fromAccounts, toAccounts, amounts, toAmounts);
+      }
+      if (statuses[i] != null) {
+        valid = false;
+      }
+    }
+
+    return valid;
+  }
+
+  /**
+   * Validate a transfer of the batch and look its accounts up. Each account is looked up once per batch, so that
+   * transfers sharing an account share the same instance.
+   */
+  private TransferStatus resolve(Transfer transfer, int index, Map<Long, Account> accounts, Account[] fromAccounts,
+                                 Account[] toAccounts, long[] amounts) {
+    final Money amount = transfer.getAmount();
+    if (amount == null || amount.signum() < 1) {
+      return TransferStatus.INVALID_AMOUNT;
+    }
+    try {
+      amounts[index] = Account.toMinorUnits(amount);
+    } catch (IllegalArgumentException e) {
+      return TransferStatus.INVALID_AMOUNT;
+    }
+
     final Long fromAccountId = transfer.getFromAccountId();
     final Long toAccountId = transfer.getToAccountId();
-
+    if (fromAccountId == null || toAccountId == null) {
+      return TransferStatus.ACCOUNT_NOT_FOUND;
+    }
     if (fromAccountId.equals(toAccountId)) {
-      throw new IllegalTransferException("Cannot transfer money to your account");
+      return TransferStatus.ILLEGAL_TRANSFER;
+    }
+
+    fromAccounts[index] = accounts.computeIfAbsent(fromAccountId, accountRepository::findById);
+    toAccounts[index] = accounts.computeIfAbsent(toAccountId, accountRepository::findById);
+    if (fromAccounts[index] == null || toAccounts[index] == null) {
+      return TransferStatus.ACCOUNT_NOT_FOUND;
+    }
+
+    return null;
+  }
+
+  /**
+   * Convert the amount of a valid transfer of the batch to the beneficiary's currency
+   */
+  private TransferStatus convert(ExchangeRates.Rates rates, int index, Account[] fromAccounts, Account[] toAccounts,
+                                 long[] amounts, long[] toAmounts) {
+    if (!rates.hasRate(fromAccounts[index].getCurrency(), toAccounts[index].getCurrency())) {
+      return TransferStatus.NO_EXCHANGE_RATE;
+    }
+
+    try {
+      toAmounts[index] = rates.convert(amounts[index], fromAccounts[index].getCurrency(),
+          toAccounts[index].getCurrency());
+      return null;
+    } catch (ArithmeticException e) {
+      return TransferStatus.BALANCE_OVERFLOW;
+    } catch (IllegalArgumentException e) {
+      return TransferStatus.INVALID_AMOUNT;
+    }
+  }
+
+  /**
+   * Debit the transfers of a batch one by one, holding their credits back until the batch is journaled. A transfer
+   * spends what earlier transfers of the batch credited its benefactor before its balance.
+   */
+  private void applyEach(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts, long[] amounts,
+                         long[] toAmounts, Map<Account, Long> debits, Map<Account, Long> credits) {
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] != null) {
+        continue;
+      }
+
+      final long pending = credits.getOrDefault(fromAccounts[i], 0L);
+      final long debit = amounts[i] - Math.min(pending, amounts[i]);
+      if (debit > 0L && !fromAccounts[i].debit(debit)) {
+        statuses[i] = TransferStatus.INSUFFICIENT_BALANCE;
+        continue;
+      }
+
+      final long credit = credits.getOrDefault(toAccounts[i], 0L);
+      if (credit > Long.MAX_VALUE - toAmounts[i] || !toAccounts[i].canCredit(credit + toAmounts[i])) {
+        if (debit > 0L) {
+          fromAccounts[i].credit(debit);
+        }
+        statuses[i] = TransferStatus.BALANCE_OVERFLOW;
+        continue;
+      }
+
+      if (pending > 0L) {
+        credits.put(fromAccounts[i], pending - (amounts[i] - debit));
+      }
+      debits.merge(fromAccounts[i], debit, Long::sum);
+      credits.put(toAccounts[i], credit + toAmounts[i]);
+      statuses[i] = TransferStatus.OK;
+    }
+  }
+
+  /**
+   * Debit the net effect of the batch on each account, holding the credits back until the batch is journaled.
+   * Credits are checked for overflow before anything is debited, and debits are applied one account at a time, so
+   * that a failing debit only needs earlier debits to be refunded.
+   */
+  private void applyAtomically(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts,
+                               long[] amounts, long[] toAmounts, Map<Account, Long> debits,
+                               Map<Account, Long> credits) {
+    final Map<Account, Long> deltas = new IdentityHashMap<>();
+    try {
+      for (int i = 0; i < statuses.length; i++) {
+        deltas.merge(fromAccounts[i], -amounts[i], Math::addExact);
+        deltas.merge(toAccounts[i], toAmounts[i], Math::addExact);
+      }
+    } catch (ArithmeticException e) {
+      Arrays.fill(statuses, TransferStatus.BALANCE_OVERFLOW);
+      return;
     }
 
-    final BigDecimal amount = transfer.getAmount();
-    validateAmount(amount);
+    final Account[] accounts = deltas.keySet().toArray(new Account[0]);
+    for (Account account : accounts) {
+      final long delta = deltas.get(account);
+      if (delta > 0 && !account.canCredit(delta)) {
+        markFailed(statuses, toAccounts, account, TransferStatus.BALANCE_OVERFLOW);
+        abortRemaining(statuses);
+        return;
+      }
+    }
 
-    final Account fromAccount = findById(fromAccountId);
-    final Account toAccount = findById(toAccountId);
+    int debited = 0;
+    for (; debited < accounts.length; debited++) {
+      final long delta = deltas.get(accounts[debited]);
+      if (delta < 0 && !accounts[debited].debit(-delta)) {
+        markInsufficient(statuses, fromAccounts, toAccounts, amounts, toAmounts, accounts[debited],
+            accounts[debited].balanceUnits());
+        refund(accounts, deltas, debited);
+        abortRemaining(statuses);
+        return;
+      }
+    }
 
-    synchronized (fromAccount) {
-      synchronized (toAccount) {
-        fromAccount.setBalance(getUpdatedBalance(fromAccount, amount.negate()));
-        toAccount.setBalance(getUpdatedBalance(toAccount, amount));
+    for (Account account : accounts) {
+      final long delta = deltas.get(account);
+      if (delta < 0) {
+        debits.put(account, -delta);
+      } else if (delta > 0) {
+        credits.put(account, delta);
       }
     }
+    Arrays.fill(statuses, TransferStatus.OK);
+  }
 
-    return fromAccount;
+  /**
+   * Credit the beneficiaries of a batch once the batch is journaled. When a credit fails all the same, e.g. because a
+   * concurrent deposit took the room checked before, the whole batch is reverted and its reversal journaled: transfers
+   * to the account are rejected with {@link TransferStatus#BALANCE_OVERFLOW} and the others aborted.
+   *
+   * @throws UncheckedIOException when the reversal could not be journaled
+   */
+  private void creditAll(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts, long[] amounts,
+                         long[] toAmounts, Map<Account, Long> debits, Map<Account, Long> credits) {
+    final Account[] accounts = credits.keySet().toArray(new Account[0]);
+    for (int credited = 0; credited < accounts.length; credited++) {
+      try {
+        accounts[credited].credit(credits.get(accounts[credited]));
+      } catch (ArithmeticException e) {
+        for (int i = 0; i < credited; i++) {
+          accounts[i].credit(-credits.get(accounts[i]));
+        }
+        refund(debits);
+
+        final List<JournalEvent> reversals = new ArrayList<>();
+        for (int i = 0; i < statuses.length; i++) {
+          if (statuses[i] == TransferStatus.OK) {
+            reversals.add(JournalEvent.transfer(toAccounts[i].getId(), fromAccounts[i].getId(), toAmounts[i],
+                amounts[i]));
+            statuses[i] = toAccounts[i] == accounts[credited] ? TransferStatus.BALANCE_OVERFLOW
+                : TransferStatus.ABORTED;
+          }
+        }
+        journal.write(reversals.toArray(new JournalEvent[0]));
+        return;
+      }
+    }
   }
 
-  private BigDecimal getUpdatedBalance(Account account, BigDecimal amount) {
-    final BigDecimal newBalance = account.getBalance().add(amount);
-    if (newBalance.signum() == -1) {
-      throw new InsufficientBalanceException("Insufficient balance");
+  /**
+   * Refund the debits of a batch
+   */
+  private static void refund(Map<Account, Long> debits) {
+    for (Map.Entry<Account, Long> debit : debits.entrySet()) {
+      if (debit.getValue() > 0L) {
+        debit.getKey().credit(debit.getValue());
+      }
     }
+  }
 
-    return newBalance;
+  /**
+   * Refund the debits of the first {@code count} accounts of an atomic batch
+   */
+  private static void refund(Account[] accounts, Map<Account, Long> deltas, int count) {
+    for (int i = 0; i < count; i++) {
+      final long delta = deltas.get(accounts[i]);
+      if (delta < 0) {
+        accounts[i].credit(-delta);
+      }
+    }
   }
 
-  private void validateAmount(BigDecimal amount) {
-    requireNonNull(amount, "Amount cannot be null");
-    if (amount.signum() < 1) {
-      throw new IllegalArgumentException("Amount must be greater than 0");
+  private JournalEvent[] journalEvents(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts,
+                                       long[] amounts, long[] toAmounts) {
+    final List<JournalEvent> events = new ArrayList<>(statuses.length);
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == TransferStatus.OK) {
+        events.add(JournalEvent.transfer(fromAccounts[i].getId(), toAccounts[i].getId(), amounts[i], toAmounts[i]));
+      }
+    }
+
+    return events.toArray(new JournalEvent[0]);
+  }
+
+  private void markFailed(TransferStatus[] statuses, Account[] accounts, Account failed, TransferStatus status) {
+    for (int i = 0; i < statuses.length; i++) {
+      if (accounts[i] == failed) {
+        statuses[i] = status;
+      }
+    }
+  }
+
+  /**
+   * Charge an insufficient balance of an account to the transfers of an atomic batch whose running debit of the
+   * account, net of what the transfers before them credited it, goes over its balance, rather than to every transfer
+   * from the account
+   *
+   * @param balance balance of the account in minor units when its debit failed
+   */
+  static void markInsufficient(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts,
+                               long[] amounts, long[] toAmounts, Account failed, long balance) {
+    long debit = 0L;
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] != null) {
+        continue;
+      }
+      if (toAccounts[i].getId().equals(failed.getId())) {
+        debit = debit == Long.MAX_VALUE ? debit : debit - toAmounts[i];
+      } else if (fromAccounts[i].getId().equals(failed.getId())) {
+        debit = debit > Long.MAX_VALUE - amounts[i] ? Long.MAX_VALUE : debit + amounts[i];
+        if (debit > balance) {
+          statuses[i] = TransferStatus.INSUFFICIENT_BALANCE;
+        }
+      }
+    }
+  }
+
+  private TransferStatus[] abortRemaining(TransferStatus[] statuses) {
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == null) {
+        statuses[i] = TransferStatus.ABORTED;
+      }
+    }
+
+    return statuses;
+  }
+
+  /**
+   * Record the transfers of a batch which were applied in the ledger
+   */
+  private void transferred(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts, long[] amounts,
+                           long[] toAmounts) {
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == TransferStatus.OK) {
+        ledger.transferred(fromAccounts[i], toAccounts[i], amounts[i], toAmounts[i]);
+      }
+    }
+  }
+
+  /**
+   * Credit an account with deposits combined by the {@link DepositCombiner} as a single balance update and a single
+   * journal write, recording each deposit in the ledger
+   */
+  private void depositCombined(Account account, long[] amounts) {
+    long total = 0L;
+    final JournalEvent[] events = new JournalEvent[amounts.length];
+    for (int i = 0; i < amounts.length; i++) {
+      total = Math.addExact(total, amounts[i]);
+      events[i] = JournalEvent.deposit(account.getId(), amounts[i]);
+    }
+
+    creditDurably(account, total, events);
+    hotAccounts.credited(account);
+    for (long amount : amounts) {
+      ledger.deposited(account, amount);
+    }
+  }
+
+  /**
+   * Credit an account once its deposits are durable in the journal, like account creations, so that deposits which
+   * could not be journaled never change the balance. The balance is checked for room first; when the credit fails
+   * all the same, e.g. because a concurrent deposit took the room, a withdrawal of the amount is journaled to cancel
+   * the deposits.
+   *
+   * @throws ArithmeticException  when the balance would overflow
+   * @throws UncheckedIOException when the deposits could not be journaled
+   */
+  private void creditDurably(Account account, long amount, JournalEvent... deposits) {
+    if (!account.canCredit(amount)) {
+      throw new ArithmeticException("long overflow");
+    }
+
+    journal.write(deposits);
+    try {
+      change(account, () -> account.credit(amount));
+    } catch (RuntimeException e) {
+      journalReversal(e, JournalEvent.withdraw(account.getId(), amount));
+      throw e;
+    }
+  }
+
+  /**
+   * Journal the reversal of a change which was journaled but could not be applied in full, keeping the failure of the
+   * change as the one reported
+   */
+  private void journalReversal(RuntimeException failure, JournalEvent... reversal) {
+    try {
+      journal.write(reversal);
+    } catch (RuntimeException suppressed) {
+      failure.addSuppressed(suppressed);
+    }
+  }
+
+  /**
+   * Journal a change already applied, undoing it when it could not be journaled, so that a change reported as
+   * failed never stays applied, and retrying it does not apply it twice
+   *
+   * @param undo   reverts the change
+   * @param events events of the change
+   * @throws UncheckedIOException when the events could not be journaled
+   */
+  private void journalOrUndo(Runnable undo, JournalEvent... events) {
+    try {
+      journal.write(events);
+    } catch (RuntimeException e) {
+      try {
+        undo.run();
+      } catch (RuntimeException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Apply a change to a single account, under the lock of the account while a snapshot is open or being opened
+   */
+  private void change(Account account, Runnable change) {
+    changeIf(account, () -> {
+      change.run();
+      return true;
+    });
+  }
+
+  /**
+   * Apply a change which may not be applicable to a single account, like {@link #change(Account, Runnable)}
+   *
+   * @return whether the change was applied
+   */
+  private boolean changeIf(Account account, BooleanSupplier change) {
+    final int writer = snapshots.enter();
+    try {
+      if (!snapshots.writesLocked()) {
+        return change.getAsBoolean();
+      }
+    } finally {
+      snapshots.exit(writer);
+    }
+
+    try (AccountLockManager.Locks ignored = lockManager.lock(account.getId())) {
+      return changeLockedIf(change, account);
+    }
+  }
+
+  /**
+   * Apply a change to accounts whose locks are held, saving their balances into the open snapshots first
+   */
+  private void changeLocked(Runnable change, Account... accounts) {
+    changeLockedIf(() -> {
+      change.run();
+      return true;
+    }, accounts);
+  }
+
+  /**
+   * Apply a change which may not be applicable to accounts whose locks are held, like
+   * {@link #changeLocked(Runnable, Account...)}
+   *
+   * @return whether the change was applied
+   */
+  private boolean changeLockedIf(BooleanSupplier change, Account... accounts) {
+    return applyLocked(change::getAsBoolean, accounts);
+  }
+
+  /**
+   * Apply a change which has an outcome to accounts whose locks are held, like
+   * {@link #changeLocked(Runnable, Account...)}
+   *
+   * @return outcome of the change
+   */
+  private <T> T applyLocked(Supplier<T> change, Account... accounts) {
+    final int writer = snapshots.enter();
+    try {
+      snapshots.preserve(accounts);
+      return change.get();
+    } finally {
+      snapshots.exit(writer);
     }
   }
+
+  private Account lookup(Long id) {
+    final Account account = find(id);
+    if (account == null) {
+      throw new AccountNotFoundException(Outcome.accountNotFoundMessage(id));
+    }
+
+    return account;
+  }
+
+  /**
+   * @return account associated with the ID, {@code null} when there is none
+   */
+  private Account find(Long id) {
+    requireNonNull(id, "Account ID cannot be null");
+
+    return accountRepository.findById(id);
+  }
+
+  /**
+   * Count a rejection of an operation among its failures
+   */
+  private <T> Outcome<T> rejected(Operation operation, Outcome<T> rejection) {
+    metrics.rejected(operation, rejection.getStatus());
+    return rejection;
+  }
+
+  /**
+   * Run a step returning a future, turning the exceptions it throws into a failed future, and record the operation
+   * once the future completes
+   */
+  private <T> CompletableFuture<T> measured(Operation operation, Supplier<CompletableFuture<T>> step) {
+    final long start = metrics.start();
+    CompletableFuture<T> result;
+    try {
+      result = step.get();
+    } catch (RuntimeException e) {
+      result = new CompletableFuture<>();
+      result.completeExceptionally(e);
+    }
+
+    return result.whenComplete((value, error) -> {
+      if (error != null) {
+        metrics.failed(operation, error);
+      }
+      metrics.completed(operation, start);
+    });
+  }
+
+  /**
+   * Run a step returning a future outcome like {@link #measured(Operation, Supplier)}, also counting its rejections
+   * among the failures of the operation
+   */
+  private CompletableFuture<Outcome<Account>> measuredOutcome(Operation operation,
+                                                              Supplier<CompletableFuture<Outcome<Account>>> step) {
+    return measured(operation, step).thenApply(outcome -> {
+      if (!outcome.isOk()) {
+        metrics.rejected(operation, outcome.getStatus());
+      }
+      return outcome;
+    });
+  }
+
+  /**
+   * @return amount in minor units, 0 when it is not greater than 0
+   * @throws NullPointerException     when the amount is missing
+   * @throws IllegalArgumentException when the amount has more decimal places than minor units
+   */
+  private static long amountOf(Money amount) {
+    requireNonNull(amount, "Amount cannot be null");
+
+    return amount.signum() < 1 ? 0L : Account.toMinorUnits(amount);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,356 @@
+package com.andrew.business;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.ImportFormat;
+import com.andrew.dto.ImportSummary;
+import com.andrew.json.JsonCodec;
+import com.andrew.model.Account;
+import com.andrew.model.Currencies;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountRepository;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Creates accounts in bulk from CSV or newline delimited JSON, for onboarding millions of accounts at once rather than
+ * through one {@code POST /account} each.
+ * <p>
+ * The input is read incrementally, a line at a time, into batches of {@code batch-size} lines. The reading thread
+ * only splits lines and reserves a block of IDs per batch, one ID per line, while a pool of {@code threads} workers
+ * parses and validates batches in parallel and creates the valid accounts of each with a single
+ * {@link AccountRepository#createAll(long, CreateAccount[]) bulk insert} and a single journal write. Reading pauses
+ * while every worker has two batches waiting, so the input is never held in memory as a whole.
+ * <p>
+ * Invalid lines are rejected and reported with their line number, leaving their ID unused, and the other lines are
+ * imported; an import only stops early when accounts cannot be stored, e.g. when the journal fails.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountImporter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccountImporter.class);
+
+  // rejected lines reported in a summary, the others being counted only
+  private static final int MAX_ERRORS = 100;
+  private static final int READ_BUFFER_SIZE = 1 << 16;
+
+  private final AccountRepository accountRepository;
+  private final Currency defaultCurrency;
+  private final int batchSize;
+  private final int threads;
+  private final JsonCodec codec = new JsonCodec();
+
+  private final LongAdder imported = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  @Inject
+  public AccountImporter(AccountRepository accountRepository, ExchangeRates exchangeRates, Config config) {
+    this(accountRepository, exchangeRates.getDefaultCurrency(), config.getInt("import.batch-size"),
+        threads(config.getInt("import.threads")));
+  }
+
+  /**
+   * @param accountRepository store of the imported accounts
+   * @param defaultCurrency   currency of accounts imported without one
+   * @param batchSize         number of lines validated and inserted together
+   * @param threads           number of threads validating and inserting batches
+   */
+  public AccountImporter(AccountRepository accountRepository, Currency defaultCurrency, int batchSize, int threads) {
+    if (batchSize < 1 || threads < 1) {
+      throw new IllegalArgumentException("Batch size and number of threads must be greater than 0");
+    }
+
+    this.accountRepository = accountRepository;
+    this.defaultCurrency = defaultCurrency;
+    this.batchSize = batchSize;
+    this.threads = threads;
+  }
+
+  /**
+   * Create an account per line of the input, reading it to its end
+   *
+   * @param input  lines of accounts, in UTF-8
+   * @param format format of the lines
+   * @return numbers of imported and rejected lines, IDs given and why lines were rejected
+   * @throws UncheckedIOException  when the input cannot be read
+   * @throws IllegalStateException when the accounts cannot be stored, the accounts of earlier batches being kept
+   */
+  public ImportSummary importAccounts(InputStream input, ImportFormat format) {
+    final Import batches = new Import(format);
+    final AtomicInteger count = new AtomicInteger();
+    final ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+      final Thread thread = new Thread(task, "account-import-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final long start = System.nanoTime();
+    try {
+      read(input, batches, workers);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while importing accounts", e);
+    } finally {
+      workers.shutdown();
+      awaitWorkers(workers);
+    }
+
+    final Throwable failure = batches.failure.get();
+    if (failure != null) {
+      throw new IllegalStateException("Import stopped after " + batches.imported.sum() + " accounts", failure);
+    }
+
+    final ImportSummary summary = batches.summary();
+    LOGGER.info("Imported {} accounts and rejected {} lines in {} ms", summary.getImported(), summary.getRejected(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    return summary;
+  }
+
+  /**
+   * @return number of accounts imported since startup
+   */
+  public long getImported() {
+    return imported.sum();
+  }
+
+  /**
+   * @return number of lines rejected by imports since startup
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Split the input into batches of lines, handing each to a worker with the IDs reserved for it
+   */
+  private void read(InputStream input, Import batches, ExecutorService workers)
+      throws IOException, InterruptedException {
+    final Semaphore permits = new Semaphore(threads * 2);
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8),
+        READ_BUFFER_SIZE);
+
+    long lineNumber = 0L;
+    String[] lines = new String[batchSize];
+    int size = 0;
+    String line;
+    while ((line = reader.readLine()) != null && batches.failure.get() == null) {
+      lineNumber++;
+      if (lineNumber == 1L && batches.format == ImportFormat.CSV && isHeader(line)) {
+        continue;
+      }
+
+      lines[size++] = line;
+      if (size == batchSize) {
+        submit(lines, size, lineNumber - size + 1, batches, workers, permits);
+        lines = new String[batchSize];
+        size = 0;
+      }
+    }
+    if (size > 0 && batches.failure.get() == null) {
+      submit(lines, size, lineNumber - size + 1, batches, workers, permits);
+    }
+  }
+
+  private void submit(String[] lines, int size, long firstLine, Import batches, ExecutorService workers,
+                      Semaphore permits) throws InterruptedException {
+    permits.acquire();
+    final long firstId = accountRepository.reserveIds(size);
+    batches.reserved(firstId, size);
+
+    workers.execute(() -> {
+      try {
+        insert(lines, size, firstLine, firstId, batches);
+      } catch (RuntimeException | Error e) {
+        batches.failure.compareAndSet(null, e);
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  /**
+   * Parse and validate a batch of lines, then create the accounts of the valid ones
+   */
+  private void insert(String[] lines, int size, long firstLine, long firstId, Import batches) {
+    final CreateAccount[] createAccounts = new CreateAccount[size];
+    int rejectedLines = 0;
+    try {
+      for (int i = 0; i < size; i++) {
+        if (lines[i].trim().isEmpty()) {
+          continue;
+        }
+
+        try {
+          createAccounts[i] = parse(lines[i], batches.format);
+        } catch (IOException | RuntimeException e) {
+          rejectedLines++;
+          batches.rejected(firstLine + i, e);
+        }
+      }
+    } catch (RuntimeException | Error e) {
+      // leave the reserved IDs unused, as pages stop before them until they are handed back
+      accountRepository.createAll(firstId, new CreateAccount[size]);
+      throw e;
+    }
+
+    final int created = accountRepository.createAll(firstId, createAccounts);
+    batches.imported.add(created);
+    imported.add(created);
+    rejected.add(rejectedLines);
+  }
+
+  /**
+   * @return account to create read from a line, checked as {@code POST /account} checks it
+   */
+  private CreateAccount parse(String line, ImportFormat format) throws IOException {
+    final CreateAccount createAccount = format == ImportFormat.CSV ? parseCsv(line) : codec.readCreateAccount(line);
+    if (createAccount == null) {
+      throw new IllegalArgumentException("Account cannot be null");
+    }
+
+    AccountHandler.prepare(createAccount, defaultCurrency);
+    Account.toMinorUnits(createAccount.getOpeningBalance());
+    Currencies.code(createAccount.getCurrency());
+
+    return createAccount;
+  }
+
+  /**
+   * @return account to create read from a {@code name,openingBalance,currency} line
+   */
+  static CreateAccount parseCsv(String line) {
+    final List<String> fields = new ArrayList<>(3);
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"' && field.length() == 0) {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Unterminated quoted name");
+    }
+    fields.add(field.toString());
+
+    if (fields.size() > 3) {
+      throw new IllegalArgumentException("Expected name,openingBalance,currency but got " + fields.size() + " fields");
+    }
+
+    final String name = fields.get(0);
+    final String openingBalance = fields.size() > 1 ? fields.get(1).trim() : "";
+    final String currency = fields.size() > 2 ? fields.get(2).trim() : "";
+
+    return new CreateAccount(name.isEmpty() ? null : name,
+        openingBalance.isEmpty() ? null : Money.parse(openingBalance),
+        currency.isEmpty() ? null : Currency.getInstance(currency));
+  }
+
+  /**
+   * @return whether the line is the header naming the fields, rather than an account named "name"
+   */
+  private static boolean isHeader(String line) {
+    final String header = line.trim();
+    return header.equalsIgnoreCase("name,openingBalance") || header.equalsIgnoreCase("name,openingBalance,currency");
+  }
+
+  private static void awaitWorkers(ExecutorService workers) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (workers.awaitTermination(1, TimeUnit.MINUTES)) {
+          break;
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static int threads(int configured) {
+    return configured == 0 ? Runtime.getRuntime().availableProcessors() : configured;
+  }
+
+  /**
+   * Progress of a single import, shared by the reading thread and the workers
+   */
+  private static final class Import {
+
+    private final ImportFormat format;
+    private final LongAdder imported = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final List<String> errors = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // written by the reading thread only, read once the workers are done
+    private long firstId = -1L;
+    private long lastId = -1L;
+
+    private Import(ImportFormat format) {
+      this.format = format;
+    }
+
+    private void reserved(long first, int count) {
+      if (firstId < 0L) {
+        firstId = first;
+      }
+      lastId = first + count - 1;
+    }
+
+    private void rejected(long lineNumber, Exception cause) {
+      rejected.increment();
+      synchronized (errors) {
+        if (errors.size() < MAX_ERRORS) {
+          errors.add("line " + lineNumber + ": " + cause.getMessage());
+        }
+      }
+    }
+
+    private ImportSummary summary() {
+      synchronized (errors) {
+        return new ImportSummary(imported.sum(), rejected.sum(), firstId < 0L ? null : firstId,
+            lastId < 0L ? null : lastId, new ArrayList<>(errors));
+      }
+    }
+  }
+}
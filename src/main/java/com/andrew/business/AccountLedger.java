@@ -0,0 +1,266 @@
+package com.andrew.business;
+
+import com.andrew.dto.LedgerEntry;
+import com.andrew.dto.LedgerEntry.Type;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only history of the balance changes of each account, kept in memory.
+ * <p>
+ * The entries of an account are stored column by column in chunks of primitive arrays, rather than as an object per
+ * entry, oldest first. Chunks start small and double in size up to {@code chunk-size}, so that the many accounts
+ * with few changes stay cheap, and once an account holds {@code max-entries} its oldest chunk is dropped. Entries are
+ * time-ordered within an account, so a time range is found by binary search over the chunks, then within the first
+ * chunk of the range.
+ * <p>
+ * Appending takes the monitor of the account history only; readers never lock, a chunk being visible to them once
+ * its size says so.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountLedger {
+
+  private static final int FIRST_CHUNK_SIZE = 8;
+
+  private final boolean enabled;
+  private final int chunkSize;
+  private final int maxChunks;
+  private final Map<Long, History> histories = new ConcurrentHashMap<>();
+  private final LongAdder entries = new LongAdder();
+
+  @Inject
+  public AccountLedger(Config config) {
+    this(config.getBoolean("ledger.enabled"), config.getInt("ledger.chunk-size"), config.getInt("ledger.max-entries"));
+  }
+
+  /**
+   * @param enabled    whether changes are recorded at all
+   * @param chunkSize  maximum number of entries per chunk, must be a power of 2
+   * @param maxEntries number of entries an account holds before its oldest chunk is dropped
+   */
+  public AccountLedger(boolean enabled, int chunkSize, int maxEntries) {
+    if (chunkSize < FIRST_CHUNK_SIZE || Integer.bitCount(chunkSize) != 1) {
+      throw new IllegalArgumentException("Chunk size must be a power of 2 of at least " + FIRST_CHUNK_SIZE);
+    } else if (maxEntries < chunkSize) {
+      throw new IllegalArgumentException("Maximum number of entries cannot be less than the chunk size");
+    }
+
+    this.enabled = enabled;
+    this.chunkSize = chunkSize;
+    this.maxChunks = maxEntries / chunkSize + 1;
+  }
+
+  /**
+   * @return ledger recording nothing
+   */
+  public static AccountLedger disabled() {
+    return new AccountLedger(false, FIRST_CHUNK_SIZE, FIRST_CHUNK_SIZE);
+  }
+
+  /**
+   * @param account credited account
+   * @param amount  amount credited, in minor units
+   */
+  void deposited(Account account, long amount) {
+    append(account.getId(), amount, 0L);
+  }
+
+  /**
+   * @param account debited account
+   * @param amount  amount debited, in minor units
+   */
+  void withdrew(Account account, long amount) {
+    append(account.getId(), -amount, 0L);
+  }
+
+  /**
+   * @param fromAccount debited account
+   * @param toAccount   credited account
+   * @param amount      amount transferred, in minor units
+   */
+  void transferred(Account fromAccount, Account toAccount, long amount) {
+    transferred(fromAccount, toAccount, amount, amount);
+  }
+
+  /**
+   * @param fromAccount debited account
+   * @param toAccount   credited account
+   * @param amount      amount debited, in minor units
+   * @param toAmount    amount credited, in minor units of the credited account's currency
+   */
+  void transferred(Account fromAccount, Account toAccount, long amount, long toAmount) {
+    append(fromAccount.getId(), -amount, toAccount.getId());
+    append(toAccount.getId(), toAmount, fromAccount.getId());
+  }
+
+  /**
+   * Return the entries of an account within a time range, oldest first
+   *
+   * @param accountId account ID
+   * @param from      start of the range, inclusive, in milliseconds since the epoch
+   * @param to        end of the range, exclusive, in milliseconds since the epoch
+   * @param limit     maximum number of entries to return
+   * @return entries of the account within the range
+   */
+  public List<LedgerEntry> find(long accountId, long from, long to, int limit) {
+    final History history = histories.get(accountId);
+    if (history == null) {
+      return Collections.emptyList();
+    }
+
+    final Chunk[] chunks = history.chunks;
+    int low = 0;
+    int high = chunks.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (chunks[middle].lastTime() < from) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    final List<LedgerEntry> found = new ArrayList<>(Math.min(limit, 64));
+    for (int c = low; c < chunks.length; c++) {
+      final Chunk chunk = chunks[c];
+      final int size = chunk.size;
+      for (int i = c == low ? chunk.indexOf(from, size) : 0; i < size; i++) {
+        if (chunk.times[i] >= to || found.size() == limit) {
+          return found;
+        }
+        found.add(chunk.entry(i));
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * @return number of entries recorded since startup
+   */
+  public long getEntries() {
+    return entries.sum();
+  }
+
+  /**
+   * @return number of accounts with recorded entries
+   */
+  public int getAccounts() {
+    return histories.size();
+  }
+
+  private void append(Long accountId, long amount, long counterpartyId) {
+    if (!enabled) {
+      return;
+    }
+
+    History history = histories.get(accountId);
+    if (history == null) {
+      history = histories.computeIfAbsent(accountId, id -> new History());
+    }
+    history.append(System.currentTimeMillis(), amount, counterpartyId);
+    entries.increment();
+  }
+
+  /**
+   * Entries of a single account
+   */
+  private final class History {
+
+    private volatile Chunk[] chunks = {};
+    private long lastTime;
+
+    /**
+     * Append an entry, no earlier than the previous one so that entries stay time-ordered
+     */
+    private synchronized void append(long time, long amount, long counterpartyId) {
+      lastTime = Math.max(lastTime, time);
+
+      final Chunk[] current = chunks;
+      Chunk last = current.length == 0 ? null : current[current.length - 1];
+      if (last == null || last.size == last.times.length) {
+        last = new Chunk(last == null ? FIRST_CHUNK_SIZE : Math.min(last.times.length * 2, chunkSize));
+        final int kept = Math.min(current.length, maxChunks - 1);
+        final Chunk[] grown = new Chunk[kept + 1];
+        System.arraycopy(current, current.length - kept, grown, 0, kept);
+        grown[kept] = last;
+        chunks = grown;
+      }
+      last.add(lastTime, amount, counterpartyId);
+    }
+  }
+
+  /**
+   * Entries stored column by column, the first {@code size} of which are written
+   */
+  private static final class Chunk {
+
+    private final long[] times;
+    private final long[] amounts;
+    private final long[] counterpartyIds;
+    private volatile int size;
+
+    private Chunk(int capacity) {
+      this.times = new long[capacity];
+      this.amounts = new long[capacity];
+      this.counterpartyIds = new long[capacity];
+    }
+
+    private void add(long time, long amount, long counterpartyId) {
+      final int index = size;
+      times[index] = time;
+      amounts[index] = amount;
+      counterpartyIds[index] = counterpartyId;
+      size = index + 1;
+    }
+
+    /**
+     * @return time of the last entry, or the largest time for a chunk still empty, which can only be the last one
+     */
+    private long lastTime() {
+      final int written = size;
+      return written == 0 ? Long.MAX_VALUE : times[written - 1];
+    }
+
+    /**
+     * @return index of the first entry no earlier than the specified time, {@code size} when there is none
+     */
+    private int indexOf(long time, int size) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (times[middle] < time) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+
+      return low;
+    }
+
+    private LedgerEntry entry(int index) {
+      final long amount = amounts[index];
+      final long counterpartyId = counterpartyIds[index];
+      final Type type = counterpartyId == 0L
+          ? amount < 0L ? Type.WITHDRAWAL : Type.DEPOSIT
+          : amount < 0L ? Type.TRANSFER_OUT : Type.TRANSFER_IN;
+
+      return new LedgerEntry(times[index], type, Money.of(Math.abs(amount), Account.SCALE),
+          counterpartyId == 0L ? null : counterpartyId);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package com.andrew.business;
+
+import com.andrew.exception.LockTimeoutException;
+import com.andrew.metrics.LatencyHistogram;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out account locks in a single global order so that multi-account operations can never deadlock.
+ * <p>
+ * Accounts are mapped onto a fixed, power-of-two sized table of lock stripes by ID. Consecutive IDs land on
+ * consecutive stripes, and locks are always taken in ascending stripe order, which is the same relative order as the
+ * account IDs whenever they fall on distinct stripes. Each acquisition is bounded by the configured timeout.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountLockManager {
+
+  private final ReentrantLock[] stripes;
+  private final int mask;
+  private final long timeoutNanos;
+
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder contentions = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private final LatencyHistogram waits = new LatencyHistogram();
+
+  @Inject
+  public AccountLockManager(Config config) {
+    this(config.getInt("account.lock.stripes"),
+        config.getDuration("account.lock.timeout", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+  }
+
+  public AccountLockManager(int stripes, long timeout, TimeUnit unit) {
+    if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+      throw new IllegalArgumentException("Number of lock stripes must be a power of 2");
+    }
+
+    this.stripes = new ReentrantLock[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+    this.mask = stripes - 1;
+    this.timeoutNanos = unit.toNanos(timeout);
+  }
+
+  /**
+   * Lock the specified accounts
+   *
+   * @param ids account IDs to lock
+   * @return handle releasing every acquired lock when closed
+   * @throws LockTimeoutException when the locks could not be acquired within the configured timeout
+   */
+  public Locks lock(Long... ids) {
+    return lock(Arrays.asList(ids));
+  }
+
+  /**
+   * Lock the specified accounts
+   *
+   * @param ids account IDs to lock
+   * @return handle releasing every acquired lock when closed
+   * @throws LockTimeoutException when the locks could not be acquired within the configured timeout
+   */
+  public Locks lock(Collection<Long> ids) {
+    final int[] order = stripeOrder(ids);
+    final Locks locks = new Locks(order.length);
+    final long deadline = System.nanoTime() + timeoutNanos;
+
+    long waitStart = 0L;
+    for (int stripe : order) {
+      final ReentrantLock lock = stripes[stripe];
+      if (!lock.tryLock()) {
+        contentions.increment();
+        if (waitStart == 0L) {
+          waitStart = System.nanoTime();
+        }
+        if (!awaitLock(lock, deadline)) {
+          waits.recordSince(waitStart);
+          locks.close();
+          timeouts.increment();
+          throw new LockTimeoutException("Timed out waiting for account lock, please retry");
+        }
+      }
+      locks.add(lock);
+    }
+
+    if (waitStart != 0L) {
+      waits.recordSince(waitStart);
+    }
+    acquisitions.increment();
+    return locks;
+  }
+
+  /**
+   * @return number of successful lock acquisitions
+   */
+  public long getAcquisitions() {
+    return acquisitions.sum();
+  }
+
+  /**
+   * @return number of times a stripe was already held when requested
+   */
+  public long getContentions() {
+    return contentions.sum();
+  }
+
+  /**
+   * @return number of acquisitions that gave up after the configured timeout
+   */
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  /**
+   * @return time spent waiting for contended locks, only acquisitions which had to wait are recorded
+   */
+  public LatencyHistogram getWaits() {
+    return waits;
+  }
+
+  private boolean awaitLock(ReentrantLock lock, long deadline) {
+    try {
+      return lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private int[] stripeOrder(Collection<Long> ids) {
+    final int[] order = new int[ids.size()];
+    int size = 0;
+    for (Long id : ids) {
+      order[size++] = stripe(id);
+    }
+    Arrays.sort(order);
+
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || order[i] != order[i - 1]) {
+        order[distinct++] = order[i];
+      }
+    }
+
+    return distinct == size ? order : Arrays.copyOf(order, distinct);
+  }
+
+  private int stripe(Long id) {
+    final long value = id;
+    return (int) (value ^ (value >>> 32)) & mask;
+  }
+
+  /**
+   * Set of stripe locks held by the current thread, released in reverse acquisition order.
+   */
+  public static final class Locks implements AutoCloseable {
+
+    private final ReentrantLock[] held;
+    private int count;
+
+    private Locks(int capacity) {
+      this.held = new ReentrantLock[capacity];
+    }
+
+    private void add(ReentrantLock lock) {
+      held[count++] = lock;
+    }
+
+    @Override
+    public void close() {
+      while (count > 0) {
+        held[--count].unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package com.andrew.business;
+
+import com.andrew.dto.TransferStatus;
+import com.andrew.exception.AccountNotFoundException;
+import com.andrew.exception.IllegalTransferException;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.exception.LockTimeoutException;
+import com.andrew.exception.ServerBusyException;
+import com.andrew.metrics.LatencyHistogram;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome of the operations of {@link AccountHandler}.
+ * <p>
+ * Reading the clock twice costs about as much as a whole deposit, so only one operation in {@code sample-rate},
+ * picked at random, is timed and recorded as standing for {@code sample-rate} operations. Latency percentiles and
+ * operation counts are therefore estimates, while failures, which are off the fast path, are all counted.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountMetrics {
+
+  public enum Operation {
+    CREATE, FIND_BY_ID, FIND_ALL, FIND_PAGE, FIND_TRANSACTIONS, TOTAL, DEPOSIT, WITHDRAW, TRANSFER, TRANSFER_BATCH;
+
+    private final String label = name().toLowerCase(Locale.ROOT);
+
+    public String label() {
+      return label;
+    }
+  }
+
+  public enum Failure {
+    ACCOUNT_NOT_FOUND, INSUFFICIENT_BALANCE, ILLEGAL_TRANSFER, INVALID_REQUEST, BALANCE_OVERFLOW, LOCK_TIMEOUT,
+    SERVER_BUSY, ERROR;
+
+    private final String label = name().toLowerCase(Locale.ROOT);
+
+    public String label() {
+      return label;
+    }
+
+    static Failure of(Throwable error) {
+      final Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause() : error;
+      if (cause instanceof AccountNotFoundException) {
+        return ACCOUNT_NOT_FOUND;
+      } else if (cause instanceof InsufficientBalanceException) {
+        return INSUFFICIENT_BALANCE;
+      } else if (cause instanceof IllegalTransferException) {
+        return ILLEGAL_TRANSFER;
+      } else if (cause instanceof LockTimeoutException) {
+        return LOCK_TIMEOUT;
+      } else if (cause instanceof ServerBusyException) {
+        return SERVER_BUSY;
+      } else if (cause instanceof ArithmeticException) {
+        return BALANCE_OVERFLOW;
+      } else if (cause instanceof IllegalArgumentException || cause instanceof NullPointerException) {
+        return INVALID_REQUEST;
+      }
+
+      return ERROR;
+    }
+
+    static Failure of(TransferStatus status) {
+      switch (status) {
+        case ACCOUNT_NOT_FOUND:
+          return ACCOUNT_NOT_FOUND;
+        case INSUFFICIENT_BALANCE:
+          return INSUFFICIENT_BALANCE;
+        case ILLEGAL_TRANSFER:
+        case NO_EXCHANGE_RATE:
+          return ILLEGAL_TRANSFER;
+        case INVALID_AMOUNT:
+          return INVALID_REQUEST;
+        case BALANCE_OVERFLOW:
+          return BALANCE_OVERFLOW;
+        default:
+          return ERROR;
+      }
+    }
+  }
+
+  private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+  private final boolean enabled;
+  private final int sampleMask;
+  private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+  private final LongAdder[][] failures = new LongAdder[Operation.values().length][Failure.values().length];
+  private final LongAdder[] batchTransfers = new LongAdder[TransferStatus.values().length];
+
+  @Inject
+  public AccountMetrics(Config config) {
+    this(config.getBoolean("metrics.enabled"), config.getInt("metrics.sample-rate"));
+  }
+
+  /**
+   * Metrics timing every operation
+   */
+  public AccountMetrics() {
+    this(true, 1);
+  }
+
+  /**
+   * @param enabled    whether operations are recorded at all
+   * @param sampleRate one operation in this many is timed, must be a power of 2
+   */
+  public AccountMetrics(boolean enabled, int sampleRate) {
+    if (sampleRate < 1 || Integer.bitCount(sampleRate) != 1) {
+      throw new IllegalArgumentException("Sample rate must be a power of 2");
+    }
+
+    this.enabled = enabled;
+    this.sampleMask = sampleRate - 1;
+    for (Operation operation : Operation.values()) {
+      latencies[operation.ordinal()] = new LatencyHistogram();
+      for (Failure failure : Failure.values()) {
+        failures[operation.ordinal()][failure.ordinal()] = new LongAdder();
+      }
+    }
+    for (TransferStatus status : TransferStatus.values()) {
+      batchTransfers[status.ordinal()] = new LongAdder();
+    }
+  }
+
+  /**
+   * @return start of an operation, to be passed to {@link #completed}
+   */
+  long start() {
+    if (!enabled || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)) {
+      return NOT_SAMPLED;
+    }
+
+    return System.nanoTime();
+  }
+
+  /**
+   * Record an operation, whether it succeeded or not
+   *
+   * @param operation  operation run
+   * @param startNanos start of the operation, as returned by {@link #start()}
+   */
+  void completed(Operation operation, long startNanos) {
+    if (startNanos != NOT_SAMPLED) {
+      latencies[operation.ordinal()].record(System.nanoTime() - startNanos, sampleMask + 1L);
+    }
+  }
+
+  /**
+   * Count a failed operation, under the failure its exception stands for
+   *
+   * @param operation operation run
+   * @param error     exception it failed with
+   */
+  void failed(Operation operation, Throwable error) {
+    if (!enabled) {
+      return;
+    }
+    failures[operation.ordinal()][Failure.of(error).ordinal()].increment();
+  }
+
+  /**
+   * Count a rejected operation as a failure, like the exception it was thrown as before outcomes
+   *
+   * @param operation rejected operation
+   * @param status    reason of the rejection
+   */
+  void rejected(Operation operation, TransferStatus status) {
+    if (!enabled) {
+      return;
+    }
+    failures[operation.ordinal()][Failure.of(status).ordinal()].increment();
+  }
+
+  /**
+   * Count the transfers of a batch by status
+   *
+   * @param statuses status of each transfer of the batch
+   */
+  void transferred(TransferStatus[] statuses) {
+    if (!enabled) {
+      return;
+    }
+    for (TransferStatus status : statuses) {
+      batchTransfers[status.ordinal()].increment();
+    }
+  }
+
+  /**
+   * @param operation operation
+   * @return latency of the operation, failed ones included, estimated from the sampled operations
+   */
+  public LatencyHistogram getLatency(Operation operation) {
+    return latencies[operation.ordinal()];
+  }
+
+  /**
+   * @param operation operation
+   * @param failure   failure
+   * @return number of times the operation failed with the failure
+   */
+  public long getFailures(Operation operation, Failure failure) {
+    return failures[operation.ordinal()][failure.ordinal()].sum();
+  }
+
+  /**
+   * @param status transfer status
+   * @return number of batch transfers which ended with the status
+   */
+  public long getBatchTransfers(TransferStatus status) {
+    return batchTransfers[status.ordinal()].sum();
+  }
+}
@@ -0,0 +1,159 @@
+package com.andrew.business;
+
+import com.andrew.model.Account;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Opens {@link BalanceSnapshot}s and tells account changes what they must do for the snapshots to stay consistent,
+ * without readers ever locking out writers.
+ * <p>
+ * Every change registers as a writer for its duration. Changes to several accounts already hold the locks of every
+ * account they touch; while a snapshot is open or being opened, changes to a single account take the lock of their
+ * account as well, and every change saves the balances it overwrites into the open snapshots. Opening a snapshot
+ * goes through two grace periods, waiting for the writers registered before each step to leave:
+ * <ol>
+ * <li>single-account changes are told to lock, and the lock-free ones still running are waited for</li>
+ * <li>the snapshot is published, and the changes which started without seeing it are waited for</li>
+ * </ol>
+ * Every change is then either complete before the snapshot, or saves the balances of its accounts before touching
+ * them. Account locks keep changes to the same account in order, so no change left out of the snapshot can run
+ * before one included in it.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountSnapshots {
+
+  private static final BalanceSnapshot[] NONE = {};
+
+  // longs between two counters, so that writers on different stripes do not share a cache line
+  private static final int PADDING = 16;
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final int stripes;
+  private final AtomicLongArray writers;
+
+  private volatile int phase;
+  private volatile boolean writesLocked;
+  private volatile BalanceSnapshot[] open = NONE;
+
+  @Inject
+  public AccountSnapshots() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  /**
+   * @param stripes number of writer counters, rounded up to a power of 2
+   */
+  public AccountSnapshots(int stripes) {
+    this.stripes = Integer.highestOneBit(Math.max(stripes, 1) * 2 - 1);
+    this.writers = new AtomicLongArray(2 * this.stripes * PADDING);
+  }
+
+  /**
+   * Open a snapshot of the balances, which must be closed once read
+   *
+   * @param accountsBelow ID below which accounts belong to the snapshot, read before opening it
+   * @return snapshot of the balances as of now
+   */
+  public synchronized BalanceSnapshot open(long accountsBelow) {
+    writesLocked = true;
+    awaitWriters();
+
+    final BalanceSnapshot snapshot = new BalanceSnapshot(this, accountsBelow);
+    final BalanceSnapshot[] snapshots = Arrays.copyOf(open, open.length + 1);
+    snapshots[snapshots.length - 1] = snapshot;
+    open = snapshots;
+    awaitWriters();
+
+    return snapshot;
+  }
+
+  /**
+   * @return number of snapshots open
+   */
+  public int getOpen() {
+    return open.length;
+  }
+
+  /**
+   * Register the current thread as a writer, before it checks {@link #writesLocked()} or preserves balances
+   *
+   * @return token to pass to {@link #exit(int)} once the change is applied
+   */
+  int enter() {
+    final int stripe = (int) Thread.currentThread().getId() & (stripes - 1);
+    while (true) {
+      final int current = phase;
+      final int counter = ((current & 1) * stripes + stripe) * PADDING;
+      writers.incrementAndGet(counter);
+      if (phase == current) {
+        return counter;
+      }
+      writers.decrementAndGet(counter);
+    }
+  }
+
+  /**
+   * @param token token returned by {@link #enter()}
+   */
+  void exit(int token) {
+    writers.decrementAndGet(token);
+  }
+
+  /**
+   * @return whether changes to a single account must take the lock of the account
+   */
+  boolean writesLocked() {
+    return writesLocked;
+  }
+
+  /**
+   * Save the balances of the accounts of a change into every open snapshot, before changing them. Callers are
+   * registered writers holding the locks of the accounts. The open snapshots are read once, so that a snapshot opened
+   * meanwhile gets either all the accounts of the change or none of them.
+   *
+   * @param accounts accounts about to be changed
+   */
+  void preserve(Account... accounts) {
+    for (BalanceSnapshot snapshot : open) {
+      for (Account account : accounts) {
+        snapshot.preserve(account);
+      }
+    }
+  }
+
+  synchronized void close(BalanceSnapshot snapshot) {
+    final BalanceSnapshot[] snapshots = new BalanceSnapshot[open.length];
+    int remaining = 0;
+    for (BalanceSnapshot other : open) {
+      if (other != snapshot) {
+        snapshots[remaining++] = other;
+      }
+    }
+
+    open = Arrays.copyOf(snapshots, remaining);
+    writesLocked = remaining > 0;
+  }
+
+  /**
+   * Start a new phase and wait for the writers registered in the previous one to leave
+   */
+  private void awaitWriters() {
+    final int previous = phase;
+    phase = previous + 1;
+
+    final int first = (previous & 1) * stripes;
+    for (int stripe = first; stripe < first + stripes; stripe++) {
+      while (writers.get(stripe * PADDING) != 0) {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.andrew.business;
+
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Balances of the accounts as of the moment the snapshot was opened, every change applied before that moment being
+ * seen in full and none applied after it.
+ * <p>
+ * Nothing is copied when the snapshot is opened: a change made while the snapshot is open first saves the balance it
+ * is about to overwrite, the first time it touches an account, and reading an account returns that saved balance, or
+ * the current one when the account was not changed since. Only the accounts changed while the snapshot is open are
+ * held, until it is closed. Accounts whose creation was not over when the snapshot was opened are not part of it.
+ *
+ * @author andrew
+ */
+public final class BalanceSnapshot implements AutoCloseable {
+
+  private final AccountSnapshots snapshots;
+  private final long accountsBelow;
+  private final Map<Long, Long> preserved = new ConcurrentHashMap<>();
+
+  BalanceSnapshot(AccountSnapshots snapshots, long accountsBelow) {
+    this.snapshots = snapshots;
+    this.accountsBelow = accountsBelow;
+  }
+
+  /**
+   * @param account account to read
+   * @return whether the account existed when the snapshot was opened
+   */
+  public boolean includes(Account account) {
+    return account.getId() < accountsBelow;
+  }
+
+  /**
+   * Save the balance of an account before it is changed for the first time since the snapshot was opened. Callers
+   * hold the lock of the account.
+   */
+  void preserve(Account account) {
+    preserved.putIfAbsent(account.getId(), account.balanceUnits());
+  }
+
+  /**
+   * @param account account to read
+   * @return balance of the account when the snapshot was opened, in minor units
+   */
+  public long balanceOf(Account account) {
+    final Long saved = preserved.get(account.getId());
+    if (saved != null) {
+      return saved;
+    }
+
+    final long balance = account.balanceUnits();
+    // a change may have saved the balance and overwritten it in between, in which case the balance read is too recent
+    final Long overwritten = preserved.get(account.getId());
+    return overwritten == null ? balance : overwritten;
+  }
+
+  /**
+   * @param account account to read
+   * @return detached copy of the account with its balance when the snapshot was opened
+   */
+  public Account copyOf(Account account) {
+    return new Account(account.getId(), account.getName(), Money.of(balanceOf(account), Account.SCALE),
+        account.getCurrency());
+  }
+
+  /**
+   * @return number of accounts changed since the snapshot was opened
+   */
+  public int getPreserved() {
+    return preserved.size();
+  }
+
+  @Override
+  public void close() {
+    snapshots.close(this);
+  }
+}
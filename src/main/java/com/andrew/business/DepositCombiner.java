@@ -0,0 +1,303 @@
+package com.andrew.business;
+
+import com.andrew.model.Account;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Combines concurrent deposits to the same account, flat-combining style: each deposit publishes a request for its
+ * account, and whichever thread takes the combining lock of the account applies every request published so far as a
+ * single credit, a single journal write and a single ledger update, then hands each depositor its own outcome. The
+ * depositors of a combined batch wait for it instead of each retrying the compare-and-set of the balance and waiting
+ * for a journal flush of their own, so deposits to a hot account such as a merchant settlement account cost a
+ * fraction of a balance update each.
+ * <p>
+ * A batch whose total would overflow the balance is applied one deposit at a time, so that only the deposits which
+ * overflow fail. Accounts are told apart by ID, so off-heap accounts are combined as well, and the combining state of
+ * an account is only kept while deposits to it are in progress.
+ *
+ * @author andrew
+ */
+@Singleton
+public class DepositCombiner {
+
+  // checks of its request by a waiting depositor before it parks
+  private static final int SPINS = 128;
+  // batches applied by a combiner before it hands combining over
+  private static final int MAX_BATCHES = 8;
+  // depositors of a combining state which its last depositor removed from the accounts
+  private static final int RETIRED = -1;
+
+  private final boolean enabled;
+  private final Map<Long, Combining> accounts = new ConcurrentHashMap<>();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder combined = new LongAdder();
+
+  @Inject
+  public DepositCombiner(Config config) {
+    this(config.getBoolean("account.combining.enabled"));
+  }
+
+  /**
+   * @param enabled whether deposits are combined
+   */
+  public DepositCombiner(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return combiner applying every deposit on its own
+   */
+  public static DepositCombiner disabled() {
+    return new DepositCombiner(false);
+  }
+
+  /**
+   * @return whether deposits are combined
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Deposit to an account, either applying the deposits published for it so far, this one included, or waiting for
+   * the thread applying them
+   *
+   * @param account  account to credit
+   * @param amount   amount in minor units
+   * @param deposits applies a batch of deposits to the account
+   * @throws RuntimeException what applying the deposit threw
+   */
+  void deposit(Account account, long amount, Deposits deposits) {
+    final Combining combining = enter(account.getId());
+    try {
+      final Request request = new Request(amount);
+      combining.publish(request);
+
+      int spins = 0;
+      while (!request.done) {
+        if (combining.tryCombine(account, deposits)) {
+          continue;
+        }
+        if (spins < SPINS) {
+          spins++;
+        } else {
+          LockSupport.park(this);
+        }
+      }
+
+      if (request.failure != null) {
+        throw request.failure;
+      }
+    } finally {
+      leave(account.getId(), combining);
+    }
+  }
+
+  /**
+   * @return number of accounts deposits are in progress to
+   */
+  int getAccounts() {
+    return accounts.size();
+  }
+
+  /**
+   * @return number of batches of combined deposits applied since startup
+   */
+  public long getBatches() {
+    return batches.sum();
+  }
+
+  /**
+   * @return number of deposits applied in a batch with other deposits since startup
+   */
+  public long getCombined() {
+    return combined.sum();
+  }
+
+  /**
+   * Join the combining state of an account, the first depositor creating it
+   */
+  private Combining enter(Long id) {
+    while (true) {
+      final Combining combining = accounts.computeIfAbsent(id, key -> new Combining());
+      if (combining.join()) {
+        return combining;
+      }
+      // retired by its last depositor, which is removing it
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Leave the combining state of an account, the last depositor removing it, by which time every request published
+   * to it was applied
+   */
+  private void leave(Long id, Combining combining) {
+    if (combining.depositors.decrementAndGet() == 0 && combining.depositors.compareAndSet(0, RETIRED)) {
+      accounts.remove(id, combining);
+    }
+  }
+
+  /**
+   * Applies a batch of deposits to an account
+   */
+  @FunctionalInterface
+  interface Deposits {
+
+    /**
+     * Credit the account with the sum of the amounts and record each deposit
+     *
+     * @param account account to credit
+     * @param amounts amounts in minor units, in the order the deposits were published
+     * @throws ArithmeticException when the sum of the amounts would overflow the balance
+     */
+    void apply(Account account, long[] amounts);
+  }
+
+  /**
+   * Combining state of an account: the requests published since the last batch, most recent first, the lock of the
+   * thread applying them and the number of depositors using it
+   */
+  private final class Combining {
+
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicBoolean lock = new AtomicBoolean();
+    private final AtomicInteger depositors = new AtomicInteger();
+
+    /**
+     * @return whether the depositor joined, false once the state was retired
+     */
+    private boolean join() {
+      int current;
+      do {
+        current = depositors.get();
+        if (current == RETIRED) {
+          return false;
+        }
+      } while (!depositors.compareAndSet(current, current + 1));
+
+      return true;
+    }
+
+    private void publish(Request request) {
+      do {
+        request.next = pending.get();
+      } while (!pending.compareAndSet(request.next, request));
+    }
+
+    /**
+     * Apply the published requests unless another thread is applying them. Having released the lock, the combiner
+     * wakes the depositor of the latest request published meanwhile to combine the next batches, so that no request is
+     * left behind by a depositor that saw the lock taken and parked, and no combiner is kept from returning by a
+     * steady stream of deposits.
+     *
+     * @return whether the lock was taken
+     */
+    private boolean tryCombine(Account account, Deposits deposits) {
+      if (lock.get() || !lock.compareAndSet(false, true)) {
+        return false;
+      }
+
+      try {
+        Request batch;
+        for (int i = 0; i < MAX_BATCHES && (batch = pending.getAndSet(null)) != null; i++) {
+          apply(account, deposits, batch);
+        }
+      } finally {
+        lock.set(false);
+      }
+
+      final Request next = pending.get();
+      if (next != null) {
+        LockSupport.unpark(next.depositor);
+      }
+
+      return true;
+    }
+
+    private void apply(Account account, Deposits deposits, Request batch) {
+      int size = 0;
+      for (Request request = batch; request != null; request = request.next) {
+        size++;
+      }
+
+      final Request[] requests = new Request[size];
+      final long[] amounts = new long[size];
+      int i = size;
+      for (Request request = batch; request != null; request = request.next) {
+        requests[--i] = request;
+        amounts[i] = request.amount;
+      }
+
+      batches.increment();
+      if (size > 1) {
+        combined.add(size);
+      }
+
+      try {
+        deposits.apply(account, amounts);
+      } catch (ArithmeticException e) {
+        if (size == 1) {
+          requests[0].complete(e);
+          return;
+        }
+        for (Request request : requests) {
+          applyOne(account, deposits, request);
+        }
+        return;
+      } catch (RuntimeException e) {
+        for (Request request : requests) {
+          request.complete(e);
+        }
+        return;
+      }
+
+      for (Request request : requests) {
+        request.complete(null);
+      }
+    }
+
+    private void applyOne(Account account, Deposits deposits, Request request) {
+      try {
+        deposits.apply(account, new long[]{request.amount});
+        request.complete(null);
+      } catch (RuntimeException e) {
+        request.complete(e);
+      }
+    }
+  }
+
+  /**
+   * Deposit published by a depositor, completed by the thread applying it
+   */
+  private static final class Request {
+
+    private final long amount;
+    private final Thread depositor = Thread.currentThread();
+    private Request next;
+    private RuntimeException failure;
+    private volatile boolean done;
+
+    private Request(long amount) {
+      this.amount = amount;
+    }
+
+    private void complete(RuntimeException failure) {
+      this.failure = failure;
+      done = true;
+      if (depositor != Thread.currentThread()) {
+        LockSupport.unpark(depositor);
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package com.andrew.business;
+
+import com.andrew.exception.IllegalTransferException;
+import com.andrew.model.Currencies;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exchange rates between the currencies of accounts, read from a local properties file such as
+ * <pre>
+ * base = EUR
+ * USD = 1.0854
+ * GBP = 0.8412
+ * </pre>
+ * where each rate is the number of units of a currency per unit of the base currency.
+ * <p>
+ * The rates are held as an immutable {@link Rates} table swapped atomically as a whole whenever the file is reloaded,
+ * which happens off the request path once its modification time changes. A transfer reads the current table once and
+ * converts with it, so reloading never waits for transfers nor pauses them, and a batch converts all of its transfers
+ * at the same rates.
+ *
+ * @author andrew
+ */
+@Singleton
+public class ExchangeRates implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExchangeRates.class);
+
+  /**
+   * Number of decimal places rates are held with
+   */
+  public static final int RATE_SCALE = 9;
+
+  private static final long RATE_UNIT = 1_000_000_000L;
+  private static final BigInteger BIG_RATE_UNIT = BigInteger.valueOf(RATE_UNIT);
+  private static final String BASE = "base";
+
+  private final Currency defaultCurrency;
+  private final Path file;
+  private final AtomicReference<Rates> rates;
+  private final LongAdder reloads = new LongAdder();
+  private ScheduledExecutorService reloader;
+  // modification time of the file the current rates were read from
+  private FileTime loaded;
+
+  @Inject
+  public ExchangeRates(Config config) {
+    this(currency(config.getString("account.currency")), Paths.get(config.getString("fx.rates-file")),
+        config.getDuration("fx.reload-interval", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Read the rates file, when it exists, then check it for changes every reload interval
+   *
+   * @param defaultCurrency currency of accounts created without one, {@code null} for none
+   * @param file            rates file, {@code null} for no rates
+   * @param reloadInterval  interval between checks of the file for changes, 0 to never reload it
+   * @param unit            unit of the interval
+   * @throws IllegalStateException when the rates file exists but cannot be read
+   */
+  public ExchangeRates(Currency defaultCurrency, Path file, long reloadInterval, TimeUnit unit) {
+    this.defaultCurrency = defaultCurrency;
+    this.file = file;
+    this.rates = new AtomicReference<>(new Rates(defaultCurrency, new LinkedHashMap<>()));
+
+    try {
+      reload();
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalStateException("Unable to read exchange rates from " + file, e);
+    }
+
+    if (file != null && reloadInterval > 0L) {
+      reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "exchange-rates");
+        thread.setDaemon(true);
+        return thread;
+      });
+      reloader.scheduleWithFixedDelay(this::reloadQuietly, reloadInterval, reloadInterval, unit);
+    }
+  }
+
+  /**
+   * @return exchange rates without default currency nor rates, only allowing transfers within a currency
+   */
+  public static ExchangeRates disabled() {
+    return new ExchangeRates(null, null, 0L, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return currency of accounts created without one, {@code null} for none
+   */
+  public Currency getDefaultCurrency() {
+    return defaultCurrency;
+  }
+
+  /**
+   * @return rates as of now, which never change
+   */
+  public Rates current() {
+    return rates.get();
+  }
+
+  /**
+   * @return number of currencies with rates
+   */
+  public int getCurrencies() {
+    return rates.get().size;
+  }
+
+  /**
+   * @return number of times the rates were read from the file since startup
+   */
+  public long getReloads() {
+    return reloads.sum();
+  }
+
+  /**
+   * Stop checking the rates file for changes
+   */
+  @Override
+  public void close() {
+    if (reloader != null) {
+      reloader.shutdownNow();
+    }
+  }
+
+  /**
+   * Read the rates file if it changed since it was last read, and swap the rates read in
+   *
+   * @return whether the rates were swapped
+   * @throws IOException              when the file cannot be read
+   * @throws IllegalArgumentException when the file holds an unknown currency or an invalid rate
+   */
+  synchronized boolean reload() throws IOException {
+    if (file == null || !Files.exists(file)) {
+      return false;
+    }
+
+    final FileTime modified = Files.getLastModifiedTime(file);
+    if (modified.equals(loaded)) {
+      return false;
+    }
+
+    final Rates updated = read(defaultCurrency, file);
+    rates.set(updated);
+    loaded = modified;
+    reloads.increment();
+    LOGGER.info("Read exchange rates of {} currencies from {}", updated.size, file);
+
+    return true;
+  }
+
+  private void reloadQuietly() {
+    try {
+      reload();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Keeping the current exchange rates, unable to read {}", file, e);
+    }
+  }
+
+  private static Rates read(Currency defaultCurrency, Path file) throws IOException {
+    final Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+
+    final String base = properties.getProperty(BASE);
+    if (base == null) {
+      throw new IllegalArgumentException("No base currency in " + file);
+    }
+
+    final Map<Currency, BigDecimal> perBase = new LinkedHashMap<>();
+    perBase.put(currency(base), BigDecimal.ONE);
+    for (String code : properties.stringPropertyNames()) {
+      if (code.equals(BASE)) {
+        continue;
+      }
+
+      final BigDecimal rate = new BigDecimal(properties.getProperty(code).trim());
+      if (rate.signum() < 1) {
+        throw new IllegalArgumentException("Exchange rate of " + code + " must be greater than 0");
+      }
+      perBase.put(currency(code), rate);
+    }
+
+    return new Rates(defaultCurrency, perBase);
+  }
+
+  /**
+   * @param code ISO 4217 currency code
+   * @return currency with the code
+   * @throws IllegalArgumentException when the code is not that of a currency with a numeric code
+   */
+  static Currency currency(String code) {
+    final Currency currency = Currency.getInstance(code.trim());
+    Currencies.code(currency);
+
+    return currency;
+  }
+
+  /**
+   * Immutable table of the rate between every two currencies of a rates file, indexed by position. Converting looks
+   * the positions of both currencies up by numeric code, then reads their rate and multiplies in fixed point.
+   */
+  public static final class Rates {
+
+    private final Currency defaultCurrency;
+    // position of each currency in the table by numeric code, plus one, 0 for currencies without rates
+    private final short[] positions = new short[Currencies.MAX_CODE];
+    private final int size;
+    // rate from the currency at position i to the one at position j, with RATE_SCALE decimal places, at i * size + j
+    private final long[] rates;
+
+    private Rates(Currency defaultCurrency, Map<Currency, BigDecimal> perBase) {
+      this.defaultCurrency = defaultCurrency;
+      this.size = perBase.size();
+      this.rates = new long[size * size];
+
+      final Currency[] currencies = perBase.keySet().toArray(new Currency[0]);
+      for (int i = 0; i < size; i++) {
+        positions[currencies[i].getNumericCode()] = (short) (i + 1);
+        for (int j = 0; j < size; j++) {
+          final BigDecimal rate = perBase.get(currencies[j])
+              .divide(perBase.get(currencies[i]), RATE_SCALE, RoundingMode.HALF_EVEN);
+          if (rate.signum() < 1) {
+            throw new IllegalArgumentException("Exchange rate from " + currencies[i] + " to " + currencies[j]
+                + " is too small");
+          }
+          rates[i * size + j] = rate.unscaledValue().longValueExact();
+        }
+      }
+    }
+
+    /**
+     * @param from currency to convert from, {@code null} for the default currency
+     * @param to   currency to convert to, {@code null} for the default currency
+     * @return whether amounts can be converted between the currencies
+     */
+    public boolean hasRate(Currency from, Currency to) {
+      final Currency source = from == null ? defaultCurrency : from;
+      final Currency target = to == null ? defaultCurrency : to;
+
+      return source == target || position(source) >= 0 && position(target) >= 0;
+    }
+
+    /**
+     * Convert an amount between currencies, rounding down so that no money is made up by the conversion
+     *
+     * @param amount amount in minor units of {@code from}, greater than 0
+     * @param from   currency of the amount, {@code null} for the default currency
+     * @param to     currency to convert to, {@code null} for the default currency
+     * @return amount in minor units of {@code to}
+     * @throws IllegalTransferException when there is no rate between the currencies
+     * @throws IllegalArgumentException when the amount converts to less than a minor unit
+     * @throws ArithmeticException      when the converted amount overflows
+     */
+    public long convert(long amount, Currency from, Currency to) {
+      final Currency source = from == null ? defaultCurrency : from;
+      final Currency target = to == null ? defaultCurrency : to;
+      if (source == target) {
+        return amount;
+      }
+
+      final int i = position(source);
+      final int j = position(target);
+      if (i < 0 || j < 0) {
+        throw new IllegalTransferException("No exchange rate from " + source + " to " + target);
+      }
+
+      final long rate = rates[i * size + j];
+      long converted;
+      try {
+        converted = Math.multiplyExact(amount, rate) / RATE_UNIT;
+      } catch (ArithmeticException e) {
+        converted = BigInteger.valueOf(amount).multiply(BigInteger.valueOf(rate)).divide(BIG_RATE_UNIT)
+            .longValueExact();
+      }
+      if (converted == 0L) {
+        throw new IllegalArgumentException("Amount is too small to be converted to " + target);
+      }
+
+      return converted;
+    }
+
+    private int position(Currency currency) {
+      if (currency == null) {
+        return -1;
+      }
+
+      final int code = currency.getNumericCode();
+      return code > 0 && code < Currencies.MAX_CODE ? positions[code] - 1 : -1;
+    }
+  }
+}
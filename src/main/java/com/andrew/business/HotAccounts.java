@@ -0,0 +1,76 @@
+package com.andrew.business;
+
+import com.andrew.model.Account;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stripes the balance of accounts whose deposits contend, so that deposits to a hot account, such as a fee
+ * collection or settlement pool, scale with the number of cores rather than all retrying the same compare-and-set.
+ * <p>
+ * An account is promoted once its credits have retried {@code promote-after} times since startup, and stays striped.
+ * Off-heap accounts are never striped.
+ *
+ * @author andrew
+ */
+@Singleton
+public class HotAccounts {
+
+  private final boolean enabled;
+  private final int stripes;
+  private final int promoteAfter;
+  private final LongAdder promoted = new LongAdder();
+
+  @Inject
+  public HotAccounts(Config config) {
+    this(config.getBoolean("account.striping.enabled"), stripes(config.getInt("account.striping.stripes")),
+        config.getInt("account.striping.promote-after"));
+  }
+
+  /**
+   * @param enabled      whether accounts are ever striped
+   * @param stripes      number of stripes of a striped balance, rounded up to a power of 2
+   * @param promoteAfter number of retried credits after which an account is striped
+   */
+  public HotAccounts(boolean enabled, int stripes, int promoteAfter) {
+    if (stripes < 1 || promoteAfter < 0) {
+      throw new IllegalArgumentException("Stripes must be greater than 0 and promote-after cannot be negative");
+    }
+
+    this.enabled = enabled;
+    this.stripes = stripes;
+    this.promoteAfter = promoteAfter;
+  }
+
+  /**
+   * @return hot accounts striping no account
+   */
+  public static HotAccounts disabled() {
+    return new HotAccounts(false, 1, 0);
+  }
+
+  /**
+   * Stripe an account credited by a deposit if its credits contend enough
+   *
+   * @param account credited account
+   */
+  void credited(Account account) {
+    if (enabled && account.contention() >= promoteAfter && !account.striped() && account.stripe(stripes)) {
+      promoted.increment();
+    }
+  }
+
+  /**
+   * @return number of accounts striped since startup
+   */
+  public long getPromoted() {
+    return promoted.sum();
+  }
+
+  private static int stripes(int configured) {
+    return configured == 0 ? Runtime.getRuntime().availableProcessors() : configured;
+  }
+}
@@ -0,0 +1,142 @@
+package com.andrew.business;
+
+import com.andrew.exception.IdempotencyKeyReusedException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of requests carrying an idempotency key, so that a client retrying a request gets the
+ * outcome of the first attempt instead of running it again.
+ * <p>
+ * The first request with a key runs and its future is stored straight away, so retries arriving while it is still
+ * running wait for the same outcome rather than racing it. Failed requests are forgotten: account changes fail
+ * without changing anything, so retrying them is safe and lets transient failures, such as a saturated server, go
+ * through on retry. Entries are evicted once the cache is full, least recently used first, or once they expire.
+ *
+ * @author andrew
+ */
+@Singleton
+public class IdempotencyCache {
+
+  private final Cache<String, Entry> entries;
+
+  @Inject
+  public IdempotencyCache(Config config) {
+    this(config.getLong("idempotency.max-entries"),
+        config.getDuration("idempotency.ttl", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param maxEntries maximum number of remembered requests
+   * @param ttl        how long a request is remembered after it was first received
+   * @param unit       unit of the time to live
+   */
+  public IdempotencyCache(long maxEntries, long ttl, TimeUnit unit) {
+    if (maxEntries < 1 || ttl < 1) {
+      throw new IllegalArgumentException("Maximum number of entries and time to live must be greater than 0");
+    }
+
+    this.entries = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(ttl, unit)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Run a request unless a request with the same key was already received
+   *
+   * @param key         idempotency key, scoped by the caller to the operation
+   * @param fingerprint content of the request, which must be the same for every request with the key
+   * @param request     runs the request
+   * @return future of the first request received with the key
+   * @throws IdempotencyKeyReusedException when the key was used for a request with a different content
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> execute(String key, String fingerprint, Supplier<CompletableFuture<T>> request) {
+    final boolean[] first = {false};
+    final Entry entry;
+    try {
+      entry = entries.get(key, () -> {
+        first[0] = true;
+        return new Entry(fingerprint);
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+
+    if (!entry.fingerprint.equals(fingerprint)) {
+      throw new IdempotencyKeyReusedException("Idempotency key already used for a different request");
+    }
+
+    if (first[0]) {
+      CompletableFuture<T> future;
+      try {
+        future = request.get();
+      } catch (RuntimeException e) {
+        future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+      }
+      future.whenComplete((value, error) -> {
+        if (error == null) {
+          entry.result.complete(value);
+        } else {
+          entries.asMap().remove(key, entry);
+          entry.result.completeExceptionally(error);
+        }
+      });
+    }
+
+    return (CompletableFuture<T>) entry.result;
+  }
+
+  /**
+   * @return number of requests answered from the cache
+   */
+  public long getHits() {
+    return entries.stats().hitCount();
+  }
+
+  /**
+   * @return number of requests run because their key was not in the cache
+   */
+  public long getMisses() {
+    return entries.stats().missCount();
+  }
+
+  /**
+   * @return number of requests forgotten because the cache was full or they expired
+   */
+  public long getEvictions() {
+    return entries.stats().evictionCount();
+  }
+
+  /**
+   * @return number of requests remembered
+   */
+  public long getSize() {
+    return entries.size();
+  }
+
+  /**
+   * Outcome of the first request received with a key
+   */
+  private static final class Entry {
+
+    private final String fingerprint;
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+    private Entry(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.andrew.business;
+
+import com.andrew.dto.TransferStatus;
+import com.andrew.exception.AccountNotFoundException;
+import com.andrew.exception.IllegalTransferException;
+import com.andrew.exception.InsufficientBalanceException;
+
+/**
+ * Result of an account operation: either its value, or the {@link TransferStatus} it was rejected with, so that
+ * business rejections such as an insufficient balance are returned rather than thrown, without capturing a stack
+ * trace. Rejections are preallocated, one per status, except for unknown accounts, which carry the ID for the message.
+ * Exceptions remain for invalid requests and unexpected failures.
+ *
+ * @author andrew
+ */
+public final class Outcome<T> {
+
+  private static final Outcome<?>[] REJECTIONS = new Outcome<?>[TransferStatus.values().length];
+
+  static {
+    for (TransferStatus status : TransferStatus.values()) {
+      if (status != TransferStatus.OK) {
+        REJECTIONS[status.ordinal()] = new Outcome<>(null, status, 0L);
+      }
+    }
+  }
+
+  private final T value;
+  private final TransferStatus status;
+  private final long accountId;
+
+  private Outcome(T value, TransferStatus status, long accountId) {
+    this.value = value;
+    this.status = status;
+    this.accountId = accountId;
+  }
+
+  public static <T> Outcome<T> ok(T value) {
+    return new Outcome<>(value, TransferStatus.OK, 0L);
+  }
+
+  /**
+   * @param status reason of the rejection, {@link TransferStatus#ACCOUNT_NOT_FOUND} excepted
+   * @return the preallocated rejection with the status
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Outcome<T> rejected(TransferStatus status) {
+    if (status == TransferStatus.OK || status == TransferStatus.ACCOUNT_NOT_FOUND) {
+      throw new IllegalArgumentException("Not a rejection without details: " + status);
+    }
+
+    return (Outcome<T>) REJECTIONS[status.ordinal()];
+  }
+
+  /**
+   * @param accountId ID no account is associated with
+   * @return rejection of an operation on an unknown account
+   */
+  public static <T> Outcome<T> accountNotFound(long accountId) {
+    return new Outcome<>(null, TransferStatus.ACCOUNT_NOT_FOUND, accountId);
+  }
+
+  /**
+   * @param accountId ID no account is associated with
+   * @return message of the rejection of an operation on the account
+   */
+  static String accountNotFoundMessage(long accountId) {
+    return "Specified ID: " + accountId + " not associated with any account";
+  }
+
+  public boolean isOk() {
+    return status == TransferStatus.OK;
+  }
+
+  /**
+   * @return value of the operation, {@code null} when it was rejected
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * @return {@link TransferStatus#OK}, or the reason of the rejection
+   */
+  public TransferStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * @return message of the rejection, the same as the one of the exception thrown by {@link #orElseThrow()}
+   */
+  public String getMessage() {
+    switch (status) {
+      case OK:
+        return null;
+      case INVALID_AMOUNT:
+        return "Amount must be greater than 0";
+      case ILLEGAL_TRANSFER:
+        return "Cannot transfer money to your account";
+      case ACCOUNT_NOT_FOUND:
+        return accountNotFoundMessage(accountId);
+      case INSUFFICIENT_BALANCE:
+        return "Insufficient balance";
+      case BALANCE_OVERFLOW:
+        return "long overflow";
+      case NO_EXCHANGE_RATE:
+        return "No exchange rate between the currencies of the accounts";
+      default:
+        return "Transfer aborted";
+    }
+  }
+
+  /**
+   * @return value of the operation
+   * @throws RuntimeException the exception the rejection was thrown as before outcomes, e.g. an
+   *                          {@link InsufficientBalanceException} for {@link TransferStatus#INSUFFICIENT_BALANCE}
+   */
+  public T orElseThrow() {
+    switch (status) {
+      case OK:
+        return value;
+      case INVALID_AMOUNT:
+        throw new IllegalArgumentException(getMessage());
+      case ILLEGAL_TRANSFER:
+      case NO_EXCHANGE_RATE:
+        throw new IllegalTransferException(getMessage());
+      case ACCOUNT_NOT_FOUND:
+        throw new AccountNotFoundException(getMessage());
+      case INSUFFICIENT_BALANCE:
+        throw new InsufficientBalanceException(getMessage());
+      case BALANCE_OVERFLOW:
+        throw new ArithmeticException(getMessage());
+      default:
+        throw new IllegalStateException(getMessage());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return isOk() ? "Outcome{value=" + value + '}' : "Outcome{status=" + status + ", message=" + getMessage() + '}';
+  }
+}
@@ -0,0 +1,86 @@
+package com.andrew.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free queue for many producers and a single consumer. Each slot carries a sequence number telling
+ * whether it is free for the producer of a given lap or holds an element for the consumer.
+ *
+ * @author andrew
+ */
+final class RingBuffer<E> {
+
+  private final Object[] elements;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private long head;
+
+  /**
+   * @param capacity number of slots, must be a power of 2
+   */
+  RingBuffer(int capacity) {
+    if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of 2");
+    }
+
+    this.elements = new Object[capacity];
+    this.sequences = new AtomicLongArray(capacity);
+    this.mask = capacity - 1;
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @param element element to add
+   * @return false when the buffer is full
+   */
+  boolean offer(E element) {
+    long position;
+    while (true) {
+      position = tail.get();
+      final long available = sequences.get((int) position & mask) - position;
+      if (available == 0 && tail.compareAndSet(position, position + 1)) {
+        break;
+      }
+      if (available < 0) {
+        return false;
+      }
+    }
+
+    final int index = (int) position & mask;
+    elements[index] = element;
+    sequences.set(index, position + 1);
+
+    return true;
+  }
+
+  /**
+   * Only called by the consumer
+   */
+  boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+
+  /**
+   * Only called by the consumer
+   *
+   * @return next element, {@code null} when the buffer is empty
+   */
+  @SuppressWarnings("unchecked")
+  E poll() {
+    final int index = (int) head & mask;
+    if (sequences.get(index) != head + 1) {
+      return null;
+    }
+
+    final E element = (E) elements[index];
+    elements[index] = null;
+    sequences.lazySet(index, head + elements.length);
+    head++;
+
+    return element;
+  }
+}
@@ -0,0 +1,692 @@
+package com.andrew.business;
+
+import com.andrew.dto.BatchMode;
+import com.andrew.dto.TransferStatus;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.model.Account;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.JournalEvent;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs balance changes on a fixed set of shards, each owning the accounts whose ID maps to it and being the only
+ * thread ever changing their balances, so no lock is taken and no compare-and-set is contended.
+ * <p>
+ * Callers enqueue commands into the bounded ring buffer of the shard owning the account and get a future back.
+ * A transfer between shards is two-phase: the benefactor's shard debits, then hands the transfer over to the
+ * beneficiary's shard, which refunds the benefactor through its shard should the credit overflow. Commands handed
+ * over between shards go to an unbounded queue drained first, so that shards never wait on one another.
+ * <p>
+ * Credits are only applied once durable in the journal, so money is never spendable before it is recorded: the shard
+ * keeps room on the balance for the credit when the change is made, and applies the credit once the journal recorded
+ * it. Debits are applied right away and keep the room they free until durable too, so that they can always be
+ * refunded should the journal fail. Futures are completed once the change is durable and applied.
+ * <p>
+ * Money in flight between both phases of a transfer is in neither account, so the sum of all balances may be briefly
+ * lower than it actually is.
+ *
+ * @author andrew
+ */
+@Singleton
+public class ShardedTransactionEngine implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardedTransactionEngine.class);
+
+  private static final int SPINS = 100;
+  private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Shard[] shards;
+  private final AccountJournal journal;
+
+  @Inject
+  public ShardedTransactionEngine(Config config, AccountJournal journal) {
+    this("sharded".equals(config.getString("account.engine.mode"))
+            ? shards(config.getInt("account.engine.shards")) : 0,
+        config.getInt("account.engine.ring-size"), journal);
+  }
+
+  /**
+   * @param shards   number of shards, 0 to disable the engine
+   * @param ringSize capacity of the command ring buffer of each shard, must be a power of 2
+   * @param journal  journal recording the balance changes
+   */
+  public ShardedTransactionEngine(int shards, int ringSize, AccountJournal journal) {
+    if (shards < 0) {
+      throw new IllegalArgumentException("Number of shards cannot be negative");
+    }
+
+    this.journal = journal;
+    this.shards = new Shard[shards];
+    for (int i = 0; i < shards; i++) {
+      this.shards[i] = new Shard(i, ringSize);
+    }
+  }
+
+  /**
+   * @return engine which is not enabled, account changes are then run by {@link AccountHandler} itself
+   */
+  public static ShardedTransactionEngine disabled() {
+    return new ShardedTransactionEngine(0, 2, AccountJournal.disabled());
+  }
+
+  public boolean isEnabled() {
+    return shards.length > 0;
+  }
+
+  /**
+   * @param account account to credit
+   * @param amount  amount in minor units
+   * @return future completed with the account, or with an {@link ArithmeticException} when the balance would overflow
+   */
+  public CompletableFuture<Account> deposit(Account account, long amount) {
+    final CompletableFuture<Account> result = new CompletableFuture<>();
+    final Shard shard = shardOf(account);
+    shard.submit(result, () -> {
+      if (!shard.reserve(account, amount)) {
+        result.completeExceptionally(new ArithmeticException("long overflow"));
+        return;
+      }
+      whenDurable(shard, result, error -> {
+        shard.release(account, amount, error == null);
+        complete(result, account, error);
+      }, JournalEvent.deposit(account.getId(), amount));
+    });
+
+    return result;
+  }
+
+  /**
+   * @param account account to debit
+   * @param amount  amount in minor units
+   * @return future completed with the account, or with an {@link InsufficientBalanceException}
+   */
+  public CompletableFuture<Account> withdraw(Account account, long amount) {
+    return withdrawStatus(account, amount).thenApply(status -> {
+      if (status != TransferStatus.OK) {
+        throw new InsufficientBalanceException("Insufficient balance");
+      }
+
+      return account;
+    });
+  }
+
+  /**
+   * @param account account to debit
+   * @param amount  amount in minor units
+   * @return future completed with {@link TransferStatus#OK}, or {@link TransferStatus#INSUFFICIENT_BALANCE} when the
+   * balance does not cover the amount
+   */
+  CompletableFuture<TransferStatus> withdrawStatus(Account account, long amount) {
+    final CompletableFuture<TransferStatus> result = new CompletableFuture<>();
+    final Shard shard = shardOf(account);
+    shard.submit(result, () -> {
+      if (!shard.debit(account, amount)) {
+        result.complete(TransferStatus.INSUFFICIENT_BALANCE);
+        return;
+      }
+      whenDurable(shard, result, error -> {
+        shard.release(account, amount, error != null);
+        complete(result, TransferStatus.OK, error);
+      }, JournalEvent.withdraw(account.getId(), amount));
+    });
+
+    return result;
+  }
+
+  /**
+   * @param fromAccount benefactor
+   * @param toAccount   beneficiary
+   * @param amount      amount in minor units
+   * @return future completed with the benefactor, or with an {@link InsufficientBalanceException} or an
+   * {@link ArithmeticException} when the beneficiary's balance would overflow
+   */
+  public CompletableFuture<Account> transfer(Account fromAccount, Account toAccount, long amount) {
+    return transfer(fromAccount, toAccount, amount, amount);
+  }
+
+  /**
+   * @param fromAccount benefactor
+   * @param toAccount   beneficiary
+   * @param amount      amount debited, in minor units
+   * @param toAmount    amount credited, in minor units of the beneficiary's currency
+   * @return future completed with the benefactor, or with an {@link InsufficientBalanceException} or an
+   * {@link ArithmeticException} when the beneficiary's balance would overflow
+   */
+  public CompletableFuture<Account> transfer(Account fromAccount, Account toAccount, long amount, long toAmount) {
+    return transferStatus(fromAccount, toAccount, amount, toAmount).thenApply(status -> {
+      switch (status) {
+        case OK:
+          return fromAccount;
+        case INSUFFICIENT_BALANCE:
+          throw new InsufficientBalanceException("Insufficient balance");
+        default:
+          throw new ArithmeticException("long overflow");
+      }
+    });
+  }
+
+  /**
+   * Apply a batch of transfers
+   *
+   * @param statuses     status of each transfer, {@code null} for the valid transfers to apply
+   * @param fromAccounts benefactor of each transfer
+   * @param toAccounts   beneficiary of each transfer
+   * @param amounts      amount of each transfer in minor units
+   * @param mode         whether the batch is applied atomically or transfer by transfer
+   * @return future completed with the status of each transfer, in the order of the batch
+   */
+  public CompletableFuture<TransferStatus[]> transfer(TransferStatus[] statuses, Account[] fromAccounts,
+                                                      Account[] toAccounts, long[] amounts, BatchMode mode) {
+    return transfer(statuses, fromAccounts, toAccounts, amounts, amounts, mode);
+  }
+
+  /**
+   * Apply a batch of transfers whose beneficiaries may be credited converted amounts
+   *
+   * @param statuses     status of each transfer, {@code null} for the valid transfers to apply
+   * @param fromAccounts benefactor of each transfer
+   * @param toAccounts   beneficiary of each transfer
+   * @param amounts      amount debited by each transfer in minor units
+   * @param toAmounts    amount credited by each transfer in minor units of the beneficiary's currency
+   * @param mode         whether the batch is applied atomically or transfer by transfer
+   * @return future completed with the status of each transfer, in the order of the batch
+   */
+  public CompletableFuture<TransferStatus[]> transfer(TransferStatus[] statuses, Account[] fromAccounts,
+                                                      Account[] toAccounts, long[] amounts, long[] toAmounts,
+                                                      BatchMode mode) {
+    if (mode == BatchMode.ATOMIC) {
+      return new AtomicBatch(statuses, fromAccounts, toAccounts, amounts, toAmounts).start();
+    }
+
+    final List<CompletableFuture<Void>> pending = new ArrayList<>(statuses.length);
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == null) {
+        final int index = i;
+        pending.add(transferStatus(fromAccounts[i], toAccounts[i], amounts[i], toAmounts[i])
+            .thenAccept(status -> statuses[index] = status));
+      }
+    }
+
+    return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> statuses);
+  }
+
+  /**
+   * Stop accepting commands and stop every shard once it has run the commands already enqueued
+   */
+  @Override
+  public void close() {
+    for (Shard shard : shards) {
+      shard.running = false;
+    }
+    for (Shard shard : shards) {
+      shard.stop();
+    }
+  }
+
+  /**
+   * @param fromAccount benefactor
+   * @param toAccount   beneficiary
+   * @param amount      amount debited, in minor units
+   * @param toAmount    amount credited, in minor units of the beneficiary's currency
+   * @return future completed with {@link TransferStatus#OK}, {@link TransferStatus#INSUFFICIENT_BALANCE} or
+   * {@link TransferStatus#BALANCE_OVERFLOW}
+   */
+  CompletableFuture<TransferStatus> transferStatus(Account fromAccount, Account toAccount, long amount,
+                                                   long toAmount) {
+    final CompletableFuture<TransferStatus> result = new CompletableFuture<>();
+    final Shard fromShard = shardOf(fromAccount);
+    final Shard toShard = shardOf(toAccount);
+
+    final Runnable credit = () -> {
+      if (!toShard.reserve(toAccount, toAmount)) {
+        fromShard.handOver(result, () -> {
+          fromShard.release(fromAccount, amount, true);
+          result.complete(TransferStatus.BALANCE_OVERFLOW);
+        });
+        return;
+      }
+      whenDurable(toShard, result, error -> {
+        toShard.release(toAccount, toAmount, error == null);
+        fromShard.handOver(result, () -> {
+          fromShard.release(fromAccount, amount, error != null);
+          complete(result, TransferStatus.OK, error);
+        });
+      }, JournalEvent.transfer(fromAccount.getId(), toAccount.getId(), amount, toAmount));
+    };
+
+    fromShard.submit(result, () -> {
+      if (!fromShard.debit(fromAccount, amount)) {
+        result.complete(TransferStatus.INSUFFICIENT_BALANCE);
+      } else if (toShard == fromShard) {
+        credit.run();
+      } else {
+        toShard.handOver(result, credit);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Record the events of a change in the journal, then hand {@code then} over to the shard, to apply the change once
+   * durable or undo it when the journal cannot record it, so a retry does not apply it twice
+   *
+   * @param then takes the failure of the journal, {@code null} once the events are durable
+   */
+  private void whenDurable(Shard shard, CompletableFuture<?> result, Consumer<Throwable> then,
+                           JournalEvent... events) {
+    journal.append(events).whenComplete((ignored, error) -> shard.handOver(result, () -> then.accept(error)));
+  }
+
+  private static <T> void complete(CompletableFuture<T> result, T value, Throwable error) {
+    if (error != null) {
+      result.completeExceptionally(error);
+    } else {
+      result.complete(value);
+    }
+  }
+
+  private Shard shardOf(Account account) {
+    if (!isEnabled()) {
+      throw new IllegalStateException("Sharded transaction engine is not enabled");
+    }
+
+    return shards[(int) Long.remainderUnsigned(account.getId(), shards.length)];
+  }
+
+  private static int shards(int configured) {
+    return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Balance changes of a batch on the accounts of one shard
+   */
+  private static final class ShardDeltas {
+
+    private final Shard shard;
+    private final List<Account> accounts = new ArrayList<>();
+    private final List<Long> deltas = new ArrayList<>();
+
+    private ShardDeltas(Shard shard) {
+      this.shard = shard;
+    }
+
+    /**
+     * @return account which cannot be debited, {@code null} once every account was debited
+     */
+    private Account debit() {
+      for (int i = 0; i < accounts.size(); i++) {
+        if (accounts.get(i).balanceUnits() < -deltas.get(i)) {
+          return accounts.get(i);
+        }
+      }
+      for (int i = 0; i < accounts.size(); i++) {
+        shard.debit(accounts.get(i), -deltas.get(i));
+      }
+
+      return null;
+    }
+
+    /**
+     * @return account whose balance would overflow, {@code null} once room is kept for every credit; the room kept on
+     * the accounts of the shard before it is given up
+     */
+    private Account reserve() {
+      for (int i = 0; i < accounts.size(); i++) {
+        if (!shard.reserve(accounts.get(i), deltas.get(i))) {
+          for (int j = 0; j < i; j++) {
+            shard.release(accounts.get(j), deltas.get(j), false);
+          }
+          return accounts.get(i);
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Give up the room kept by {@link #debit()} or {@link #reserve()}
+     *
+     * @param apply whether to credit the accounts, which applies credits and refunds debits
+     * @return {@code null}, as giving up room never fails
+     */
+    private Account release(boolean apply) {
+      for (int i = 0; i < accounts.size(); i++) {
+        shard.release(accounts.get(i), Math.abs(deltas.get(i)), apply);
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * Applies the net effect of a batch on each account: every shard debits its accounts, all or nothing, then once all
+   * of them succeeded every shard keeps room for its credits, and once all of them could, the batch is journaled and
+   * every shard credits its accounts. Debits are refunded as soon as a shard fails or the journal cannot record the
+   * batch.
+   */
+  private final class AtomicBatch {
+
+    private final TransferStatus[] statuses;
+    private final Account[] fromAccounts;
+    private final Account[] toAccounts;
+    private final long[] amounts;
+    private final long[] toAmounts;
+    private final CompletableFuture<TransferStatus[]> result = new CompletableFuture<>();
+
+    private AtomicBatch(TransferStatus[] statuses, Account[] fromAccounts, Account[] toAccounts, long[] amounts,
+                        long[] toAmounts) {
+      this.statuses = statuses;
+      this.fromAccounts = fromAccounts;
+      this.toAccounts = toAccounts;
+      this.amounts = amounts;
+      this.toAmounts = toAmounts;
+    }
+
+    private CompletableFuture<TransferStatus[]> start() {
+      final Map<Long, Account> accounts = new LinkedHashMap<>();
+      final Map<Long, Long> deltas = new LinkedHashMap<>();
+      try {
+        for (int i = 0; i < statuses.length; i++) {
+          accounts.put(fromAccounts[i].getId(), fromAccounts[i]);
+          accounts.put(toAccounts[i].getId(), toAccounts[i]);
+          deltas.merge(fromAccounts[i].getId(), -amounts[i], Math::addExact);
+          deltas.merge(toAccounts[i].getId(), toAmounts[i], Math::addExact);
+        }
+      } catch (ArithmeticException e) {
+        fillRemaining(TransferStatus.BALANCE_OVERFLOW);
+        result.complete(statuses);
+        return result;
+      }
+
+      final Function<ShardDeltas, Account> refund = work -> work.release(true);
+      final Function<ShardDeltas, Account> cancel = work -> work.release(false);
+      final Map<Shard, ShardDeltas> debits = new LinkedHashMap<>();
+      final Map<Shard, ShardDeltas> credits = new LinkedHashMap<>();
+      for (Map.Entry<Long, Long> delta : deltas.entrySet()) {
+        if (delta.getValue() != 0L) {
+          final Account account = accounts.get(delta.getKey());
+          final ShardDeltas shardDeltas = (delta.getValue() < 0L ? debits : credits)
+              .computeIfAbsent(shardOf(account), ShardDeltas::new);
+          shardDeltas.accounts.add(account);
+          shardDeltas.deltas.add(delta.getValue());
+        }
+      }
+
+      run(debits.values(), true, ShardDeltas::debit, (debited, insufficient) -> {
+        if (insufficient != null) {
+          final long balance = insufficient.balanceUnits();
+          run(debited, false, refund, (refunded, ignored) -> {
+            AccountHandler.markInsufficient(statuses, fromAccounts, toAccounts, amounts, toAmounts, insufficient,
+                balance);
+            fillRemaining(TransferStatus.ABORTED);
+            result.complete(statuses);
+          });
+          return;
+        }
+
+        run(credits.values(), false, ShardDeltas::reserve, (reserved, overflowing) -> {
+          if (overflowing != null) {
+            run(reserved, false, cancel, (cancelled, ignored) -> run(debits.values(), false, refund,
+                (refunded, none) -> fail(toAccounts, overflowing, TransferStatus.BALANCE_OVERFLOW)));
+            return;
+          }
+
+          final JournalEvent[] events = new JournalEvent[statuses.length];
+          for (int i = 0; i < statuses.length; i++) {
+            events[i] = JournalEvent.transfer(fromAccounts[i].getId(), toAccounts[i].getId(), amounts[i],
+                toAmounts[i]);
+          }
+          journal.append(events).whenComplete((ignored, error) -> {
+            final boolean durable = error == null;
+            run(credits.values(), false, work -> work.release(durable), (released, none) ->
+                run(debits.values(), false, work -> work.release(!durable), (settled, nothing) -> {
+                  if (durable) {
+                    fillRemaining(TransferStatus.OK);
+                    result.complete(statuses);
+                  } else {
+                    result.completeExceptionally(error);
+                  }
+                }));
+          });
+        });
+      });
+
+      return result;
+    }
+
+    /**
+     * Run an action on each shard and pass the shards which succeeded along with the account which failed, if any,
+     * to {@code next} once all of them are done
+     */
+    private void run(Collection<ShardDeltas> work, boolean submit, Function<ShardDeltas, Account> action,
+                     BiConsumer<Collection<ShardDeltas>, Account> next) {
+      if (work.isEmpty()) {
+        next.accept(Collections.emptyList(), null);
+        return;
+      }
+
+      final AtomicInteger pending = new AtomicInteger(work.size());
+      final Queue<ShardDeltas> succeeded = new ConcurrentLinkedQueue<>();
+      final AtomicReference<Account> failed = new AtomicReference<>();
+      for (ShardDeltas shardDeltas : work) {
+        final Runnable command = () -> {
+          final Account failure = action.apply(shardDeltas);
+          if (failure == null) {
+            succeeded.add(shardDeltas);
+          } else {
+            failed.compareAndSet(null, failure);
+          }
+          if (pending.decrementAndGet() == 0) {
+            next.accept(succeeded, failed.get());
+          }
+        };
+
+        if (submit) {
+          shardDeltas.shard.submit(result, command);
+        } else {
+          shardDeltas.shard.handOver(result, command);
+        }
+      }
+    }
+
+    private void fail(Account[] accounts, Account failed, TransferStatus status) {
+      for (int i = 0; i < statuses.length; i++) {
+        if (statuses[i] == null && accounts[i].getId().equals(failed.getId())) {
+          statuses[i] = status;
+        }
+      }
+      fillRemaining(TransferStatus.ABORTED);
+      result.complete(statuses);
+    }
+
+    private void fillRemaining(TransferStatus status) {
+      for (int i = 0; i < statuses.length; i++) {
+        if (statuses[i] == null) {
+          statuses[i] = status;
+        }
+      }
+    }
+  }
+
+  private static final class Shard implements Runnable {
+
+    private final RingBuffer<Command> commands;
+    private final Queue<Command> handedOver = new ConcurrentLinkedQueue<>();
+    // room kept on the balances of the accounts of the shard, by ID, for credits and refunds not applied yet; only
+    // touched by the shard itself
+    private final Map<Long, Long> reserved = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+
+    private Shard(int index, int ringSize) {
+      this.commands = new RingBuffer<>(ringSize);
+      this.thread = new Thread(this, "account-shard-" + index);
+      this.thread.setDaemon(true);
+      this.thread.start();
+    }
+
+    /**
+     * Enqueue a command from outside the engine, waiting for room when the ring buffer is full
+     *
+     * @param result future of the operation the command is part of, failed should the command throw
+     */
+    private void submit(CompletableFuture<?> result, Runnable action) {
+      final Command command = new Command(result, action);
+      while (running) {
+        if (commands.offer(command)) {
+          wake();
+          return;
+        }
+        wake();
+        LockSupport.parkNanos(1_000L);
+      }
+
+      throw new IllegalStateException("Sharded transaction engine is closed");
+    }
+
+    /**
+     * Enqueue a command from another shard, never waits
+     *
+     * @param result future of the operation the command is part of, failed should the command throw
+     */
+    private void handOver(CompletableFuture<?> result, Runnable action) {
+      handedOver.add(new Command(result, action));
+      wake();
+    }
+
+    /**
+     * Keep room on the balance of an account for a credit applied later
+     *
+     * @return whether the balance has room for the amount on top of the room already kept
+     */
+    private boolean reserve(Account account, long amount) {
+      final long kept = reserved.getOrDefault(account.getId(), 0L);
+      if (kept > Long.MAX_VALUE - amount || !account.canCredit(kept + amount)) {
+        return false;
+      }
+
+      reserved.put(account.getId(), kept + amount);
+      return true;
+    }
+
+    /**
+     * Debit an account, keeping the room freed for a refund
+     *
+     * @return whether the balance covered the amount
+     */
+    private boolean debit(Account account, long amount) {
+      if (!account.debit(amount)) {
+        return false;
+      }
+
+      reserved.merge(account.getId(), amount, Long::sum);
+      return true;
+    }
+
+    /**
+     * Give up room kept on the balance of an account
+     *
+     * @param apply whether to credit the account with the amount
+     */
+    private void release(Account account, long amount, boolean apply) {
+      final long kept = reserved.get(account.getId()) - amount;
+      if (kept == 0L) {
+        reserved.remove(account.getId());
+      } else {
+        reserved.put(account.getId(), kept);
+      }
+      if (apply) {
+        account.credit(amount);
+      }
+    }
+
+    private void wake() {
+      if (sleeping) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    private void stop() {
+      running = false;
+      LockSupport.unpark(thread);
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void execute(Command command) {
+      try {
+        command.action.run();
+      } catch (RuntimeException e) {
+        LOGGER.error("Unexpected failure of an account command on {}", thread.getName(), e);
+        command.result.completeExceptionally(e);
+      }
+    }
+
+    @Override
+    public void run() {
+      int idle = 0;
+      while (true) {
+        Command command = handedOver.poll();
+        if (command == null) {
+          command = commands.poll();
+        }
+
+        if (command != null) {
+          execute(command);
+          idle = 0;
+        } else if (!running) {
+          return;
+        } else if (++idle < SPINS) {
+          Thread.yield();
+        } else {
+          sleeping = true;
+          if (handedOver.isEmpty() && commands.isEmpty()) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+          }
+          sleeping = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Change run by a shard, along with the future of the operation it is part of
+   */
+  private static final class Command {
+
+    private final CompletableFuture<?> result;
+    private final Runnable action;
+
+    private Command(CompletableFuture<?> result, Runnable action) {
+      this.result = result;
+      this.action = action;
+    }
+  }
+}
@@ -1,18 +1,47 @@
 package com.andrew.controller;
 
+import com.andrew.business.AccountExporter;
 import com.andrew.business.AccountHandler;
+import com.andrew.business.AccountImporter;
+import com.andrew.business.IdempotencyCache;
+import com.andrew.business.Outcome;
+import com.andrew.dto.AccountTotal;
+import com.andrew.dto.BatchMode;
 import com.andrew.dto.CreateAccount;
 import com.andrew.dto.Deposit;
+import com.andrew.dto.ExportState;
+import com.andrew.dto.ExportStatus;
+import com.andrew.dto.ImportFormat;
+import com.andrew.dto.ImportSummary;
+import com.andrew.dto.LedgerEntry;
 import com.andrew.dto.Transfer;
 import com.andrew.dto.Withdraw;
 import com.andrew.model.Account;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jooby.Deferred;
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.Status;
+import org.jooby.Upload;
 import org.jooby.mvc.Body;
 import org.jooby.mvc.GET;
+import org.jooby.mvc.Header;
 import org.jooby.mvc.POST;
 import org.jooby.mvc.Path;
 
 import javax.inject.Inject;
-import java.util.Collection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * @author andrew
@@ -20,41 +49,224 @@ import java.util.Collection;
 @Path("/account")
 public class AccountController {
 
+  private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+
   @Inject
   private AccountHandler accountHandler;
 
+  @Inject
+  private ObjectMapper objectMapper;
+
+  @Inject
+  private IdempotencyCache idempotencyCache;
+
+  @Inject
+  private AccountImporter accountImporter;
+
+  @Inject
+  private AccountExporter accountExporter;
+
   @POST
   public Account create(@Body CreateAccount createAccount) {
     return accountHandler.create(createAccount);
   }
 
+  /**
+   * Create an account per line of an uploaded CSV or newline delimited JSON file, in the format given or else the one
+   * of the file name extension
+   */
+  @POST
+  @Path("/import")
+  public ImportSummary importAccounts(Upload file, Optional<ImportFormat> format) throws IOException {
+    try (InputStream input = Files.newInputStream(file.file().toPath())) {
+      return accountImporter.importAccounts(input, format.orElseGet(() -> ImportFormat.of(file.name())));
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Stream every account following the cursor, by ascending ID, as newline delimited JSON
+   */
+  @GET
+  @Path("/stream")
+  public Result stream(Optional<Long> after) {
+    return Results.ok(new AccountStream(accountHandler, objectMapper.writerFor(Account.class), after.orElse(0L)))
+        .type(NDJSON);
+  }
+
+  /**
+   * Start exporting every account to a columnar file in the background, unless an export is already running
+   */
+  @POST
+  @Path("/export")
+  public Result export() {
+    return Results.accepted(accountExporter.start());
+  }
+
+  /**
+   * Return the status of the last export started
+   */
+  @GET
+  @Path("/export")
+  public Result exportStatus() {
+    final ExportStatus status = accountExporter.status();
+    return status == null ? Results.with(404) : Results.ok(status);
+  }
+
+  /**
+   * Download the file of the last export, once completed
+   */
+  @GET
+  @Path("/export/file")
+  public Result exportFile() throws IOException {
+    final ExportStatus status = accountExporter.status();
+    if (status == null || status.getState() != ExportState.COMPLETED) {
+      return Results.with(404);
+    }
+
+    return Results.ok(Files.newInputStream(accountExporter.fileOf(status)))
+        .type(MediaType.octetstream)
+        .header("Content-Disposition", "attachment; filename=\"" + status.getFile() + "\"");
+  }
+
+  @GET
+  @Path("/total")
+  public List<AccountTotal> total() {
+    return accountHandler.total();
+  }
+
+  /**
+   * Return an immutable view of the account, the same one, and the same JSON, for as long as its balance is unchanged
+   */
   @GET
   @Path("/:id")
-  public Account findById(Long id) {
-    return accountHandler.findById(id);
+  public Result findById(Long id) {
+    final Outcome<Account> outcome = accountHandler.tryFindById(id);
+    return outcome.isOk() ? Results.ok(outcome.getValue().view()) : rejection(outcome);
+  }
+
+  /**
+   * Return the balance changes of an account within a time range, in milliseconds since the epoch, oldest first
+   */
+  @GET
+  @Path("/:id/transactions")
+  public List<LedgerEntry> findTransactions(Long id, Optional<Long> from, Optional<Long> to,
+                                            Optional<Integer> limit) {
+    return accountHandler.findTransactions(id, from.orElse(0L), to.orElse(Long.MAX_VALUE),
+        limit.orElse(DEFAULT_PAGE_SIZE));
   }
 
+  /**
+   * Return a page of accounts by ascending ID, with a link to the next page when the page is full
+   */
   @GET
   @Path("/")
-  public Collection<Account> findAll() {
-    return accountHandler.findAll();
+  public Result findAll(Optional<Long> after, Optional<Integer> limit) {
+    final int pageSize = limit.orElse(DEFAULT_PAGE_SIZE);
+    final List<Account> accounts = accountHandler.findPage(after.orElse(0L), pageSize);
+    final Result result = Results.ok(accounts);
+    if (accounts.size() == pageSize) {
+      final Long last = accounts.get(accounts.size() - 1).getId();
+      result.header("Link", "</account?after=" + last + "&limit=" + pageSize + ">; rel=\"next\"");
+    }
+
+    return result;
   }
 
   @POST
   @Path("/deposit")
-  public Account deposit(@Body Deposit deposit) {
-    return accountHandler.deposit(deposit);
+  public Deferred deposit(@Body Deposit deposit, @Header(IDEMPOTENCY_KEY) Optional<String> idempotencyKey) {
+    return deferred(idempotent(idempotencyKey, "deposit", deposit, () -> accountHandler.tryDepositAsync(deposit)));
   }
 
   @POST
   @Path("/withdraw")
-  public Account withdraw(@Body Withdraw withdraw) {
-    return accountHandler.withdraw(withdraw);
+  public Deferred withdraw(@Body Withdraw withdraw, @Header(IDEMPOTENCY_KEY) Optional<String> idempotencyKey) {
+    return deferred(idempotent(idempotencyKey, "withdraw", withdraw,
+        () -> accountHandler.tryWithdrawAsync(withdraw)));
   }
 
   @POST
   @Path("/transfer")
-  public Account transfer(@Body Transfer transfer) {
-    return accountHandler.transfer(transfer);
+  public Deferred transfer(@Body Transfer transfer, @Header(IDEMPOTENCY_KEY) Optional<String> idempotencyKey) {
+    return deferred(idempotent(idempotencyKey, "transfer", transfer,
+        () -> accountHandler.tryTransferAsync(transfer)));
+  }
+
+  @POST
+  @Path("/transfer/batch")
+  public Deferred transferBatch(@Body List<Transfer> transfers, Optional<BatchMode> mode,
+                                @Header(IDEMPOTENCY_KEY) Optional<String> idempotencyKey) {
+    final BatchMode batchMode = mode.orElse(BatchMode.ATOMIC);
+    return deferred(idempotent(idempotencyKey, "transfer-batch", batchMode + " " + transfers,
+        () -> accountHandler.transferAsync(transfers, batchMode), UnaryOperator.identity()));
+  }
+
+  /**
+   * Run an account change at most once per idempotency key when the request carries one, retries being answered with
+   * the outcome of the first request
+   *
+   * @param detach copies the result, so that retries get it as it was when the first request completed
+   */
+  private <T> CompletableFuture<T> idempotent(Optional<String> key, String operation, Object request,
+                                              Supplier<CompletableFuture<T>> change, UnaryOperator<T> detach) {
+    if (!key.isPresent()) {
+      return change.get();
+    }
+
+    return idempotencyCache.execute(operation + ':' + key.get(), request.toString(),
+        () -> change.get().thenApply(detach));
+  }
+
+  /**
+   * Run an account change returning an outcome at most once per idempotency key. Rejections are outcomes like any
+   * other, so retries of a rejected request get the same rejection without an exception, while failures are
+   * forgotten so that the request can be retried.
+   */
+  private CompletableFuture<Outcome<Account>> idempotent(Optional<String> key, String operation, Object request,
+                                                         Supplier<CompletableFuture<Outcome<Account>>> change) {
+    return idempotent(key, operation, request, change, AccountController::detached);
+  }
+
+  private static Outcome<Account> detached(Outcome<Account> outcome) {
+    if (!outcome.isOk()) {
+      return outcome;
+    }
+
+    final Account account = outcome.getValue();
+    return Outcome.ok(new Account(account.getId(), account.getName(), account.getBalance(), account.getCurrency()));
+  }
+
+  /**
+   * Answer a rejection with {@code 400}, like the exceptions of business rejections, and the JSON error body of an
+   * exception, but for the stack trace, which a rejection does not have
+   */
+  private static Result rejection(Outcome<?> outcome) {
+    final Map<String, Object> body = new LinkedHashMap<>();
+    body.put("message", outcome.getMessage());
+    body.put("status", Status.BAD_REQUEST.value());
+    body.put("reason", Status.BAD_REQUEST.reason());
+
+    return Results.with(body, Status.BAD_REQUEST);
+  }
+
+  /**
+   * Send the result of the future once it completes, the request thread is released in the meantime. An outcome is
+   * sent as its value, or as a rejection.
+   */
+  private static Deferred deferred(CompletableFuture<?> future) {
+    return new Deferred(deferred -> future.whenComplete((result, error) -> {
+      if (error == null && result instanceof Outcome) {
+        final Outcome<?> outcome = (Outcome<?>) result;
+        deferred.resolve(outcome.isOk() ? outcome.getValue() : rejection(outcome));
+      } else if (error == null) {
+        deferred.resolve(result);
+      } else {
+        deferred.reject(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+      }
+    }));
   }
 }
@@ -0,0 +1,132 @@
+package com.andrew.controller;
+
+import com.andrew.business.AccountHandler;
+import com.andrew.business.BalanceSnapshot;
+import com.andrew.model.Account;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Accounts as newline delimited JSON, rendered one page at a time as the stream is read. Balances are read from a
+ * snapshot opened with the stream when the engine supports them, so that they add up whatever the traffic while the
+ * stream is read.
+ * <p>
+ * The server copies the stream to the connection only as fast as the client takes it, so at most one page of accounts
+ * is held in memory whatever the number of accounts, and a slow client holds back the paging rather than piling up
+ * rendered accounts.
+ *
+ * @author andrew
+ */
+final class AccountStream extends InputStream {
+
+  static final int PAGE_SIZE = 256;
+
+  private final AccountHandler accountHandler;
+  private final ObjectWriter writer;
+  private final BalanceSnapshot snapshot;
+  private final Buffer page = new Buffer();
+
+  private long after;
+  private boolean last;
+  private int position;
+
+  /**
+   * @param accountHandler handler to read the pages from
+   * @param writer         writer of a single account
+   * @param after          ID after which to start, {@code 0} to stream every account
+   */
+  AccountStream(AccountHandler accountHandler, ObjectWriter writer, long after) {
+    if (after < 0) {
+      throw new IllegalArgumentException("Cursor cannot be less than 0");
+    }
+
+    this.accountHandler = accountHandler;
+    this.writer = writer;
+    this.after = after;
+    this.snapshot = accountHandler.isSnapshotSupported() ? accountHandler.snapshot() : null;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+
+    return page.bytes()[position++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    } else if (!fill()) {
+      return -1;
+    }
+
+    final int count = Math.min(len, page.size() - position);
+    System.arraycopy(page.bytes(), position, b, off, count);
+    position += count;
+
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return page.size() - position;
+  }
+
+  @Override
+  public void close() {
+    if (snapshot != null) {
+      snapshot.close();
+    }
+  }
+
+  /**
+   * Render the next page once the current one is fully read
+   *
+   * @return whether there is anything left to read
+   */
+  private boolean fill() throws IOException {
+    while (position == page.size()) {
+      if (last) {
+        close();
+        return false;
+      }
+
+      final List<Account> accounts = accountHandler.findPage(after, PAGE_SIZE);
+      last = accounts.size() < PAGE_SIZE;
+      page.reset();
+      position = 0;
+      for (Account account : accounts) {
+        after = account.getId();
+        if (snapshot != null && !snapshot.includes(account)) {
+          last = true;
+          continue;
+        }
+        writer.writeValue(page, snapshot == null ? account : snapshot.copyOf(account));
+        page.write('\n');
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Byte array output stream handing out its buffer instead of a copy
+   */
+  private static final class Buffer extends ByteArrayOutputStream {
+
+    private Buffer() {
+      super(PAGE_SIZE * 128);
+    }
+
+    private byte[] bytes() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package com.andrew.controller;
+
+import com.andrew.business.AccountExecutor;
+import com.andrew.business.AccountExporter;
+import com.andrew.business.AccountImporter;
+import com.andrew.business.AccountLedger;
+import com.andrew.business.AccountLockManager;
+import com.andrew.business.AccountMetrics;
+import com.andrew.business.AccountMetrics.Failure;
+import com.andrew.business.AccountMetrics.Operation;
+import com.andrew.business.AccountSnapshots;
+import com.andrew.business.DepositCombiner;
+import com.andrew.business.ExchangeRates;
+import com.andrew.business.HotAccounts;
+import com.andrew.business.IdempotencyCache;
+import com.andrew.dto.TransferStatus;
+import com.andrew.metrics.PrometheusWriter;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.rpc.RpcServer;
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.mvc.GET;
+import org.jooby.mvc.Path;
+
+import javax.inject.Inject;
+import java.util.Locale;
+
+/**
+ * Exposes the metrics of the account operations and of the components they go through, in the Prometheus text
+ * format
+ *
+ * @author andrew
+ */
+@Path("/metrics")
+public class MetricsController {
+
+  private static final MediaType CONTENT_TYPE = MediaType.valueOf(PrometheusWriter.CONTENT_TYPE);
+
+  @Inject
+  private AccountMetrics accountMetrics;
+
+  @Inject
+  private AccountLockManager lockManager;
+
+  @Inject
+  private AccountExecutor executor;
+
+  @Inject
+  private AccountSnapshots snapshots;
+
+  @Inject
+  private HotAccounts hotAccounts;
+
+  @Inject
+  private DepositCombiner combiner;
+
+  @Inject
+  private ExchangeRates exchangeRates;
+
+  @Inject
+  private IdempotencyCache idempotencyCache;
+
+  @Inject
+  private AccountLedger ledger;
+
+  @Inject
+  private AccountImporter importer;
+
+  @Inject
+  private AccountExporter exporter;
+
+  @Inject
+  private AccountJournal journal;
+
+  @Inject
+  private RpcServer rpcServer;
+
+  @Inject
+  private AccountRepository accountRepository;
+
+  @GET
+  public Result metrics() {
+    final PrometheusWriter writer = new PrometheusWriter();
+
+    writer.histogram("account_operation_seconds", "Latency of account operations, failed ones included");
+    for (Operation operation : Operation.values()) {
+      writer.sample("account_operation_seconds", accountMetrics.getLatency(operation),
+          "operation", operation.label());
+    }
+    writer.counter("account_operation_failures_total", "Failed account operations by failure");
+    for (Operation operation : Operation.values()) {
+      for (Failure failure : Failure.values()) {
+        final long failures = accountMetrics.getFailures(operation, failure);
+        if (failures > 0) {
+          writer.sample("account_operation_failures_total", failures,
+              "operation", operation.label(), "failure", failure.label());
+        }
+      }
+    }
+    writer.counter("account_batch_transfers_total", "Transfers of batches by status");
+    for (TransferStatus status : TransferStatus.values()) {
+      writer.sample("account_batch_transfers_total", accountMetrics.getBatchTransfers(status),
+          "status", status.name().toLowerCase(Locale.ROOT));
+    }
+    writer.gauge("accounts", "Number of accounts")
+        .sample("accounts", accountRepository.findAll().size());
+
+    writer.counter("account_lock_acquisitions_total", "Successful account lock acquisitions")
+        .sample("account_lock_acquisitions_total", lockManager.getAcquisitions())
+        .counter("account_lock_contentions_total", "Account lock stripes found held when requested")
+        .sample("account_lock_contentions_total", lockManager.getContentions())
+        .counter("account_lock_timeouts_total", "Account lock acquisitions given up after the timeout")
+        .sample("account_lock_timeouts_total", lockManager.getTimeouts())
+        .histogram("account_lock_wait_seconds", "Time spent waiting for contended account locks")
+        .sample("account_lock_wait_seconds", lockManager.getWaits());
+
+    writer.gauge("account_executor_queue_depth", "Account changes waiting for a worker")
+        .sample("account_executor_queue_depth", executor.getQueueDepth())
+        .counter("account_executor_completed_total", "Account changes run by the executor")
+        .sample("account_executor_completed_total", executor.getCompleted())
+        .counter("account_executor_rejected_total", "Account changes rejected because the executor was saturated")
+        .sample("account_executor_rejected_total", executor.getRejected())
+        .histogram("account_executor_wait_seconds", "Time account changes waited for a worker")
+        .sample("account_executor_wait_seconds", executor.getWaits());
+
+    writer.gauge("account_snapshots_open", "Balance snapshots being read, which make every change take account locks")
+        .sample("account_snapshots_open", snapshots.getOpen());
+
+    writer.counter("accounts_striped_total", "Hot accounts whose balance was split into stripes")
+        .sample("accounts_striped_total", hotAccounts.getPromoted())
+        .counter("deposit_batches_total", "Batches of deposits applied by the deposit combiner")
+        .sample("deposit_batches_total", combiner.getBatches())
+        .counter("deposits_combined_total", "Deposits applied in a batch with other deposits to the same account")
+        .sample("deposits_combined_total", combiner.getCombined());
+
+    writer.counter("accounts_imported_total", "Accounts created by bulk imports")
+        .sample("accounts_imported_total", importer.getImported())
+        .counter("import_lines_rejected_total", "Lines of bulk imports rejected as invalid")
+        .sample("import_lines_rejected_total", importer.getRejected());
+
+    writer.counter("account_exports_total", "Exports of the accounts completed")
+        .sample("account_exports_total", exporter.getExports())
+        .counter("accounts_exported_total", "Accounts written by completed exports")
+        .sample("accounts_exported_total", exporter.getExported());
+
+    writer.gauge("exchange_rate_currencies", "Currencies with exchange rates")
+        .sample("exchange_rate_currencies", exchangeRates.getCurrencies())
+        .counter("exchange_rate_reloads_total", "Times the exchange rates were read from their file")
+        .sample("exchange_rate_reloads_total", exchangeRates.getReloads());
+
+    writer.counter("idempotency_cache_hits_total", "Requests answered with the outcome of an earlier request")
+        .sample("idempotency_cache_hits_total", idempotencyCache.getHits())
+        .counter("idempotency_cache_misses_total", "Requests run because their key was not remembered")
+        .sample("idempotency_cache_misses_total", idempotencyCache.getMisses())
+        .counter("idempotency_cache_evictions_total", "Keys forgotten because the cache was full or they expired")
+        .sample("idempotency_cache_evictions_total", idempotencyCache.getEvictions())
+        .gauge("idempotency_cache_entries", "Keys remembered")
+        .sample("idempotency_cache_entries", idempotencyCache.getSize());
+
+    writer.counter("rpc_requests_total", "Requests received over the binary protocol")
+        .sample("rpc_requests_total", rpcServer.getRequests())
+        .gauge("rpc_connections", "Open binary protocol connections")
+        .sample("rpc_connections", rpcServer.getConnections());
+
+    writer.counter("ledger_entries_total", "Balance changes recorded in the ledger")
+        .sample("ledger_entries_total", ledger.getEntries())
+        .gauge("ledger_accounts", "Accounts with recorded balance changes")
+        .sample("ledger_accounts", ledger.getAccounts());
+
+    writer.counter("journal_frames_total", "Journal frames made durable")
+        .sample("journal_frames_total", journal.getFrames())
+        .counter("journal_commits_total", "Journal group commits")
+        .sample("journal_commits_total", journal.getCommits())
+        .counter("journal_snapshots_total", "Journal snapshots written")
+        .sample("journal_snapshots_total", journal.getSnapshots());
+
+    return Results.ok(writer.toString()).type(CONTENT_TYPE);
+  }
+}
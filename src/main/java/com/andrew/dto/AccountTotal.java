@@ -0,0 +1,58 @@
+package com.andrew.dto;
+
+import com.andrew.model.Money;
+
+import java.util.Currency;
+
+/**
+ * @author andrew
+ */
+public class AccountTotal {
+
+  private Currency currency;
+  private long accounts;
+  private Money balance;
+
+  //Required for JSON serialization
+  public AccountTotal() {
+  }
+
+  public AccountTotal(Currency currency, long accounts, Money balance) {
+    this.currency = currency;
+    this.accounts = accounts;
+    this.balance = balance;
+  }
+
+  public Currency getCurrency() {
+    return currency;
+  }
+
+  public void setCurrency(Currency currency) {
+    this.currency = currency;
+  }
+
+  public long getAccounts() {
+    return accounts;
+  }
+
+  public void setAccounts(long accounts) {
+    this.accounts = accounts;
+  }
+
+  public Money getBalance() {
+    return balance;
+  }
+
+  public void setBalance(Money balance) {
+    this.balance = balance;
+  }
+
+  @Override
+  public String toString() {
+    return "AccountTotal{" +
+        "currency=" + currency +
+        ", accounts=" + accounts +
+        ", balance=" + balance +
+        '}';
+  }
+}
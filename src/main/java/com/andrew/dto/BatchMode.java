@@ -0,0 +1,17 @@
+package com.andrew.dto;
+
+/**
+ * @author andrew
+ */
+public enum BatchMode {
+
+  /**
+   * Either every transfer of the batch is applied or none is
+   */
+  ATOMIC,
+
+  /**
+   * Every valid transfer is applied independently of the others
+   */
+  BEST_EFFORT
+}
@@ -1,6 +1,8 @@
 package com.andrew.dto;
 
-import java.math.BigDecimal;
+import com.andrew.model.Money;
+
+import java.util.Currency;
 
 /**
  * @author andrew
@@ -8,15 +10,21 @@ import java.math.BigDecimal;
 public class CreateAccount {
 
   private String name;
-  private BigDecimal openingBalance;
+  private Money openingBalance;
+  private Currency currency;
 
   //Required for JSON serialization
   public CreateAccount() {
   }
 
-  public CreateAccount(String name, BigDecimal openingBalance) {
+  public CreateAccount(String name, Money openingBalance) {
+    this(name, openingBalance, null);
+  }
+
+  public CreateAccount(String name, Money openingBalance, Currency currency) {
     this.name = name;
     this.openingBalance = openingBalance;
+    this.currency = currency;
   }
 
   public String getName() {
@@ -27,19 +35,31 @@ public class CreateAccount {
     this.name = name;
   }
 
-  public BigDecimal getOpeningBalance() {
+  public Money getOpeningBalance() {
     return openingBalance;
   }
 
-  public void setOpeningBalance(BigDecimal openingBalance) {
+  public void setOpeningBalance(Money openingBalance) {
     this.openingBalance = openingBalance;
   }
 
+  /**
+   * @return currency of the account, {@code null} for the default currency
+   */
+  public Currency getCurrency() {
+    return currency;
+  }
+
+  public void setCurrency(Currency currency) {
+    this.currency = currency;
+  }
+
   @Override
   public String toString() {
     return "CreateAccount{" +
         "name='" + name + '\'' +
         ", openingBalance=" + openingBalance +
+        ", currency=" + currency +
         '}';
   }
 }
@@ -0,0 +1,17 @@
+package com.andrew.dto;
+
+/**
+ * Progress of an export of the accounts
+ *
+ * @author andrew
+ */
+public enum ExportState {
+
+  RUNNING,
+  COMPLETED,
+
+  /**
+   * Export stopped on an error, leaving no file behind
+   */
+  FAILED
+}
@@ -0,0 +1,102 @@
+package com.andrew.dto;
+
+/**
+ * Status of an export of the accounts to a columnar file, see {@code com.andrew.export.AccountExportFormat}
+ *
+ * @author andrew
+ */
+public class ExportStatus {
+
+  private String file;
+  private ExportState state;
+  private long accounts;
+  private long startedAt;
+  private Long completedAt;
+  private String error;
+
+  //Required for JSON serialization
+  public ExportStatus() {
+  }
+
+  public ExportStatus(String file, ExportState state, long accounts, long startedAt, Long completedAt,
+                      String error) {
+    this.file = file;
+    this.state = state;
+    this.accounts = accounts;
+    this.startedAt = startedAt;
+    this.completedAt = completedAt;
+    this.error = error;
+  }
+
+  /**
+   * @return name of the file within the export directory, only present there once the export is completed
+   */
+  public String getFile() {
+    return file;
+  }
+
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  public ExportState getState() {
+    return state;
+  }
+
+  public void setState(ExportState state) {
+    this.state = state;
+  }
+
+  /**
+   * @return number of accounts written so far
+   */
+  public long getAccounts() {
+    return accounts;
+  }
+
+  public void setAccounts(long accounts) {
+    this.accounts = accounts;
+  }
+
+  /**
+   * @return when the export started, in milliseconds since the epoch
+   */
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  public void setStartedAt(long startedAt) {
+    this.startedAt = startedAt;
+  }
+
+  /**
+   * @return when the export completed or failed, in milliseconds since the epoch, {@code null} while it is running
+   */
+  public Long getCompletedAt() {
+    return completedAt;
+  }
+
+  public void setCompletedAt(Long completedAt) {
+    this.completedAt = completedAt;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  @Override
+  public String toString() {
+    return "ExportStatus{" +
+        "file='" + file + '\'' +
+        ", state=" + state +
+        ", accounts=" + accounts +
+        ", startedAt=" + startedAt +
+        ", completedAt=" + completedAt +
+        ", error='" + error + '\'' +
+        '}';
+  }
+}
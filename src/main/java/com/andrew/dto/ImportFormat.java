@@ -0,0 +1,34 @@
+package com.andrew.dto;
+
+/**
+ * @author andrew
+ */
+public enum ImportFormat {
+
+  /**
+   * One {@code name,openingBalance,currency} line per account, the last two fields being optional and the name quoted
+   * with double quotes when it holds commas or quotes. A first line starting with {@code name} is taken as a header.
+   */
+  CSV,
+
+  /**
+   * One JSON object per line, with the fields of {@link CreateAccount}
+   */
+  NDJSON;
+
+  /**
+   * @param fileName name of an imported file
+   * @return format of the file, by its extension
+   * @throws IllegalArgumentException when the extension is neither {@code .csv} nor {@code .ndjson} or {@code .jsonl}
+   */
+  public static ImportFormat of(String fileName) {
+    final String name = fileName == null ? "" : fileName.toLowerCase();
+    if (name.endsWith(".csv")) {
+      return CSV;
+    } else if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+      return NDJSON;
+    }
+
+    throw new IllegalArgumentException("Unknown import format of " + fileName + ", expected .csv or .ndjson");
+  }
+}
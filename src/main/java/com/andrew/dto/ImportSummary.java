@@ -0,0 +1,85 @@
+package com.andrew.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import of accounts. Imported accounts got IDs between {@code firstId} and {@code lastId}, the
+ * accounts of each batch of lines in the order of their lines; rejected lines leave gaps, and so do accounts created
+ * by other requests during the import.
+ *
+ * @author andrew
+ */
+public class ImportSummary {
+
+  private long imported;
+  private long rejected;
+  private Long firstId;
+  private Long lastId;
+  private List<String> errors;
+
+  //Required for JSON serialization
+  public ImportSummary() {
+  }
+
+  public ImportSummary(long imported, long rejected, Long firstId, Long lastId, List<String> errors) {
+    this.imported = imported;
+    this.rejected = rejected;
+    this.firstId = firstId;
+    this.lastId = lastId;
+    this.errors = errors;
+  }
+
+  public long getImported() {
+    return imported;
+  }
+
+  public void setImported(long imported) {
+    this.imported = imported;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  public void setRejected(long rejected) {
+    this.rejected = rejected;
+  }
+
+  public Long getFirstId() {
+    return firstId;
+  }
+
+  public void setFirstId(Long firstId) {
+    this.firstId = firstId;
+  }
+
+  public Long getLastId() {
+    return lastId;
+  }
+
+  public void setLastId(Long lastId) {
+    this.lastId = lastId;
+  }
+
+  /**
+   * @return why up to 100 lines were rejected, each prefixed with its line number
+   */
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  public void setErrors(List<String> errors) {
+    this.errors = errors;
+  }
+
+  @Override
+  public String toString() {
+    return "ImportSummary{" +
+        "imported=" + imported +
+        ", rejected=" + rejected +
+        ", firstId=" + firstId +
+        ", lastId=" + lastId +
+        ", errors=" + errors +
+        '}';
+  }
+}
@@ -0,0 +1,79 @@
+package com.andrew.dto;
+
+import com.andrew.model.Money;
+
+/**
+ * Change of the balance of an account, as recorded in its ledger
+ *
+ * @author andrew
+ */
+public class LedgerEntry {
+
+  public enum Type {
+    DEPOSIT, WITHDRAWAL, TRANSFER_IN, TRANSFER_OUT
+  }
+
+  private long time;
+  private Type type;
+  private Money amount;
+  private Long counterpartyId;
+
+  //Required for JSON serialization
+  public LedgerEntry() {
+  }
+
+  /**
+   * @param time           when the change was recorded, in milliseconds since the epoch
+   * @param type           kind of change
+   * @param amount         amount the balance changed by, always positive
+   * @param counterpartyId other account of a transfer, {@code null} for deposits and withdrawals
+   */
+  public LedgerEntry(long time, Type type, Money amount, Long counterpartyId) {
+    this.time = time;
+    this.type = type;
+    this.amount = amount;
+    this.counterpartyId = counterpartyId;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  public Money getAmount() {
+    return amount;
+  }
+
+  public void setAmount(Money amount) {
+    this.amount = amount;
+  }
+
+  public Long getCounterpartyId() {
+    return counterpartyId;
+  }
+
+  public void setCounterpartyId(Long counterpartyId) {
+    this.counterpartyId = counterpartyId;
+  }
+
+  @Override
+  public String toString() {
+    return "LedgerEntry{" +
+        "time=" + time +
+        ", type=" + type +
+        ", amount=" + amount +
+        ", counterpartyId=" + counterpartyId +
+        '}';
+  }
+}
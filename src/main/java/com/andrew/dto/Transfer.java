@@ -1,6 +1,6 @@
 package com.andrew.dto;
 
-import java.math.BigDecimal;
+import com.andrew.model.Money;
 
 /**
  * @author andrew
@@ -9,13 +9,13 @@ public class Transfer {
 
   private Long fromAccountId;
   private Long toAccountId;
-  private BigDecimal amount;
+  private Money amount;
 
   //Required for JSON serialization
   public Transfer() {
   }
 
-  public Transfer(Long fromAccountId, Long toAccountId, BigDecimal amount) {
+  public Transfer(Long fromAccountId, Long toAccountId, Money amount) {
     this.fromAccountId = fromAccountId;
     this.toAccountId = toAccountId;
     this.amount = amount;
@@ -29,7 +29,7 @@ public class Transfer {
     return toAccountId;
   }
 
-  public BigDecimal getAmount() {
+  public Money getAmount() {
     return amount;
   }
 
@@ -0,0 +1,27 @@
+package com.andrew.dto;
+
+/**
+ * Outcome of a single transfer within a batch, and reason of the rejection of a single account operation, see
+ * {@link com.andrew.business.Outcome}
+ *
+ * @author andrew
+ */
+public enum TransferStatus {
+
+  OK,
+  INVALID_AMOUNT,
+  ILLEGAL_TRANSFER,
+  ACCOUNT_NOT_FOUND,
+  INSUFFICIENT_BALANCE,
+  BALANCE_OVERFLOW,
+
+  /**
+   * Accounts are in different currencies with no exchange rate between them
+   */
+  NO_EXCHANGE_RATE,
+
+  /**
+   * Transfer was valid but not applied because another transfer of the atomic batch failed
+   */
+  ABORTED
+}
@@ -1,6 +1,6 @@
 package com.andrew.dto;
 
-import java.math.BigDecimal;
+import com.andrew.model.Money;
 
 /**
  * @author andrew
@@ -8,13 +8,13 @@ import java.math.BigDecimal;
 public class Withdraw {
 
   private Long accountId;
-  private BigDecimal amount;
+  private Money amount;
 
   //Required for JSON serialization
   public Withdraw() {
   }
 
-  public Withdraw(Long accountId, BigDecimal amount) {
+  public Withdraw(Long accountId, Money amount) {
     this.accountId = accountId;
     this.amount = amount;
   }
@@ -27,11 +27,11 @@ public class Withdraw {
     this.accountId = accountId;
   }
 
-  public BigDecimal getAmount() {
+  public Money getAmount() {
     return amount;
   }
 
-  public void setAmount(BigDecimal amount) {
+  public void setAmount(Money amount) {
     this.amount = amount;
   }
 
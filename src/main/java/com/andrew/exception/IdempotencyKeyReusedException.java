@@ -0,0 +1,11 @@
+package com.andrew.exception;
+
+/**
+ * @author andrew
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+  public IdempotencyKeyReusedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,11 @@
+package com.andrew.exception;
+
+/**
+ * @author andrew
+ */
+public class LockTimeoutException extends RuntimeException {
+
+  public LockTimeoutException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,11 @@
+package com.andrew.exception;
+
+/**
+ * @author andrew
+ */
+public class ServerBusyException extends RuntimeException {
+
+  public ServerBusyException(String message) {
+    super(message);
+  }
+}
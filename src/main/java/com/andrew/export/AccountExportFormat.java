@@ -0,0 +1,95 @@
+package com.andrew.export;
+
+import com.andrew.model.Account;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Columnar file of accounts written by {@link AccountExportWriter} and read by {@link AccountExportReader}, for
+ * analytics reading millions of accounts without parsing JSON.
+ * <p>
+ * The file starts with {@link #MAGIC} and ends with the offset of its footer as an 8-byte long followed by
+ * {@link #MAGIC} again. In between, accounts are stored by ascending ID in row groups of up to a fixed number of
+ * accounts, each laid out as its number of rows and the byte length of each of its columns as 4-byte ints, then the
+ * columns one after the other:
+ * <ul>
+ * <li>{@link #IDS}: difference between each ID and the previous one of the group, as a varint</li>
+ * <li>{@link #BALANCES}: balance in minor units, i.e. with {@link Account#SCALE} implied decimal places, as a zigzag
+ * varint</li>
+ * <li>{@link #CURRENCIES}: runs of accounts with the same currency, as the run length in a varint followed by the ISO
+ * 4217 numeric code of the currency in a 2-byte short, 0 for none</li>
+ * <li>{@link #DICTIONARY}: distinct names of the group, as their number in a varint followed by each name as its
+ * length in a varint and its UTF-8 bytes</li>
+ * <li>{@link #NAMES}: index of the name of each account in the dictionary, as a varint</li>
+ * </ul>
+ * The footer holds the number of row groups as a 4-byte int, then the offset, number of rows, first and last ID of
+ * each group, then the number of accounts, the time of the export in epoch milliseconds and whether balances were read
+ * from a consistent snapshot as a byte. Varints hold 7 bits per byte, least significant first, the high bit being set
+ * on every byte but the last. All other numbers are big-endian.
+ *
+ * @author andrew
+ */
+public final class AccountExportFormat {
+
+  public static final int MAGIC = 0x4D544531;
+
+  /**
+   * Default number of accounts per row group, bounding the memory used by the writer and by readers of a group
+   */
+  public static final int DEFAULT_ROW_GROUP_SIZE = 1 << 16;
+
+  static final int IDS = 0;
+  static final int BALANCES = 1;
+  static final int CURRENCIES = 2;
+  static final int DICTIONARY = 3;
+  static final int NAMES = 4;
+  static final int COLUMNS = 5;
+
+  static final int HEADER_SIZE = 4;
+  static final int TRAILER_SIZE = 8 + 4;
+  static final int GROUP_HEADER_SIZE = 4 + COLUMNS * 4;
+  static final int GROUP_INDEX_SIZE = 8 + 4 + 8 + 8;
+  static final int MAX_VARINT_SIZE = 10;
+
+  private AccountExportFormat() {
+  }
+
+  static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static long getVarLong(ByteBuffer buffer) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+
+    throw new IOException("Malformed varint in account export");
+  }
+
+  static int getVarInt(ByteBuffer buffer) throws IOException {
+    final long value = getVarLong(buffer);
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("Varint out of range in account export: " + value);
+    }
+
+    return (int) value;
+  }
+
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
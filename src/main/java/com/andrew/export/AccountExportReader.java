@@ -0,0 +1,266 @@
+package com.andrew.export;
+
+import com.andrew.model.Account;
+import com.andrew.model.Currencies;
+import com.andrew.model.Money;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Currency;
+import java.util.function.Consumer;
+
+import static com.andrew.export.AccountExportFormat.BALANCES;
+import static com.andrew.export.AccountExportFormat.CURRENCIES;
+import static com.andrew.export.AccountExportFormat.DICTIONARY;
+import static com.andrew.export.AccountExportFormat.GROUP_HEADER_SIZE;
+import static com.andrew.export.AccountExportFormat.GROUP_INDEX_SIZE;
+import static com.andrew.export.AccountExportFormat.HEADER_SIZE;
+import static com.andrew.export.AccountExportFormat.IDS;
+import static com.andrew.export.AccountExportFormat.MAGIC;
+import static com.andrew.export.AccountExportFormat.NAMES;
+import static com.andrew.export.AccountExportFormat.TRAILER_SIZE;
+import static com.andrew.export.AccountExportFormat.getVarInt;
+import static com.andrew.export.AccountExportFormat.getVarLong;
+import static com.andrew.export.AccountExportFormat.unzigzag;
+
+/**
+ * Reads files written by {@link AccountExportWriter}. Opening a file only reads its footer; row groups are then read
+ * on demand, either whole or a single column at a time, e.g. only the balances for summing them, so that memory use
+ * depends on the size of a row group, not on the size of the file.
+ * <p>
+ * Reading is thread-safe, each read being a positional read of the file.
+ *
+ * @author andrew
+ */
+public final class AccountExportReader implements AutoCloseable {
+
+  private final FileChannel channel;
+  private final Path path;
+  private final long[] offsets;
+  private final int[] rows;
+  private final long[] firstIds;
+  private final long[] lastIds;
+  private final long accounts;
+  private final long exportedAt;
+  private final boolean consistent;
+
+  private AccountExportReader(FileChannel channel, Path path) throws IOException {
+    this.channel = channel;
+    this.path = path;
+
+    final long size = channel.size();
+    if (size < HEADER_SIZE + TRAILER_SIZE || read(0, HEADER_SIZE).getInt() != MAGIC) {
+      throw new IOException("Not an account export: " + path);
+    }
+    final ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+    final long footer = trailer.getLong();
+    if (trailer.getInt() != MAGIC || footer < HEADER_SIZE || footer > size - TRAILER_SIZE - 4) {
+      throw new IOException("Incomplete account export: " + path);
+    }
+
+    final ByteBuffer buffer = read(footer, (int) (size - TRAILER_SIZE - footer));
+    final int groups = buffer.getInt();
+    if (groups < 0 || buffer.remaining() != (long) groups * GROUP_INDEX_SIZE + 8 + 8 + 1) {
+      throw new IOException("Corrupt account export footer: " + path);
+    }
+    this.offsets = new long[groups];
+    this.rows = new int[groups];
+    this.firstIds = new long[groups];
+    this.lastIds = new long[groups];
+    for (int group = 0; group < groups; group++) {
+      offsets[group] = buffer.getLong();
+      rows[group] = buffer.getInt();
+      firstIds[group] = buffer.getLong();
+      lastIds[group] = buffer.getLong();
+    }
+    this.accounts = buffer.getLong();
+    this.exportedAt = buffer.getLong();
+    this.consistent = buffer.get() != 0;
+  }
+
+  /**
+   * @param path file written by {@link AccountExportWriter}
+   * @return reader of the file, which must be closed
+   * @throws IOException when the file cannot be read, or is not a complete export
+   */
+  public static AccountExportReader open(Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new AccountExportReader(channel, path);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return number of accounts in the file
+   */
+  public long getAccounts() {
+    return accounts;
+  }
+
+  /**
+   * @return when the export was written, in epoch milliseconds
+   */
+  public long getExportedAt() {
+    return exportedAt;
+  }
+
+  /**
+   * @return whether every balance was read as of the same point in time, which is not the case when they were read
+   * while the sharded engine was running
+   */
+  public boolean isConsistent() {
+    return consistent;
+  }
+
+  public int getRowGroups() {
+    return offsets.length;
+  }
+
+  public int getRows(int group) {
+    return rows[group];
+  }
+
+  public long getFirstId(int group) {
+    return firstIds[group];
+  }
+
+  public long getLastId(int group) {
+    return lastIds[group];
+  }
+
+  /**
+   * @param group index of a row group
+   * @return IDs of the accounts of the group
+   */
+  public long[] readIds(int group) throws IOException {
+    final ByteBuffer column = readColumn(group, IDS);
+    final long[] ids = new long[rows[group]];
+    long previous = 0;
+    for (int i = 0; i < ids.length; i++) {
+      previous += getVarLong(column);
+      ids[i] = previous;
+    }
+
+    return ids;
+  }
+
+  /**
+   * @param group index of a row group
+   * @return balances of the accounts of the group, in minor units
+   */
+  public long[] readBalances(int group) throws IOException {
+    final ByteBuffer column = readColumn(group, BALANCES);
+    final long[] balances = new long[rows[group]];
+    for (int i = 0; i < balances.length; i++) {
+      balances[i] = unzigzag(getVarLong(column));
+    }
+
+    return balances;
+  }
+
+  /**
+   * @param group index of a row group
+   * @return currencies of the accounts of the group, {@code null} for accounts without one
+   */
+  public Currency[] readCurrencies(int group) throws IOException {
+    final ByteBuffer column = readColumn(group, CURRENCIES);
+    final Currency[] currencies = new Currency[rows[group]];
+    for (int i = 0; i < currencies.length; ) {
+      final int run = getVarInt(column);
+      if (run < 1 || run > currencies.length - i) {
+        throw new IOException("Corrupt currency column in row group " + group + " of " + path);
+      }
+      final Currency currency = Currencies.of(column.getShort());
+      for (int end = i + run; i < end; i++) {
+        currencies[i] = currency;
+      }
+    }
+
+    return currencies;
+  }
+
+  /**
+   * @param group index of a row group
+   * @return names of the accounts of the group, accounts of the group with the same name sharing the same instance
+   */
+  public String[] readNames(int group) throws IOException {
+    final ByteBuffer column = readColumn(group, DICTIONARY);
+    final String[] dictionary = new String[getVarInt(column)];
+    for (int i = 0; i < dictionary.length; i++) {
+      final int length = getVarInt(column);
+      dictionary[i] = new String(column.array(), column.position(), length, StandardCharsets.UTF_8);
+      column.position(column.position() + length);
+    }
+
+    final ByteBuffer codes = readColumn(group, NAMES);
+    final String[] names = new String[rows[group]];
+    for (int i = 0; i < names.length; i++) {
+      final int code = getVarInt(codes);
+      if (code >= dictionary.length) {
+        throw new IOException("Corrupt name column in row group " + group + " of " + path);
+      }
+      names[i] = dictionary[code];
+    }
+
+    return names;
+  }
+
+  /**
+   * Read every account, one row group at a time
+   *
+   * @param consumer receives the accounts by ascending ID
+   */
+  public void forEach(Consumer<Account> consumer) throws IOException {
+    for (int group = 0; group < offsets.length; group++) {
+      final long[] ids = readIds(group);
+      final long[] balances = readBalances(group);
+      final Currency[] currencies = readCurrencies(group);
+      final String[] names = readNames(group);
+      for (int i = 0; i < ids.length; i++) {
+        consumer.accept(new Account(ids[i], names[i], Money.of(balances[i], Account.SCALE), currencies[i]));
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private ByteBuffer readColumn(int group, int column) throws IOException {
+    final ByteBuffer header = read(offsets[group], GROUP_HEADER_SIZE);
+    if (header.getInt() != rows[group]) {
+      throw new IOException("Corrupt row group " + group + " of " + path);
+    }
+
+    long offset = offsets[group] + GROUP_HEADER_SIZE;
+    for (int i = 0; i < column; i++) {
+      offset += header.getInt();
+    }
+    final int length = header.getInt();
+    if (length < 0) {
+      throw new IOException("Corrupt row group " + group + " of " + path);
+    }
+
+    return read(offset, length);
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of account export: " + path);
+      }
+    }
+    buffer.flip();
+
+    return buffer;
+  }
+}
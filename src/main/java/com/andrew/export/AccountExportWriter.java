@@ -0,0 +1,239 @@
+package com.andrew.export;
+
+import com.andrew.model.Currencies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.andrew.export.AccountExportFormat.BALANCES;
+import static com.andrew.export.AccountExportFormat.COLUMNS;
+import static com.andrew.export.AccountExportFormat.CURRENCIES;
+import static com.andrew.export.AccountExportFormat.DICTIONARY;
+import static com.andrew.export.AccountExportFormat.GROUP_HEADER_SIZE;
+import static com.andrew.export.AccountExportFormat.GROUP_INDEX_SIZE;
+import static com.andrew.export.AccountExportFormat.IDS;
+import static com.andrew.export.AccountExportFormat.MAGIC;
+import static com.andrew.export.AccountExportFormat.MAX_VARINT_SIZE;
+import static com.andrew.export.AccountExportFormat.NAMES;
+import static com.andrew.export.AccountExportFormat.TRAILER_SIZE;
+import static com.andrew.export.AccountExportFormat.putVarLong;
+import static com.andrew.export.AccountExportFormat.zigzag;
+
+/**
+ * Writes accounts to a new file in the {@link AccountExportFormat columnar format}, one row group at a time: accounts
+ * are buffered until a group is full, then encoded column by column and written to the file, so memory use depends on
+ * the size of a group, not on the number of accounts.
+ * <p>
+ * The file is only readable once {@link #finish(boolean)} has written its footer. Not thread-safe.
+ *
+ * @author andrew
+ */
+public final class AccountExportWriter implements AutoCloseable {
+
+  private final FileChannel channel;
+  private final int rowGroupSize;
+
+  private final long[] ids;
+  private final long[] balances;
+  private final short[] currencies;
+  private final int[] nameCodes;
+  private final Map<String, Integer> dictionary = new HashMap<>();
+  private final List<byte[]> names = new ArrayList<>();
+  private int namesSize;
+  private int rows;
+
+  private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+  private ByteBuffer index = ByteBuffer.allocate(GROUP_INDEX_SIZE * 64);
+  private int groups;
+  private long accounts;
+  private long lastId;
+  private boolean finished;
+
+  /**
+   * @param path         file to create, which must not exist
+   * @param rowGroupSize maximum number of accounts per row group
+   * @throws IOException when the file cannot be created
+   */
+  public AccountExportWriter(Path path, int rowGroupSize) throws IOException {
+    if (rowGroupSize < 1) {
+      throw new IllegalArgumentException("Row group size must be greater than 0");
+    }
+
+    this.rowGroupSize = rowGroupSize;
+    this.ids = new long[rowGroupSize];
+    this.balances = new long[rowGroupSize];
+    this.currencies = new short[rowGroupSize];
+    this.nameCodes = new int[rowGroupSize];
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+    buffer.putInt(MAGIC);
+    writeBuffer();
+  }
+
+  /**
+   * Append an account, accounts being appended by ascending ID
+   *
+   * @param id       account ID
+   * @param name     account name
+   * @param balance  balance in minor units
+   * @param currency account currency, may be {@code null}
+   * @throws IOException when a full row group cannot be written
+   */
+  public void write(long id, String name, long balance, Currency currency) throws IOException {
+    if (finished) {
+      throw new IllegalStateException("Export is already finished");
+    } else if (id <= lastId) {
+      throw new IllegalArgumentException("Account " + id + " does not follow account " + lastId);
+    }
+
+    Integer code = dictionary.get(Objects.requireNonNull(name, "name"));
+    if (code == null) {
+      final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      code = names.size();
+      dictionary.put(name, code);
+      names.add(bytes);
+      namesSize += MAX_VARINT_SIZE + bytes.length;
+    }
+
+    ids[rows] = id;
+    balances[rows] = balance;
+    currencies[rows] = (short) Currencies.code(currency);
+    nameCodes[rows] = code;
+    lastId = id;
+    accounts++;
+    if (++rows == rowGroupSize) {
+      writeGroup();
+    }
+  }
+
+  /**
+   * Write the last row group and the footer, and flush the file to disk
+   *
+   * @param consistent whether the balances were read from a consistent snapshot
+   * @throws IOException when the file cannot be written
+   */
+  public void finish(boolean consistent) throws IOException {
+    if (finished) {
+      throw new IllegalStateException("Export is already finished");
+    }
+    if (rows > 0) {
+      writeGroup();
+    }
+
+    final long footer = channel.position();
+    index.flip();
+    buffer = capacity(4 + index.remaining() + 8 + 8 + 1 + TRAILER_SIZE);
+    buffer.putInt(groups).put(index).putLong(accounts).putLong(System.currentTimeMillis())
+        .put((byte) (consistent ? 1 : 0)).putLong(footer).putInt(MAGIC);
+    writeBuffer();
+    channel.force(true);
+    finished = true;
+  }
+
+  /**
+   * @return number of accounts written so far
+   */
+  public long getAccounts() {
+    return accounts;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void writeGroup() throws IOException {
+    if (index.remaining() < GROUP_INDEX_SIZE) {
+      final ByteBuffer larger = ByteBuffer.allocate(index.capacity() * 2);
+      index.flip();
+      index = larger.put(index);
+    }
+    index.putLong(channel.position()).putInt(rows).putLong(ids[0]).putLong(ids[rows - 1]);
+
+    buffer = capacity(GROUP_HEADER_SIZE + rows * (3 * MAX_VARINT_SIZE + 2) + MAX_VARINT_SIZE + namesSize);
+    buffer.position(GROUP_HEADER_SIZE);
+    final int[] lengths = new int[COLUMNS];
+
+    int start = buffer.position();
+    long previous = 0;
+    for (int i = 0; i < rows; i++) {
+      putVarLong(buffer, ids[i] - previous);
+      previous = ids[i];
+    }
+    lengths[IDS] = buffer.position() - start;
+
+    start = buffer.position();
+    for (int i = 0; i < rows; i++) {
+      putVarLong(buffer, zigzag(balances[i]));
+    }
+    lengths[BALANCES] = buffer.position() - start;
+
+    start = buffer.position();
+    for (int i = 0; i < rows; ) {
+      int run = 1;
+      while (i + run < rows && currencies[i + run] == currencies[i]) {
+        run++;
+      }
+      putVarLong(buffer, run);
+      buffer.putShort(currencies[i]);
+      i += run;
+    }
+    lengths[CURRENCIES] = buffer.position() - start;
+
+    start = buffer.position();
+    putVarLong(buffer, names.size());
+    for (byte[] name : names) {
+      putVarLong(buffer, name.length);
+      buffer.put(name);
+    }
+    lengths[DICTIONARY] = buffer.position() - start;
+
+    start = buffer.position();
+    for (int i = 0; i < rows; i++) {
+      putVarLong(buffer, nameCodes[i]);
+    }
+    lengths[NAMES] = buffer.position() - start;
+
+    buffer.putInt(0, rows);
+    for (int column = 0; column < COLUMNS; column++) {
+      buffer.putInt(4 + column * 4, lengths[column]);
+    }
+    writeBuffer();
+
+    groups++;
+    rows = 0;
+    dictionary.clear();
+    names.clear();
+    namesSize = 0;
+  }
+
+  /**
+   * @return the buffer, cleared, replaced by a larger one when it holds fewer than {@code size} bytes
+   */
+  private ByteBuffer capacity(int size) {
+    if (buffer.capacity() < size) {
+      return ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+    }
+
+    buffer.clear();
+    return buffer;
+  }
+
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,335 @@
+package com.andrew.json;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.TransferStatus;
+import com.andrew.dto.Withdraw;
+import com.andrew.model.Account;
+import com.andrew.model.AccountView;
+import com.andrew.model.Money;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Reads the request bodies of account changes and writes the accounts and batch statuses they answer with, using
+ * Jackson's streaming parser and generator rather than data binding. Fields are matched by name as they come and set
+ * straight into the request, so no bean introspection, property lookup or intermediate tree is involved; amounts go
+ * through {@link MoneyDeserializer#read(JsonParser)} as with data binding.
+ * <p>
+ * The JSON read and written is the same as data binding's: unknown fields are rejected, IDs may be numbers or
+ * strings and {@code null} is accepted for any field. Responses are generated into a buffer kept per thread and
+ * copied out once, so that only the response bytes are allocated.
+ *
+ * @author andrew
+ */
+public class JsonCodec {
+
+  private final JsonFactory factory;
+  private final ThreadLocal<ByteArrayOutputStream> buffers =
+      ThreadLocal.withInitial(() -> new ByteArrayOutputStream(256));
+
+  public JsonCodec() {
+    this(new JsonFactory());
+  }
+
+  /**
+   * @param factory creates parsers and generators, which should recycle their buffers
+   */
+  public JsonCodec(JsonFactory factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * @param json account to create
+   * @return account to create read, {@code null} for {@code null}
+   * @throws IOException when the JSON is not a valid account to create
+   */
+  public CreateAccount readCreateAccount(String json) throws IOException {
+    try (JsonParser p = factory.createParser(json)) {
+      if (p.nextToken() == JsonToken.VALUE_NULL) {
+        return null;
+      }
+      startObject(p);
+
+      final CreateAccount createAccount = new CreateAccount();
+      while (nextField(p)) {
+        switch (p.getCurrentName()) {
+          case "name":
+            createAccount.setName(readName(p));
+            break;
+          case "openingBalance":
+            createAccount.setOpeningBalance(readMoney(p));
+            break;
+          case "currency":
+            createAccount.setCurrency(readCurrency(p));
+            break;
+          default:
+            throw unrecognized(p);
+        }
+      }
+
+      return createAccount;
+    }
+  }
+
+  /**
+   * @param json request body
+   * @return deposit read, {@code null} for a {@code null} body
+   * @throws IOException when the body is not a valid deposit
+   */
+  public Deposit readDeposit(byte[] json) throws IOException {
+    return readAccountAmount(json, Deposit::new);
+  }
+
+  /**
+   * @param json request body
+   * @return withdrawal read, {@code null} for a {@code null} body
+   * @throws IOException when the body is not a valid withdrawal
+   */
+  public Withdraw readWithdraw(byte[] json) throws IOException {
+    return readAccountAmount(json, Withdraw::new);
+  }
+
+  /**
+   * @param json request body
+   * @return transfer read, {@code null} for a {@code null} body
+   * @throws IOException when the body is not a valid transfer
+   */
+  public Transfer readTransfer(byte[] json) throws IOException {
+    try (JsonParser p = factory.createParser(json)) {
+      return p.nextToken() == JsonToken.VALUE_NULL ? null : readTransfer(p);
+    }
+  }
+
+  /**
+   * @param json request body
+   * @return transfers read in order, {@code null} for a {@code null} body
+   * @throws IOException when the body is not an array of valid transfers
+   */
+  public List<Transfer> readTransferBatch(byte[] json) throws IOException {
+    try (JsonParser p = factory.createParser(json)) {
+      if (p.nextToken() == JsonToken.VALUE_NULL) {
+        return null;
+      } else if (p.getCurrentToken() != JsonToken.START_ARRAY) {
+        throw JsonMappingException.from(p, "Expected an array of transfers");
+      }
+
+      final List<Transfer> transfers = new ArrayList<>();
+      while (p.nextToken() != JsonToken.END_ARRAY) {
+        transfers.add(p.getCurrentToken() == JsonToken.VALUE_NULL ? null : readTransfer(p));
+      }
+
+      return transfers;
+    }
+  }
+
+  /**
+   * @param account account to write
+   * @return account as JSON, e.g. {@code {"id":1,"name":"Andrew","balance":10.5,"currency":"EUR"}}
+   * @throws IOException when the account cannot be written
+   */
+  public byte[] writeAccount(Account account) throws IOException {
+    return writeAccount(account.getId(), account.getName(), account.getBalance(), account.getCurrency());
+  }
+
+  /**
+   * Write a view of an account once, later calls returning the JSON kept in the view
+   *
+   * @param view view to write
+   * @return view as JSON, the same as its account's; the array is shared and must not be modified
+   * @throws IOException when the view cannot be written
+   */
+  public byte[] writeAccount(AccountView view) throws IOException {
+    byte[] json = view.json();
+    if (json == null) {
+      json = writeAccount(view.getId(), view.getName(), view.getBalance(), view.getCurrency());
+      view.json(json);
+    }
+
+    return json;
+  }
+
+  /**
+   * @param statuses outcomes of the transfers of a batch
+   * @return statuses as a JSON array of names
+   * @throws IOException when the statuses cannot be written
+   */
+  public byte[] writeTransferStatuses(TransferStatus[] statuses) throws IOException {
+    final ByteArrayOutputStream buffer = buffers.get();
+    buffer.reset();
+    try (JsonGenerator generator = factory.createGenerator(buffer)) {
+      generator.writeStartArray();
+      for (TransferStatus status : statuses) {
+        generator.writeString(status.name());
+      }
+      generator.writeEndArray();
+    }
+
+    return buffer.toByteArray();
+  }
+
+  private byte[] writeAccount(Long id, String name, Money balance, Currency currency) throws IOException {
+    final ByteArrayOutputStream buffer = buffers.get();
+    buffer.reset();
+    try (JsonGenerator generator = factory.createGenerator(buffer)) {
+      generator.writeStartObject();
+      generator.writeFieldName("id");
+      if (id == null) {
+        generator.writeNull();
+      } else {
+        generator.writeNumber(id);
+      }
+      generator.writeStringField("name", name);
+      generator.writeFieldName("balance");
+      generator.writeNumber(balance.toString());
+      generator.writeStringField("currency", currency == null ? null : currency.getCurrencyCode());
+      generator.writeEndObject();
+    }
+
+    return buffer.toByteArray();
+  }
+
+  private <T> T readAccountAmount(byte[] json, BiFunction<Long, Money, T> request) throws IOException {
+    try (JsonParser p = factory.createParser(json)) {
+      if (p.nextToken() == JsonToken.VALUE_NULL) {
+        return null;
+      }
+      startObject(p);
+
+      Long accountId = null;
+      Money amount = null;
+      while (nextField(p)) {
+        switch (p.getCurrentName()) {
+          case "accountId":
+            accountId = readId(p);
+            break;
+          case "amount":
+            amount = readMoney(p);
+            break;
+          default:
+            throw unrecognized(p);
+        }
+      }
+
+      return request.apply(accountId, amount);
+    }
+  }
+
+  /**
+   * Read a transfer from a parser positioned on its start
+   */
+  private Transfer readTransfer(JsonParser p) throws IOException {
+    startObject(p);
+
+    Long fromAccountId = null;
+    Long toAccountId = null;
+    Money amount = null;
+    while (nextField(p)) {
+      switch (p.getCurrentName()) {
+        case "fromAccountId":
+          fromAccountId = readId(p);
+          break;
+        case "toAccountId":
+          toAccountId = readId(p);
+          break;
+        case "amount":
+          amount = readMoney(p);
+          break;
+        default:
+          throw unrecognized(p);
+      }
+    }
+
+    return new Transfer(fromAccountId, toAccountId, amount);
+  }
+
+  private static void startObject(JsonParser p) throws IOException {
+    if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+      throw JsonMappingException.from(p, "Expected an object");
+    }
+  }
+
+  /**
+   * Move to the value of the next field of the current object
+   *
+   * @return false once the object is read
+   */
+  private static boolean nextField(JsonParser p) throws IOException {
+    if (p.nextToken() == JsonToken.END_OBJECT) {
+      return false;
+    }
+    p.nextToken();
+
+    return true;
+  }
+
+  private static Long readId(JsonParser p) throws IOException {
+    switch (p.getCurrentToken()) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_NUMBER_INT:
+        return p.getLongValue();
+      case VALUE_STRING:
+        try {
+          return Long.valueOf(p.getText().trim());
+        } catch (NumberFormatException e) {
+          throw JsonMappingException.from(p, "Invalid account ID: " + p.getText());
+        }
+      default:
+        throw JsonMappingException.from(p, "Expected an account ID for field " + p.getCurrentName());
+    }
+  }
+
+  private static Money readMoney(JsonParser p) throws IOException {
+    switch (p.getCurrentToken()) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+      case VALUE_STRING:
+        return MoneyDeserializer.read(p);
+      default:
+        throw JsonMappingException.from(p, "Expected an amount for field " + p.getCurrentName());
+    }
+  }
+
+  private static String readName(JsonParser p) throws IOException {
+    if (p.getCurrentToken() == JsonToken.VALUE_NULL) {
+      return null;
+    } else if (!p.getCurrentToken().isScalarValue()) {
+      throw JsonMappingException.from(p, "Expected a name for field " + p.getCurrentName());
+    }
+
+    return p.getText();
+  }
+
+  private static Currency readCurrency(JsonParser p) throws IOException {
+    switch (p.getCurrentToken()) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_STRING:
+        try {
+          return Currency.getInstance(p.getText());
+        } catch (IllegalArgumentException e) {
+          throw JsonMappingException.from(p, "Invalid currency: " + p.getText());
+        }
+      default:
+        throw JsonMappingException.from(p, "Expected a currency code for field " + p.getCurrentName());
+    }
+  }
+
+  private static JsonMappingException unrecognized(JsonParser p) throws IOException {
+    return JsonMappingException.from(p, "Unrecognized field \"" + p.getCurrentName() + "\"");
+  }
+}
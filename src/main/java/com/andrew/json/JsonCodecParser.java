@@ -0,0 +1,54 @@
+package com.andrew.json;
+
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.Withdraw;
+import com.google.inject.TypeLiteral;
+import org.jooby.MediaType;
+import org.jooby.Parser;
+
+import java.util.List;
+
+/**
+ * Parses the JSON bodies of deposits, withdrawals, transfers and transfer batches with {@link JsonCodec}, leaving every
+ * other body to the parsers registered after it, i.e. Jackson data binding.
+ *
+ * @author andrew
+ */
+public class JsonCodecParser implements Parser {
+
+  private static final TypeLiteral<List<Transfer>> TRANSFER_BATCH = new TypeLiteral<List<Transfer>>() {
+  };
+
+  private final JsonCodec codec;
+
+  public JsonCodecParser(JsonCodec codec) {
+    this.codec = codec;
+  }
+
+  @Override
+  public Object parse(TypeLiteral<?> type, Context ctx) throws Throwable {
+    final MediaType contentType = ctx.type();
+    if (contentType.isAny() || !MediaType.json.matches(contentType)) {
+      return ctx.next();
+    }
+
+    final Class<?> rawType = type.getRawType();
+    if (rawType == Transfer.class) {
+      return ctx.ifbody(body -> codec.readTransfer(body.bytes()));
+    } else if (rawType == Deposit.class) {
+      return ctx.ifbody(body -> codec.readDeposit(body.bytes()));
+    } else if (rawType == Withdraw.class) {
+      return ctx.ifbody(body -> codec.readWithdraw(body.bytes()));
+    } else if (TRANSFER_BATCH.equals(type)) {
+      return ctx.ifbody(body -> codec.readTransferBatch(body.bytes()));
+    }
+
+    return ctx.next();
+  }
+
+  @Override
+  public String toString() {
+    return "json-codec";
+  }
+}
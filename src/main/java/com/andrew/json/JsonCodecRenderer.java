@@ -0,0 +1,48 @@
+package com.andrew.json;
+
+import com.andrew.dto.TransferStatus;
+import com.andrew.model.Account;
+import com.andrew.model.AccountView;
+import org.jooby.MediaType;
+import org.jooby.Renderer;
+
+/**
+ * Renders accounts, account views and the statuses of transfer batches as JSON with {@link JsonCodec}, leaving every
+ * other value to the renderers registered after it, i.e. Jackson data binding.
+ *
+ * @author andrew
+ */
+public class JsonCodecRenderer implements Renderer {
+
+  private final JsonCodec codec;
+
+  public JsonCodecRenderer(JsonCodec codec) {
+    this.codec = codec;
+  }
+
+  @Override
+  public void render(Object value, Context ctx) throws Exception {
+    if (!ctx.accepts(MediaType.json)) {
+      return;
+    }
+
+    if (value instanceof AccountView) {
+      send(codec.writeAccount((AccountView) value), ctx);
+    } else if (value instanceof Account) {
+      send(codec.writeAccount((Account) value), ctx);
+    } else if (value instanceof TransferStatus[]) {
+      send(codec.writeTransferStatuses((TransferStatus[]) value), ctx);
+    }
+  }
+
+  @Override
+  public String name() {
+    return "json-codec";
+  }
+
+  private static void send(byte[] json, Context ctx) throws Exception {
+    ctx.type(MediaType.json)
+        .length(json.length)
+        .send(json);
+  }
+}
@@ -0,0 +1,53 @@
+package com.andrew.json;
+
+import com.andrew.model.Money;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads {@link Money} from a JSON number or string. Decimals are parsed straight from the parser's text buffer, so no
+ * intermediate {@code double} or {@code BigDecimal} is ever built.
+ *
+ * @author andrew
+ */
+public class MoneyDeserializer extends StdScalarDeserializer<Money> {
+
+  public MoneyDeserializer() {
+    super(Money.class);
+  }
+
+  @Override
+  public Money deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+    final JsonToken token = p.getCurrentToken();
+    if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT
+        && token != JsonToken.VALUE_STRING) {
+      return (Money) ctxt.handleUnexpectedToken(Money.class, p);
+    }
+
+    return read(p);
+  }
+
+  /**
+   * Read {@link Money} from the current token of a parser, which must be a number or a string
+   *
+   * @param p parser positioned on the amount
+   * @return amount read
+   * @throws JsonMappingException when the token is not a valid amount
+   */
+  static Money read(JsonParser p) throws IOException {
+    if (p.getCurrentToken() == JsonToken.VALUE_NUMBER_INT && p.getTextLength() < 19) {
+      return Money.valueOf(p.getLongValue());
+    }
+
+    try {
+      return Money.parse(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    } catch (NumberFormatException e) {
+      throw JsonMappingException.from(p, e.getMessage());
+    }
+  }
+}
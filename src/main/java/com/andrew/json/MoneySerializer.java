@@ -0,0 +1,25 @@
+package com.andrew.json;
+
+import com.andrew.model.Money;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link Money} as a plain JSON number, e.g. {@code 10.5}
+ *
+ * @author andrew
+ */
+public class MoneySerializer extends StdSerializer<Money> {
+
+  public MoneySerializer() {
+    super(Money.class);
+  }
+
+  @Override
+  public void serialize(Money value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+    gen.writeNumber(value.toString());
+  }
+}
@@ -0,0 +1,102 @@
+package com.andrew.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with power-of-two buckets, from 1 microsecond up to about 1 minute, cheap enough to record
+ * every operation of a hot path: recording takes a leading-zero count and two uncontended {@link LongAdder} updates.
+ *
+ * @author andrew
+ */
+public class LatencyHistogram {
+
+  /**
+   * Upper bound of the first bucket is 2^10 ns, about 1 microsecond
+   */
+  private static final int FIRST_EXPONENT = 10;
+
+  /**
+   * Upper bound of the last finite bucket is 2^36 ns, about 69 seconds
+   */
+  private static final int BUCKETS = 27;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+  private final LongAdder sumNanos = new LongAdder();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * @param nanos duration to record, in nanoseconds
+   */
+  public void record(long nanos) {
+    record(nanos, 1L);
+  }
+
+  /**
+   * Record a sampled duration standing for several occurrences
+   *
+   * @param nanos duration to record, in nanoseconds
+   * @param count number of occurrences the duration stands for
+   */
+  public void record(long nanos, long count) {
+    final long duration = Math.max(nanos, 0L);
+    final int exponent = 64 - Long.numberOfLeadingZeros(Math.max(duration, 1L) - 1);
+    buckets[Math.min(Math.max(exponent - FIRST_EXPONENT, 0), BUCKETS)].add(count);
+    sumNanos.add(duration * count);
+  }
+
+  /**
+   * Record the time elapsed since the specified start
+   *
+   * @param startNanos start, as returned by {@link System#nanoTime()}
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @return number of finite buckets, an overflow bucket follows them
+   */
+  public int getBucketCount() {
+    return BUCKETS;
+  }
+
+  /**
+   * @param bucket bucket index, below {@link #getBucketCount()}
+   * @return inclusive upper bound of the bucket, in nanoseconds
+   */
+  public long getUpperBoundNanos(int bucket) {
+    return 1L << (bucket + FIRST_EXPONENT);
+  }
+
+  /**
+   * @param bucket bucket index, {@link #getBucketCount()} for the overflow bucket
+   * @return number of durations recorded in the bucket
+   */
+  public long getBucket(int bucket) {
+    return buckets[bucket].sum();
+  }
+
+  /**
+   * @return number of recorded durations
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+
+    return count;
+  }
+
+  /**
+   * @return sum of the recorded durations, in nanoseconds
+   */
+  public long getSumNanos() {
+    return sumNanos.sum();
+  }
+}
@@ -0,0 +1,117 @@
+package com.andrew.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format. Each metric family is declared once with
+ * {@link #counter}, {@link #gauge} or {@link #histogram}, then followed by its samples.
+ *
+ * @author andrew
+ */
+public class PrometheusWriter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final StringBuilder text = new StringBuilder(4096);
+
+  /**
+   * Declare a counter family
+   *
+   * @param name name of the family, which should end with {@code _total}
+   * @param help description of the family
+   * @return this writer
+   */
+  public PrometheusWriter counter(String name, String help) {
+    return declare(name, "counter", help);
+  }
+
+  /**
+   * Declare a gauge family
+   *
+   * @param name name of the family
+   * @param help description of the family
+   * @return this writer
+   */
+  public PrometheusWriter gauge(String name, String help) {
+    return declare(name, "gauge", help);
+  }
+
+  /**
+   * Declare a histogram family of durations in seconds
+   *
+   * @param name name of the family, which should end with {@code _seconds}
+   * @param help description of the family
+   * @return this writer
+   */
+  public PrometheusWriter histogram(String name, String help) {
+    return declare(name, "histogram", help);
+  }
+
+  /**
+   * Write a sample of the family declared last
+   *
+   * @param name   name of the family
+   * @param labels labels as alternating names and values
+   * @param value  value of the sample
+   * @return this writer
+   */
+  public PrometheusWriter sample(String name, long value, String... labels) {
+    labels(text.append(name), labels, null).append(' ').append(value).append('\n');
+    return this;
+  }
+
+  /**
+   * Write a histogram of the family declared last, converted from nanoseconds to seconds
+   *
+   * @param name      name of the family
+   * @param histogram histogram to write
+   * @param labels    labels as alternating names and values
+   * @return this writer
+   */
+  public PrometheusWriter sample(String name, LatencyHistogram histogram, String... labels) {
+    long cumulative = 0;
+    for (int i = 0; i < histogram.getBucketCount(); i++) {
+      cumulative += histogram.getBucket(i);
+      labels(text.append(name).append("_bucket"), labels,
+          Double.toString(histogram.getUpperBoundNanos(i) / NANOS_PER_SECOND))
+          .append(' ').append(cumulative).append('\n');
+    }
+    cumulative += histogram.getBucket(histogram.getBucketCount());
+    labels(text.append(name).append("_bucket"), labels, "+Inf").append(' ').append(cumulative).append('\n');
+    labels(text.append(name).append("_sum"), labels, null)
+        .append(' ').append(histogram.getSumNanos() / NANOS_PER_SECOND).append('\n');
+    labels(text.append(name).append("_count"), labels, null).append(' ').append(cumulative).append('\n');
+
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return text.toString();
+  }
+
+  private PrometheusWriter declare(String name, String type, String help) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+        .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    return this;
+  }
+
+  private StringBuilder labels(StringBuilder line, String[] labels, String bucket) {
+    if (labels.length == 0 && bucket == null) {
+      return line;
+    }
+
+    line.append('{');
+    for (int i = 0; i + 1 < labels.length; i += 2) {
+      if (i > 0) {
+        line.append(',');
+      }
+      line.append(labels[i]).append("=\"").append(labels[i + 1]).append('"');
+    }
+    if (bucket != null) {
+      line.append(labels.length > 0 ? "," : "").append("le=\"").append(bucket).append('"');
+    }
+
+    return line.append('}');
+  }
+}
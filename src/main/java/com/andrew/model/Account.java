@@ -1,23 +1,69 @@
 package com.andrew.model;
 
-import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
+ * Account whose balance is held as a count of minor units and updated with compare-and-set, so single-account
+ * operations never block.
+ * <p>
+ * The balance of a hot account can be {@link #stripe(int) striped}: credits are then taken from the room of one of
+ * several stripes picked by thread, like a {@link java.util.concurrent.atomic.LongAdder}, instead of all retrying the
+ * compare-and-set of a single balance, and the stripes are only folded into the balance when a debit needs them or a
+ * credit no longer fits in its stripe. Every fold shares the room left under {@link Long#MAX_VALUE} between the
+ * stripes, so the balance and its stripes never add up beyond it. Readers add the stripes up, retrying while a fold
+ * is moving them into the balance.
+ * <p>
+ * Readers get an immutable {@link #view() view} of the account, kept until the balance changes.
+ *
  * @author andrew
  */
 public class Account {
 
+  /**
+   * Number of decimal places balances and amounts are held with
+   */
+  public static final int SCALE = 2;
+
+  private static final AtomicLongFieldUpdater<Account> BALANCE =
+      AtomicLongFieldUpdater.newUpdater(Account.class, "balance");
+
+  // longs between two stripes, so that credits on different stripes do not share a cache line; each stripe holds the
+  // room left for credits, followed by the room it was granted at the last fold
+  private static final int PADDING = 16;
+
   private Long id;
   private String name;
-  private BigDecimal balance;
+  private volatile long balance;
+  private Currency currency;
+  private volatile AtomicLongArray stripes;
+  // odd while a fold is moving the stripes into the balance
+  private volatile int folds;
+  // failed compare-and-sets of credits, approximate as increments may be lost
+  private volatile int contention;
+  // latest view handed to readers, stale once the balance no longer matches
+  private volatile AccountView view;
 
   public Account() {
   }
 
-  public Account(Long id, String name, BigDecimal balance) {
+  public Account(Long id, String name, Money balance) {
+    this(id, name, balance, null);
+  }
+
+  /**
+   * @param id       account ID
+   * @param name     account name
+   * @param balance  opening balance, {@code null} for 0
+   * @param currency currency of the balance, {@code null} for the default currency
+   */
+  public Account(Long id, String name, Money balance, Currency currency) {
     this.id = id;
     this.name = name;
-    this.balance = balance;
+    this.balance = balance == null ? 0L : toMinorUnits(balance);
+    this.currency = currency;
   }
 
   public Long getId() {
@@ -36,12 +82,238 @@ public class Account {
     this.name = name;
   }
 
-  public BigDecimal getBalance() {
-    return balance;
+  public Money getBalance() {
+    return Money.of(balanceUnits(), SCALE);
+  }
+
+  public void setBalance(Money balance) {
+    final long units = toMinorUnits(balance);
+    final AtomicLongArray stripes = this.stripes;
+    if (stripes == null) {
+      this.balance = units;
+      return;
+    }
+
+    synchronized (this) {
+      folds++;
+      this.balance = units;
+      grant(stripes);
+      folds++;
+    }
+  }
+
+  /**
+   * @return currency of the balance, {@code null} for the default currency
+   */
+  public Currency getCurrency() {
+    return currency;
+  }
+
+  public void setCurrency(Currency currency) {
+    this.currency = currency;
+  }
+
+  /**
+   * @return balance in minor units
+   */
+  public long balanceUnits() {
+    final AtomicLongArray stripes = this.stripes;
+    if (stripes == null) {
+      return balance;
+    }
+
+    while (true) {
+      final int version = folds;
+      long total = balance;
+      for (int i = 0; i < stripes.length(); i += PADDING) {
+        total += stripes.get(i + 1) - stripes.get(i);
+      }
+      if ((version & 1) == 0 && folds == version) {
+        return total;
+      }
+    }
   }
 
-  public void setBalance(BigDecimal balance) {
-    this.balance = balance;
+  /**
+   * Add the specified amount to the balance, or to a stripe of a striped balance when positive and the stripe has
+   * room for it. Otherwise the stripes are folded and the amount added to the balance.
+   *
+   * @param amount amount in minor units
+   * @return balance after the credit, in minor units
+   * @throws ArithmeticException when the balance would overflow
+   */
+  public long credit(long amount) {
+    final AtomicLongArray stripes = this.stripes;
+    if (stripes != null && amount > 0L) {
+      final int stripe = ((int) Thread.currentThread().getId() & (stripes.length() / PADDING - 1)) * PADDING;
+      long room;
+      while ((room = stripes.get(stripe)) >= amount) {
+        if (stripes.compareAndSet(stripe, room, room - amount)) {
+          return balanceUnits();
+        }
+      }
+      fold(stripes, amount);
+      return balanceUnits();
+    }
+
+    while (true) {
+      final long current = balance;
+      final long updated = Math.addExact(current, amount);
+      if (BALANCE.compareAndSet(this, current, updated)) {
+        return updated;
+      }
+      contention++;
+    }
+  }
+
+  /**
+   * @param amount positive amount in minor units
+   * @return whether the balance has room for the amount, as of now
+   */
+  public boolean canCredit(long amount) {
+    return balanceUnits() <= Long.MAX_VALUE - amount;
+  }
+
+  /**
+   * Subtract the specified amount from the balance unless that would make it negative. A striped balance folds its
+   * stripes first when the balance alone is insufficient.
+   *
+   * @param amount amount in minor units
+   * @return true when the balance was debited, false when it is insufficient
+   */
+  public boolean debit(long amount) {
+    if (debitBalance(amount)) {
+      return true;
+    }
+
+    final AtomicLongArray stripes = this.stripes;
+    if (stripes == null) {
+      return false;
+    }
+    fold(stripes, 0L);
+
+    return debitBalance(amount);
+  }
+
+  /**
+   * Split the balance into stripes credited independently, so that concurrent credits stop contending on it
+   *
+   * @param count number of stripes, rounded up to a power of 2
+   * @return true when the balance was striped by this call, false when it already was
+   */
+  public synchronized boolean stripe(int count) {
+    if (stripes != null) {
+      return false;
+    }
+
+    final AtomicLongArray created = new AtomicLongArray(Integer.highestOneBit(Math.max(count, 1) * 2 - 1) * PADDING);
+    grant(created);
+    stripes = created;
+    return true;
+  }
+
+  /**
+   * @return whether the balance is striped
+   */
+  public boolean striped() {
+    return stripes != null;
+  }
+
+  /**
+   * @return number of times credits found the balance changed by another credit and had to retry
+   */
+  public int contention() {
+    return contention;
+  }
+
+  /**
+   * Return an immutable copy of the account as of its current balance. The balance is the version of the view: the
+   * view returned last is reused as long as the balance has not changed, so that reads of an account between two
+   * changes share the same view and its JSON. Nothing is locked: a reader racing with a change may replace the view
+   * with an older one, which the next read finds stale and rebuilds.
+   *
+   * @return view of the account
+   */
+  public AccountView view() {
+    final long units = balanceUnits();
+    final AccountView current = view;
+    if (current != null && current.balanceUnits() == units && Objects.equals(current.getName(), getName())
+        && current.getCurrency() == getCurrency()) {
+      return current;
+    }
+
+    final AccountView updated = new AccountView(getId(), getName(), units, getCurrency());
+    view = updated;
+    return updated;
+  }
+
+  private boolean debitBalance(long amount) {
+    long current;
+    do {
+      current = balance;
+      if (current < amount) {
+        return false;
+      }
+    } while (!BALANCE.compareAndSet(this, current, current - amount));
+
+    return true;
+  }
+
+  /**
+   * Move the stripes into the balance along with the specified amount, one fold at a time, then grant the stripes
+   * their share of the room left. What the stripes hold never exceeds the room they were granted, so folding them
+   * cannot overflow.
+   *
+   * @param amount amount in minor units, credited to the balance
+   * @throws ArithmeticException when the amount would overflow the balance, the stripes are folded all the same
+   */
+  private synchronized void fold(AtomicLongArray stripes, long amount) {
+    folds++;
+    try {
+      long folded = 0L;
+      for (int i = 0; i < stripes.length(); i += PADDING) {
+        folded += stripes.get(i + 1) - stripes.getAndSet(i, 0L);
+      }
+      BALANCE.getAndAdd(this, folded);
+
+      long current;
+      do {
+        current = balance;
+      } while (!BALANCE.compareAndSet(this, current, Math.addExact(current, amount)));
+    } finally {
+      grant(stripes);
+      folds++;
+    }
+  }
+
+  /**
+   * Share the room left under {@link Long#MAX_VALUE} by the balance between the stripes, discarding what they hold
+   */
+  private void grant(AtomicLongArray stripes) {
+    final long room = (Long.MAX_VALUE - Math.max(balance, 0L)) / (stripes.length() / PADDING);
+    for (int i = 0; i < stripes.length(); i += PADDING) {
+      stripes.set(i + 1, room);
+      stripes.set(i, room);
+    }
+  }
+
+  /**
+   * Convert an amount to minor units
+   *
+   * @param amount amount to convert
+   * @return amount in minor units
+   * @throws IllegalArgumentException when amount has more than {@link #SCALE} decimal places or is out of range
+   */
+  public static long toMinorUnits(Money amount) {
+    if (amount.getScale() > SCALE && amount.stripTrailingZeros().getScale() > SCALE) {
+      throw new IllegalArgumentException("Amount cannot have more than " + SCALE + " decimal places");
+    }
+
+    try {
+      return amount.toMinorUnits(SCALE);
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Amount is out of range");
+    }
   }
 
   @Override
@@ -63,8 +335,9 @@ public class Account {
   public String toString() {
     return "Account{" +
         "id=" + id +
-        ", name='" + name + '\'' +
-        ", balance=" + balance +
+        ", name='" + getName() + '\'' +
+        ", balance=" + getBalance() +
+        ", currency=" + getCurrency() +
         '}';
   }
 }
@@ -0,0 +1,84 @@
+package com.andrew.model;
+
+import java.util.Currency;
+
+/**
+ * Immutable copy of an {@link Account} as of a single balance, returned to readers instead of the live account so
+ * that they never see it change while they read it.
+ * <p>
+ * A view also keeps its JSON once written, so that reads of an account whose balance has not changed since reuse
+ * the same bytes rather than serialising it again.
+ *
+ * @author andrew
+ */
+public final class AccountView {
+
+  private final Long id;
+  private final String name;
+  // named as the property, so that data binding orders the properties as it does for accounts
+  private final long balance;
+  private final Currency currency;
+  private volatile byte[] json;
+
+  /**
+   * @param id           account ID
+   * @param name         account name
+   * @param balanceUnits balance in minor units
+   * @param currency     currency of the balance, {@code null} for the default currency
+   */
+  public AccountView(Long id, String name, long balanceUnits, Currency currency) {
+    this.id = id;
+    this.name = name;
+    this.balance = balanceUnits;
+    this.currency = currency;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Money getBalance() {
+    return Money.of(balance, Account.SCALE);
+  }
+
+  public Currency getCurrency() {
+    return currency;
+  }
+
+  /**
+   * @return balance in minor units
+   */
+  public long balanceUnits() {
+    return balance;
+  }
+
+  /**
+   * @return JSON of the view, {@code null} until {@link #json(byte[]) kept}
+   */
+  public byte[] json() {
+    return json;
+  }
+
+  /**
+   * Keep the JSON of the view. Writers racing to keep it write the same bytes, so either may win.
+   *
+   * @param json JSON of the view, which must not be modified afterwards
+   */
+  public void json(byte[] json) {
+    this.json = json;
+  }
+
+  @Override
+  public String toString() {
+    return "AccountView{" +
+        "id=" + id +
+        ", name='" + name + '\'' +
+        ", balance=" + getBalance() +
+        ", currency=" + currency +
+        '}';
+  }
+}
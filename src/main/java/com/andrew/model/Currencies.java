@@ -0,0 +1,65 @@
+package com.andrew.model;
+
+import java.util.Currency;
+
+/**
+ * Maps currencies to and from their ISO 4217 numeric codes, which is how account currencies are stored in the
+ * journal, in snapshots and in off-heap records, and how exchange rates are indexed.
+ *
+ * @author andrew
+ */
+public final class Currencies {
+
+  /**
+   * Numeric codes have 3 digits, 0 standing for no currency
+   */
+  public static final int MAX_CODE = 1000;
+
+  private static final Currency[] BY_CODE = new Currency[MAX_CODE];
+
+  static {
+    for (Currency currency : Currency.getAvailableCurrencies()) {
+      final int code = currency.getNumericCode();
+      if (code > 0 && code < MAX_CODE && BY_CODE[code] == null) {
+        BY_CODE[code] = currency;
+      }
+    }
+  }
+
+  private Currencies() {
+  }
+
+  /**
+   * @param currency currency, may be {@code null}
+   * @return numeric code of the currency, 0 for {@code null}
+   * @throws IllegalArgumentException when the currency has no numeric code of its own
+   */
+  public static int code(Currency currency) {
+    if (currency == null) {
+      return 0;
+    }
+
+    final int code = currency.getNumericCode();
+    if (code <= 0 || code >= MAX_CODE || BY_CODE[code] != currency) {
+      throw new IllegalArgumentException("Currency " + currency + " is not supported");
+    }
+
+    return code;
+  }
+
+  /**
+   * @param code numeric code
+   * @return currency with the numeric code, {@code null} for 0
+   * @throws IllegalArgumentException when no currency has the numeric code
+   */
+  public static Currency of(int code) {
+    if (code == 0) {
+      return null;
+    }
+    if (code < 0 || code >= MAX_CODE || BY_CODE[code] == null) {
+      throw new IllegalArgumentException("Unknown currency code " + code);
+    }
+
+    return BY_CODE[code];
+  }
+}
@@ -0,0 +1,367 @@
+package com.andrew.model;
+
+import com.andrew.json.MoneyDeserializer;
+import com.andrew.json.MoneySerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable fixed-point amount made of a count of minor units and a decimal scale, e.g. 12.34 is 1234 units with a
+ * scale of 2. Arithmetic is overflow checked and never allocates anything but the result.
+ *
+ * @author andrew
+ */
+@JsonSerialize(using = MoneySerializer.class)
+@JsonDeserialize(using = MoneyDeserializer.class)
+public final class Money implements Comparable<Money> {
+
+  /**
+   * Largest supported number of decimal places
+   */
+  public static final int MAX_SCALE = 18;
+
+  public static final Money ZERO = new Money(0L, 0);
+
+  private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1L;
+    for (int i = 1; i <= MAX_SCALE; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+    }
+  }
+
+  private final long units;
+  private final int scale;
+
+  private Money(long units, int scale) {
+    this.units = units;
+    this.scale = scale;
+  }
+
+  /**
+   * @param units amount in minor units
+   * @param scale number of decimal places of the minor units
+   * @return amount of {@code units * 10^-scale}
+   */
+  public static Money of(long units, int scale) {
+    if (scale < 0 || scale > MAX_SCALE) {
+      throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE);
+    }
+
+    return units == 0L && scale == 0 ? ZERO : new Money(units, scale);
+  }
+
+  /**
+   * @param value whole amount
+   * @return amount without decimal places
+   */
+  public static Money valueOf(long value) {
+    return of(value, 0);
+  }
+
+  /**
+   * @param value amount
+   * @return the same amount as fixed-point
+   * @throws ArithmeticException when the value does not fit in 64 bits of minor units
+   */
+  public static Money valueOf(BigDecimal value) {
+    BigDecimal normalized = value.stripTrailingZeros();
+    if (normalized.scale() < 0) {
+      normalized = normalized.setScale(0);
+    }
+    if (normalized.scale() > MAX_SCALE) {
+      throw new ArithmeticException("Amount cannot have more than " + MAX_SCALE + " decimal places");
+    }
+
+    return of(normalized.unscaledValue().longValueExact(), normalized.scale());
+  }
+
+  /**
+   * Parse a decimal number such as {@code 12.34}, {@code -5} or {@code 1.5e2}
+   *
+   * @param text decimal number
+   * @return parsed amount
+   * @throws NumberFormatException when the text is not a decimal number or is out of range
+   */
+  public static Money parse(CharSequence text) {
+    final int length = text.length();
+    final char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = text.charAt(i);
+    }
+
+    return parse(chars, 0, length);
+  }
+
+  /**
+   * Parse a decimal number straight out of a character buffer
+   *
+   * @param buffer buffer holding the number
+   * @param offset index of the first character
+   * @param length number of characters
+   * @return parsed amount
+   * @throws NumberFormatException when the text is not a decimal number or is out of range
+   */
+  public static Money parse(char[] buffer, int offset, int length) {
+    final int end = offset + length;
+    int i = offset;
+    boolean negative = false;
+    if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+      negative = buffer[i++] == '-';
+    }
+
+    long units = 0L;
+    int scale = 0;
+    int digits = 0;
+    int trailingZeros = 0;
+    boolean fraction = false;
+    for (; i < end; i++) {
+      final char c = buffer[i];
+      if (c >= '0' && c <= '9') {
+        digits++;
+        if (!fraction) {
+          units = appendDigit(units, c - '0', buffer, offset, length);
+        } else if (c == '0') {
+          // only significant once followed by a non-zero digit
+          trailingZeros++;
+        } else {
+          for (; trailingZeros > 0; trailingZeros--, scale++) {
+            units = appendDigit(units, 0, buffer, offset, length);
+          }
+          units = appendDigit(units, c - '0', buffer, offset, length);
+          scale++;
+        }
+      } else if (c == '.' && !fraction) {
+        fraction = true;
+      } else if (c == 'e' || c == 'E') {
+        break;
+      } else {
+        throw invalid(buffer, offset, length);
+      }
+    }
+    if (digits == 0) {
+      throw invalid(buffer, offset, length);
+    }
+
+    if (i < end) {
+      scale -= parseExponent(buffer, i + 1, end, offset, length);
+    }
+    if (scale < 0) {
+      if (-scale > MAX_SCALE) {
+        throw outOfRange(buffer, offset, length);
+      }
+      units = multiply(units, POWERS_OF_TEN[-scale], buffer, offset, length);
+      scale = 0;
+    }
+    if (scale > MAX_SCALE) {
+      throw outOfRange(buffer, offset, length);
+    }
+
+    return of(negative ? -units : units, scale);
+  }
+
+  public long getUnits() {
+    return units;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public int signum() {
+    return Long.signum(units);
+  }
+
+  /**
+   * @return amount with the opposite sign
+   * @throws ArithmeticException when the result overflows
+   */
+  public Money negate() {
+    return of(Math.negateExact(units), scale);
+  }
+
+  /**
+   * @param other amount to add
+   * @return sum of both amounts, with the larger of both scales
+   * @throws ArithmeticException when the result overflows
+   */
+  public Money add(Money other) {
+    if (scale == other.scale) {
+      return of(Math.addExact(units, other.units), scale);
+    }
+
+    final int resultScale = Math.max(scale, other.scale);
+    return of(Math.addExact(toMinorUnits(resultScale), other.toMinorUnits(resultScale)), resultScale);
+  }
+
+  /**
+   * @param other amount to subtract
+   * @return difference of both amounts, with the larger of both scales
+   * @throws ArithmeticException when the result overflows
+   */
+  public Money subtract(Money other) {
+    if (scale == other.scale) {
+      return of(Math.subtractExact(units, other.units), scale);
+    }
+
+    final int resultScale = Math.max(scale, other.scale);
+    return of(Math.subtractExact(toMinorUnits(resultScale), other.toMinorUnits(resultScale)), resultScale);
+  }
+
+  /**
+   * Express this amount in minor units of the specified scale
+   *
+   * @param targetScale number of decimal places of the result
+   * @return amount in minor units of {@code targetScale}
+   * @throws ArithmeticException when the amount has more significant decimal places than {@code targetScale} or the
+   *                             result overflows
+   */
+  public long toMinorUnits(int targetScale) {
+    if (targetScale < 0 || targetScale > MAX_SCALE) {
+      throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE);
+    }
+    if (targetScale >= scale) {
+      return Math.multiplyExact(units, POWERS_OF_TEN[targetScale - scale]);
+    }
+
+    final long divisor = POWERS_OF_TEN[scale - targetScale];
+    if (units % divisor != 0L) {
+      throw new ArithmeticException("Rounding necessary");
+    }
+
+    return units / divisor;
+  }
+
+  /**
+   * @return same amount without insignificant trailing zeros
+   */
+  public Money stripTrailingZeros() {
+    long strippedUnits = units;
+    int strippedScale = scale;
+    while (strippedScale > 0 && strippedUnits % 10L == 0L) {
+      strippedUnits /= 10L;
+      strippedScale--;
+    }
+
+    return strippedScale == scale ? this : of(strippedUnits, strippedScale);
+  }
+
+  public BigDecimal toBigDecimal() {
+    return BigDecimal.valueOf(units, scale);
+  }
+
+  @Override
+  public int compareTo(Money other) {
+    if (scale == other.scale) {
+      return Long.compare(units, other.units);
+    }
+
+    final int commonScale = Math.max(scale, other.scale);
+    try {
+      return Long.compare(toMinorUnits(commonScale), other.toMinorUnits(commonScale));
+    } catch (ArithmeticException e) {
+      return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+  }
+
+  /**
+   * Amounts are equal when they are numerically equal, regardless of their scale
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final Money stripped = stripTrailingZeros();
+    final Money other = ((Money) o).stripTrailingZeros();
+
+    return stripped.units == other.units && stripped.scale == other.scale;
+  }
+
+  @Override
+  public int hashCode() {
+    final Money stripped = stripTrailingZeros();
+    return 31 * Long.hashCode(stripped.units) + stripped.scale;
+  }
+
+  /**
+   * @return plain decimal representation without insignificant trailing zeros, e.g. {@code 10} or {@code 10.5}
+   */
+  @Override
+  public String toString() {
+    final Money stripped = stripTrailingZeros();
+    if (stripped.scale == 0) {
+      return Long.toString(stripped.units);
+    }
+    if (stripped.units == Long.MIN_VALUE) {
+      return stripped.toBigDecimal().toPlainString();
+    }
+
+    final long magnitude = Math.abs(stripped.units);
+    final long divisor = POWERS_OF_TEN[stripped.scale];
+    final String fraction = Long.toString(magnitude % divisor);
+
+    final StringBuilder builder = new StringBuilder(21 + stripped.scale);
+    if (stripped.units < 0) {
+      builder.append('-');
+    }
+    builder.append(magnitude / divisor).append('.');
+    for (int i = fraction.length(); i < stripped.scale; i++) {
+      builder.append('0');
+    }
+
+    return builder.append(fraction).toString();
+  }
+
+  private static long appendDigit(long units, int digit, char[] buffer, int offset, int length) {
+    if (units > (Long.MAX_VALUE - digit) / 10L) {
+      throw outOfRange(buffer, offset, length);
+    }
+
+    return units * 10L + digit;
+  }
+
+  private static long multiply(long units, long factor, char[] buffer, int offset, int length) {
+    try {
+      return Math.multiplyExact(units, factor);
+    } catch (ArithmeticException e) {
+      throw outOfRange(buffer, offset, length);
+    }
+  }
+
+  private static int parseExponent(char[] buffer, int start, int end, int offset, int length) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+      negative = buffer[i++] == '-';
+    }
+    if (i == end) {
+      throw invalid(buffer, offset, length);
+    }
+
+    int exponent = 0;
+    for (; i < end; i++) {
+      final char c = buffer[i];
+      if (c < '0' || c > '9') {
+        throw invalid(buffer, offset, length);
+      }
+      exponent = exponent * 10 + (c - '0');
+      if (exponent > 1000) {
+        throw outOfRange(buffer, offset, length);
+      }
+    }
+
+    return negative ? -exponent : exponent;
+  }
+
+  private static NumberFormatException invalid(char[] buffer, int offset, int length) {
+    return new NumberFormatException("Invalid amount: " + new String(buffer, offset, length));
+  }
+
+  private static NumberFormatException outOfRange(char[] buffer, int offset, int length) {
+    return new NumberFormatException("Amount is out of range: " + new String(buffer, offset, length));
+  }
+}
@@ -0,0 +1,204 @@
+package com.andrew.repository;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Account;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out account IDs, pages through accounts in ID order, records account creation in the journal and rebuilds
+ * the accounts from it, leaving storage to the implementations.
+ *
+ * @author andrew
+ */
+abstract class AbstractAccountRepository implements AccountRepository {
+
+  private final AtomicLong counter = new AtomicLong(1L);
+  // ranges of IDs settled beyond the published ID, from their first ID to the ID following them
+  private final TreeMap<Long, Long> settled = new TreeMap<>();
+  private final AccountJournal journal;
+
+  // every ID below it is settled: its account is inserted, or its creation failed or was left unused
+  private volatile long published = 1L;
+
+  AbstractAccountRepository(AccountJournal journal) {
+    this.journal = journal;
+  }
+
+  @Override
+  public Account create(CreateAccount createAccount) {
+    final Long id = counter.getAndIncrement();
+    try {
+      final long openingBalance = createAccount.getOpeningBalance() == null ? 0L
+          : Account.toMinorUnits(createAccount.getOpeningBalance());
+      journal.write(JournalEvent.create(id, createAccount.getName(), openingBalance, createAccount.getCurrency()));
+
+      return insert(id, createAccount.getName(), openingBalance, createAccount.getCurrency());
+    } finally {
+      settle(id, id + 1);
+    }
+  }
+
+  @Override
+  public long reserveIds(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Number of IDs to reserve must be greater than 0");
+    }
+
+    return counter.getAndAdd(count);
+  }
+
+  /**
+   * Opening balances are converted and the creations journaled as a single frame before any account is stored, so a
+   * journal failure creates none of them. The block is settled once every account is stored or the creation failed,
+   * so pages never move past the block before its accounts are there.
+   */
+  @Override
+  public int createAll(long firstId, CreateAccount[] createAccounts) {
+    if (firstId < 1L || firstId + createAccounts.length > counter.get()) {
+      throw new IllegalArgumentException("IDs from " + firstId + " were not reserved");
+    }
+
+    try {
+      final long[] openingBalances = new long[createAccounts.length];
+      final List<JournalEvent> events = new ArrayList<>(createAccounts.length);
+      for (int i = 0; i < createAccounts.length; i++) {
+        final CreateAccount createAccount = createAccounts[i];
+        if (createAccount != null) {
+          openingBalances[i] = createAccount.getOpeningBalance() == null ? 0L
+              : Account.toMinorUnits(createAccount.getOpeningBalance());
+          events.add(JournalEvent.create(firstId + i, createAccount.getName(), openingBalances[i],
+              createAccount.getCurrency()));
+        }
+      }
+      if (events.isEmpty()) {
+        return 0;
+      }
+      journal.write(events.toArray(new JournalEvent[0]));
+
+      ensureCapacity(events.size());
+      for (int i = 0; i < createAccounts.length; i++) {
+        final CreateAccount createAccount = createAccounts[i];
+        if (createAccount != null) {
+          insert(firstId + i, createAccount.getName(), openingBalances[i], createAccount.getCurrency());
+        }
+      }
+
+      return events.size();
+    } finally {
+      settle(firstId, firstId + createAccounts.length);
+    }
+  }
+
+  /**
+   * IDs are handed out in sequence and accounts are never removed, so the ID range itself is the ordered index: a page
+   * is read by looking the IDs following the cursor up, without sorting or copying the accounts. An ID is handed out
+   * before its account is journaled and inserted, so pages stop at the published ID: a page never moves the cursor past
+   * an account still being created, which shows up in a later page once every account below it is settled. IDs whose
+   * creation failed leave gaps.
+   */
+  @Override
+  public List<Account> findPage(long after, int limit) {
+    if (after < 0 || limit < 1) {
+      throw new IllegalArgumentException("Cursor must not be negative and limit must be greater than 0");
+    }
+
+    final long end = published;
+    if (after >= end - 1) {
+      return new ArrayList<>();
+    }
+
+    final List<Account> page = new ArrayList<>(Math.min(limit, 1024));
+    for (long id = after + 1; id < end && page.size() < limit; id++) {
+      final Account account = findById(id);
+      if (account != null) {
+        page.add(account);
+      }
+    }
+
+    return page;
+  }
+
+  @Override
+  public long getPublishedId() {
+    return published;
+  }
+
+  /**
+   * Settle a range of IDs, publishing it along with the settled ranges following it once every ID below it is settled
+   *
+   * @param from first ID of the range
+   * @param to   ID following the range
+   */
+  private synchronized void settle(long from, long to) {
+    if (from != published) {
+      settled.put(from, to);
+      return;
+    }
+
+    long next = to;
+    for (Long end = settled.remove(next); end != null; end = settled.remove(next)) {
+      next = end;
+    }
+    published = next;
+  }
+
+  /**
+   * Store a new account
+   *
+   * @param id       account ID
+   * @param name     account name
+   * @param balance  opening balance in minor units
+   * @param currency currency of the account, {@code null} for the default currency
+   * @return stored account
+   */
+  abstract Account insert(long id, String name, long balance, Currency currency);
+
+  /**
+   * Make room for accounts about to be inserted in bulk, so that storage grows once for all of them rather than as
+   * they are inserted
+   *
+   * @param count number of accounts about to be inserted
+   */
+  void ensureCapacity(int count) {
+  }
+
+  /**
+   * Rebuild the accounts recorded in the journal, which is then kept open for appending. Implementations call this
+   * once their storage is initialized.
+   */
+  final void openJournal() {
+    journal.open(this::replay);
+    published = counter.get();
+  }
+
+  /**
+   * Apply a recorded event. Balance checks were done when the event was recorded, so amounts are applied as is.
+   */
+  private void replay(JournalEvent event) {
+    switch (event.getType()) {
+      case CREATE:
+        insert(event.getAccountId(), event.getName(), event.getAmount(), event.getCurrency());
+        if (counter.get() <= event.getAccountId()) {
+          counter.set(event.getAccountId() + 1);
+        }
+        break;
+      case DEPOSIT:
+        findById(event.getAccountId()).credit(event.getAmount());
+        break;
+      case WITHDRAW:
+        findById(event.getAccountId()).credit(-event.getAmount());
+        break;
+      case TRANSFER:
+        findById(event.getAccountId()).credit(-event.getAmount());
+        findById(event.getToAccountId()).credit(event.getToAmount());
+        break;
+      default:
+        throw new IllegalStateException("Unknown journal event " + event);
+    }
+  }
+}
@@ -0,0 +1,656 @@
+package com.andrew.repository;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only journal of the events changing account balances.
+ * <p>
+ * Callers encode their events into a frame and hand it to a single committer thread, which writes every frame queued
+ * so far with one gathering write and makes them durable with a single {@link FileChannel#force(boolean)} call (group
+ * commit). A frame is {@code [payload length][CRC32 of payload][events...]}; the events of a frame are replayed all
+ * together or not at all, so a torn write at the end of the file is simply discarded on replay.
+ * <p>
+ * The journal is split into numbered segments. Once a segment is closed it is never written again, so a snapshot can
+ * be built off the request path by folding the closed segments into the previous snapshot (see
+ * {@link AccountSnapshot}), after which those segments are deleted. Opening the journal loads the latest snapshot and
+ * replays only the segments written after it.
+ *
+ * @author andrew
+ */
+@Singleton
+public class AccountJournal implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccountJournal.class);
+
+  private static final int MAGIC = 0x4D544A31;
+  private static final int FILE_HEADER_SIZE = 4;
+  private static final int FRAME_HEADER_SIZE = 8;
+  private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+  private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+  private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String SNAPSHOT_SUFFIX = ".bin";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private final Path directory;
+  private final long segmentSize;
+  private final int groupCommitSize;
+  private final long groupCommitDelayNanos;
+  private final long snapshotIntervalNanos;
+  private final BlockingQueue<PendingFrame> queue = new LinkedBlockingQueue<>();
+  private final Object snapshotLock = new Object();
+
+  private final LongAdder frames = new LongAdder();
+  private final LongAdder commits = new LongAdder();
+  private final LongAdder snapshots = new LongAdder();
+
+  private FileChannel channel;
+  private Thread committer;
+  private ScheduledExecutorService snapshotter;
+  private volatile boolean running;
+  private volatile long segment;
+  private volatile long snapshotSegment;
+  private volatile CompletableFuture<Long> rollRequest;
+
+  @Inject
+  public AccountJournal(Config config) {
+    this(config.getBoolean("journal.enabled") ? Paths.get(config.getString("journal.dir")) : null,
+        config.getBytes("journal.segment-size"),
+        config.getInt("journal.group-commit.size"),
+        config.getDuration("journal.group-commit.delay", TimeUnit.MICROSECONDS),
+        config.getDuration("journal.snapshot.interval", TimeUnit.MICROSECONDS), TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * Journal which rolls segments every 64MB and only takes snapshots on demand
+   *
+   * @param directory        directory of the journal segments and snapshots, {@code null} to disable journaling
+   * @param groupCommitSize  maximum number of frames made durable by a single force
+   * @param groupCommitDelay how long the committer may wait for more frames before forcing a partial group
+   * @param unit             unit of {@code groupCommitDelay}
+   */
+  public AccountJournal(Path directory, int groupCommitSize, long groupCommitDelay, TimeUnit unit) {
+    this(directory, DEFAULT_SEGMENT_SIZE, groupCommitSize, groupCommitDelay, 0L, unit);
+  }
+
+  /**
+   * @param directory        directory of the journal segments and snapshots, {@code null} to disable journaling
+   * @param segmentSize      size in bytes after which the committer starts a new segment
+   * @param groupCommitSize  maximum number of frames made durable by a single force
+   * @param groupCommitDelay how long the committer may wait for more frames before forcing a partial group
+   * @param snapshotInterval delay between two snapshots, 0 to only take snapshots on demand
+   * @param unit             unit of {@code groupCommitDelay} and {@code snapshotInterval}
+   */
+  public AccountJournal(Path directory, long segmentSize, int groupCommitSize, long groupCommitDelay,
+                        long snapshotInterval, TimeUnit unit) {
+    if (segmentSize <= FILE_HEADER_SIZE) {
+      throw new IllegalArgumentException("Segment size must be greater than " + FILE_HEADER_SIZE);
+    }
+    if (groupCommitSize < 1) {
+      throw new IllegalArgumentException("Group commit size must be greater than 0");
+    }
+    if (snapshotInterval < 0) {
+      throw new IllegalArgumentException("Snapshot interval cannot be negative");
+    }
+
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.groupCommitSize = groupCommitSize;
+    this.groupCommitDelayNanos = unit.toNanos(groupCommitDelay);
+    this.snapshotIntervalNanos = unit.toNanos(snapshotInterval);
+  }
+
+  /**
+   * @return journal which does not record anything
+   */
+  public static AccountJournal disabled() {
+    return new AccountJournal(null, 1, 0, TimeUnit.MILLISECONDS);
+  }
+
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * Load the latest snapshot, replay every complete frame written after it, truncate a torn tail and open the journal
+   * for appending. Snapshotted accounts are replayed as {@link JournalEvent.Type#CREATE} events carrying their
+   * snapshotted balance.
+   *
+   * @param consumer receives every recorded event, in journal order
+   * @throws UncheckedIOException when the journal cannot be read or opened
+   */
+  public synchronized void open(Consumer<JournalEvent> consumer) {
+    if (!isEnabled() || running) {
+      return;
+    }
+
+    try {
+      Files.createDirectories(directory);
+      deleteTemporaryFiles();
+
+      final TreeSet<Long> snapshotSegments = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+      snapshotSegment = snapshotSegments.isEmpty() ? 0L : snapshotSegments.last();
+      if (snapshotSegment > 0L) {
+        AccountSnapshot.load(snapshotPath(snapshotSegment), consumer);
+      }
+      deleteObsoleteFiles(snapshotSegment);
+
+      final TreeSet<Long> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+      if (!segments.isEmpty() && segments.first() != snapshotSegment + 1) {
+        throw new IOException("Missing journal segments between snapshot " + snapshotSegment + " and segment "
+            + segments.first());
+      }
+      segment = segments.isEmpty() ? snapshotSegment + 1 : segments.last();
+      for (long closed : segments.headSet(segment)) {
+        replayClosedSegment(closed, consumer);
+      }
+      openSegment(consumer);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to open journal " + directory, e);
+    }
+
+    running = true;
+    committer = new Thread(this::commitLoop, "journal-committer");
+    committer.setDaemon(true);
+    committer.start();
+
+    if (snapshotIntervalNanos > 0L) {
+      snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalNanos, snapshotIntervalNanos,
+          TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Append the events as a single frame
+   *
+   * @param events events to record together
+   * @return future completed once the events are durable
+   */
+  public CompletableFuture<Void> append(JournalEvent... events) {
+    if (!isEnabled() || events.length == 0) {
+      return DONE;
+    }
+
+    int size = 0;
+    for (JournalEvent event : events) {
+      size += event.encodedSize();
+    }
+    final ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + size);
+    frame.position(FRAME_HEADER_SIZE);
+    for (JournalEvent event : events) {
+      event.encode(frame);
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(frame.array(), FRAME_HEADER_SIZE, size);
+    frame.putInt(0, size);
+    frame.putInt(4, (int) crc.getValue());
+    frame.flip();
+
+    final PendingFrame pending = new PendingFrame(frame);
+    if (!running) {
+      pending.done.completeExceptionally(new IllegalStateException("Journal is not open"));
+      return pending.done;
+    }
+
+    queue.add(pending);
+    // the committer may have stopped in the meantime: whichever of it and this appender removes the frame fails it
+    if (!running && queue.remove(pending)) {
+      pending.done.completeExceptionally(new IllegalStateException("Journal is closed"));
+    }
+
+    return pending.done;
+  }
+
+  /**
+   * Append the events as a single frame and wait until they are durable
+   *
+   * @param events events to record together
+   * @throws UncheckedIOException when the events could not be written
+   */
+  public void write(JournalEvent... events) {
+    if (!isEnabled()) {
+      return;
+    }
+
+    try {
+      append(events).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw new UncheckedIOException((IOException) e.getCause());
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Close the current segment and fold every closed segment into a new snapshot. Appends carry on while the snapshot
+   * is built, they go to the next segment.
+   *
+   * @return number of the last segment included in the snapshot, 0 when there is no snapshot
+   * @throws IllegalStateException when the journal is not open
+   * @throws UncheckedIOException  when the snapshot could not be written
+   */
+  public long snapshot() {
+    if (!isEnabled()) {
+      return 0L;
+    }
+
+    synchronized (snapshotLock) {
+      final CompletableFuture<Long> request = new CompletableFuture<>();
+      rollRequest = request;
+      if (!running) {
+        rollRequest = null;
+        throw new IllegalStateException("Journal is not open");
+      }
+
+      final long lastClosed;
+      try {
+        lastClosed = request.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw new UncheckedIOException((IOException) e.getCause());
+        }
+        if (e.getCause() instanceof IllegalStateException) {
+          throw (IllegalStateException) e.getCause();
+        }
+        throw e;
+      }
+      if (lastClosed <= snapshotSegment) {
+        return snapshotSegment;
+      }
+
+      final List<Path> closed = new ArrayList<>();
+      for (long i = snapshotSegment + 1; i <= lastClosed; i++) {
+        closed.add(segmentPath(i));
+      }
+
+      try {
+        AccountSnapshot.compact(snapshotSegment > 0L ? snapshotPath(snapshotSegment) : null, closed,
+            snapshotPath(lastClosed));
+        snapshotSegment = lastClosed;
+        deleteObsoleteFiles(lastClosed);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to write snapshot of journal " + directory, e);
+      }
+      snapshots.increment();
+
+      return lastClosed;
+    }
+  }
+
+  /**
+   * @return number of frames made durable
+   */
+  public long getFrames() {
+    return frames.sum();
+  }
+
+  /**
+   * @return number of group commits, i.e. calls to force
+   */
+  public long getCommits() {
+    return commits.sum();
+  }
+
+  /**
+   * @return number of snapshots written since the journal was opened
+   */
+  public long getSnapshots() {
+    return snapshots.sum();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (committer == null) {
+      return;
+    }
+
+    if (snapshotter != null) {
+      snapshotter.shutdownNow();
+    }
+    running = false;
+    try {
+      committer.join();
+      channel.close();
+
+      if (snapshotter != null) {
+        snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to close journal {}", directory, e);
+    }
+    committer = null;
+    snapshotter = null;
+  }
+
+  Path segmentPath(long number) {
+    return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  Path snapshotPath(long number) {
+    return directory.resolve(String.format("%s%019d%s", SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+  }
+
+  /**
+   * Read every complete frame of a segment
+   *
+   * @param channel  segment to read
+   * @param path     location of the segment, for error messages
+   * @param consumer receives the events of every complete frame
+   * @return position following the last complete frame
+   * @throws IOException when the segment cannot be read or is not a journal segment
+   */
+  static long replay(FileChannel channel, Path path, Consumer<JournalEvent> consumer) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+    header.limit(FILE_HEADER_SIZE);
+    if (channel.read(header, 0) < FILE_HEADER_SIZE || header.getInt(0) != MAGIC) {
+      throw new IOException("Not an account journal: " + path);
+    }
+
+    final CRC32 crc = new CRC32();
+    final long size = channel.size();
+    long position = FILE_HEADER_SIZE;
+    ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+    while (position + FRAME_HEADER_SIZE <= size) {
+      header.clear();
+      readFully(channel, path, header, position);
+      final int length = header.getInt(0);
+      if (length <= 0 || length > MAX_FRAME_SIZE || position + FRAME_HEADER_SIZE + length > size) {
+        break;
+      }
+
+      if (payload.capacity() < length) {
+        payload = ByteBuffer.allocate(length);
+      }
+      payload.clear();
+      payload.limit(length);
+      readFully(channel, path, payload, position + FRAME_HEADER_SIZE);
+
+      crc.reset();
+      crc.update(payload.array(), 0, length);
+      if ((int) crc.getValue() != header.getInt(4)) {
+        break;
+      }
+
+      payload.flip();
+      while (payload.hasRemaining()) {
+        consumer.accept(JournalEvent.decode(payload));
+      }
+      position += FRAME_HEADER_SIZE + length;
+    }
+
+    return position;
+  }
+
+  private static void readFully(FileChannel channel, Path path, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of journal " + path);
+      }
+    }
+  }
+
+  private void replayClosedSegment(long number, Consumer<JournalEvent> consumer) throws IOException {
+    final Path path = segmentPath(number);
+    try (FileChannel closed = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (replay(closed, path, consumer) < closed.size()) {
+        // closed segments are forced in full before the next one is started
+        throw new IOException("Corrupt journal segment " + path);
+      }
+    }
+  }
+
+  private void openSegment(Consumer<JournalEvent> consumer) throws IOException {
+    final Path path = segmentPath(segment);
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    final long end = channel.size() < FILE_HEADER_SIZE ? writeFileHeader() : replay(channel, path, consumer);
+    if (end < channel.size()) {
+      LOGGER.warn("Discarding {} bytes of incomplete journal frames at the end of {}", channel.size() - end, path);
+      channel.truncate(end);
+    }
+    channel.position(end);
+  }
+
+  private long writeFileHeader() throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(0, MAGIC);
+    channel.write(header, 0);
+    channel.force(true);
+
+    return FILE_HEADER_SIZE;
+  }
+
+  private TreeSet<Long> list(String prefix, String suffix) throws IOException {
+    final TreeSet<Long> numbers = new TreeSet<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+      for (Path file : files) {
+        final String name = file.getFileName().toString();
+        try {
+          numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+        } catch (NumberFormatException e) {
+          LOGGER.warn("Ignoring unexpected journal file {}", file);
+        }
+      }
+    }
+
+    return numbers;
+  }
+
+  private void deleteTemporaryFiles() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Delete the segments included in the snapshot of {@code number} and the snapshots it supersedes
+   */
+  private void deleteObsoleteFiles(long number) throws IOException {
+    for (long obsolete : list(SEGMENT_PREFIX, SEGMENT_SUFFIX).headSet(number, true)) {
+      Files.delete(segmentPath(obsolete));
+    }
+    for (long obsolete : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headSet(number)) {
+      Files.delete(snapshotPath(obsolete));
+    }
+  }
+
+  private void snapshotQuietly() {
+    try {
+      snapshot();
+    } catch (RuntimeException e) {
+      LOGGER.error("Unable to snapshot journal {}", directory, e);
+    }
+  }
+
+  private void commitLoop() {
+    final List<PendingFrame> group = new ArrayList<>(groupCommitSize);
+    try {
+      while (running || !queue.isEmpty()) {
+        final PendingFrame first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          group.add(first);
+          collect(group);
+          commit(group);
+        }
+        group.clear();
+        rollIfNeeded();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      running = false;
+      failPending(group);
+    }
+  }
+
+  /**
+   * Fail the frames which will never be written once the committer stops: those it collected and those still
+   * queued, which no longer grows as appenders see it is not running; along with the segment roll a snapshot may be
+   * waiting for, whether the journal was closed or the committer gave up on an I/O error
+   */
+  private void failPending(List<PendingFrame> group) {
+    final IllegalStateException closed = new IllegalStateException("Journal is closed");
+    final CompletableFuture<Long> request = rollRequest;
+    if (request != null) {
+      rollRequest = null;
+      request.completeExceptionally(closed);
+    }
+
+    for (PendingFrame pending : group) {
+      pending.done.completeExceptionally(closed);
+    }
+
+    PendingFrame pending;
+    while ((pending = queue.poll()) != null) {
+      pending.done.completeExceptionally(closed);
+    }
+  }
+
+  private void collect(List<PendingFrame> group) throws InterruptedException {
+    queue.drainTo(group, groupCommitSize - group.size());
+
+    final long deadline = System.nanoTime() + groupCommitDelayNanos;
+    while (group.size() < groupCommitSize) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return;
+      }
+
+      final PendingFrame next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      group.add(next);
+      queue.drainTo(group, groupCommitSize - group.size());
+    }
+  }
+
+  private void commit(List<PendingFrame> group) {
+    final ByteBuffer[] buffers = new ByteBuffer[group.size()];
+    long remaining = 0;
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = group.get(i).frame;
+      remaining += buffers[i].remaining();
+    }
+
+    long start = -1;
+    try {
+      start = channel.position();
+      while (remaining > 0) {
+        remaining -= channel.write(buffers);
+      }
+      channel.force(false);
+    } catch (IOException e) {
+      LOGGER.error("Unable to write to journal {}", directory, e);
+      discardFrom(start);
+      for (PendingFrame pending : group) {
+        pending.done.completeExceptionally(e);
+      }
+      return;
+    }
+
+    commits.increment();
+    frames.add(group.size());
+    for (PendingFrame pending : group) {
+      pending.done.complete(null);
+    }
+  }
+
+  /**
+   * Start a new segment once the current one is full or a snapshot asked for it. Every frame written to the current
+   * segment has already been forced, so it is complete once closed.
+   */
+  private void rollIfNeeded() {
+    final CompletableFuture<Long> request = rollRequest;
+    try {
+      final long position = channel.position();
+      if (position >= segmentSize || request != null && position > FILE_HEADER_SIZE) {
+        channel.close();
+        segment++;
+        channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        channel.position(writeFileHeader());
+      }
+    } catch (IOException e) {
+      LOGGER.error("Unable to start a new segment, closing journal {}", directory, e);
+      running = false;
+      if (request != null) {
+        rollRequest = null;
+        request.completeExceptionally(e);
+      }
+      return;
+    }
+
+    if (request != null) {
+      rollRequest = null;
+      request.complete(segment - 1);
+    }
+  }
+
+  /**
+   * Cut a partially written group off so that later frames are not hidden behind it on replay
+   */
+  private void discardFrom(long position) {
+    if (position < 0) {
+      return;
+    }
+
+    try {
+      channel.truncate(position);
+      channel.position(position);
+    } catch (IOException e) {
+      LOGGER.error("Unable to discard failed group commit, closing journal {}", directory, e);
+      running = false;
+    }
+  }
+
+  private static final class PendingFrame {
+
+    private final ByteBuffer frame;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private PendingFrame(ByteBuffer frame) {
+      this.frame = frame;
+    }
+  }
+}
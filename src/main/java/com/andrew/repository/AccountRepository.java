@@ -4,40 +4,70 @@ import com.andrew.dto.CreateAccount;
 import com.andrew.model.Account;
 import com.google.common.annotations.VisibleForTesting;
 
-import javax.inject.Singleton;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.List;
 
 /**
+ * Store of accounts, selected with {@code account.store} in {@code application.conf}
+ *
  * @author andrew
  */
-@Singleton
-public class AccountRepository {
+public interface AccountRepository {
 
-  private final Map<Long, Account> accountMap = new ConcurrentHashMap<>();
-  private final AtomicLong counter = new AtomicLong(1L);
+  /**
+   * Create a new account with the next available ID
+   *
+   * @param createAccount name and opening balance of the account
+   * @return newly created account
+   */
+  Account create(CreateAccount createAccount);
 
-  public Account create(CreateAccount createAccount) {
-    final Long id = counter.getAndIncrement();
-    final Account account = new Account(id, createAccount.getName(), createAccount.getOpeningBalance());
-    accountMap.put(id, account);
+  /**
+   * Reserve a block of consecutive IDs for accounts created in bulk with {@link #createAll(long, CreateAccount[])}.
+   * The whole block must then be passed to {@code createAll}, pages stopping before it until it is.
+   *
+   * @param count number of IDs to reserve
+   * @return first ID of the block
+   */
+  long reserveIds(int count);
 
-    return account;
-  }
+  /**
+   * Create accounts in bulk under IDs reserved with {@link #reserveIds(int)}, recording their creation in the journal
+   * together
+   *
+   * @param firstId        first ID of the reserved block, the account at index {@code i} getting ID {@code firstId + i}
+   * @param createAccounts names, opening balances and currencies of the accounts, {@code null} leaving the ID unused
+   * @return number of accounts created
+   * @throws IllegalArgumentException when the IDs were not reserved
+   */
+  int createAll(long firstId, CreateAccount[] createAccounts);
 
-  public Account findById(Long id) {
-    return accountMap.get(id);
-  }
+  /**
+   * @param id account ID
+   * @return account associated with the specified ID, {@code null} when there is none
+   */
+  Account findById(Long id);
 
-  public Collection<Account> findAll() {
-    return Collections.unmodifiableCollection(accountMap.values());
-  }
+  /**
+   * @return every registered account
+   */
+  Collection<Account> findAll();
+
+  /**
+   * Page through the accounts in ID order. Accounts created while paging show up in a later page as long as their ID
+   * is beyond the cursor, once the creation of every account with a lower ID is over.
+   *
+   * @param after ID of the last account of the previous page, {@code 0} for the first page
+   * @param limit maximum number of accounts to return
+   * @return accounts with an ID greater than {@code after}, by ascending ID, empty past the last account
+   */
+  List<Account> findPage(long after, int limit);
+
+  /**
+   * @return ID below which the creation of every account is over, accounts from this ID on may still be being created
+   */
+  long getPublishedId();
 
   @VisibleForTesting
-  public void clear(){
-    accountMap.clear();
-  }
+  void clear();
 }
@@ -0,0 +1,244 @@
+package com.andrew.repository;
+
+import com.andrew.model.Currencies;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compact, memory-mapped image of every account as of the end of a journal segment:
+ * {@code [magic][account count]} followed by {@code [id][balance][currency code][name length][name]} records sorted by
+ * ID. Snapshots written before accounts had a currency have no currency code and are still read.
+ * <p>
+ * A snapshot is never built from the live accounts. It is the previous snapshot with the closed journal segments
+ * folded into it, so it is consistent without pausing or copying anything on the request path.
+ *
+ * @author andrew
+ */
+final class AccountSnapshot {
+
+  private static final int MAGIC = 0x4D545332;
+  private static final int MAGIC_WITHOUT_CURRENCIES = 0x4D545331;
+  private static final int HEADER_SIZE = 4 + 8;
+  private static final int RECORD_HEADER_SIZE = 8 + 8 + 2 + 2;
+  private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+  private AccountSnapshot() {
+  }
+
+  /**
+   * Replay every account of a snapshot as a {@link JournalEvent.Type#CREATE} event carrying its balance
+   *
+   * @param path     snapshot to load
+   * @param consumer receives one event per account, in ID order
+   * @throws IOException when the snapshot cannot be read or is corrupt
+   */
+  static void load(Path path, Consumer<JournalEvent> consumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final MappedReader reader = new MappedReader(channel, path);
+      reader.require(HEADER_SIZE);
+      final int magic = reader.buffer.getInt();
+      if (magic != MAGIC && magic != MAGIC_WITHOUT_CURRENCIES) {
+        throw new IOException("Not an account snapshot: " + path);
+      }
+      final boolean currencies = magic == MAGIC;
+
+      final long count = reader.buffer.getLong();
+      for (long i = 0; i < count; i++) {
+        reader.require(currencies ? RECORD_HEADER_SIZE : RECORD_HEADER_SIZE - 2);
+        final long id = reader.buffer.getLong();
+        final long balance = reader.buffer.getLong();
+        final int currency = currencies ? reader.buffer.getShort() : 0;
+        final byte[] name = new byte[reader.buffer.getShort() & 0xFFFF];
+        reader.require(name.length);
+        reader.buffer.get(name);
+
+        consumer.accept(JournalEvent.create(id, name, balance, Currencies.of(currency)));
+      }
+    }
+  }
+
+  /**
+   * Fold journal segments into a snapshot and write the result as a new snapshot. The new snapshot is written to a
+   * temporary file and forced before being moved into place, so {@code target} is either absent or complete.
+   *
+   * @param previous snapshot to start from, {@code null} to start from no accounts
+   * @param segments closed journal segments following {@code previous}, in order
+   * @param target   location of the new snapshot
+   * @throws IOException when a file cannot be read or written
+   */
+  static void compact(Path previous, List<Path> segments, Path target) throws IOException {
+    final Accounts accounts = new Accounts();
+    if (previous != null) {
+      load(previous, accounts::apply);
+    }
+    for (Path segment : segments) {
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+        AccountJournal.replay(channel, segment, accounts::apply);
+      }
+    }
+
+    final Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+    write(accounts, temporary);
+    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void write(Accounts accounts, Path path) throws IOException {
+    long size = HEADER_SIZE;
+    for (int id = 0; id < accounts.names.length; id++) {
+      if (accounts.names[id] != null) {
+        size += RECORD_HEADER_SIZE + accounts.names[id].length;
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      final MappedWriter writer = new MappedWriter(channel, size);
+      writer.require(HEADER_SIZE);
+      writer.buffer.putInt(MAGIC);
+      writer.buffer.putLong(accounts.count);
+
+      for (int id = 0; id < accounts.names.length; id++) {
+        final byte[] name = accounts.names[id];
+        if (name == null) {
+          continue;
+        }
+
+        writer.require(RECORD_HEADER_SIZE + name.length);
+        writer.buffer.putLong(id);
+        writer.buffer.putLong(accounts.balances[id]);
+        writer.buffer.putShort(accounts.currencies[id]);
+        writer.buffer.putShort((short) name.length);
+        writer.buffer.put(name);
+      }
+      writer.force();
+    }
+  }
+
+  /**
+   * Accounts being compacted, indexed by ID. IDs are handed out sequentially so the arrays are dense.
+   */
+  private static final class Accounts {
+
+    private long[] balances = new long[1024];
+    private short[] currencies = new short[1024];
+    private byte[][] names = new byte[1024][];
+    private long count;
+
+    private void apply(JournalEvent event) {
+      switch (event.getType()) {
+        case CREATE:
+          final int id = index(event.getAccountId());
+          if (id >= names.length) {
+            final int length = (int) Math.min(Math.max(2L * names.length, id + 1L), Integer.MAX_VALUE - 8);
+            balances = Arrays.copyOf(balances, length);
+            currencies = Arrays.copyOf(currencies, length);
+            names = Arrays.copyOf(names, length);
+          }
+          if (names[id] == null) {
+            count++;
+          }
+          names[id] = event.getNameBytes();
+          balances[id] = event.getAmount();
+          currencies[id] = (short) Currencies.code(event.getCurrency());
+          break;
+        case DEPOSIT:
+          add(event.getAccountId(), event.getAmount());
+          break;
+        case WITHDRAW:
+          add(event.getAccountId(), -event.getAmount());
+          break;
+        case TRANSFER:
+          add(event.getAccountId(), -event.getAmount());
+          add(event.getToAccountId(), event.getToAmount());
+          break;
+        default:
+          throw new IllegalStateException("Unknown journal event " + event);
+      }
+    }
+
+    private void add(long accountId, long amount) {
+      final int id = index(accountId);
+      if (id >= names.length || names[id] == null) {
+        throw new IllegalStateException("Journal event for unknown account " + accountId);
+      }
+
+      balances[id] = Math.addExact(balances[id], amount);
+    }
+
+    private static int index(long accountId) {
+      if (accountId < 0 || accountId >= Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("Account ID " + accountId + " cannot be snapshotted");
+      }
+
+      return (int) accountId;
+    }
+  }
+
+  /**
+   * Maps a file one window of at most 1GB at a time, as a single mapping cannot exceed 2GB
+   */
+  private static final class MappedReader {
+
+    private final FileChannel channel;
+    private final Path path;
+    private final long size;
+    private long offset;
+    private MappedByteBuffer buffer;
+
+    private MappedReader(FileChannel channel, Path path) throws IOException {
+      this.channel = channel;
+      this.path = path;
+      this.size = channel.size();
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_MAPPING_SIZE));
+    }
+
+    private void require(int bytes) throws IOException {
+      if (buffer.remaining() >= bytes) {
+        return;
+      }
+
+      offset += buffer.position();
+      if (size - offset < bytes) {
+        throw new IOException("Unexpected end of snapshot " + path);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, MAX_MAPPING_SIZE));
+    }
+  }
+
+  private static final class MappedWriter {
+
+    private final FileChannel channel;
+    private final long size;
+    private long offset;
+    private MappedByteBuffer buffer;
+
+    private MappedWriter(FileChannel channel, long size) throws IOException {
+      this.channel = channel;
+      this.size = size;
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_MAPPING_SIZE));
+    }
+
+    private void require(int bytes) throws IOException {
+      if (buffer.remaining() >= bytes) {
+        return;
+      }
+
+      buffer.force();
+      offset += buffer.position();
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.min(size - offset, MAX_MAPPING_SIZE));
+    }
+
+    private void force() {
+      buffer.force();
+    }
+  }
+}
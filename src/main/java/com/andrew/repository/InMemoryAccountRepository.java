@@ -0,0 +1,85 @@
+package com.andrew.repository;
+
+import com.andrew.model.Account;
+import com.google.common.annotations.VisibleForTesting;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps accounts as objects on the heap
+ *
+ * @author andrew
+ */
+@Singleton
+public class InMemoryAccountRepository extends AbstractAccountRepository {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+  private final Map<Long, Account> accountMap;
+
+  public InMemoryAccountRepository() {
+    this(AccountJournal.disabled());
+  }
+
+  /**
+   * Rebuild the accounts recorded in the journal, which is then kept open for appending
+   *
+   * @param journal journal recording account creation and balance changes
+   */
+  public InMemoryAccountRepository(AccountJournal journal) {
+    this(journal, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  @Inject
+  public InMemoryAccountRepository(AccountJournal journal, Config config) {
+    this(journal, config.getInt("account.heap.initial-capacity"));
+  }
+
+  /**
+   * Rebuild the accounts recorded in the journal, which is then kept open for appending
+   *
+   * @param journal         journal recording account creation and balance changes
+   * @param initialCapacity number of accounts held before the map first resizes
+   */
+  public InMemoryAccountRepository(AccountJournal journal, int initialCapacity) {
+    super(journal);
+    if (initialCapacity < 1) {
+      throw new IllegalArgumentException("Initial capacity must be greater than 0");
+    }
+
+    accountMap = new ConcurrentHashMap<>(initialCapacity);
+    openJournal();
+  }
+
+  @Override
+  Account insert(long id, String name, long balance, Currency currency) {
+    final Account account = new Account(id, name, null, currency);
+    account.credit(balance);
+    accountMap.put(id, account);
+
+    return account;
+  }
+
+  @Override
+  public Account findById(Long id) {
+    return accountMap.get(id);
+  }
+
+  @Override
+  public Collection<Account> findAll() {
+    return Collections.unmodifiableCollection(accountMap.values());
+  }
+
+  @VisibleForTesting
+  @Override
+  public void clear() {
+    accountMap.clear();
+  }
+}
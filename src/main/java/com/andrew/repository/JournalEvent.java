@@ -0,0 +1,212 @@
+package com.andrew.repository;
+
+import com.andrew.model.Currencies;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+
+/**
+ * Balance changing event recorded in the {@link AccountJournal}. Amounts are in minor units.
+ * <p>
+ * Each event is encoded after a tag byte, the ordinal of its type. Account creations with a currency and transfers
+ * crediting a converted amount carry one more field, and are tagged past the types instead so that journals written
+ * before currencies existed still read the same.
+ *
+ * @author andrew
+ */
+public final class JournalEvent {
+
+  public enum Type {
+    CREATE, DEPOSIT, WITHDRAW, TRANSFER
+  }
+
+  private static final byte CREATE_IN_CURRENCY = 4;
+  private static final byte CONVERTED_TRANSFER = 5;
+
+  private final Type type;
+  private final long accountId;
+  private final long toAccountId;
+  private final long amount;
+  private final long toAmount;
+  private final String name;
+  private final byte[] nameBytes;
+  private final Currency currency;
+
+  private JournalEvent(Type type, long accountId, long toAccountId, long amount, long toAmount, String name,
+                       byte[] nameBytes, Currency currency) {
+    this.type = type;
+    this.accountId = accountId;
+    this.toAccountId = toAccountId;
+    this.amount = amount;
+    this.toAmount = toAmount;
+    this.name = name;
+    this.nameBytes = nameBytes;
+    this.currency = currency;
+  }
+
+  private JournalEvent(Type type, long accountId, long toAccountId, long amount, long toAmount) {
+    this(type, accountId, toAccountId, amount, toAmount, null, null, null);
+  }
+
+  public static JournalEvent create(long accountId, String name, long openingBalance) {
+    return create(accountId, name, openingBalance, null);
+  }
+
+  /**
+   * @throws IllegalArgumentException when the account name is longer than 65535 bytes in UTF-8 or the currency has
+   *                                  no numeric code
+   */
+  public static JournalEvent create(long accountId, String name, long openingBalance, Currency currency) {
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > 0xFFFF) {
+      throw new IllegalArgumentException("Account name is too long");
+    }
+    Currencies.code(currency);
+
+    return new JournalEvent(Type.CREATE, accountId, 0L, openingBalance, 0L, name, nameBytes, currency);
+  }
+
+  static JournalEvent create(long accountId, byte[] nameBytes, long openingBalance, Currency currency) {
+    return new JournalEvent(Type.CREATE, accountId, 0L, openingBalance, 0L,
+        new String(nameBytes, StandardCharsets.UTF_8), nameBytes, currency);
+  }
+
+  public static JournalEvent deposit(long accountId, long amount) {
+    return new JournalEvent(Type.DEPOSIT, accountId, 0L, amount, 0L);
+  }
+
+  public static JournalEvent withdraw(long accountId, long amount) {
+    return new JournalEvent(Type.WITHDRAW, accountId, 0L, amount, 0L);
+  }
+
+  public static JournalEvent transfer(long fromAccountId, long toAccountId, long amount) {
+    return transfer(fromAccountId, toAccountId, amount, amount);
+  }
+
+  /**
+   * @param amount   amount debited from the benefactor
+   * @param toAmount amount credited to the beneficiary, converted to its currency
+   */
+  public static JournalEvent transfer(long fromAccountId, long toAccountId, long amount, long toAmount) {
+    return new JournalEvent(Type.TRANSFER, fromAccountId, toAccountId, amount, toAmount);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return ID of the account the event applies to, the benefactor for transfers
+   */
+  public long getAccountId() {
+    return accountId;
+  }
+
+  /**
+   * @return ID of the beneficiary for transfers
+   */
+  public long getToAccountId() {
+    return toAccountId;
+  }
+
+  /**
+   * @return amount of the event, the opening balance for account creation and the amount debited for transfers
+   */
+  public long getAmount() {
+    return amount;
+  }
+
+  /**
+   * @return amount credited to the beneficiary for transfers, in its currency
+   */
+  public long getToAmount() {
+    return toAmount;
+  }
+
+  /**
+   * @return account name for account creation
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return account currency for account creation, {@code null} for the default currency
+   */
+  public Currency getCurrency() {
+    return currency;
+  }
+
+  byte[] getNameBytes() {
+    return nameBytes;
+  }
+
+  int encodedSize() {
+    switch (type) {
+      case CREATE:
+        return 1 + 8 + 8 + 2 + nameBytes.length + (currency == null ? 0 : 2);
+      case TRANSFER:
+        return 1 + 8 + 8 + 8 + (toAmount == amount ? 0 : 8);
+      default:
+        return 1 + 8 + 8;
+    }
+  }
+
+  void encode(ByteBuffer buffer) {
+    if (type == Type.CREATE && currency != null) {
+      buffer.put(CREATE_IN_CURRENCY);
+    } else if (type == Type.TRANSFER && toAmount != amount) {
+      buffer.put(CONVERTED_TRANSFER);
+    } else {
+      buffer.put((byte) type.ordinal());
+    }
+    buffer.putLong(accountId);
+    if (type == Type.TRANSFER) {
+      buffer.putLong(toAccountId);
+    }
+    buffer.putLong(amount);
+    if (type == Type.TRANSFER && toAmount != amount) {
+      buffer.putLong(toAmount);
+    }
+    if (type == Type.CREATE) {
+      buffer.putShort((short) nameBytes.length);
+      buffer.put(nameBytes);
+      if (currency != null) {
+        buffer.putShort((short) Currencies.code(currency));
+      }
+    }
+  }
+
+  static JournalEvent decode(ByteBuffer buffer) {
+    final byte tag = buffer.get();
+    final Type type = tag == CREATE_IN_CURRENCY ? Type.CREATE
+        : tag == CONVERTED_TRANSFER ? Type.TRANSFER
+        : Type.values()[tag];
+    final long accountId = buffer.getLong();
+    final long toAccountId = type == Type.TRANSFER ? buffer.getLong() : 0L;
+    final long amount = buffer.getLong();
+    if (type != Type.CREATE) {
+      return new JournalEvent(type, accountId, toAccountId, amount, tag == CONVERTED_TRANSFER ? buffer.getLong()
+          : amount);
+    }
+
+    final byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(nameBytes);
+    final Currency currency = tag == CREATE_IN_CURRENCY ? Currencies.of(buffer.getShort()) : null;
+    return create(accountId, nameBytes, amount, currency);
+  }
+
+  @Override
+  public String toString() {
+    return "JournalEvent{" +
+        "type=" + type +
+        ", accountId=" + accountId +
+        ", toAccountId=" + toAccountId +
+        ", amount=" + amount +
+        ", toAmount=" + toAmount +
+        ", name='" + name + '\'' +
+        ", currency=" + currency +
+        '}';
+  }
+}
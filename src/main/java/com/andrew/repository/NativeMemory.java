@@ -0,0 +1,211 @@
+package com.andrew.repository;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Reads and writes native memory for the {@link OffHeapAccountRepository}, including the volatile reads and
+ * compare-and-set its balances need, which direct byte buffers do not offer before Java 9.
+ * <p>
+ * {@code sun.misc.Unsafe} is reached through method handles looked up once, rather than referenced, as javac warns
+ * about every reference to it whatever the {@code @SuppressWarnings}. The handles are constants, so the JIT compiles
+ * each call down to the same memory access as a direct call.
+ *
+ * @author andrew
+ */
+final class NativeMemory {
+
+  private static final MethodHandle ALLOCATE;
+  private static final MethodHandle FREE;
+  private static final MethodHandle SET;
+  private static final MethodHandle COPY;
+  private static final MethodHandle GET_LONG;
+  private static final MethodHandle PUT_LONG;
+  private static final MethodHandle GET_INT;
+  private static final MethodHandle PUT_INT;
+  private static final MethodHandle GET_SHORT;
+  private static final MethodHandle PUT_SHORT;
+  private static final MethodHandle GET_LONG_VOLATILE;
+  private static final MethodHandle PUT_LONG_VOLATILE;
+  private static final MethodHandle COMPARE_AND_SWAP_LONG;
+  private static final long BYTE_ARRAY_OFFSET;
+
+  static {
+    try {
+      final Class<?> type = Class.forName("sun.misc.Unsafe");
+      final Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      final Object unsafe = field.get(null);
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+      ALLOCATE = handle(lookup, unsafe, "allocateMemory", methodType(long.class, long.class));
+      FREE = handle(lookup, unsafe, "freeMemory", methodType(void.class, long.class));
+      SET = handle(lookup, unsafe, "setMemory", methodType(void.class, long.class, long.class, byte.class));
+      COPY = handle(lookup, unsafe, "copyMemory",
+          methodType(void.class, Object.class, long.class, Object.class, long.class, long.class));
+      GET_LONG = handle(lookup, unsafe, "getLong", methodType(long.class, long.class));
+      PUT_LONG = handle(lookup, unsafe, "putLong", methodType(void.class, long.class, long.class));
+      GET_INT = handle(lookup, unsafe, "getInt", methodType(int.class, long.class));
+      PUT_INT = handle(lookup, unsafe, "putInt", methodType(void.class, long.class, int.class));
+      GET_SHORT = handle(lookup, unsafe, "getShort", methodType(short.class, long.class));
+      PUT_SHORT = handle(lookup, unsafe, "putShort", methodType(void.class, long.class, short.class));
+      // the volatile and atomic accesses take an object and an offset, a null object making the offset an address
+      GET_LONG_VOLATILE = MethodHandles.insertArguments(
+          handle(lookup, unsafe, "getLongVolatile", methodType(long.class, Object.class, long.class)), 0,
+          (Object) null);
+      PUT_LONG_VOLATILE = MethodHandles.insertArguments(
+          handle(lookup, unsafe, "putLongVolatile", methodType(void.class, Object.class, long.class, long.class)), 0,
+          (Object) null);
+      COMPARE_AND_SWAP_LONG = MethodHandles.insertArguments(handle(lookup, unsafe, "compareAndSwapLong",
+          methodType(boolean.class, Object.class, long.class, long.class, long.class)), 0, (Object) null);
+      BYTE_ARRAY_OFFSET = (int) handle(lookup, unsafe, "arrayBaseOffset", methodType(int.class, Class.class))
+          .invoke(byte[].class);
+    } catch (Throwable e) {
+      throw new IllegalStateException("Off-heap account store is not supported by this JVM", e);
+    }
+  }
+
+  private NativeMemory() {
+  }
+
+  static long allocate(long bytes) {
+    try {
+      return (long) ALLOCATE.invokeExact(bytes);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void free(long address) {
+    try {
+      FREE.invokeExact(address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void fill(long address, long bytes, byte value) {
+    try {
+      SET.invokeExact(address, bytes, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  /**
+   * Copy native memory into a byte array, filling it
+   */
+  static void read(long address, byte[] bytes) {
+    try {
+      COPY.invokeExact((Object) null, address, (Object) bytes, BYTE_ARRAY_OFFSET, (long) bytes.length);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  /**
+   * Copy a byte array into native memory
+   */
+  static void write(byte[] bytes, long address) {
+    try {
+      COPY.invokeExact((Object) bytes, BYTE_ARRAY_OFFSET, (Object) null, address, (long) bytes.length);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static long getLong(long address) {
+    try {
+      return (long) GET_LONG.invokeExact(address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putLong(long address, long value) {
+    try {
+      PUT_LONG.invokeExact(address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static int getInt(long address) {
+    try {
+      return (int) GET_INT.invokeExact(address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putInt(long address, int value) {
+    try {
+      PUT_INT.invokeExact(address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static short getShort(long address) {
+    try {
+      return (short) GET_SHORT.invokeExact(address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putShort(long address, short value) {
+    try {
+      PUT_SHORT.invokeExact(address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static long getLongVolatile(long address) {
+    try {
+      return (long) GET_LONG_VOLATILE.invokeExact(address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putLongVolatile(long address, long value) {
+    try {
+      PUT_LONG_VOLATILE.invokeExact(address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  /**
+   * @return whether the long at the address was the expected value and was replaced
+   */
+  static boolean compareAndSwapLong(long address, long expected, long value) {
+    try {
+      return (boolean) COMPARE_AND_SWAP_LONG.invokeExact(address, expected, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  private static MethodHandle handle(MethodHandles.Lookup lookup, Object unsafe, String name, MethodType type)
+      throws ReflectiveOperationException {
+    return lookup.findVirtual(unsafe.getClass(), name, type).bindTo(unsafe);
+  }
+
+  /**
+   * Unsafe only throws unchecked exceptions, which are thrown as they are
+   */
+  private static RuntimeException rethrow(Throwable e) {
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+
+    return e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+  }
+}
@@ -0,0 +1,102 @@
+package com.andrew.repository;
+
+import com.andrew.model.Account;
+import com.andrew.model.Currencies;
+import com.andrew.model.Money;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+
+import static com.andrew.repository.OffHeapAccountRepository.BALANCE_OFFSET;
+import static com.andrew.repository.OffHeapAccountRepository.CURRENCY_OFFSET;
+
+/**
+ * Flyweight over an account record of the {@link OffHeapAccountRepository}. Several flyweights may front the same
+ * record, they are equal as they share the account ID.
+ *
+ * @author andrew
+ */
+final class OffHeapAccount extends Account {
+
+  private final long record;
+  private final long balanceAddress;
+  private String name;
+
+  OffHeapAccount(long id, long record) {
+    this.record = record;
+    this.balanceAddress = record + BALANCE_OFFSET;
+    setId(id);
+  }
+
+  @Override
+  public String getName() {
+    if (name == null) {
+      name = new String(OffHeapAccountRepository.name(record), StandardCharsets.UTF_8);
+    }
+
+    return name;
+  }
+
+  @Override
+  public void setName(String name) {
+    throw new UnsupportedOperationException("Off-heap account names cannot be changed");
+  }
+
+  @Override
+  public Currency getCurrency() {
+    return Currencies.of(NativeMemory.getShort(record + CURRENCY_OFFSET));
+  }
+
+  @Override
+  public void setCurrency(Currency currency) {
+    throw new UnsupportedOperationException("Off-heap account currencies cannot be changed");
+  }
+
+  @Override
+  public Money getBalance() {
+    return Money.of(balanceUnits(), SCALE);
+  }
+
+  @Override
+  public void setBalance(Money balance) {
+    NativeMemory.putLongVolatile(balanceAddress, toMinorUnits(balance));
+  }
+
+  @Override
+  public long balanceUnits() {
+    return NativeMemory.getLongVolatile(balanceAddress);
+  }
+
+  @Override
+  public long credit(long amount) {
+    long current;
+    long updated;
+    do {
+      current = NativeMemory.getLongVolatile(balanceAddress);
+      updated = Math.addExact(current, amount);
+    } while (!NativeMemory.compareAndSwapLong(balanceAddress, current, updated));
+
+    return updated;
+  }
+
+  @Override
+  public boolean debit(long amount) {
+    long current;
+    do {
+      current = NativeMemory.getLongVolatile(balanceAddress);
+      if (current < amount) {
+        return false;
+      }
+    } while (!NativeMemory.compareAndSwapLong(balanceAddress, current, current - amount));
+
+    return true;
+  }
+
+  /**
+   * Off-heap balances are never striped, as the stripes would belong to this flyweight rather than to the record
+   */
+  @Override
+  public boolean stripe(int count) {
+    return false;
+  }
+}
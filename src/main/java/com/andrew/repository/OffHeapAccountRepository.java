@@ -0,0 +1,323 @@
+package com.andrew.repository;
+
+import com.andrew.model.Account;
+import com.andrew.model.Currencies;
+import com.google.common.annotations.VisibleForTesting;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Keeps accounts outside of the heap, so that tens of millions of accounts neither take gigabytes of heap nor lengthen
+ * garbage collection pauses.
+ * <p>
+ * Every account is a fixed-size record {@code [balance][id][name address][name length][currency code]} in chunks of
+ * native memory, found through an open-addressed table of {@code [id][record slot]} entries with linear probing.
+ * Names are UTF-8 bytes appended to a separate arena. {@link #findById(Long)} returns a flyweight {@link Account}
+ * reading and updating the record in place, balances are updated with compare-and-set just like heap accounts.
+ * <p>
+ * Lookups never block. Creation is serialized; it publishes a record by writing its ID into the table last, and
+ * tables outgrown by a resize are only freed on {@link #close()} since lookups may still be reading them.
+ *
+ * @author andrew
+ */
+@Singleton
+public class OffHeapAccountRepository extends AbstractAccountRepository implements AutoCloseable {
+
+  static final int BALANCE_OFFSET = 0;
+  static final int ID_OFFSET = 8;
+  static final int NAME_ADDRESS_OFFSET = 16;
+  static final int NAME_LENGTH_OFFSET = 24;
+  static final int CURRENCY_OFFSET = 28;
+  private static final int RECORD_SIZE = 32;
+  private static final int RECORD_CHUNK_SHIFT = 16;
+  private static final int RECORD_CHUNK_MASK = (1 << RECORD_CHUNK_SHIFT) - 1;
+
+  private static final int ENTRY_SIZE = 16;
+  private static final int MAX_NAME_LENGTH = 0xFFFF;
+  private static final long NAME_CHUNK_SIZE = 16L * 1024 * 1024;
+
+  private final List<Long> retired = new ArrayList<>();
+  private final List<Long> nameChunks = new ArrayList<>();
+
+  private volatile Table table;
+  private volatile long[] recordChunks = new long[0];
+  private volatile int size;
+  private long nameChunk;
+  private long nameChunkUsed = NAME_CHUNK_SIZE;
+  private boolean closed;
+
+  @Inject
+  public OffHeapAccountRepository(AccountJournal journal, Config config) {
+    this(journal, config.getInt("account.off-heap.initial-capacity"));
+  }
+
+  /**
+   * @param journal         journal recording account creation and balance changes
+   * @param initialCapacity number of accounts held before the first resize of the table
+   */
+  public OffHeapAccountRepository(AccountJournal journal, int initialCapacity) {
+    super(journal);
+    if (initialCapacity < 1 || initialCapacity > 1 << 29) {
+      throw new IllegalArgumentException("Initial capacity must be between 1 and " + (1 << 29));
+    }
+
+    table = new Table(Integer.highestOneBit(initialCapacity * 2 - 1) * 2);
+    openJournal();
+  }
+
+  @Override
+  synchronized Account insert(long id, String name, long balance, Currency currency) {
+    if (closed) {
+      throw new IllegalStateException("Repository is closed");
+    }
+    if (id <= 0L) {
+      throw new IllegalArgumentException("Account ID must be greater than 0");
+    }
+
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException("Account name is too long");
+    }
+    final int currencyCode = Currencies.code(currency);
+
+    Table current = table;
+    if (current.find(id) >= 0L) {
+      throw new IllegalStateException("Account " + id + " already exists");
+    }
+    if (2L * (size + 1) > current.capacity) {
+      current = resize(current);
+    }
+
+    final long slot = size;
+    final long record = newRecord(slot);
+    NativeMemory.putLong(record + ID_OFFSET, id);
+    NativeMemory.putLong(record + NAME_ADDRESS_OFFSET, storeName(nameBytes));
+    NativeMemory.putInt(record + NAME_LENGTH_OFFSET, nameBytes.length);
+    NativeMemory.putShort(record + CURRENCY_OFFSET, (short) currencyCode);
+    NativeMemory.putLong(record + BALANCE_OFFSET, balance);
+
+    current.put(id, slot);
+    size++;
+
+    return new OffHeapAccount(id, record);
+  }
+
+  @Override
+  synchronized void ensureCapacity(int count) {
+    Table current = table;
+    while (2L * (size + count) > current.capacity) {
+      current = resize(current);
+    }
+  }
+
+  @Override
+  public Account findById(Long id) {
+    final long slot = table.find(id);
+    if (slot < 0L) {
+      return null;
+    }
+
+    return new OffHeapAccount(id, record(recordChunks, slot));
+  }
+
+  /**
+   * @return live view of every account, in creation order
+   */
+  @Override
+  public Collection<Account> findAll() {
+    return new AbstractCollection<Account>() {
+      @Override
+      public Iterator<Account> iterator() {
+        final long[] chunks = recordChunks;
+        final int end = size;
+
+        return new Iterator<Account>() {
+          private int slot;
+
+          @Override
+          public boolean hasNext() {
+            return slot < end;
+          }
+
+          @Override
+          public Account next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            final long record = record(chunks, slot++);
+            return new OffHeapAccount(NativeMemory.getLong(record + ID_OFFSET), record);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @VisibleForTesting
+  @Override
+  public synchronized void clear() {
+    final Table current = table;
+    NativeMemory.fill(current.address, (long) current.capacity * ENTRY_SIZE, (byte) 0);
+    size = 0;
+  }
+
+  /**
+   * @return bytes of native memory held by the repository
+   */
+  public synchronized long getAllocatedBytes() {
+    long allocated = (long) table.capacity * ENTRY_SIZE;
+    allocated += (long) recordChunks.length * RECORD_SIZE << RECORD_CHUNK_SHIFT;
+    allocated += nameChunks.size() * NAME_CHUNK_SIZE;
+
+    return allocated;
+  }
+
+  /**
+   * Free the native memory. Accounts returned earlier must not be used afterwards.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    size = 0;
+    NativeMemory.free(table.address);
+    for (long address : retired) {
+      NativeMemory.free(address);
+    }
+    for (long address : recordChunks) {
+      NativeMemory.free(address);
+    }
+    for (long address : nameChunks) {
+      NativeMemory.free(address);
+    }
+    table = new Table(2);
+    recordChunks = new long[0];
+  }
+
+  /**
+   * @return UTF-8 bytes of the name of the specified record
+   */
+  static byte[] name(long record) {
+    final byte[] bytes = new byte[NativeMemory.getInt(record + NAME_LENGTH_OFFSET)];
+    NativeMemory.read(NativeMemory.getLong(record + NAME_ADDRESS_OFFSET), bytes);
+
+    return bytes;
+  }
+
+  private static long record(long[] chunks, long slot) {
+    return chunks[(int) (slot >>> RECORD_CHUNK_SHIFT)] + (slot & RECORD_CHUNK_MASK) * RECORD_SIZE;
+  }
+
+  private long newRecord(long slot) {
+    final int chunk = (int) (slot >>> RECORD_CHUNK_SHIFT);
+    if (chunk == recordChunks.length) {
+      final long[] chunks = Arrays.copyOf(recordChunks, chunk + 1);
+      chunks[chunk] = NativeMemory.allocate((long) RECORD_SIZE << RECORD_CHUNK_SHIFT);
+      recordChunks = chunks;
+    }
+
+    return record(recordChunks, slot);
+  }
+
+  private long storeName(byte[] nameBytes) {
+    if (nameChunkUsed + nameBytes.length > NAME_CHUNK_SIZE) {
+      nameChunk = NativeMemory.allocate(NAME_CHUNK_SIZE);
+      nameChunks.add(nameChunk);
+      nameChunkUsed = 0L;
+    }
+
+    final long address = nameChunk + nameChunkUsed;
+    NativeMemory.write(nameBytes, address);
+    nameChunkUsed += nameBytes.length;
+
+    return address;
+  }
+
+  private Table resize(Table current) {
+    if (current.capacity >= 1 << 30) {
+      throw new IllegalStateException("Account table is full");
+    }
+
+    final Table resized = new Table(current.capacity * 2);
+    for (int i = 0; i < current.capacity; i++) {
+      final long entry = current.address + (long) i * ENTRY_SIZE;
+      final long id = NativeMemory.getLong(entry);
+      if (id != 0L) {
+        resized.put(id, NativeMemory.getLong(entry + 8));
+      }
+    }
+
+    retired.add(current.address);
+    table = resized;
+
+    return resized;
+  }
+
+  /**
+   * Open-addressed table of {@code [id][slot]} entries; an ID of 0 marks a free entry
+   */
+  private static final class Table {
+
+    private final long address;
+    private final int capacity;
+    private final int mask;
+
+    private Table(int capacity) {
+      this.capacity = capacity;
+      this.mask = capacity - 1;
+      this.address = NativeMemory.allocate((long) capacity * ENTRY_SIZE);
+      NativeMemory.fill(address, (long) capacity * ENTRY_SIZE, (byte) 0);
+    }
+
+    private long find(long id) {
+      for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+        final long entry = address + (long) i * ENTRY_SIZE;
+        final long key = NativeMemory.getLongVolatile(entry);
+        if (key == id) {
+          return NativeMemory.getLong(entry + 8);
+        }
+        if (key == 0L) {
+          return -1L;
+        }
+      }
+    }
+
+    /**
+     * Write the slot before the ID, a lookup finding the ID is then guaranteed to see the slot and the record
+     */
+    private void put(long id, long slot) {
+      for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+        final long entry = address + (long) i * ENTRY_SIZE;
+        if (NativeMemory.getLong(entry) == 0L) {
+          NativeMemory.putLong(entry + 8, slot);
+          NativeMemory.putLongVolatile(entry, id);
+          return;
+        }
+      }
+    }
+
+    private static int hash(long id) {
+      final long h = id * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ h >>> 32);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package com.andrew.rpc;
+
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.andrew.rpc.RpcProtocol.HEADER_SIZE;
+import static com.andrew.rpc.RpcProtocol.LENGTH_SIZE;
+import static com.andrew.rpc.RpcProtocol.MAX_FRAME_SIZE;
+
+/**
+ * Client of the binary {@link RpcProtocol} over a single connection, for JVM services calling {@link RpcServer}.
+ * <p>
+ * Calls never wait: each sends its request and returns a future, completed with the account, or with the exception
+ * the REST API would answer with, once the response arrives. Any number of calls may be in flight from any number of
+ * threads, their requests sharing flushes. Accounts returned carry the ID and balance only.
+ *
+ * @author andrew
+ */
+public class RpcClient implements AutoCloseable {
+
+  private static final int EXPLICIT_FLUSH_AFTER_FLUSHES = 256;
+
+  private final EventLoopGroup group;
+  private final Channel channel;
+  private final AtomicLong correlationIds = new AtomicLong();
+  private final Map<Long, CompletableFuture<Account>> pending = new ConcurrentHashMap<>();
+
+  private RpcClient(EventLoopGroup group, Channel channel) {
+    this.group = group;
+    this.channel = channel;
+  }
+
+  /**
+   * @param host host of the server
+   * @param port port of the binary protocol
+   * @return client connected to the server
+   * @throws InterruptedException when interrupted while connecting
+   */
+  public static RpcClient connect(String host, int port) throws InterruptedException {
+    final EventLoopGroup group = new NioEventLoopGroup(1);
+    final Responses responses = new Responses();
+    try {
+      final Channel channel = new Bootstrap()
+          .group(group)
+          .channel(NioSocketChannel.class)
+          .option(ChannelOption.TCP_NODELAY, true)
+          .handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel channel) {
+              channel.pipeline()
+                  .addLast(new FlushConsolidationHandler(EXPLICIT_FLUSH_AFTER_FLUSHES, true))
+                  .addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_SIZE, 0, LENGTH_SIZE, 0, LENGTH_SIZE))
+                  .addLast(responses);
+            }
+          })
+          .connect(host, port)
+          .sync()
+          .channel();
+
+      final RpcClient client = new RpcClient(group, channel);
+      responses.client = client;
+      return client;
+    } catch (InterruptedException | RuntimeException e) {
+      group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+      throw e;
+    }
+  }
+
+  /**
+   * @param accountId account ID
+   * @param amount    amount to deposit
+   * @return future of the account after the deposit
+   */
+  public CompletableFuture<Account> deposit(long accountId, Money amount) {
+    return send(RpcProtocol.DEPOSIT, accountId, Account.toMinorUnits(amount));
+  }
+
+  /**
+   * @param accountId account ID
+   * @param amount    amount to withdraw
+   * @return future of the account after the withdrawal
+   */
+  public CompletableFuture<Account> withdraw(long accountId, Money amount) {
+    return send(RpcProtocol.WITHDRAW, accountId, Account.toMinorUnits(amount));
+  }
+
+  /**
+   * @param fromAccountId benefactor ID
+   * @param toAccountId   beneficiary ID
+   * @param amount        amount to transfer
+   * @return future of the benefactor after the transfer
+   */
+  public CompletableFuture<Account> transfer(long fromAccountId, long toAccountId, Money amount) {
+    return send(RpcProtocol.TRANSFER, fromAccountId, toAccountId, Account.toMinorUnits(amount));
+  }
+
+  /**
+   * @param accountId account ID
+   * @return future of the account
+   */
+  public CompletableFuture<Account> findById(long accountId) {
+    return send(RpcProtocol.FIND_BY_ID, accountId);
+  }
+
+  /**
+   * @return number of calls waiting for their response
+   */
+  public int getPending() {
+    return pending.size();
+  }
+
+  /**
+   * Close the connection, failing the calls still waiting for their response
+   */
+  @Override
+  public void close() {
+    channel.close().syncUninterruptibly();
+    group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+  }
+
+  private CompletableFuture<Account> send(byte opcode, long... arguments) {
+    final long correlationId = correlationIds.incrementAndGet();
+    final CompletableFuture<Account> result = new CompletableFuture<>();
+    pending.put(correlationId, result);
+
+    final int length = HEADER_SIZE + arguments.length * Long.BYTES;
+    final ByteBuf request = channel.alloc().buffer(LENGTH_SIZE + length)
+        .writeInt(length)
+        .writeLong(correlationId)
+        .writeByte(opcode);
+    for (long argument : arguments) {
+      request.writeLong(argument);
+    }
+    channel.writeAndFlush(request).addListener(written -> {
+      if (!written.isSuccess()) {
+        fail(correlationId, written.cause());
+      }
+    });
+
+    return result;
+  }
+
+  private void fail(long correlationId, Throwable cause) {
+    final CompletableFuture<Account> result = pending.remove(correlationId);
+    if (result != null) {
+      result.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Completes the calls as their responses arrive
+   */
+  private static final class Responses extends SimpleChannelInboundHandler<ByteBuf> {
+
+    private volatile RpcClient client;
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+      final long correlationId = frame.readLong();
+      final RpcStatus status = RpcStatus.of(frame.readByte());
+      final CompletableFuture<Account> result = client.pending.remove(correlationId);
+      if (result == null) {
+        return;
+      }
+
+      if (status == RpcStatus.OK) {
+        result.complete(new Account(frame.readLong(), null, Money.of(frame.readLong(), Account.SCALE)));
+      } else {
+        result.completeExceptionally(status.toException(frame.toString(StandardCharsets.UTF_8)));
+      }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+      final RpcClient current = client;
+      if (current != null) {
+        for (Long correlationId : current.pending.keySet()) {
+          current.fail(correlationId, new IllegalStateException("Connection closed"));
+        }
+      }
+      ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      ctx.close();
+    }
+  }
+}
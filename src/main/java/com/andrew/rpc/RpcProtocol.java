@@ -0,0 +1,73 @@
+package com.andrew.rpc;
+
+import com.andrew.model.Account;
+
+/**
+ * Length-prefixed binary protocol carrying account operations between JVM services and {@link RpcServer}.
+ * <p>
+ * Every frame starts with its length as a 4-byte int, excluding the length itself, followed by a correlation ID
+ * chosen by the client as an 8-byte long. All numbers are big-endian, and amounts and balances are counts of minor
+ * units, i.e. with {@link Account#SCALE} implied decimal places.
+ * <p>
+ * Requests then carry an opcode byte and the longs of the operation:
+ * <ul>
+ * <li>{@link #DEPOSIT}, {@link #WITHDRAW}: account ID, amount</li>
+ * <li>{@link #TRANSFER}: benefactor ID, beneficiary ID, amount</li>
+ * <li>{@link #FIND_BY_ID}: account ID</li>
+ * </ul>
+ * Responses carry a {@link RpcStatus} code byte, then the account ID and balance, after the operation, for
+ * {@link RpcStatus#OK}, and the failure message in UTF-8 otherwise. A transfer answers with its benefactor.
+ * <p>
+ * A client may send any number of requests without waiting for responses, which come back in completion order with
+ * the correlation ID of their request.
+ *
+ * @author andrew
+ */
+public final class RpcProtocol {
+
+  public static final byte DEPOSIT = 1;
+  public static final byte WITHDRAW = 2;
+  public static final byte TRANSFER = 3;
+  public static final byte FIND_BY_ID = 4;
+
+  /**
+   * Size of the length prefix of a frame
+   */
+  static final int LENGTH_SIZE = 4;
+
+  /**
+   * Size of the correlation ID and the opcode or status following the length of every frame
+   */
+  static final int HEADER_SIZE = 9;
+
+  /**
+   * Size of the account ID and balance of a successful response
+   */
+  static final int ACCOUNT_SIZE = 16;
+
+  /**
+   * Frames larger than this close the connection
+   */
+  static final int MAX_FRAME_SIZE = 1 << 16;
+
+  private RpcProtocol() {
+  }
+
+  /**
+   * @param opcode opcode of a request
+   * @return number of longs following the opcode, -1 for an unknown opcode
+   */
+  static int arguments(byte opcode) {
+    switch (opcode) {
+      case DEPOSIT:
+      case WITHDRAW:
+        return 2;
+      case TRANSFER:
+        return 3;
+      case FIND_BY_ID:
+        return 1;
+      default:
+        return -1;
+    }
+  }
+}
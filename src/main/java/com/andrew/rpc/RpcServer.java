@@ -0,0 +1,302 @@
+package com.andrew.rpc;
+
+import com.andrew.business.AccountHandler;
+import com.andrew.business.Outcome;
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.Withdraw;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.typesafe.config.Config;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.andrew.rpc.RpcProtocol.ACCOUNT_SIZE;
+import static com.andrew.rpc.RpcProtocol.HEADER_SIZE;
+import static com.andrew.rpc.RpcProtocol.LENGTH_SIZE;
+import static com.andrew.rpc.RpcProtocol.MAX_FRAME_SIZE;
+
+/**
+ * Serves the account operations of {@link AccountHandler} over the binary {@link RpcProtocol}, on its own port, for
+ * internal callers for which HTTP and JSON cost more than the operations themselves.
+ * <p>
+ * Each request is handed to the handler as soon as it is read, and answered whenever it completes, so a connection
+ * carries any number of requests at once. Once {@code max-in-flight} requests of a connection are running, reading
+ * from it pauses until half of them are answered, pushing back on the client through TCP rather than queueing
+ * unboundedly. Responses completing together share a flush.
+ *
+ * @author andrew
+ */
+@Singleton
+public class RpcServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RpcServer.class);
+
+  private static final int EXPLICIT_FLUSH_AFTER_FLUSHES = 256;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+  private final AccountHandler accountHandler;
+  private final boolean enabled;
+  private final int port;
+  private final int threads;
+  private final int maxInFlight;
+
+  private final AtomicInteger connections = new AtomicInteger();
+  private final LongAdder requests = new LongAdder();
+
+  private EventLoopGroup acceptors;
+  private EventLoopGroup workers;
+  private Channel channel;
+
+  @Inject
+  public RpcServer(Config config, AccountHandler accountHandler) {
+    this(accountHandler, config.getBoolean("rpc.enabled"), config.getInt("rpc.port"), config.getInt("rpc.threads"),
+        config.getInt("rpc.max-in-flight"));
+  }
+
+  /**
+   * @param accountHandler runs the operations
+   * @param enabled        whether {@link #start()} listens at all
+   * @param port           port to listen on, 0 for any free port
+   * @param threads        number of event loop threads, 0 for Netty's default
+   * @param maxInFlight    number of running requests of a connection beyond which reading from it pauses
+   */
+  public RpcServer(AccountHandler accountHandler, boolean enabled, int port, int threads, int maxInFlight) {
+    if (maxInFlight < 2) {
+      throw new IllegalArgumentException("Maximum number of requests in flight must be at least 2");
+    }
+
+    this.accountHandler = accountHandler;
+    this.enabled = enabled;
+    this.port = port;
+    this.threads = threads;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Start listening, when enabled
+   */
+  public synchronized void start() {
+    if (!enabled || channel != null) {
+      return;
+    }
+
+    acceptors = new NioEventLoopGroup(1);
+    workers = new NioEventLoopGroup(threads);
+    channel = new ServerBootstrap()
+        .group(acceptors, workers)
+        .channel(NioServerSocketChannel.class)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            channel.pipeline()
+                .addLast(new FlushConsolidationHandler(EXPLICIT_FLUSH_AFTER_FLUSHES, true))
+                .addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_SIZE, 0, LENGTH_SIZE, 0, LENGTH_SIZE))
+                .addLast(new Connection());
+          }
+        })
+        .bind(port)
+        .syncUninterruptibly()
+        .channel();
+    LOGGER.info("Binary protocol listening on port {}", getPort());
+  }
+
+  /**
+   * @return port listened on, -1 when not listening
+   */
+  public synchronized int getPort() {
+    return channel == null ? -1 : ((InetSocketAddress) channel.localAddress()).getPort();
+  }
+
+  /**
+   * @return number of open connections
+   */
+  public int getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * @return number of requests received since startup
+   */
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  /**
+   * Stop listening and close every connection, requests still running being left unanswered
+   */
+  @Override
+  public synchronized void close() {
+    if (channel == null) {
+      return;
+    }
+
+    channel.close().syncUninterruptibly();
+    acceptors.shutdownGracefully(0, SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS).syncUninterruptibly();
+    workers.shutdownGracefully(0, SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS).syncUninterruptibly();
+    channel = null;
+  }
+
+  private CompletableFuture<Outcome<Account>> execute(byte opcode, ByteBuf arguments) {
+    switch (opcode) {
+      case RpcProtocol.DEPOSIT:
+        return accountHandler.tryDepositAsync(new Deposit(arguments.readLong(), amount(arguments)));
+      case RpcProtocol.WITHDRAW:
+        return accountHandler.tryWithdrawAsync(new Withdraw(arguments.readLong(), amount(arguments)));
+      case RpcProtocol.TRANSFER:
+        return accountHandler.tryTransferAsync(new Transfer(arguments.readLong(), arguments.readLong(),
+            amount(arguments)));
+      default:
+        return CompletableFuture.completedFuture(accountHandler.tryFindById(arguments.readLong()));
+    }
+  }
+
+  private static Money amount(ByteBuf arguments) {
+    return Money.of(arguments.readLong(), Account.SCALE);
+  }
+
+  /**
+   * Encode the response to a request, reading the balance of the account straight away so that it is the balance
+   * after the request rather than after whichever changes run before the response is written. Rejections are sent
+   * with the status and message of the exception they stand for.
+   */
+  private static ByteBuf response(ByteBufAllocator allocator, long correlationId, Outcome<Account> outcome,
+                                  Throwable error) {
+    if (error != null) {
+      final Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause()
+          : error;
+      final RpcStatus status = RpcStatus.of(cause);
+      if (status == RpcStatus.INTERNAL_ERROR) {
+        LOGGER.error("Binary protocol request failed", cause);
+      }
+
+      return failure(allocator, correlationId, status,
+          cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage());
+    }
+    if (!outcome.isOk()) {
+      return failure(allocator, correlationId, RpcStatus.of(outcome.getStatus()), outcome.getMessage());
+    }
+
+    final Account account = outcome.getValue();
+    return allocator.buffer(LENGTH_SIZE + HEADER_SIZE + ACCOUNT_SIZE)
+        .writeInt(HEADER_SIZE + ACCOUNT_SIZE)
+        .writeLong(correlationId)
+        .writeByte(RpcStatus.OK.code())
+        .writeLong(account.getId())
+        .writeLong(account.balanceUnits());
+  }
+
+  private static ByteBuf failure(ByteBufAllocator allocator, long correlationId, RpcStatus status, String text) {
+    final byte[] message = text.getBytes(StandardCharsets.UTF_8);
+
+    return allocator.buffer(LENGTH_SIZE + HEADER_SIZE + message.length)
+        .writeInt(HEADER_SIZE + message.length)
+        .writeLong(correlationId)
+        .writeByte(status.code())
+        .writeBytes(message);
+  }
+
+  /**
+   * Requests of a single connection. Its state is only touched by the event loop of the connection.
+   */
+  private final class Connection extends SimpleChannelInboundHandler<ByteBuf> {
+
+    private int inFlight;
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+      connections.incrementAndGet();
+      ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+      connections.decrementAndGet();
+      ctx.fireChannelInactive();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+      if (frame.readableBytes() < HEADER_SIZE) {
+        ctx.close();
+        return;
+      }
+
+      final long correlationId = frame.readLong();
+      final byte opcode = frame.readByte();
+      if (frame.readableBytes() != RpcProtocol.arguments(opcode) * Long.BYTES) {
+        ctx.writeAndFlush(response(ctx.alloc(), correlationId, null,
+            new IllegalArgumentException("Unknown operation or wrong number of arguments")));
+        return;
+      }
+      requests.increment();
+
+      CompletableFuture<Outcome<Account>> result;
+      try {
+        result = execute(opcode, frame);
+      } catch (RuntimeException e) {
+        result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+      }
+
+      if (result.isDone()) {
+        result.whenComplete((outcome, error) -> ctx.writeAndFlush(response(ctx.alloc(), correlationId, outcome,
+            error)));
+        return;
+      }
+
+      if (++inFlight >= maxInFlight && ctx.channel().config().isAutoRead()) {
+        ctx.channel().config().setAutoRead(false);
+      }
+      result.whenComplete((outcome, error) -> {
+        final ByteBuf response = response(ctx.alloc(), correlationId, outcome, error);
+        try {
+          ctx.executor().execute(() -> completed(ctx, response));
+        } catch (RejectedExecutionException e) {
+          // server closed meanwhile
+          response.release();
+        }
+      });
+    }
+
+    private void completed(ChannelHandlerContext ctx, ByteBuf response) {
+      ctx.writeAndFlush(response);
+      if (--inFlight <= maxInFlight / 2 && !ctx.channel().config().isAutoRead()) {
+        ctx.channel().config().setAutoRead(true);
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      LOGGER.debug("Closing binary protocol connection {}", ctx.channel().remoteAddress(), cause);
+      ctx.close();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.andrew.rpc;
+
+import com.andrew.dto.TransferStatus;
+import com.andrew.exception.AccountNotFoundException;
+import com.andrew.exception.IllegalTransferException;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.exception.LockTimeoutException;
+import com.andrew.exception.ServerBusyException;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Outcome of a binary protocol request, sent as its ordinal. Failures map to and from the exceptions the REST API
+ * answers with.
+ *
+ * @author andrew
+ */
+public enum RpcStatus {
+
+  OK,
+  INVALID_REQUEST,
+  ACCOUNT_NOT_FOUND,
+  INSUFFICIENT_BALANCE,
+  ILLEGAL_TRANSFER,
+  LOCK_TIMEOUT,
+  SERVER_BUSY,
+  INTERNAL_ERROR;
+
+  private static final RpcStatus[] VALUES = values();
+
+  /**
+   * @param code code of a status as sent
+   * @return status of the code, {@link #INTERNAL_ERROR} for an unknown code
+   */
+  public static RpcStatus of(byte code) {
+    return code >= 0 && code < VALUES.length ? VALUES[code] : INTERNAL_ERROR;
+  }
+
+  /**
+   * @param error failure of a request
+   * @return status reporting the failure
+   */
+  public static RpcStatus of(Throwable error) {
+    final Throwable cause = error instanceof CompletionException && error.getCause() != null
+        ? error.getCause()
+        : error;
+    if (cause instanceof AccountNotFoundException) {
+      return ACCOUNT_NOT_FOUND;
+    } else if (cause instanceof InsufficientBalanceException) {
+      return INSUFFICIENT_BALANCE;
+    } else if (cause instanceof IllegalTransferException) {
+      return ILLEGAL_TRANSFER;
+    } else if (cause instanceof LockTimeoutException) {
+      return LOCK_TIMEOUT;
+    } else if (cause instanceof ServerBusyException) {
+      return SERVER_BUSY;
+    } else if (cause instanceof IllegalArgumentException || cause instanceof NullPointerException
+        || cause instanceof ArithmeticException) {
+      return INVALID_REQUEST;
+    }
+
+    return INTERNAL_ERROR;
+  }
+
+  /**
+   * @param rejection status a request was rejected with
+   * @return status reporting the rejection, the same as for the exception the rejection stands for
+   */
+  public static RpcStatus of(TransferStatus rejection) {
+    switch (rejection) {
+      case OK:
+        return OK;
+      case ACCOUNT_NOT_FOUND:
+        return ACCOUNT_NOT_FOUND;
+      case INSUFFICIENT_BALANCE:
+        return INSUFFICIENT_BALANCE;
+      case ILLEGAL_TRANSFER:
+      case NO_EXCHANGE_RATE:
+        return ILLEGAL_TRANSFER;
+      case INVALID_AMOUNT:
+      case BALANCE_OVERFLOW:
+        return INVALID_REQUEST;
+      default:
+        return INTERNAL_ERROR;
+    }
+  }
+
+  /**
+   * @return code of the status as sent
+   */
+  public byte code() {
+    return (byte) ordinal();
+  }
+
+  /**
+   * @param message message sent with the failure
+   * @return exception the REST API answers with for the failure
+   */
+  public RuntimeException toException(String message) {
+    switch (this) {
+      case ACCOUNT_NOT_FOUND:
+        return new AccountNotFoundException(message);
+      case INSUFFICIENT_BALANCE:
+        return new InsufficientBalanceException(message);
+      case ILLEGAL_TRANSFER:
+        return new IllegalTransferException(message);
+      case LOCK_TIMEOUT:
+        return new LockTimeoutException(message);
+      case SERVER_BUSY:
+        return new ServerBusyException(message);
+      case INVALID_REQUEST:
+        return new IllegalArgumentException(message);
+      default:
+        return new IllegalStateException(message);
+    }
+  }
+}
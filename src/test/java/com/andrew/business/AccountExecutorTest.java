@@ -0,0 +1,106 @@
+package com.andrew.business;
+
+import com.andrew.exception.ServerBusyException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author andrew
+ */
+public class AccountExecutorTest {
+
+  private final AccountExecutor sut = new AccountExecutor(1, 1, false);
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  public void submit() {
+    final Thread caller = Thread.currentThread();
+
+    assertNotEquals(caller, sut.submit(Thread::currentThread).join());
+    assertEquals(1, sut.getCompleted());
+    assertEquals(0, sut.getQueueDepth());
+  }
+
+  @Test
+  public void submit_failingTask() {
+    try {
+      sut.submit(() -> {
+        throw new IllegalArgumentException("Amount must be greater than 0");
+      }).join();
+      fail("Task should have failed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void submit_rejectedWhenSaturated() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CompletableFuture<Boolean> running = sut.submit(() -> {
+      started.countDown();
+      return await(release);
+    });
+    started.await();
+    final CompletableFuture<Boolean> waiting = sut.submit(() -> true);
+    assertEquals(1, sut.getQueueDepth());
+
+    try {
+      sut.submit(() -> true).join();
+      fail("Task should have been rejected");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof ServerBusyException);
+    }
+    assertEquals(1, sut.getRejected());
+
+    release.countDown();
+    assertTrue(running.join());
+    assertTrue(waiting.join());
+    assertEquals(0, sut.getQueueDepth());
+    assertTrue(sut.getMaxWaitNanos() > 0);
+    assertTrue(sut.getWaitNanos() >= sut.getMaxWaitNanos());
+  }
+
+  @Test
+  public void submit_virtualThreads() {
+    final AccountExecutor executor = new AccountExecutor(1, 1, true);
+    try {
+      assertTrue(executor.submit(() -> true).join());
+      assertEquals(1, executor.getCompleted());
+    } finally {
+      executor.close();
+    }
+  }
+
+  @Test
+  public void direct() {
+    final Thread caller = Thread.currentThread();
+    final CompletableFuture<Thread> result = AccountExecutor.direct().submit(Thread::currentThread);
+
+    assertTrue(result.isDone());
+    assertEquals(caller, result.join());
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      latch.await();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
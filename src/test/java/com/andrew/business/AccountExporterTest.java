@@ -0,0 +1,149 @@
+package com.andrew.business;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.ExportState;
+import com.andrew.dto.ExportStatus;
+import com.andrew.dto.Transfer;
+import com.andrew.export.AccountExportReader;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class AccountExporterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AccountRepository accountRepository = new InMemoryAccountRepository();
+  private final AccountHandler accountHandler = new AccountHandler(accountRepository,
+      new AccountLockManager(1024, 10, TimeUnit.SECONDS), AccountJournal.disabled(),
+      ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(), new AccountSnapshots(),
+      new AccountLedger(true, 256, 1024), HotAccounts.disabled(), ExchangeRates.disabled(),
+      DepositCombiner.disabled());
+
+  private AccountExporter sut;
+
+  @After
+  public void tearDown() {
+    if (sut != null) {
+      sut.close();
+    }
+  }
+
+  @Test
+  public void export() throws Exception {
+    sut = new AccountExporter(accountHandler, accountRepository, folder.getRoot().toPath().resolve("export"), 2);
+    accountHandler.create(new CreateAccount("Andrew", Money.parse("10.50")));
+    accountHandler.create(new CreateAccount("Ivan", Money.ZERO));
+    accountHandler.create(new CreateAccount("Andrew", Money.valueOf(3)));
+
+    final ExportStatus status = sut.export();
+
+    assertEquals(ExportState.COMPLETED, status.getState());
+    assertEquals(3, status.getAccounts());
+    assertEquals(1, sut.getExports());
+    assertEquals(3, sut.getExported());
+    assertNull(sut.status());
+    try (AccountExportReader reader = AccountExportReader.open(sut.fileOf(status))) {
+      assertEquals(3, reader.getAccounts());
+      assertTrue(reader.isConsistent());
+      assertEquals(2, reader.getRowGroups());
+      assertArrayEquals(new long[]{1, 2}, reader.readIds(0));
+      assertArrayEquals(new long[]{1050, 0}, reader.readBalances(0));
+      assertArrayEquals(new String[]{"Andrew"}, reader.readNames(1));
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void start_runsInBackground() throws Exception {
+    final Path dir = folder.getRoot().toPath();
+    sut = new AccountExporter(accountHandler, accountRepository, dir, 1024);
+    accountHandler.create(new CreateAccount("Andrew", Money.valueOf(1)));
+
+    ExportStatus status = sut.start();
+    while (status.getState() == ExportState.RUNNING) {
+      Thread.sleep(10);
+      status = sut.status();
+    }
+
+    assertEquals(ExportState.COMPLETED, status.getState());
+    assertEquals(1, status.getAccounts());
+    assertTrue(Files.exists(sut.fileOf(status)));
+    assertFalse(Files.exists(dir.resolve(status.getFile() + ".tmp")));
+  }
+
+  @Test(timeout = 60_000)
+  public void export_consistentDuringTransfers() throws Exception {
+    sut = new AccountExporter(accountHandler, accountRepository, folder.getRoot().toPath(), 16);
+    final int accounts = 100;
+    for (int i = 0; i < accounts; i++) {
+      accountHandler.create(new CreateAccount("Account " + i, Money.valueOf(100)));
+    }
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(pool.submit(() -> {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running.get()) {
+          final long from = 1 + random.nextInt(accounts);
+          final long to = 1 + (from + random.nextInt(accounts - 1)) % accounts;
+          try {
+            accountHandler.transfer(new Transfer(from, to, Money.valueOf(1 + random.nextInt(5))));
+          } catch (RuntimeException ignored) {
+            // insufficient balance
+          }
+        }
+      }));
+    }
+
+    try {
+      for (int i = 0; i < 20; i++) {
+        final ExportStatus status = sut.export();
+        assertEquals(ExportState.COMPLETED, status.getState());
+        try (AccountExportReader reader = AccountExportReader.open(sut.fileOf(status))) {
+          long total = 0;
+          for (int group = 0; group < reader.getRowGroups(); group++) {
+            for (long balance : reader.readBalances(group)) {
+              total += balance;
+            }
+          }
+          assertEquals(accounts * Account.toMinorUnits(Money.valueOf(100)), total);
+        }
+      }
+    } finally {
+      running.set(false);
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      pool.shutdown();
+    }
+  }
+}
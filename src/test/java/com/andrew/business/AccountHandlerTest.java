@@ -1,14 +1,20 @@
 package com.andrew.business;
 
+import com.andrew.dto.BatchMode;
 import com.andrew.dto.CreateAccount;
 import com.andrew.dto.Deposit;
+import com.andrew.dto.LedgerEntry;
 import com.andrew.dto.Transfer;
+import com.andrew.dto.TransferStatus;
 import com.andrew.dto.Withdraw;
 import com.andrew.exception.AccountNotFoundException;
 import com.andrew.exception.IllegalTransferException;
 import com.andrew.exception.InsufficientBalanceException;
 import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
 import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -16,17 +22,36 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -38,6 +63,36 @@ public class AccountHandlerTest {
   @Mock
   private AccountRepository accountRepository;
 
+  @Mock
+  private AccountJournal journal;
+
+  @Mock
+  private ShardedTransactionEngine engine;
+
+  @Spy
+  private AccountExecutor executor = AccountExecutor.direct();
+
+  @Spy
+  private AccountMetrics metrics = new AccountMetrics();
+
+  @Spy
+  private AccountLockManager lockManager = new AccountLockManager(16, 500, TimeUnit.MILLISECONDS);
+
+  @Spy
+  private AccountSnapshots snapshots = new AccountSnapshots(4);
+
+  @Spy
+  private AccountLedger ledger = new AccountLedger(true, 8, 64);
+
+  @Spy
+  private HotAccounts hotAccounts = HotAccounts.disabled();
+
+  @Spy
+  private ExchangeRates exchangeRates = ExchangeRates.disabled();
+
+  @Spy
+  private DepositCombiner combiner = DepositCombiner.disabled();
+
   @InjectMocks
   private AccountHandler sut;
 
@@ -48,8 +103,8 @@ public class AccountHandlerTest {
 
   @Test
   public void createAccount() {
-    final CreateAccount newAccount = new CreateAccount("Andrew", BigDecimal.TEN);
-    final Account expected = new Account(1L, "Andrew", BigDecimal.TEN);
+    final CreateAccount newAccount = new CreateAccount("Andrew", Money.valueOf(10));
+    final Account expected = new Account(1L, "Andrew", Money.valueOf(10));
 
     when(accountRepository.create(newAccount))
         .thenReturn(expected);
@@ -61,7 +116,7 @@ public class AccountHandlerTest {
   @Test
   public void createAccount_nullOpeningBalance() {
     final CreateAccount newAccount = new CreateAccount("Andrew", null);
-    final Account expected = new Account(1L, "Andrew", BigDecimal.ONE);
+    final Account expected = new Account(1L, "Andrew", Money.valueOf(1));
 
     when(accountRepository.create(newAccount))
         .thenReturn(expected);
@@ -75,7 +130,7 @@ public class AccountHandlerTest {
     exceptionRule.expect(IllegalArgumentException.class);
     exceptionRule.expectMessage("Opening balance cannot be less than 0");
 
-    sut.create(new CreateAccount("Andrew", BigDecimal.TEN.negate()));
+    sut.create(new CreateAccount("Andrew", Money.valueOf(10).negate()));
     verify(accountRepository, times(0)).create(new CreateAccount());
   }
 
@@ -84,13 +139,13 @@ public class AccountHandlerTest {
     exceptionRule.expect(NullPointerException.class);
     exceptionRule.expectMessage("Account name cannot be null");
 
-    sut.create(new CreateAccount(null, BigDecimal.TEN));
+    sut.create(new CreateAccount(null, Money.valueOf(10)));
     verify(accountRepository, times(0)).create(new CreateAccount());
   }
 
   @Test
   public void findById() {
-    final Account expected = new Account(1L, "Andrew", BigDecimal.TEN);
+    final Account expected = new Account(1L, "Andrew", Money.valueOf(10));
 
     when(accountRepository.findById(1L))
         .thenReturn(expected);
@@ -111,7 +166,7 @@ public class AccountHandlerTest {
   @Test
   public void findAll() {
     final Account accountOne = createAccount("Andrew", null);
-    final Account accountTwo = createAccount("Ivan", BigDecimal.ONE);
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
     final Account[] expected = {accountOne, accountTwo};
 
     when(accountRepository.findAll())
@@ -121,16 +176,123 @@ public class AccountHandlerTest {
     verify(accountRepository, times(1)).findAll();
   }
 
+  @Test
+  public void findPage() {
+    final Account accountOne = createAccount("Andrew", null);
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+
+    when(accountRepository.findPage(0L, 2))
+        .thenReturn(Arrays.asList(accountOne, accountTwo));
+
+    assertThat(sut.findPage(0L, 2), contains(accountOne, accountTwo));
+    verify(accountRepository, times(1)).findPage(0L, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void findPage_limitTooLarge() {
+    sut.findPage(0L, AccountHandler.MAX_PAGE_SIZE + 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void findPage_negativeCursor() {
+    sut.findPage(-1L, 10);
+  }
+
   @Test
   public void deposit() {
-    final Account account = createAccount("Andrew", BigDecimal.ONE);
-    final Deposit expected = new Deposit(account.getId(), BigDecimal.TEN);
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    final Deposit expected = new Deposit(account.getId(), Money.valueOf(10));
     final Account updatedAccount = sut.deposit(expected);
 
-    assertThat(BigDecimal.valueOf(11), Matchers.equalTo(updatedAccount.getBalance()));
+    assertThat(Money.valueOf(11), Matchers.equalTo(updatedAccount.getBalance()));
     verify(accountRepository, times(1)).findById(1L);
   }
 
+  @Test
+  public void deposit_journalFailureLeavesBalance() {
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    doThrow(new UncheckedIOException(new IOException("Disk full"))).when(journal).write(any());
+
+    try {
+      sut.deposit(new Deposit(account.getId(), Money.valueOf(10)));
+      fail("Deposit should have failed");
+    } catch (UncheckedIOException e) {
+      assertEquals(Money.valueOf(1), account.getBalance());
+    }
+  }
+
+  @Test
+  public void withdraw_journalFailureUndoesWithdrawal() {
+    final Account account = createAccount("Andrew", Money.valueOf(10));
+    doThrow(new UncheckedIOException(new IOException("Disk full"))).when(journal).write(any());
+
+    try {
+      sut.withdraw(new Withdraw(account.getId(), Money.valueOf(4)));
+      fail("Withdrawal should have failed");
+    } catch (UncheckedIOException e) {
+      assertEquals(Money.valueOf(10), account.getBalance());
+    }
+    assertTrue(sut.findTransactions(account.getId(), 0L, Long.MAX_VALUE, 10).isEmpty());
+  }
+
+  @Test
+  public void transfer_journalFailureUndoesTransfer() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    doThrow(new UncheckedIOException(new IOException("Disk full"))).when(journal).write(any());
+
+    try {
+      sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(4)));
+      fail("Transfer should have failed");
+    } catch (UncheckedIOException e) {
+      assertEquals(Money.valueOf(10), accountOne.getBalance());
+      assertEquals(Money.ZERO, accountTwo.getBalance());
+    }
+  }
+
+  @Test
+  public void transfer_creditsBeneficiaryOnceJournaled() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    doAnswer(invocation -> {
+      assertEquals(Money.valueOf(6), accountOne.getBalance());
+      assertEquals(Money.ZERO, accountTwo.getBalance());
+      throw new UncheckedIOException(new IOException("Disk full"));
+    }).when(journal).write(any());
+
+    try {
+      sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(4)));
+      fail("Transfer should have failed");
+    } catch (UncheckedIOException e) {
+      assertEquals(Money.valueOf(10), accountOne.getBalance());
+      assertEquals(Money.ZERO, accountTwo.getBalance());
+    }
+  }
+
+  @Test
+  public void transferBatch_creditsBeneficiariesOnceJournaled() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    final Account accountThree = createAccount("Peter", null);
+    doAnswer(invocation -> {
+      assertEquals(Money.valueOf(4), accountOne.getBalance());
+      assertEquals(Money.ZERO, accountTwo.getBalance());
+      assertEquals(Money.ZERO, accountThree.getBalance());
+      throw new UncheckedIOException(new IOException("Disk full"));
+    }).when(journal).write(any());
+
+    try {
+      sut.transfer(Arrays.asList(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(4)),
+          new Transfer(accountTwo.getId(), accountThree.getId(), Money.valueOf(3)),
+          new Transfer(accountOne.getId(), accountThree.getId(), Money.valueOf(2))), BatchMode.BEST_EFFORT);
+      fail("Batch should have failed");
+    } catch (UncheckedIOException e) {
+      assertEquals(Money.valueOf(10), accountOne.getBalance());
+      assertEquals(Money.ZERO, accountTwo.getBalance());
+      assertEquals(Money.ZERO, accountThree.getBalance());
+    }
+  }
+
   @Test
   public void deposit_nullAmount() {
     exceptionRule.expect(NullPointerException.class);
@@ -147,7 +309,17 @@ public class AccountHandlerTest {
     exceptionRule.expectMessage("Amount must be greater than 0");
 
     final Account account = createAccount("Andrew", null);
-    final Deposit expected = new Deposit(account.getId(), BigDecimal.ONE.negate());
+    final Deposit expected = new Deposit(account.getId(), Money.valueOf(1).negate());
+    sut.deposit(expected);
+  }
+
+  @Test
+  public void deposit_tooManyDecimalPlaces() {
+    exceptionRule.expect(IllegalArgumentException.class);
+    exceptionRule.expectMessage("Amount cannot have more than 2 decimal places");
+
+    final Account account = createAccount("Andrew", null);
+    final Deposit expected = new Deposit(account.getId(), Money.parse("0.001"));
     sut.deposit(expected);
   }
 
@@ -156,17 +328,17 @@ public class AccountHandlerTest {
     exceptionRule.expect(AccountNotFoundException.class);
     exceptionRule.expectMessage(String.format("Specified ID: %d not associated with any account", 99L));
 
-    final Deposit expected = new Deposit(99L, BigDecimal.ONE);
+    final Deposit expected = new Deposit(99L, Money.valueOf(1));
     sut.deposit(expected);
   }
 
   @Test
   public void withdraw() {
-    final Account account = createAccount("Andrew", BigDecimal.TEN);
-    final Withdraw expected = new Withdraw(account.getId(), BigDecimal.ONE);
+    final Account account = createAccount("Andrew", Money.valueOf(10));
+    final Withdraw expected = new Withdraw(account.getId(), Money.valueOf(1));
     final Account updatedAccount = sut.withdraw(expected);
 
-    assertThat(BigDecimal.valueOf(9), Matchers.equalTo(updatedAccount.getBalance()));
+    assertThat(Money.valueOf(9), Matchers.equalTo(updatedAccount.getBalance()));
     verify(accountRepository, times(1)).findById(1L);
   }
 
@@ -186,26 +358,143 @@ public class AccountHandlerTest {
     exceptionRule.expectMessage("Amount must be greater than 0");
 
     final Account account = createAccount("Andrew", null);
-    final Withdraw expected = new Withdraw(account.getId(), BigDecimal.ONE.negate());
+    final Withdraw expected = new Withdraw(account.getId(), Money.valueOf(1).negate());
     sut.withdraw(expected);
   }
 
+  @Test
+  public void withdraw_insufficientBalance() {
+    exceptionRule.expect(InsufficientBalanceException.class);
+    exceptionRule.expectMessage("Insufficient balance");
+
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    sut.withdraw(new Withdraw(account.getId(), Money.valueOf(10)));
+  }
+
+  @Test
+  public void withdraw_insufficientBalanceRecorded() {
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    try {
+      sut.withdraw(new Withdraw(account.getId(), Money.valueOf(10)));
+    } catch (InsufficientBalanceException ignored) {
+    }
+
+    assertEquals(1, metrics.getLatency(AccountMetrics.Operation.WITHDRAW).getCount());
+    assertEquals(1, metrics.getFailures(AccountMetrics.Operation.WITHDRAW,
+        AccountMetrics.Failure.INSUFFICIENT_BALANCE));
+  }
+
   @Test
   public void withdraw_invalidId() {
     exceptionRule.expect(AccountNotFoundException.class);
     exceptionRule.expectMessage(String.format("Specified ID: %d not associated with any account", 99L));
 
-    final Withdraw expected = new Withdraw(99L, BigDecimal.ONE);
+    final Withdraw expected = new Withdraw(99L, Money.valueOf(1));
     sut.withdraw(expected);
   }
 
+  @Test
+  public void tryWithdraw_insufficientBalance() {
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    final Outcome<Account> outcome = sut.tryWithdraw(new Withdraw(account.getId(), Money.valueOf(10)));
+
+    assertFalse(outcome.isOk());
+    assertSame(Outcome.rejected(TransferStatus.INSUFFICIENT_BALANCE), outcome);
+    assertEquals("Insufficient balance", outcome.getMessage());
+    assertEquals(Money.valueOf(1), account.getBalance());
+    assertEquals(1, metrics.getFailures(AccountMetrics.Operation.WITHDRAW,
+        AccountMetrics.Failure.INSUFFICIENT_BALANCE));
+    verifyZeroInteractions(journal);
+  }
+
+  @Test
+  public void tryWithdraw_invalidId() {
+    final Outcome<Account> outcome = sut.tryWithdraw(new Withdraw(99L, Money.valueOf(1)));
+
+    assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, outcome.getStatus());
+    assertEquals(String.format("Specified ID: %d not associated with any account", 99L), outcome.getMessage());
+  }
+
+  @Test
+  public void tryDeposit_negativeAmount() {
+    final Account account = createAccount("Andrew", null);
+    final Outcome<Account> outcome = sut.tryDeposit(new Deposit(account.getId(), Money.valueOf(1).negate()));
+
+    assertEquals(TransferStatus.INVALID_AMOUNT, outcome.getStatus());
+    assertEquals("Amount must be greater than 0", outcome.getMessage());
+  }
+
+  @Test
+  public void tryFindById_invalidId() {
+    final Outcome<Account> outcome = sut.tryFindById(20L);
+
+    assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, outcome.getStatus());
+    assertEquals(1, metrics.getFailures(AccountMetrics.Operation.FIND_BY_ID,
+        AccountMetrics.Failure.ACCOUNT_NOT_FOUND));
+  }
+
+  @Test
+  public void tryTransferAsync_insufficientBalance() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+    final Outcome<Account> outcome =
+        sut.tryTransferAsync(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(2))).join();
+
+    assertEquals(TransferStatus.INSUFFICIENT_BALANCE, outcome.getStatus());
+    assertEquals(Money.valueOf(1), accountOne.getBalance());
+    assertEquals(Money.valueOf(1), accountTwo.getBalance());
+  }
+
+  @Test
+  public void tryTransfer_sameBenefactorAndBeneficiaryId() {
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    final Outcome<Account> outcome = sut.tryTransfer(new Transfer(account.getId(), account.getId(), Money.valueOf(1)));
+
+    assertEquals(TransferStatus.ILLEGAL_TRANSFER, outcome.getStatus());
+  }
+
+  @Test
+  public void tryTransfer_noExchangeRate() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+    accountTwo.setCurrency(Currency.getInstance("GBP"));
+    final Outcome<Account> outcome =
+        sut.tryTransfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1)));
+
+    assertEquals(TransferStatus.NO_EXCHANGE_RATE, outcome.getStatus());
+    assertEquals(Money.valueOf(1), accountOne.getBalance());
+  }
+
   @Test
   public void transfer() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.ONE);
-    final Account accountTwo = createAccount("Ivan", BigDecimal.ONE);
-    final Account updatedAccount = sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), BigDecimal.ONE));
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+    final Account updatedAccount = sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1)));
 
-    assertThat(BigDecimal.valueOf(0), Matchers.equalTo(updatedAccount.getBalance()));
+    assertThat(Money.valueOf(0), Matchers.equalTo(updatedAccount.getBalance()));
+  }
+
+  @Test
+  public void findTransactions() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+    sut.deposit(new Deposit(accountOne.getId(), Money.valueOf(2)));
+    sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1)));
+
+    final List<LedgerEntry> entries = sut.findTransactions(accountOne.getId(), 0L, Long.MAX_VALUE, 10);
+    assertEquals(2, entries.size());
+    assertEquals(LedgerEntry.Type.DEPOSIT, entries.get(0).getType());
+    assertEquals(LedgerEntry.Type.TRANSFER_OUT, entries.get(1).getType());
+    assertEquals(accountTwo.getId(), entries.get(1).getCounterpartyId());
+    verify(ledger, times(1)).transferred(accountOne, accountTwo, 100L, 100L);
+  }
+
+  @Test
+  public void findTransactions_emptyRange() {
+    exceptionRule.expect(IllegalArgumentException.class);
+    exceptionRule.expectMessage("Start of the range must be before its end");
+
+    sut.findTransactions(1L, 10L, 10L, 10);
   }
 
   @Test
@@ -213,8 +502,8 @@ public class AccountHandlerTest {
     exceptionRule.expect(IllegalTransferException.class);
     exceptionRule.expectMessage("Cannot transfer money to your account");
 
-    final Account accountOne = createAccount("Andrew", BigDecimal.ONE);
-    sut.transfer(new Transfer(accountOne.getId(), accountOne.getId(), BigDecimal.ONE));
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
+    sut.transfer(new Transfer(accountOne.getId(), accountOne.getId(), Money.valueOf(1)));
   }
 
   @Test
@@ -222,7 +511,7 @@ public class AccountHandlerTest {
     exceptionRule.expect(NullPointerException.class);
     exceptionRule.expectMessage("Amount cannot be null");
 
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
     final Account accountTwo = createAccount("Ivan", null);
     sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), null));
   }
@@ -232,9 +521,9 @@ public class AccountHandlerTest {
     exceptionRule.expect(IllegalArgumentException.class);
     exceptionRule.expectMessage("Amount must be greater than 0");
 
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
     final Account accountTwo = createAccount("Ivan", null);
-    sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), BigDecimal.ONE.negate()));
+    sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1).negate()));
   }
 
   @Test
@@ -242,9 +531,9 @@ public class AccountHandlerTest {
     exceptionRule.expect(InsufficientBalanceException.class);
     exceptionRule.expectMessage("Insufficient balance");
 
-    final Account accountOne = createAccount("Andrew", BigDecimal.ONE);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
     final Account accountTwo = createAccount("Ivan", null);
-    sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), BigDecimal.TEN));
+    sut.transfer(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(10)));
   }
 
   @Test
@@ -253,7 +542,7 @@ public class AccountHandlerTest {
     exceptionRule.expectMessage(String.format("Specified ID: %d not associated with any account", 99L));
 
     final Account accountTwo = createAccount("Ivan", null);
-    sut.transfer(new Transfer(99L, accountTwo.getId(), BigDecimal.ONE));
+    sut.transfer(new Transfer(99L, accountTwo.getId(), Money.valueOf(1)));
   }
 
   @Test
@@ -261,11 +550,152 @@ public class AccountHandlerTest {
     exceptionRule.expect(AccountNotFoundException.class);
     exceptionRule.expectMessage(String.format("Specified ID: %d not associated with any account", 99L));
 
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
-    sut.transfer(new Transfer(accountOne.getId(), 99L, BigDecimal.ONE));
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    sut.transfer(new Transfer(accountOne.getId(), 99L, Money.valueOf(1)));
+  }
+
+  @Test
+  public void depositAsync_withoutEngine() {
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    final Account updatedAccount = sut.depositAsync(new Deposit(account.getId(), Money.valueOf(10))).join();
+
+    assertEquals(Money.valueOf(11), updatedAccount.getBalance());
+    verify(engine, times(0)).deposit(account, 1000L);
+  }
+
+  @Test
+  public void transferAsync_sameBenefactorAndBeneficiaryId() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
+    final CompletableFuture<Account> result =
+        sut.transferAsync(new Transfer(accountOne.getId(), accountOne.getId(), Money.valueOf(1)));
+
+    assertTrue(result.isCompletedExceptionally());
+  }
+
+  @Test
+  public void transferBatch_bestEffort() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    final TransferStatus[] statuses = sut.transfer(Arrays.asList(
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(5)),
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(10)),
+        new Transfer(accountOne.getId(), accountOne.getId(), Money.valueOf(1)),
+        new Transfer(accountOne.getId(), 99L, Money.valueOf(1)),
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1).negate())), BatchMode.BEST_EFFORT);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.OK, TransferStatus.INSUFFICIENT_BALANCE,
+        TransferStatus.ILLEGAL_TRANSFER, TransferStatus.ACCOUNT_NOT_FOUND, TransferStatus.INVALID_AMOUNT}, statuses);
+    assertEquals(Money.valueOf(5), accountOne.getBalance());
+    assertEquals(Money.valueOf(5), accountTwo.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomic() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    final Account accountThree = createAccount("Peter", null);
+    final TransferStatus[] statuses = sut.transfer(Arrays.asList(
+        new Transfer(accountTwo.getId(), accountThree.getId(), Money.valueOf(10)),
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(10))), BatchMode.ATOMIC);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.OK, TransferStatus.OK}, statuses);
+    assertEquals(Money.ZERO, accountOne.getBalance());
+    assertEquals(Money.ZERO, accountTwo.getBalance());
+    assertEquals(Money.valueOf(10), accountThree.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicInsufficientBalance() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(5));
+    final TransferStatus[] statuses = sut.transfer(Arrays.asList(
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(5)),
+        new Transfer(accountTwo.getId(), accountOne.getId(), Money.valueOf(20))), BatchMode.ATOMIC);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.INSUFFICIENT_BALANCE}, statuses);
+    assertEquals(Money.valueOf(10), accountOne.getBalance());
+    assertEquals(Money.valueOf(5), accountTwo.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicInsufficientBalanceChargedToOverdrawingTransfer() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    final TransferStatus[] statuses = sut.transfer(Arrays.asList(
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(4)),
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(20))), BatchMode.ATOMIC);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.INSUFFICIENT_BALANCE}, statuses);
+    assertEquals(Money.valueOf(10), accountOne.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicInvalidTransfer() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    final TransferStatus[] statuses = sut.transfer(Arrays.asList(
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(5)),
+        new Transfer(accountOne.getId(), 99L, Money.valueOf(1))), BatchMode.ATOMIC);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.ACCOUNT_NOT_FOUND}, statuses);
+    assertEquals(Money.valueOf(10), accountOne.getBalance());
+    assertEquals(Money.ZERO, accountTwo.getBalance());
+  }
+
+  @Test
+  public void tryTransfer_beneficiaryOverflowRejected() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    accountTwo.credit(Long.MAX_VALUE - 100L);
+
+    final Outcome<Account> outcome = sut.tryTransfer(
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(5)));
+
+    assertEquals(TransferStatus.BALANCE_OVERFLOW, outcome.getStatus());
+    assertEquals(Money.valueOf(10), accountOne.getBalance());
+    assertEquals(Long.MAX_VALUE - 100L, accountTwo.balanceUnits());
+    verifyZeroInteractions(journal);
+  }
+
+  @Test
+  public void tryTransferAsync_shardedBeneficiaryOverflowRejected() {
+    final InMemoryAccountRepository repository = new InMemoryAccountRepository();
+    final Account accountOne = repository.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    final Account accountTwo = repository.create(new CreateAccount("Ivan", null));
+    accountTwo.credit(Long.MAX_VALUE - 100L);
+
+    try (ShardedTransactionEngine engine = new ShardedTransactionEngine(2, 16, AccountJournal.disabled())) {
+      final AccountHandler handler = new AccountHandler(repository, lockManager, AccountJournal.disabled(), engine,
+          AccountExecutor.direct(), metrics, snapshots, ledger, hotAccounts, exchangeRates, combiner);
+
+      final Outcome<Account> outcome = handler.tryTransferAsync(
+          new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(5))).join();
+
+      assertEquals(TransferStatus.BALANCE_OVERFLOW, outcome.getStatus());
+    }
+    assertEquals(Money.valueOf(10), accountOne.getBalance());
+    assertEquals(Long.MAX_VALUE - 100L, accountTwo.balanceUnits());
+  }
+
+  @Test
+  public void transferBatch_atomicOverflowNeverCredits() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = spy(new Account(counter.getAndIncrement(), "Ivan", null));
+    when(accountRepository.findById(accountTwo.getId())).thenReturn(accountTwo);
+    final Account accountThree = createAccount("Peter", null);
+    accountThree.credit(Long.MAX_VALUE - 100L);
+    final TransferStatus[] statuses = sut.transfer(Arrays.asList(
+        new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(5)),
+        new Transfer(accountOne.getId(), accountThree.getId(), Money.valueOf(5))), BatchMode.ATOMIC);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.BALANCE_OVERFLOW}, statuses);
+    assertEquals(Money.valueOf(10), accountOne.getBalance());
+    assertEquals(Money.ZERO, accountTwo.getBalance());
+    assertEquals(Long.MAX_VALUE - 100L, accountThree.balanceUnits());
+    verify(accountTwo, never()).credit(anyLong());
   }
 
-  private Account createAccount(String name, BigDecimal openingBalance) {
+  private Account createAccount(String name, Money openingBalance) {
     final Long id = counter.getAndIncrement();
     final Account account = new Account(id, name, openingBalance);
 
@@ -0,0 +1,158 @@
+package com.andrew.business;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.ImportFormat;
+import com.andrew.dto.ImportSummary;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class AccountImporterTest {
+
+  private static final Currency EUR = Currency.getInstance("EUR");
+
+  private final AccountRepository accountRepository = new InMemoryAccountRepository();
+  private final AccountImporter sut = new AccountImporter(accountRepository, EUR, 2, 2);
+
+  @Test
+  public void importAccounts_csv() {
+    final ImportSummary summary = sut.importAccounts(input("name,openingBalance,currency\n"
+        + "Andrew,10.50,USD\n"
+        + "\"Ivan, Jr.\",,\n"
+        + "Peter\n"), ImportFormat.CSV);
+
+    assertEquals(3, summary.getImported());
+    assertEquals(0, summary.getRejected());
+    assertEquals(Long.valueOf(1L), summary.getFirstId());
+    assertEquals(Long.valueOf(3L), summary.getLastId());
+
+    final Account andrew = accountRepository.findById(1L);
+    assertEquals("Andrew", andrew.getName());
+    assertEquals(Money.parse("10.50"), andrew.getBalance());
+    assertEquals(Currency.getInstance("USD"), andrew.getCurrency());
+    assertEquals("Ivan, Jr.", accountRepository.findById(2L).getName());
+    assertEquals(Money.ZERO, accountRepository.findById(2L).getBalance());
+    assertEquals(EUR, accountRepository.findById(3L).getCurrency());
+  }
+
+  @Test
+  public void importAccounts_csvAccountNamedName() {
+    final ImportSummary summary = sut.importAccounts(input("name,5\n"
+        + "Ivan,1\n"), ImportFormat.CSV);
+
+    assertEquals(2, summary.getImported());
+    assertEquals("name", accountRepository.findById(1L).getName());
+    assertEquals(Money.parse("5"), accountRepository.findById(1L).getBalance());
+  }
+
+  @Test
+  public void importAccounts_ndjson() {
+    final ImportSummary summary = sut.importAccounts(input("{\"name\":\"Andrew\",\"openingBalance\":10.5}\n"
+        + "{\"name\":\"Ivan\",\"currency\":\"GBP\"}\n"), ImportFormat.NDJSON);
+
+    assertEquals(2, summary.getImported());
+    assertEquals(Money.parse("10.50"), accountRepository.findById(1L).getBalance());
+    assertEquals(Currency.getInstance("GBP"), accountRepository.findById(2L).getCurrency());
+  }
+
+  @Test
+  public void importAccounts_rejectsInvalidLines() {
+    final ImportSummary summary = sut.importAccounts(input("Andrew,-1\n"
+        + "Ivan,10\n"
+        + ",5\n"
+        + "Peter,1,ZZZ\n"
+        + "Paul,0.001\n"), ImportFormat.CSV);
+
+    assertEquals(1, summary.getImported());
+    assertEquals(4, summary.getRejected());
+    assertEquals(4, summary.getErrors().size());
+    assertTrue(summary.getErrors().contains("line 1: Opening balance cannot be less than 0"));
+    assertNull(accountRepository.findById(1L));
+    assertEquals("Ivan", accountRepository.findById(2L).getName());
+    assertEquals(1, accountRepository.findAll().size());
+  }
+
+  @Test
+  public void importAccounts_manyBatches() {
+    final StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      csv.append("Account ").append(i).append(",1\n");
+    }
+
+    final AccountImporter importer = new AccountImporter(accountRepository, EUR, 64, 4);
+    final ImportSummary summary = importer.importAccounts(input(csv.toString()), ImportFormat.CSV);
+
+    assertEquals(1000, summary.getImported());
+    assertEquals(1000, importer.getImported());
+    assertEquals(1000, accountRepository.findAll().size());
+    assertEquals(Long.valueOf(1000L), summary.getLastId());
+  }
+
+  @Test
+  public void importAccounts_pagedWhileImporting() throws Exception {
+    final StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      csv.append("Account ").append(i).append(",1\n");
+    }
+
+    final AccountImporter importer = new AccountImporter(accountRepository, EUR, 8, 4);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<ImportSummary> importing = executor.submit(
+          () -> importer.importAccounts(input(csv.toString()), ImportFormat.CSV));
+
+      final List<Long> paged = new ArrayList<>();
+      long after = 0L;
+      boolean done;
+      List<Account> page;
+      do {
+        done = importing.isDone();
+        page = accountRepository.findPage(after, 100);
+        for (Account account : page) {
+          paged.add(account.getId());
+          after = account.getId();
+        }
+      } while (!done || !page.isEmpty());
+
+      assertEquals(20_000, importing.get().getImported());
+      assertEquals(20_000, paged.size());
+      for (int i = 0; i < paged.size(); i++) {
+        assertEquals(Long.valueOf(i + 1), paged.get(i));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void parseCsv_quotedName() {
+    final CreateAccount createAccount = AccountImporter.parseCsv("\"Andrew \"\"Andy\"\"\",1");
+
+    assertEquals("Andrew \"Andy\"", createAccount.getName());
+    assertEquals(Money.valueOf(1), createAccount.getOpeningBalance());
+    assertNull(createAccount.getCurrency());
+  }
+
+  private static InputStream input(String lines) {
+    return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,112 @@
+package com.andrew.business;
+
+import com.andrew.dto.LedgerEntry;
+import com.andrew.dto.LedgerEntry.Type;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class AccountLedgerTest {
+
+  private final AccountLedger sut = new AccountLedger(true, 8, 64);
+  private final Account andrew = new Account(1L, "Andrew", Money.ZERO);
+  private final Account ivan = new Account(2L, "Ivan", Money.ZERO);
+
+  @Test
+  public void find() {
+    sut.deposited(andrew, 1000L);
+    sut.withdrew(andrew, 250L);
+    sut.transferred(andrew, ivan, 300L);
+
+    final List<LedgerEntry> entries = sut.find(andrew.getId(), 0L, Long.MAX_VALUE, 10);
+    assertEquals(3, entries.size());
+    assertEquals(Type.DEPOSIT, entries.get(0).getType());
+    assertEquals(Money.valueOf(10), entries.get(0).getAmount());
+    assertNull(entries.get(0).getCounterpartyId());
+    assertEquals(Type.WITHDRAWAL, entries.get(1).getType());
+    assertEquals(Money.parse("2.5"), entries.get(1).getAmount());
+    assertEquals(Type.TRANSFER_OUT, entries.get(2).getType());
+    assertEquals(Money.valueOf(3), entries.get(2).getAmount());
+    assertEquals(ivan.getId(), entries.get(2).getCounterpartyId());
+
+    final List<LedgerEntry> credited = sut.find(ivan.getId(), 0L, Long.MAX_VALUE, 10);
+    assertEquals(1, credited.size());
+    assertEquals(Type.TRANSFER_IN, credited.get(0).getType());
+    assertEquals(andrew.getId(), credited.get(0).getCounterpartyId());
+
+    assertEquals(4, sut.getEntries());
+    assertEquals(2, sut.getAccounts());
+  }
+
+  @Test
+  public void find_timeRange() {
+    final long before = System.currentTimeMillis();
+    for (int i = 0; i < 20; i++) {
+      sut.deposited(andrew, 1L);
+    }
+    final long after = System.currentTimeMillis() + 1;
+
+    assertEquals(20, sut.find(andrew.getId(), before, after, 100).size());
+    assertTrue(sut.find(andrew.getId(), after, Long.MAX_VALUE, 100).isEmpty());
+    assertTrue(sut.find(andrew.getId(), 0L, before, 100).isEmpty());
+
+    final List<LedgerEntry> entries = sut.find(andrew.getId(), 0L, Long.MAX_VALUE, 100);
+    for (int i = 1; i < entries.size(); i++) {
+      assertTrue(entries.get(i - 1).getTime() <= entries.get(i).getTime());
+    }
+  }
+
+  @Test
+  public void find_limit() {
+    for (int i = 1; i <= 20; i++) {
+      sut.deposited(andrew, i);
+    }
+
+    final List<LedgerEntry> entries = sut.find(andrew.getId(), 0L, Long.MAX_VALUE, 5);
+    assertEquals(5, entries.size());
+    assertEquals(Money.parse("0.01"), entries.get(0).getAmount());
+    assertEquals(Money.parse("0.05"), entries.get(4).getAmount());
+  }
+
+  @Test
+  public void find_oldestChunksDropped() {
+    for (int i = 1; i <= 100; i++) {
+      sut.deposited(andrew, i);
+    }
+
+    // 9 chunks of 8 are kept, the last of which holds 4 entries
+    final List<LedgerEntry> entries = sut.find(andrew.getId(), 0L, Long.MAX_VALUE, 1000);
+    assertEquals(68, entries.size());
+    assertEquals(Money.parse("0.33"), entries.get(0).getAmount());
+    assertEquals(Money.valueOf(1), entries.get(67).getAmount());
+    assertEquals(100, sut.getEntries());
+  }
+
+  @Test
+  public void find_unknownAccount() {
+    assertTrue(sut.find(3L, 0L, Long.MAX_VALUE, 10).isEmpty());
+  }
+
+  @Test
+  public void disabled() {
+    final AccountLedger disabled = AccountLedger.disabled();
+    disabled.deposited(andrew, 1000L);
+
+    assertTrue(disabled.find(andrew.getId(), 0L, Long.MAX_VALUE, 10).isEmpty());
+    assertEquals(0, disabled.getEntries());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void chunkSizeNotPowerOfTwo() {
+    new AccountLedger(true, 12, 64);
+  }
+}
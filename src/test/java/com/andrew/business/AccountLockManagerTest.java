@@ -0,0 +1,88 @@
+package com.andrew.business;
+
+import com.andrew.exception.LockTimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class AccountLockManagerTest {
+
+  private final AccountLockManager sut = new AccountLockManager(16, 50, TimeUnit.MILLISECONDS);
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void lock() {
+    try (AccountLockManager.Locks ignored = sut.lock(1L, 2L)) {
+      assertEquals(1, sut.getAcquisitions());
+    }
+
+    assertTrue(CompletableFuture.supplyAsync(() -> {
+      try (AccountLockManager.Locks ignored = sut.lock(2L, 1L)) {
+        return true;
+      }
+    }).join());
+    assertEquals(2, sut.getAcquisitions());
+    assertEquals(0, sut.getTimeouts());
+  }
+
+  @Test
+  public void lock_sameStripe() {
+    try (AccountLockManager.Locks ignored = sut.lock(Arrays.asList(1L, 17L, 1L))) {
+      assertEquals(1, sut.getAcquisitions());
+    }
+  }
+
+  @Test
+  public void lock_timeout() throws InterruptedException {
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> {
+      try (AccountLockManager.Locks ignored = sut.lock(2L)) {
+        locked.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    locked.await();
+
+    boolean timedOut = false;
+    try (AccountLockManager.Locks ignored = sut.lock(1L, 2L)) {
+      release.countDown();
+    } catch (LockTimeoutException e) {
+      timedOut = true;
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+
+    assertTrue(timedOut);
+    assertEquals(1, sut.getContentions());
+    assertEquals(1, sut.getTimeouts());
+
+    try (AccountLockManager.Locks ignored = sut.lock(1L)) {
+      assertEquals(2, sut.getAcquisitions());
+    }
+  }
+
+  @Test
+  public void create_invalidStripes() {
+    exceptionRule.expect(IllegalArgumentException.class);
+    exceptionRule.expectMessage("Number of lock stripes must be a power of 2");
+
+    new AccountLockManager(10, 1, TimeUnit.SECONDS);
+  }
+}
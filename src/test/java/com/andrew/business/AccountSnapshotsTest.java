@@ -0,0 +1,140 @@
+package com.andrew.business;
+
+import com.andrew.dto.AccountTotal;
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+/**
+ * @author andrew
+ */
+public class AccountSnapshotsTest {
+
+  private final AccountSnapshots snapshots = new AccountSnapshots(4);
+  private final AccountHandler handler = new AccountHandler(new InMemoryAccountRepository(),
+      new AccountLockManager(16, 500, TimeUnit.MILLISECONDS), AccountJournal.disabled(),
+      ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(), snapshots,
+      AccountLedger.disabled(), HotAccounts.disabled(), ExchangeRates.disabled(), DepositCombiner.disabled());
+
+  @Test
+  public void snapshot_keepsBalancesAsOfOpening() {
+    final Account andrew = handler.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    final Account ivan = handler.create(new CreateAccount("Ivan", Money.ZERO));
+
+    try (BalanceSnapshot snapshot = handler.snapshot()) {
+      handler.transfer(new Transfer(andrew.getId(), ivan.getId(), Money.valueOf(4)));
+      handler.deposit(new Deposit(ivan.getId(), Money.valueOf(1)));
+
+      assertEquals(1000L, snapshot.balanceOf(andrew));
+      assertEquals(0L, snapshot.balanceOf(ivan));
+      assertEquals(Money.valueOf(10), snapshot.copyOf(andrew).getBalance());
+      assertEquals(2, snapshot.getPreserved());
+
+      try (BalanceSnapshot later = handler.snapshot()) {
+        assertEquals(600L, later.balanceOf(andrew));
+        assertEquals(500L, later.balanceOf(ivan));
+        assertEquals(2, snapshots.getOpen());
+      }
+    }
+
+    assertEquals(Money.valueOf(6), andrew.getBalance());
+    assertEquals(Money.valueOf(5), ivan.getBalance());
+  }
+
+  @Test
+  public void copyOf_keepsCurrency() {
+    final Account peter = handler.create(new CreateAccount("Peter", Money.valueOf(3), Currency.getInstance("GBP")));
+
+    try (BalanceSnapshot snapshot = handler.snapshot()) {
+      assertEquals(Currency.getInstance("GBP"), snapshot.copyOf(peter).getCurrency());
+    }
+  }
+
+  @Test
+  public void close_releasesWriters() {
+    final Account andrew = handler.create(new CreateAccount("Andrew", Money.valueOf(10)));
+
+    final BalanceSnapshot snapshot = handler.snapshot();
+    assertTrue(snapshots.writesLocked());
+    snapshot.close();
+    handler.deposit(new Deposit(andrew.getId(), Money.valueOf(1)));
+
+    assertFalse(snapshots.writesLocked());
+    assertEquals(0, snapshots.getOpen());
+    assertEquals(0, snapshot.getPreserved());
+  }
+
+  @Test
+  public void total() {
+    handler.create(new CreateAccount("Andrew", Money.parse("10.25")));
+    handler.create(new CreateAccount("Ivan", Money.valueOf(5)));
+    handler.create(new CreateAccount("Peter", Money.valueOf(3), Currency.getInstance("GBP")));
+
+    final List<AccountTotal> totals = handler.total();
+    assertEquals(2, totals.size());
+    assertNull(totals.get(0).getCurrency());
+    assertEquals(2L, totals.get(0).getAccounts());
+    assertEquals(Money.parse("15.25"), totals.get(0).getBalance());
+    assertEquals(Currency.getInstance("GBP"), totals.get(1).getCurrency());
+    assertEquals(1L, totals.get(1).getAccounts());
+    assertEquals(Money.valueOf(3), totals.get(1).getBalance());
+    assertEquals(0, snapshots.getOpen());
+  }
+
+  @Test
+  public void snapshot_excludesAccountsCreatedAfterOpening() {
+    final Account andrew = handler.create(new CreateAccount("Andrew", Money.valueOf(10)));
+
+    try (BalanceSnapshot snapshot = handler.snapshot()) {
+      final Account ivan = handler.create(new CreateAccount("Ivan", Money.valueOf(5)));
+
+      assertTrue(snapshot.includes(andrew));
+      assertFalse(snapshot.includes(ivan));
+    }
+  }
+
+  @Test
+  public void total_skipsAccountsCreatedWhileSumming() {
+    final AccountRepository repository = spy(new InMemoryAccountRepository());
+    final AccountHandler sut = new AccountHandler(repository, new AccountLockManager(16, 500, TimeUnit.MILLISECONDS),
+        AccountJournal.disabled(), ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(),
+        snapshots, AccountLedger.disabled(), HotAccounts.disabled(), ExchangeRates.disabled(),
+        DepositCombiner.disabled());
+    sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    doAnswer(invocation -> {
+      repository.create(new CreateAccount("Ivan", Money.valueOf(5)));
+      return invocation.callRealMethod();
+    }).when(repository).findAll();
+
+    final List<AccountTotal> totals = sut.total();
+    assertEquals(1L, totals.get(0).getAccounts());
+    assertEquals(Money.valueOf(10), totals.get(0).getBalance());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void snapshot_shardedEngine() {
+    try (ShardedTransactionEngine engine = new ShardedTransactionEngine(2, 16, AccountJournal.disabled())) {
+      new AccountHandler(new InMemoryAccountRepository(), new AccountLockManager(16, 500, TimeUnit.MILLISECONDS),
+          AccountJournal.disabled(), engine, AccountExecutor.direct(), new AccountMetrics(), snapshots,
+          AccountLedger.disabled(), HotAccounts.disabled(), ExchangeRates.disabled(), DepositCombiner.disabled())
+          .snapshot();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.andrew.business;
+
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author andrew
+ */
+public class DepositCombinerTest {
+
+  private static final int THREADS = 8;
+  private static final int DEPOSITS = 20_000;
+
+  private final DepositCombiner sut = new DepositCombiner(true);
+
+  @Test
+  public void deposit_concurrentDepositsAllApplied() throws Exception {
+    final Account account = new Account(1L, "Andrew", Money.parse("0"));
+    final AtomicLong recorded = new AtomicLong();
+    final AtomicInteger applications = new AtomicInteger();
+    final DepositCombiner.Deposits deposits = (credited, amounts) -> {
+      long total = 0L;
+      for (long amount : amounts) {
+        total += amount;
+      }
+      credited.credit(total);
+      recorded.addAndGet(amounts.length);
+      applications.incrementAndGet();
+    };
+
+    final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        futures.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < DEPOSITS; i++) {
+            sut.deposit(account, 1L, deposits);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals((long) THREADS * DEPOSITS, account.balanceUnits());
+    assertEquals((long) THREADS * DEPOSITS, recorded.get());
+    assertEquals(applications.get(), sut.getBatches());
+    assertTrue(sut.getCombined() <= (long) THREADS * DEPOSITS);
+    assertEquals(0, sut.getAccounts());
+  }
+
+  @Test
+  public void deposit_overflowFailsOnlyOverflowingDeposits() {
+    final Account account = new Account(1L, "Andrew", Money.parse("0"));
+    account.credit(Long.MAX_VALUE - 10L);
+    final List<long[]> batches = new ArrayList<>();
+    final DepositCombiner.Deposits deposits = (credited, amounts) -> {
+      batches.add(amounts);
+      long total = 0L;
+      for (long amount : amounts) {
+        total = Math.addExact(total, amount);
+      }
+      credited.credit(total);
+    };
+
+    sut.deposit(account, 5L, deposits);
+    try {
+      sut.deposit(account, 10L, deposits);
+      fail("Expected the deposit to overflow");
+    } catch (ArithmeticException expected) {
+      // the balance is left as it was
+    }
+
+    assertEquals(Long.MAX_VALUE - 5L, account.balanceUnits());
+    assertEquals(2, batches.size());
+  }
+
+  @Test
+  public void deposit_idleAccountsReleased() {
+    for (long id = 1; id <= 1000; id++) {
+      final Account account = new Account(id, "Andrew", Money.parse("0"));
+      sut.deposit(account, 5L, (credited, amounts) -> credited.credit(amounts[0]));
+      assertEquals(5L, account.balanceUnits());
+    }
+
+    assertEquals(0, sut.getAccounts());
+  }
+
+  @Test
+  public void deposit_failureThrownToDepositor() {
+    final Account account = new Account(1L, "Andrew", Money.parse("0"));
+    final IllegalStateException failure = new IllegalStateException("Journal is not open");
+
+    try {
+      sut.deposit(account, 5L, (credited, amounts) -> {
+        throw failure;
+      });
+      fail("Expected the deposit to fail");
+    } catch (IllegalStateException e) {
+      assertSame(failure, e);
+    }
+
+    sut.deposit(account, 5L, (credited, amounts) -> credited.credit(amounts[0]));
+    assertEquals(5L, account.balanceUnits());
+  }
+}
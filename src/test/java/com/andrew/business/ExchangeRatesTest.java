@@ -0,0 +1,137 @@
+package com.andrew.business;
+
+import com.andrew.exception.IllegalTransferException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Currency;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class ExchangeRatesTest {
+
+  private static final Currency EUR = Currency.getInstance("EUR");
+  private static final Currency USD = Currency.getInstance("USD");
+  private static final Currency GBP = Currency.getInstance("GBP");
+  private static final Currency JPY = Currency.getInstance("JPY");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+  private ExchangeRates sut;
+
+  @Before
+  public void setUp() throws IOException {
+    file = folder.getRoot().toPath().resolve("fx-rates.properties");
+    write("base = EUR\nUSD = 1.25\nGBP = 0.8\n", 1L);
+    sut = new ExchangeRates(EUR, file, 0L, TimeUnit.MILLISECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  public void convert() {
+    final ExchangeRates.Rates rates = sut.current();
+
+    assertEquals(3, sut.getCurrencies());
+    assertEquals(12500L, rates.convert(10000L, EUR, USD));
+    assertEquals(8000L, rates.convert(10000L, USD, EUR));
+    assertEquals(6400L, rates.convert(10000L, USD, GBP));
+    assertEquals(10000L, rates.convert(10000L, USD, USD));
+    assertEquals(12500L, rates.convert(10000L, null, USD));
+  }
+
+  @Test
+  public void convert_roundsDown() {
+    assertEquals(1L, sut.current().convert(1L, EUR, USD));
+    assertEquals(2L, sut.current().convert(3L, USD, EUR));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void convert_tooSmall() {
+    sut.current().convert(1L, USD, GBP);
+  }
+
+  @Test(expected = IllegalTransferException.class)
+  public void convert_noRate() {
+    sut.current().convert(100L, EUR, JPY);
+  }
+
+  @Test
+  public void hasRate() {
+    final ExchangeRates.Rates rates = sut.current();
+
+    assertTrue(rates.hasRate(USD, GBP));
+    assertTrue(rates.hasRate(null, USD));
+    assertTrue(rates.hasRate(JPY, JPY));
+    assertFalse(rates.hasRate(EUR, JPY));
+    assertFalse(ExchangeRates.disabled().current().hasRate(null, USD));
+  }
+
+  @Test
+  public void convert_largeAmount() {
+    assertEquals(Long.MAX_VALUE / 5 * 4, sut.current().convert(Long.MAX_VALUE / 5 * 5, USD, EUR));
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void convert_overflow() {
+    sut.current().convert(Long.MAX_VALUE, EUR, USD);
+  }
+
+  @Test
+  public void reload_swapsRates() throws IOException {
+    final ExchangeRates.Rates before = sut.current();
+    assertFalse(sut.reload());
+
+    write("base = EUR\nUSD = 1.5\nJPY = 160\n", 2L);
+    assertTrue(sut.reload());
+
+    assertEquals(15000L, sut.current().convert(10000L, EUR, USD));
+    assertEquals(1600000L, sut.current().convert(10000L, EUR, JPY));
+    assertEquals(12500L, before.convert(10000L, EUR, USD));
+    assertEquals(2, sut.getReloads());
+  }
+
+  @Test
+  public void reload_keepsRatesOfInvalidFile() throws IOException {
+    write("base = EUR\nUSD = -1\n", 2L);
+
+    try {
+      sut.reload();
+    } catch (IllegalArgumentException expected) {
+      // the current rates stay in use
+    }
+    assertEquals(12500L, sut.current().convert(10000L, EUR, USD));
+  }
+
+  @Test(expected = IllegalTransferException.class)
+  public void disabled() {
+    final ExchangeRates disabled = ExchangeRates.disabled();
+
+    assertEquals(100L, disabled.current().convert(100L, null, null));
+    disabled.current().convert(100L, null, USD);
+  }
+
+  private void write(String rates, long modified) throws IOException {
+    Files.write(file, rates.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(modified * 1000L));
+  }
+}
@@ -0,0 +1,65 @@
+package com.andrew.business;
+
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class HotAccountsTest {
+
+  private final Account account = new Account(1L, "Fees", Money.valueOf(1));
+
+  @Test
+  public void credited_promotesContendedAccount() {
+    final HotAccounts sut = new HotAccounts(true, 4, 0);
+
+    sut.credited(account);
+    sut.credited(account);
+
+    assertTrue(account.striped());
+    assertEquals(1, sut.getPromoted());
+  }
+
+  @Test
+  public void credited_belowThreshold() {
+    final HotAccounts sut = new HotAccounts(true, 4, 1);
+
+    sut.credited(account);
+
+    assertFalse(account.striped());
+    assertEquals(0, sut.getPromoted());
+  }
+
+  @Test
+  public void disabled() {
+    final HotAccounts sut = HotAccounts.disabled();
+
+    sut.credited(account);
+
+    assertFalse(account.striped());
+  }
+
+  @Test
+  public void stripedAccount_creditAndDebit() {
+    assertTrue(account.stripe(4));
+    assertFalse(account.stripe(4));
+
+    assertEquals(300L, account.credit(200L));
+    assertEquals(Money.valueOf(3), account.getBalance());
+
+    assertTrue(account.debit(250L));
+    assertEquals(50L, account.balanceUnits());
+    assertFalse(account.debit(51L));
+    assertEquals(50L, account.balanceUnits());
+
+    account.setBalance(Money.valueOf(2));
+    account.credit(1L);
+    assertEquals(Money.parse("2.01"), account.getBalance());
+  }
+}
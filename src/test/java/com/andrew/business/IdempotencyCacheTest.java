@@ -0,0 +1,79 @@
+package com.andrew.business;
+
+import com.andrew.exception.IdempotencyKeyReusedException;
+import com.andrew.exception.ServerBusyException;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class IdempotencyCacheTest {
+
+  private final IdempotencyCache sut = new IdempotencyCache(2, 1, TimeUnit.HOURS);
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @Test
+  public void execute_retryAnsweredFromCache() throws Exception {
+    assertEquals("first", sut.execute("transfer:a", "request", () -> run("first")).get());
+    assertEquals("first", sut.execute("transfer:a", "request", () -> run("second")).get());
+
+    assertEquals(1, runs.get());
+    assertEquals(1, sut.getHits());
+    assertEquals(1, sut.getMisses());
+  }
+
+  @Test
+  public void execute_retryWhileRunning() throws Exception {
+    final CompletableFuture<String> running = new CompletableFuture<>();
+    final CompletableFuture<String> first = sut.execute("transfer:a", "request", () -> running);
+    final CompletableFuture<String> retry = sut.execute("transfer:a", "request", () -> run("second"));
+    assertFalse(retry.isDone());
+
+    running.complete("first");
+    assertEquals("first", first.get());
+    assertEquals("first", retry.get());
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  public void execute_failureForgotten() throws Exception {
+    final CompletableFuture<String> failed = sut.execute("transfer:a", "request", () -> {
+      throw new ServerBusyException("Server is busy, please retry");
+    });
+    assertTrue(failed.isCompletedExceptionally());
+
+    assertEquals("second", sut.execute("transfer:a", "request", () -> run("second")).get());
+    assertEquals(1, runs.get());
+  }
+
+  @Test(expected = IdempotencyKeyReusedException.class)
+  public void execute_keyReusedForDifferentRequest() {
+    sut.execute("transfer:a", "request", () -> run("first"));
+    sut.execute("transfer:a", "other request", () -> run("second"));
+  }
+
+  @Test
+  public void execute_leastRecentlyUsedEvicted() throws Exception {
+    sut.execute("transfer:a", "request", () -> run("a"));
+    sut.execute("transfer:b", "request", () -> run("b"));
+    sut.execute("transfer:c", "request", () -> run("c"));
+
+    assertEquals(2, sut.getSize());
+    assertEquals(1, sut.getEvictions());
+    assertEquals("a again", sut.execute("transfer:a", "request", () -> run("a again")).get());
+    assertEquals(4, runs.get());
+  }
+
+  private CompletableFuture<String> run(String result) {
+    runs.incrementAndGet();
+    return CompletableFuture.completedFuture(result);
+  }
+}
@@ -0,0 +1,64 @@
+package com.andrew.business;
+
+import com.andrew.dto.TransferStatus;
+import com.andrew.exception.AccountNotFoundException;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class OutcomeTest {
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void ok() {
+    final Account account = new Account(1L, "Andrew", Money.valueOf(1));
+    final Outcome<Account> outcome = Outcome.ok(account);
+
+    assertTrue(outcome.isOk());
+    assertEquals(TransferStatus.OK, outcome.getStatus());
+    assertNull(outcome.getMessage());
+    assertSame(account, outcome.orElseThrow());
+  }
+
+  @Test
+  public void rejected_preallocated() {
+    final Outcome<Account> outcome = Outcome.rejected(TransferStatus.INSUFFICIENT_BALANCE);
+
+    assertSame(outcome, Outcome.rejected(TransferStatus.INSUFFICIENT_BALANCE));
+    assertNull(outcome.getValue());
+  }
+
+  @Test
+  public void rejected_orElseThrow() {
+    exceptionRule.expect(InsufficientBalanceException.class);
+    exceptionRule.expectMessage("Insufficient balance");
+
+    Outcome.rejected(TransferStatus.INSUFFICIENT_BALANCE).orElseThrow();
+  }
+
+  @Test
+  public void accountNotFound_orElseThrow() {
+    exceptionRule.expect(AccountNotFoundException.class);
+    exceptionRule.expectMessage("Specified ID: 42 not associated with any account");
+
+    Outcome.accountNotFound(42L).orElseThrow();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejected_accountNotFoundWithoutId() {
+    Outcome.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+  }
+}
@@ -0,0 +1,322 @@
+package com.andrew.business;
+
+import com.andrew.dto.BatchMode;
+import com.andrew.dto.TransferStatus;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author andrew
+ */
+public class ShardedTransactionEngineTest {
+
+  private final ShardedTransactionEngine sut = new ShardedTransactionEngine(4, 1024, AccountJournal.disabled());
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  public void depositAndWithdraw() {
+    final Account account = new Account(1L, "Andrew", Money.valueOf(10));
+
+    assertEquals(account, sut.deposit(account, 500L).join());
+    assertEquals(account, sut.withdraw(account, 1000L).join());
+    assertEquals(Money.parse("5"), account.getBalance());
+  }
+
+  @Test
+  public void withdraw_insufficientBalance() {
+    final Account account = new Account(1L, "Andrew", Money.valueOf(10));
+
+    try {
+      sut.withdraw(account, 1001L).join();
+      fail("Withdrawal should have failed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof InsufficientBalanceException);
+    }
+    assertEquals(Money.valueOf(10), account.getBalance());
+  }
+
+  @Test
+  public void transfer_sameShard() {
+    final Account from = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account to = new Account(5L, "Ivan", null);
+
+    assertEquals(from, sut.transfer(from, to, 400L).join());
+    assertEquals(Money.valueOf(6), from.getBalance());
+    assertEquals(Money.valueOf(4), to.getBalance());
+  }
+
+  @Test
+  public void transfer_acrossShards() {
+    final Account from = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account to = new Account(2L, "Ivan", null);
+
+    assertEquals(from, sut.transfer(from, to, 400L).join());
+    assertEquals(Money.valueOf(6), from.getBalance());
+    assertEquals(Money.valueOf(4), to.getBalance());
+  }
+
+  @Test
+  public void transfer_overflowRefundsBenefactor() {
+    final Account from = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account to = new Account(2L, "Ivan", null);
+    to.credit(Long.MAX_VALUE - 10L);
+
+    try {
+      sut.transfer(from, to, 400L).join();
+      fail("Transfer should have failed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof ArithmeticException);
+    }
+    assertEquals(Money.valueOf(10), from.getBalance());
+    assertEquals(Long.MAX_VALUE - 10L, to.balanceUnits());
+  }
+
+  @Test
+  public void transfer_unexpectedRefundFailureCompletesFuture() {
+    final Account from = spy(new Account(1L, "Andrew", Money.valueOf(10)));
+    final Account to = new Account(2L, "Ivan", null);
+    to.credit(Long.MAX_VALUE - 10L);
+    doThrow(new IllegalStateException("Unexpected")).when(from).credit(anyLong());
+
+    try {
+      sut.transfer(from, to, 400L).join();
+      fail("Transfer should have failed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void transferBatch_bestEffort() {
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = new Account(2L, "Ivan", null);
+    final TransferStatus[] statuses = {null, null, TransferStatus.INVALID_AMOUNT};
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.OK, TransferStatus.INSUFFICIENT_BALANCE,
+            TransferStatus.INVALID_AMOUNT},
+        sut.transfer(statuses, new Account[]{one, one, one}, new Account[]{two, two, two},
+            new long[]{500L, 1000L, 0L}, BatchMode.BEST_EFFORT).join());
+    assertEquals(Money.valueOf(5), one.getBalance());
+    assertEquals(Money.valueOf(5), two.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomic() {
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = new Account(2L, "Ivan", null);
+    final Account three = new Account(3L, "Peter", null);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.OK, TransferStatus.OK},
+        sut.transfer(new TransferStatus[2], new Account[]{two, one}, new Account[]{three, two},
+            new long[]{1000L, 1000L}, BatchMode.ATOMIC).join());
+    assertEquals(Money.ZERO, one.getBalance());
+    assertEquals(Money.ZERO, two.getBalance());
+    assertEquals(Money.valueOf(10), three.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicInsufficientBalance() {
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = new Account(2L, "Ivan", Money.valueOf(1));
+    final Account three = new Account(3L, "Peter", null);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.INSUFFICIENT_BALANCE},
+        sut.transfer(new TransferStatus[2], new Account[]{one, two}, new Account[]{three, three},
+            new long[]{1000L, 200L}, BatchMode.ATOMIC).join());
+    assertEquals(Money.valueOf(10), one.getBalance());
+    assertEquals(Money.valueOf(1), two.getBalance());
+    assertEquals(Money.ZERO, three.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicInsufficientBalanceChargedToOverdrawingTransfer() {
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = new Account(2L, "Ivan", null);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.INSUFFICIENT_BALANCE},
+        sut.transfer(new TransferStatus[2], new Account[]{one, one}, new Account[]{two, two},
+            new long[]{400L, 2000L}, BatchMode.ATOMIC).join());
+    assertEquals(Money.valueOf(10), one.getBalance());
+    assertEquals(Money.ZERO, two.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicOverflowRevertsEveryShard() {
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = new Account(2L, "Ivan", null);
+    final Account three = new Account(3L, "Peter", null);
+    three.credit(Long.MAX_VALUE - 10L);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.BALANCE_OVERFLOW},
+        sut.transfer(new TransferStatus[2], new Account[]{one, one}, new Account[]{two, three},
+            new long[]{500L, 500L}, BatchMode.ATOMIC).join());
+    assertEquals(Money.valueOf(10), one.getBalance());
+    assertEquals(Money.ZERO, two.getBalance());
+    assertEquals(Long.MAX_VALUE - 10L, three.balanceUnits());
+  }
+
+  @Test
+  public void transferBatch_atomicOverflowNeverCreditsOtherShards() {
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = spy(new Account(2L, "Ivan", null));
+    final Account three = new Account(3L, "Peter", null);
+    three.credit(Long.MAX_VALUE - 10L);
+
+    assertArrayEquals(new TransferStatus[]{TransferStatus.ABORTED, TransferStatus.BALANCE_OVERFLOW},
+        sut.transfer(new TransferStatus[2], new Account[]{one, one}, new Account[]{two, three},
+            new long[]{500L, 500L}, BatchMode.ATOMIC).join());
+    assertEquals(Money.ZERO, two.getBalance());
+    verify(two, never()).credit(anyLong());
+  }
+
+  @Test
+  public void transfer_journalFailureUndoesTransfer() {
+    final ShardedTransactionEngine engine = new ShardedTransactionEngine(4, 1024, failingJournal());
+    final Account from = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account to = new Account(2L, "Ivan", null);
+
+    try {
+      engine.transfer(from, to, 400L).join();
+      fail("Transfer should have failed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof UncheckedIOException);
+    } finally {
+      engine.close();
+    }
+    assertEquals(Money.valueOf(10), from.getBalance());
+    assertEquals(Money.ZERO, to.getBalance());
+  }
+
+  @Test
+  public void deposit_journalFailureWhileWithdrawalQueued() {
+    final CompletableFuture<Void> depositJournaled = new CompletableFuture<>();
+    final AccountJournal journal = mock(AccountJournal.class);
+    when(journal.append(any())).thenReturn(depositJournaled, CompletableFuture.completedFuture(null));
+    final ShardedTransactionEngine engine = new ShardedTransactionEngine(4, 1024, journal);
+    final Account account = new Account(1L, "Andrew", Money.ZERO);
+
+    try {
+      final CompletableFuture<Account> deposit = engine.deposit(account, 500L);
+      assertEquals(TransferStatus.INSUFFICIENT_BALANCE, engine.withdrawStatus(account, 500L).join());
+
+      depositJournaled.completeExceptionally(new UncheckedIOException(new IOException("Disk full")));
+      try {
+        deposit.join();
+        fail("Deposit should have failed");
+      } catch (CompletionException e) {
+        assertTrue(e.getCause() instanceof UncheckedIOException);
+      }
+    } finally {
+      engine.close();
+    }
+    assertEquals(Money.ZERO, account.getBalance());
+  }
+
+  @Test
+  public void transfer_creditsBeneficiaryOnceDurable() {
+    final CompletableFuture<Void> transferJournaled = new CompletableFuture<>();
+    final AccountJournal journal = mock(AccountJournal.class);
+    when(journal.append(any())).thenReturn(transferJournaled);
+    final ShardedTransactionEngine engine = new ShardedTransactionEngine(4, 1024, journal);
+    final Account from = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account to = new Account(2L, "Ivan", null);
+
+    try {
+      final CompletableFuture<TransferStatus> transfer = engine.transferStatus(from, to, 400L, 400L);
+      assertEquals(TransferStatus.INSUFFICIENT_BALANCE, engine.withdrawStatus(to, 400L).join());
+
+      transferJournaled.complete(null);
+      assertEquals(TransferStatus.OK, transfer.join());
+    } finally {
+      engine.close();
+    }
+    assertEquals(Money.valueOf(6), from.getBalance());
+    assertEquals(Money.valueOf(4), to.getBalance());
+  }
+
+  @Test
+  public void transferBatch_atomicJournalFailureRevertsEveryShard() {
+    final ShardedTransactionEngine engine = new ShardedTransactionEngine(4, 1024, failingJournal());
+    final Account one = new Account(1L, "Andrew", Money.valueOf(10));
+    final Account two = new Account(2L, "Ivan", null);
+    final Account three = new Account(3L, "Peter", null);
+
+    try {
+      engine.transfer(new TransferStatus[2], new Account[]{one, one}, new Account[]{two, three},
+          new long[]{500L, 500L}, BatchMode.ATOMIC).join();
+      fail("Batch should have failed");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof UncheckedIOException);
+    } finally {
+      engine.close();
+    }
+    assertEquals(Money.valueOf(10), one.getBalance());
+    assertEquals(Money.ZERO, two.getBalance());
+    assertEquals(Money.ZERO, three.getBalance());
+  }
+
+  @Test(timeout = 60_000)
+  public void concurrentTransfers_conserveTotalBalance() {
+    final Account[] accounts = new Account[16];
+    for (int i = 0; i < accounts.length; i++) {
+      accounts[i] = new Account(i + 1L, "Account " + i, Money.valueOf(1_000));
+    }
+
+    final List<CompletableFuture<?>> futures = new ArrayList<>();
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < 200_000; i++) {
+      final Account from = accounts[random.nextInt(accounts.length)];
+      Account to = accounts[random.nextInt(accounts.length)];
+      while (to == from) {
+        to = accounts[random.nextInt(accounts.length)];
+      }
+      futures.add(sut.transfer(from, to, 1 + random.nextInt(10_000)).handle((account, error) -> account));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+    long total = 0L;
+    for (Account account : accounts) {
+      assertTrue(account.balanceUnits() >= 0L);
+      total += account.balanceUnits();
+    }
+    assertEquals(16 * 100_000L, total);
+  }
+
+  private static AccountJournal failingJournal() {
+    final CompletableFuture<Void> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new UncheckedIOException(new IOException("Disk full")));
+    final AccountJournal journal = mock(AccountJournal.class);
+    when(journal.append(any())).thenReturn(failed);
+
+    return journal;
+  }
+}
@@ -0,0 +1,183 @@
+package com.andrew.business;
+
+import com.andrew.dto.AccountTotal;
+import com.andrew.dto.CreateAccount;
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.Withdraw;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.AccountRepository;
+import com.andrew.repository.InMemoryAccountRepository;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Hammers a small set of accounts with concurrent transfers, deposits and withdrawals from many threads.
+ *
+ * @author andrew
+ */
+public class TransferStressTest {
+
+  private static final int ACCOUNTS = 8;
+  private static final int THREADS = 16;
+  private static final int TRANSFERS_PER_THREAD = 20_000;
+
+  private final AccountRepository accountRepository = new InMemoryAccountRepository();
+  private final AccountHandler sut = new AccountHandler(accountRepository,
+      new AccountLockManager(1024, 10, TimeUnit.SECONDS), AccountJournal.disabled(),
+      ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(), new AccountSnapshots(),
+      new AccountLedger(true, 256, 1024), HotAccounts.disabled(), ExchangeRates.disabled(),
+      DepositCombiner.disabled());
+
+  @Test(timeout = 60_000)
+  public void crossTransfers_conserveTotalBalance() throws Exception {
+    final List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accounts.add(sut.create(new CreateAccount("Account " + i, Money.valueOf(1_000))));
+    }
+    final Money expected = totalBalance();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        futures.add(executor.submit(() -> transferRandomly(accounts)));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(expected, totalBalance());
+  }
+
+  @Test(timeout = 60_000)
+  public void total_consistentDuringTransfers() throws Exception {
+    final List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accounts.add(sut.create(new CreateAccount("Account " + i, Money.valueOf(1_000))));
+    }
+    final Money expected = totalBalance();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        futures.add(executor.submit(() -> transferRandomly(accounts)));
+      }
+
+      int audits = 0;
+      while (!futures.stream().allMatch(Future::isDone) || audits == 0) {
+        final List<AccountTotal> totals = sut.total();
+        assertEquals(1, totals.size());
+        final AccountTotal total = totals.get(0);
+        assertEquals(ACCOUNTS, total.getAccounts());
+        assertEquals(expected, total.getBalance());
+        audits++;
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(expected, totalBalance());
+  }
+
+  @Test(timeout = 60_000)
+  public void concurrentDepositsAndWithdrawals_neverOverdraw() throws Exception {
+    depositAndWithdrawConcurrently(sut, sut.create(new CreateAccount("Merchant", Money.ZERO)));
+  }
+
+  @Test(timeout = 60_000)
+  public void concurrentDepositsAndWithdrawals_stripedAccount() throws Exception {
+    final Account account = sut.create(new CreateAccount("Fees", Money.ZERO));
+    account.stripe(4);
+
+    depositAndWithdrawConcurrently(sut, account);
+  }
+
+  @Test(timeout = 60_000)
+  public void concurrentDepositsAndWithdrawals_combinedDeposits() throws Exception {
+    final AccountHandler combining = new AccountHandler(accountRepository,
+        new AccountLockManager(1024, 10, TimeUnit.SECONDS), AccountJournal.disabled(),
+        ShardedTransactionEngine.disabled(), AccountExecutor.direct(), new AccountMetrics(), new AccountSnapshots(),
+        new AccountLedger(true, 256, 1024), HotAccounts.disabled(), ExchangeRates.disabled(),
+        new DepositCombiner(true));
+
+    depositAndWithdrawConcurrently(combining, combining.create(new CreateAccount("Settlement", Money.ZERO)));
+  }
+
+  private void depositAndWithdrawConcurrently(AccountHandler handler, Account account) throws Exception {
+    final AtomicLong withdrawn = new AtomicLong();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final boolean depositor = t % 2 == 0;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+            if (depositor) {
+              handler.deposit(new Deposit(account.getId(), Money.valueOf(1)));
+            } else {
+              try {
+                handler.withdraw(new Withdraw(account.getId(), Money.valueOf(1)));
+                withdrawn.incrementAndGet();
+              } catch (InsufficientBalanceException ignored) {
+                // expected whenever withdrawals overtake deposits
+              }
+            }
+          }
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    final long deposited = (long) (THREADS / 2) * TRANSFERS_PER_THREAD;
+    assertEquals(Money.valueOf(deposited - withdrawn.get()), account.getBalance());
+  }
+
+  private void transferRandomly(List<Account> accounts) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+      final int from = random.nextInt(ACCOUNTS);
+      final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      try {
+        sut.transfer(new Transfer(accounts.get(from).getId(), accounts.get(to).getId(),
+            Money.valueOf(1 + random.nextInt(100))));
+      } catch (InsufficientBalanceException ignored) {
+        // expected once an account has been drained
+      }
+    }
+  }
+
+  private Money totalBalance() {
+    return accountRepository.findAll().stream()
+        .map(Account::getBalance)
+        .reduce(Money.ZERO, Money::add);
+  }
+}
@@ -1,11 +1,14 @@
 package com.andrew.controller;
 
 import com.andrew.App;
+import com.andrew.dto.BatchMode;
 import com.andrew.dto.CreateAccount;
 import com.andrew.dto.Deposit;
+import com.andrew.dto.LedgerEntry;
 import com.andrew.dto.Transfer;
 import com.andrew.dto.Withdraw;
 import com.andrew.model.Account;
+import com.andrew.model.Money;
 import com.andrew.repository.AccountRepository;
 import io.restassured.RestAssured;
 import io.restassured.builder.RequestSpecBuilder;
@@ -19,13 +22,14 @@ import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 
-import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
 
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -61,7 +65,7 @@ public class AccountControllerIT {
   @Test
   public void createAccount() {
     given()
-        .body(new CreateAccount("Andrew", BigDecimal.TEN))
+        .body(new CreateAccount("Andrew", Money.valueOf(10)))
         .when()
         .post()
         .then()
@@ -85,7 +89,7 @@ public class AccountControllerIT {
   @Test
   public void createAccount_negativeOpeningBalance() {
     given()
-        .body(new CreateAccount("Andrew", BigDecimal.TEN.negate()))
+        .body(new CreateAccount("Andrew", Money.valueOf(10).negate()))
         .when()
         .post()
         .then()
@@ -105,7 +109,7 @@ public class AccountControllerIT {
   @Test
   public void findById() {
     final Account accountOne = createAccount("Andrew", null);
-    final Account accountTwo = createAccount("Ivan", BigDecimal.ONE);
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
 
     final Account expected = when()
         .get("/{id}", accountTwo.getId())
@@ -128,7 +132,7 @@ public class AccountControllerIT {
   @Test
   public void findAll() {
     final Account accountOne = createAccount("Andrew", null);
-    final Account accountTwo = createAccount("Ivan", BigDecimal.ONE);
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
     final List<Account> actual = Arrays.asList(accountOne, accountTwo);
 
     final Account[] expected = when()
@@ -143,12 +147,128 @@ public class AccountControllerIT {
     assertThat(actual, containsInAnyOrder(expected));
   }
 
+  @Test
+  public void findAll_paged() {
+    final Account accountOne = createAccount("Andrew", null);
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+    final Account accountThree = createAccount("Musa", Money.valueOf(2));
+
+    final Account[] firstPage = given()
+        .queryParam("limit", 2)
+        .when()
+        .get()
+        .then()
+        .statusCode(Status.OK.value())
+        .header("Link", containsString("after=" + accountTwo.getId()))
+        .extract()
+        .body()
+        .as(Account[].class);
+    assertThat(Arrays.asList(firstPage), contains(accountOne, accountTwo));
+
+    final Account[] secondPage = given()
+        .queryParam("after", accountTwo.getId())
+        .queryParam("limit", 2)
+        .when()
+        .get()
+        .then()
+        .statusCode(Status.OK.value())
+        .extract()
+        .body()
+        .as(Account[].class);
+    assertThat(Arrays.asList(secondPage), contains(accountThree));
+  }
+
+  @Test
+  public void findAll_limitTooLarge() {
+    given()
+        .queryParam("limit", 100_000)
+        .when()
+        .get()
+        .then()
+        .statusCode(Status.BAD_REQUEST.value());
+  }
+
+  @Test
+  public void total() {
+    createAccount("Andrew", Money.parse("10.25"));
+    createAccount("Ivan", Money.valueOf(5));
+
+    when()
+        .get("/total")
+        .then()
+        .statusCode(Status.OK.value())
+        .body("currency", contains("EUR"))
+        .body("accounts", contains(2))
+        .body("balance", contains(15.25f));
+  }
+
+  @Test
+  public void stream() {
+    final Account accountOne = createAccount("Andrew", null);
+    final Account accountTwo = createAccount("Ivan", Money.valueOf(1));
+
+    final String[] lines = given()
+        .accept("application/x-ndjson")
+        .when()
+        .get("/stream")
+        .then()
+        .statusCode(Status.OK.value())
+        .contentType(containsString("application/x-ndjson"))
+        .extract()
+        .asString()
+        .split("\n");
+
+    assertEquals(2, lines.length);
+    assertThat(lines[0], containsString("\"id\":" + accountOne.getId()));
+    assertThat(lines[1], containsString("\"id\":" + accountTwo.getId()));
+  }
+
+  @Test
+  public void findTransactions() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+
+    given()
+        .body(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1)))
+        .when()
+        .post("/transfer")
+        .then()
+        .statusCode(Status.OK.value());
+
+    final LedgerEntry[] entries = given()
+        .queryParam("limit", 10)
+        .when()
+        .get("/{id}/transactions", accountTwo.getId())
+        .then()
+        .statusCode(Status.OK.value())
+        .extract()
+        .body().as(LedgerEntry[].class);
+
+    assertEquals(1, entries.length);
+    assertEquals(LedgerEntry.Type.TRANSFER_IN, entries[0].getType());
+    assertEquals(Money.valueOf(1), entries[0].getAmount());
+    assertEquals(accountOne.getId(), entries[0].getCounterpartyId());
+  }
+
+  @Test
+  public void findTransactions_emptyRange() {
+    final Account account = createAccount("Andrew", null);
+
+    given()
+        .queryParam("from", 10)
+        .queryParam("to", 10)
+        .when()
+        .get("/{id}/transactions", account.getId())
+        .then()
+        .statusCode(Status.BAD_REQUEST.value());
+  }
+
   @Test
   public void deposit() {
     final Account account = createAccount("Andrew", null);
 
     given()
-        .body(new Deposit(account.getId(), BigDecimal.TEN))
+        .body(new Deposit(account.getId(), Money.valueOf(10)))
         .when()
         .post("/deposit")
         .then()
@@ -157,6 +277,21 @@ public class AccountControllerIT {
         .body("name", equalTo("Andrew"));
   }
 
+  @Test
+  public void deposit_repeated() {
+    final Account account = createAccount("Andrew", null);
+
+    for (int i = 1; i <= 50; i++) {
+      given()
+          .body(new Deposit(account.getId(), Money.valueOf(1)))
+          .when()
+          .post("/deposit")
+          .then()
+          .statusCode(Status.OK.value())
+          .body("balance", equalTo(i));
+    }
+  }
+
   @Test
   public void deposit_nullAmount() {
     final Account account = createAccount("Andrew", null);
@@ -174,7 +309,7 @@ public class AccountControllerIT {
     final Account account = createAccount("Andrew", null);
 
     given()
-        .body(new Deposit(account.getId(), BigDecimal.TEN.negate()))
+        .body(new Deposit(account.getId(), Money.valueOf(10).negate()))
         .when()
         .post("/deposit")
         .then()
@@ -184,7 +319,7 @@ public class AccountControllerIT {
   @Test
   public void deposit_invalidId() {
     given()
-        .body(new Deposit(99L, BigDecimal.TEN))
+        .body(new Deposit(99L, Money.valueOf(10)))
         .when()
         .post("/deposit")
         .then()
@@ -193,10 +328,10 @@ public class AccountControllerIT {
 
   @Test
   public void withdraw() {
-    final Account account = createAccount("Andrew", BigDecimal.TEN);
+    final Account account = createAccount("Andrew", Money.valueOf(10));
 
     given()
-        .body(new Withdraw(account.getId(), BigDecimal.ONE))
+        .body(new Withdraw(account.getId(), Money.valueOf(1)))
         .when()
         .post("/withdraw")
         .then()
@@ -234,7 +369,7 @@ public class AccountControllerIT {
     final Account account = createAccount("Andrew", null);
 
     given()
-        .body(new Withdraw(account.getId(), BigDecimal.TEN.negate()))
+        .body(new Withdraw(account.getId(), Money.valueOf(10).negate()))
         .when()
         .post("/withdraw")
         .then()
@@ -244,7 +379,7 @@ public class AccountControllerIT {
   @Test
   public void withdraw_invalidId() {
     given()
-        .body(new Withdraw(99L, BigDecimal.ONE))
+        .body(new Withdraw(99L, Money.valueOf(1)))
         .when()
         .post("/withdraw")
         .then()
@@ -253,11 +388,11 @@ public class AccountControllerIT {
 
   @Test
   public void transfer() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
     final Account accountTwo = createAccount("Ivan", null);
 
     given()
-        .body(new Transfer(accountOne.getId(), accountTwo.getId(), BigDecimal.ONE))
+        .body(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1)))
         .when()
         .post("/transfer")
         .then()
@@ -273,12 +408,73 @@ public class AccountControllerIT {
         .body("name", equalTo("Ivan"));
   }
 
+  @Test
+  public void transfer_retriedWithIdempotencyKey() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+    final Transfer transfer = new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(1));
+
+    for (int i = 0; i < 2; i++) {
+      given()
+          .header("Idempotency-Key", "transfer-" + accountOne.getId())
+          .body(transfer)
+          .when()
+          .post("/transfer")
+          .then()
+          .statusCode(Status.OK.value())
+          .body("balance", equalTo(9));
+    }
+
+    given()
+        .header("Idempotency-Key", "transfer-" + accountOne.getId())
+        .body(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(2)))
+        .when()
+        .post("/transfer")
+        .then()
+        .statusCode(422);
+
+    when()
+        .get("/{id}", accountTwo.getId())
+        .then()
+        .statusCode(Status.OK.value())
+        .body("balance", equalTo(1));
+  }
+
+  @Test
+  public void withdraw_rejectionRetriedWithIdempotencyKey() {
+    final Account account = createAccount("Andrew", Money.valueOf(1));
+    final Withdraw withdraw = new Withdraw(account.getId(), Money.valueOf(2));
+
+    for (int i = 0; i < 2; i++) {
+      given()
+          .header("Idempotency-Key", "withdraw-" + account.getId())
+          .body(withdraw)
+          .when()
+          .post("/withdraw")
+          .then()
+          .statusCode(Status.BAD_REQUEST.value())
+          .body("message", equalTo("Insufficient balance"));
+      given()
+          .body(new Deposit(account.getId(), Money.valueOf(1)))
+          .when()
+          .post("/deposit")
+          .then()
+          .statusCode(Status.OK.value());
+    }
+
+    when()
+        .get("/{id}", account.getId())
+        .then()
+        .statusCode(Status.OK.value())
+        .body("balance", equalTo(3));
+  }
+
   @Test
   public void transfer_sameBenefactorAndBeneficiaryId() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
 
     given()
-        .body(new Transfer(accountOne.getId(), accountOne.getId(), BigDecimal.ONE))
+        .body(new Transfer(accountOne.getId(), accountOne.getId(), Money.valueOf(1)))
         .when()
         .post("/transfer")
         .then()
@@ -287,7 +483,7 @@ public class AccountControllerIT {
 
   @Test
   public void transfer_nullAmount() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
     final Account accountTwo = createAccount("Ivan", null);
 
     given()
@@ -300,7 +496,7 @@ public class AccountControllerIT {
 
   @Test
   public void transfer_negativeAmount() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
     final Account accountTwo = createAccount("Ivan", null);
 
     given()
@@ -316,7 +512,7 @@ public class AccountControllerIT {
     final Account accountTwo = createAccount("Ivan", null);
 
     given()
-        .body(new Transfer(99L, accountTwo.getId(), BigDecimal.ONE))
+        .body(new Transfer(99L, accountTwo.getId(), Money.valueOf(1)))
         .when()
         .post("/transfer")
         .then()
@@ -325,10 +521,10 @@ public class AccountControllerIT {
 
   @Test
   public void transfer_invalidBeneficiaryId() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.TEN);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
 
     given()
-        .body(new Transfer(accountOne.getId(), 99L, BigDecimal.ONE))
+        .body(new Transfer(accountOne.getId(), 99L, Money.valueOf(1)))
         .when()
         .post("/transfer")
         .then()
@@ -337,18 +533,63 @@ public class AccountControllerIT {
 
   @Test
   public void transfer_insufficientBalance() {
-    final Account accountOne = createAccount("Andrew", BigDecimal.ONE);
+    final Account accountOne = createAccount("Andrew", Money.valueOf(1));
     final Account accountTwo = createAccount("Ivan", null);
 
     given()
-        .body(new Transfer(accountOne.getId(), accountTwo.getId(), BigDecimal.TEN))
+        .body(new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(10)))
         .when()
         .post("/transfer")
         .then()
         .statusCode(Status.BAD_REQUEST.value());
   }
 
-  private Account createAccount(String name, BigDecimal openingBalance) {
+  @Test
+  public void transferBatch() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+
+    given()
+        .body(Arrays.asList(
+            new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(4)),
+            new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(20))))
+        .queryParam("mode", BatchMode.BEST_EFFORT)
+        .when()
+        .post("/transfer/batch")
+        .then()
+        .statusCode(Status.OK.value())
+        .body("", contains("OK", "INSUFFICIENT_BALANCE"));
+
+    when()
+        .get("/{id}", accountTwo.getId())
+        .then()
+        .statusCode(Status.OK.value())
+        .body("balance", equalTo(4));
+  }
+
+  @Test
+  public void transferBatch_atomic() {
+    final Account accountOne = createAccount("Andrew", Money.valueOf(10));
+    final Account accountTwo = createAccount("Ivan", null);
+
+    given()
+        .body(Arrays.asList(
+            new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(4)),
+            new Transfer(accountOne.getId(), accountTwo.getId(), Money.valueOf(20))))
+        .when()
+        .post("/transfer/batch")
+        .then()
+        .statusCode(Status.OK.value())
+        .body("", contains("ABORTED", "INSUFFICIENT_BALANCE"));
+
+    when()
+        .get("/{id}", accountOne.getId())
+        .then()
+        .statusCode(Status.OK.value())
+        .body("balance", equalTo(10));
+  }
+
+  private Account createAccount(String name, Money openingBalance) {
 
     return given()
         .body(new CreateAccount(name, openingBalance))
@@ -358,4 +599,22 @@ public class AccountControllerIT {
         .statusCode(Status.OK.value())
         .extract().body().as(Account.class);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void metrics() {
+    given()
+        .body(new CreateAccount("Andrew", Money.valueOf(10)))
+        .when()
+        .post();
+
+    given()
+        .basePath("/")
+        .accept(ContentType.TEXT)
+        .when()
+        .get("/metrics")
+        .then()
+        .statusCode(Status.OK.value())
+        .body(containsString("account_operation_seconds_count{operation=\"create\"}"))
+        .body(containsString("# TYPE account_lock_wait_seconds histogram"));
+  }
+}
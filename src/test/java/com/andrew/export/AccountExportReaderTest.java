@@ -0,0 +1,108 @@
+package com.andrew.export;
+
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class AccountExportReaderTest {
+
+  private static final Currency EUR = Currency.getInstance("EUR");
+  private static final Currency USD = Currency.getInstance("USD");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writeAndRead() throws IOException {
+    final Path path = folder.getRoot().toPath().resolve("accounts.acx");
+    try (AccountExportWriter writer = new AccountExportWriter(path, 3)) {
+      writer.write(1, "Andrew", 1050, EUR);
+      writer.write(2, "Ivan", 0, EUR);
+      writer.write(5, "Andrew", -1, USD);
+      writer.write(6, "Peter", Long.MAX_VALUE, null);
+      writer.write(1000, "\u041f\u0451\u0442\u0440", 7, null);
+      writer.finish(true);
+    }
+
+    try (AccountExportReader reader = AccountExportReader.open(path)) {
+      assertEquals(5, reader.getAccounts());
+      assertTrue(reader.isConsistent());
+      assertEquals(2, reader.getRowGroups());
+      assertEquals(3, reader.getRows(0));
+      assertEquals(2, reader.getRows(1));
+      assertEquals(1, reader.getFirstId(0));
+      assertEquals(5, reader.getLastId(0));
+      assertEquals(1000, reader.getLastId(1));
+
+      assertArrayEquals(new long[]{1, 2, 5}, reader.readIds(0));
+      assertArrayEquals(new long[]{6, 1000}, reader.readIds(1));
+      assertArrayEquals(new long[]{1050, 0, -1}, reader.readBalances(0));
+      assertArrayEquals(new long[]{Long.MAX_VALUE, 7}, reader.readBalances(1));
+      assertArrayEquals(new Currency[]{EUR, EUR, USD}, reader.readCurrencies(0));
+      assertArrayEquals(new Currency[]{null, null}, reader.readCurrencies(1));
+
+      final String[] names = reader.readNames(0);
+      assertArrayEquals(new String[]{"Andrew", "Ivan", "Andrew"}, names);
+      assertSame(names[0], names[2]);
+      assertArrayEquals(new String[]{"Peter", "\u041f\u0451\u0442\u0440"}, reader.readNames(1));
+
+      final List<Account> accounts = new ArrayList<>();
+      reader.forEach(accounts::add);
+      assertEquals(5, accounts.size());
+      assertEquals(Long.valueOf(5L), accounts.get(2).getId());
+      assertEquals(Money.parse("-0.01"), accounts.get(2).getBalance());
+      assertEquals(USD, accounts.get(2).getCurrency());
+    }
+  }
+
+  @Test
+  public void writeAndRead_noAccounts() throws IOException {
+    final Path path = folder.getRoot().toPath().resolve("empty.acx");
+    try (AccountExportWriter writer = new AccountExportWriter(path, 3)) {
+      writer.finish(false);
+    }
+
+    try (AccountExportReader reader = AccountExportReader.open(path)) {
+      assertEquals(0, reader.getAccounts());
+      assertEquals(0, reader.getRowGroups());
+      assertFalse(reader.isConsistent());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void open_unfinished() throws IOException {
+    final Path path = folder.getRoot().toPath().resolve("unfinished.acx");
+    try (AccountExportWriter writer = new AccountExportWriter(path, 2)) {
+      writer.write(1, "Andrew", 0, EUR);
+      writer.write(2, "Ivan", 0, EUR);
+      writer.write(3, "Peter", 0, EUR);
+    }
+
+    AccountExportReader.open(path).close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void write_idsOutOfOrder() throws IOException {
+    try (AccountExportWriter writer = new AccountExportWriter(folder.getRoot().toPath().resolve("a.acx"), 2)) {
+      writer.write(2, "Andrew", 0, EUR);
+      writer.write(1, "Ivan", 0, EUR);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.andrew.json;
+
+import com.andrew.dto.Deposit;
+import com.andrew.dto.Transfer;
+import com.andrew.dto.TransferStatus;
+import com.andrew.dto.Withdraw;
+import com.andrew.model.Account;
+import com.andrew.model.AccountView;
+import com.andrew.model.Money;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author andrew
+ */
+public class JsonCodecTest {
+
+  private final JsonCodec sut = new JsonCodec();
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void readDeposit() throws IOException {
+    final Deposit deposit = sut.readDeposit(json("{\"amount\":125.75,\"accountId\":1}"));
+
+    assertEquals(Long.valueOf(1), deposit.getAccountId());
+    assertEquals(Money.parse("125.75"), deposit.getAmount());
+  }
+
+  @Test
+  public void readWithdraw() throws IOException {
+    final Withdraw withdraw = sut.readWithdraw(json("{\"accountId\":\"2\",\"amount\":\"0.5\"}"));
+
+    assertEquals(Long.valueOf(2), withdraw.getAccountId());
+    assertEquals(Money.parse("0.5"), withdraw.getAmount());
+  }
+
+  @Test
+  public void readTransfer() throws IOException {
+    final Transfer transfer = sut.readTransfer(json("{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":10}"));
+
+    assertEquals(Long.valueOf(1), transfer.getFromAccountId());
+    assertEquals(Long.valueOf(2), transfer.getToAccountId());
+    assertEquals(Money.valueOf(10), transfer.getAmount());
+  }
+
+  @Test
+  public void readTransfer_missingAndNullFields() throws IOException {
+    final Transfer transfer = sut.readTransfer(json("{\"fromAccountId\":null,\"amount\":1.5}"));
+
+    assertNull(transfer.getFromAccountId());
+    assertNull(transfer.getToAccountId());
+    assertEquals(Money.parse("1.5"), transfer.getAmount());
+    assertNull(sut.readTransfer(json("null")));
+  }
+
+  @Test
+  public void readTransferBatch() throws IOException {
+    final List<Transfer> transfers = sut.readTransferBatch(json(
+        "[{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":1},{\"fromAccountId\":2,\"toAccountId\":3,\"amount\":2}]"));
+
+    assertEquals(2, transfers.size());
+    assertEquals(Long.valueOf(3), transfers.get(1).getToAccountId());
+    assertEquals(Money.valueOf(2), transfers.get(1).getAmount());
+  }
+
+  @Test(expected = JsonMappingException.class)
+  public void readTransfer_unknownField() throws IOException {
+    sut.readTransfer(json("{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":1,\"currency\":\"EUR\"}"));
+  }
+
+  @Test(expected = JsonMappingException.class)
+  public void readDeposit_invalidAmount() throws IOException {
+    sut.readDeposit(json("{\"accountId\":1,\"amount\":\"ten\"}"));
+  }
+
+  @Test(expected = JsonMappingException.class)
+  public void readDeposit_notAnObject() throws IOException {
+    sut.readDeposit(json("[1]"));
+  }
+
+  @Test(expected = IOException.class)
+  public void readDeposit_truncated() throws IOException {
+    sut.readDeposit(json("{\"accountId\":1,\"amount\""));
+  }
+
+  @Test
+  public void writeAccount_sameAsDataBinding() throws IOException {
+    final Account account = new Account(1L, "Andrew \"Drew\"", Money.parse("1000.50"));
+
+    assertArrayEquals(mapper.writeValueAsBytes(account), sut.writeAccount(account));
+    assertArrayEquals(mapper.writeValueAsBytes(account), sut.writeAccount(account));
+  }
+
+  @Test
+  public void writeAccountView_sameAsDataBindingAndKept() throws IOException {
+    final Account account = new Account(1L, "Andrew", Money.parse("1000.50"));
+    final AccountView view = account.view();
+
+    final byte[] json = sut.writeAccount(view);
+    assertArrayEquals(mapper.writeValueAsBytes(account), json);
+    assertArrayEquals(mapper.writeValueAsBytes(view), json);
+    assertSame(json, sut.writeAccount(view));
+  }
+
+  @Test
+  public void writeAccountView_withCurrency() throws IOException {
+    final Account account = new Account(1L, "Andrew", Money.parse("1000.50"), Currency.getInstance("USD"));
+
+    assertArrayEquals(mapper.writeValueAsBytes(account), sut.writeAccount(account.view()));
+  }
+
+  @Test
+  public void writeTransferStatuses_sameAsDataBinding() throws IOException {
+    final TransferStatus[] statuses = {TransferStatus.OK, TransferStatus.INSUFFICIENT_BALANCE};
+
+    assertArrayEquals(mapper.writeValueAsBytes(statuses), sut.writeTransferStatuses(statuses));
+  }
+
+  private static byte[] json(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+}
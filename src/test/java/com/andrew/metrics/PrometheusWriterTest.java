@@ -0,0 +1,61 @@
+package com.andrew.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class PrometheusWriterTest {
+
+  @Test
+  public void counter() {
+    final String text = new PrometheusWriter()
+        .counter("transfers_total", "Transfers")
+        .sample("transfers_total", 3, "status", "ok")
+        .sample("transfers_total", 1, "status", "aborted", "mode", "atomic")
+        .toString();
+
+    assertEquals("# HELP transfers_total Transfers\n"
+        + "# TYPE transfers_total counter\n"
+        + "transfers_total{status=\"ok\"} 3\n"
+        + "transfers_total{status=\"aborted\",mode=\"atomic\"} 1\n", text);
+  }
+
+  @Test
+  public void histogram() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(0L);
+    histogram.record(1_024L);
+    histogram.record(1_025L);
+    histogram.record(Long.MAX_VALUE / 2);
+
+    final String text = new PrometheusWriter()
+        .histogram("latency_seconds", "Latency")
+        .sample("latency_seconds", histogram, "operation", "deposit")
+        .toString();
+
+    assertTrue(text.contains("latency_seconds_bucket{operation=\"deposit\",le=\"1.024E-6\"} 2\n"));
+    assertTrue(text.contains("latency_seconds_bucket{operation=\"deposit\",le=\"2.048E-6\"} 3\n"));
+    assertTrue(text.contains("latency_seconds_bucket{operation=\"deposit\",le=\"68.719476736\"} 3\n"));
+    assertTrue(text.contains("latency_seconds_bucket{operation=\"deposit\",le=\"+Inf\"} 4\n"));
+    assertTrue(text.contains("latency_seconds_count{operation=\"deposit\"} 4\n"));
+    assertEquals(4, histogram.getCount());
+  }
+
+  @Test
+  public void histogram_withoutLabels() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(2_000_000_000L);
+
+    final String text = new PrometheusWriter()
+        .sample("wait_seconds", histogram)
+        .toString();
+
+    assertTrue(text.contains("wait_seconds_bucket{le=\"+Inf\"} 1\n"));
+    assertTrue(text.contains("wait_seconds_sum 2.0\n"));
+    assertTrue(text.contains("wait_seconds_count 1\n"));
+  }
+}
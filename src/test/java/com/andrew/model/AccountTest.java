@@ -0,0 +1,113 @@
+package com.andrew.model;
+
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author andrew
+ */
+public class AccountTest {
+
+  @Test
+  public void view_reusedUntilBalanceChanges() {
+    final Account account = new Account(1L, "Andrew", Money.parse("10.50"));
+
+    final AccountView view = account.view();
+    assertEquals(Long.valueOf(1), view.getId());
+    assertEquals("Andrew", view.getName());
+    assertEquals(Money.parse("10.50"), view.getBalance());
+    assertSame(view, account.view());
+
+    account.credit(150L);
+    final AccountView credited = account.view();
+    assertNotSame(view, credited);
+    assertEquals(Money.parse("12"), credited.getBalance());
+    assertEquals(Money.parse("10.50"), view.getBalance());
+  }
+
+  @Test
+  public void view_stripedBalance() {
+    final Account account = new Account(1L, "Andrew", Money.parse("10"));
+    account.stripe(4);
+    final AccountView view = account.view();
+
+    account.credit(250L);
+    assertEquals(Money.parse("12.50"), account.view().getBalance());
+    assertEquals(Money.parse("10"), view.getBalance());
+
+    account.debit(1250L);
+    assertEquals(Money.parse("0"), account.view().getBalance());
+  }
+
+  @Test
+  public void credit_stripedBalanceOverflow() {
+    final Account account = new Account(1L, "Andrew", null);
+    account.stripe(4);
+    account.credit(Long.MAX_VALUE - 10L);
+
+    try {
+      account.credit(11L);
+      fail("Credit should have overflowed");
+    } catch (ArithmeticException e) {
+      assertEquals(Long.MAX_VALUE - 10L, account.balanceUnits());
+    }
+    assertEquals(Long.MAX_VALUE, account.credit(10L));
+  }
+
+  @Test(timeout = 60_000)
+  public void credit_concurrentStripedCreditsNeverOverflow() throws InterruptedException {
+    final Account account = new Account(1L, "Andrew", null);
+    account.stripe(8);
+    account.credit(Long.MAX_VALUE - 100_000L);
+
+    final AtomicLong credited = new AtomicLong();
+    final Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 20_000; j++) {
+          try {
+            account.credit(1L);
+            credited.incrementAndGet();
+          } catch (ArithmeticException ignored) {
+            // balance full
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(100_000L, credited.get());
+    assertEquals(Long.MAX_VALUE, account.balanceUnits());
+  }
+
+  @Test
+  public void view_renamed() {
+    final Account account = new Account(1L, "Andrew", Money.parse("10"));
+    final AccountView view = account.view();
+
+    account.setName("Ivan");
+    assertNotSame(view, account.view());
+    assertEquals("Ivan", account.view().getName());
+  }
+
+  @Test
+  public void view_withCurrency() {
+    final Account account = new Account(1L, "Andrew", Money.parse("10"), Currency.getInstance("GBP"));
+    final AccountView view = account.view();
+    assertEquals(Currency.getInstance("GBP"), view.getCurrency());
+
+    account.setCurrency(Currency.getInstance("USD"));
+    assertNotSame(view, account.view());
+    assertEquals(Currency.getInstance("USD"), account.view().getCurrency());
+  }
+}
@@ -0,0 +1,111 @@
+package com.andrew.model;
+
+import com.andrew.dto.Transfer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class MoneyTest {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void parse() {
+    assertEquals(Money.of(1234, 2), Money.parse("12.34"));
+    assertEquals(Money.of(-5, 0), Money.parse("-5"));
+    assertEquals(Money.valueOf(150), Money.parse("1.5e2"));
+    assertEquals(Money.of(15, 3), Money.parse("1.5E-2"));
+    assertEquals(Money.of(1, 1), Money.parse("0.100000000000000000000000"));
+    assertEquals(2, Money.parse("12.34").getScale());
+  }
+
+  @Test
+  public void parse_invalid() {
+    exceptionRule.expect(NumberFormatException.class);
+    exceptionRule.expectMessage("Invalid amount: 1.2.3");
+
+    Money.parse("1.2.3");
+  }
+
+  @Test
+  public void parse_outOfRange() {
+    exceptionRule.expect(NumberFormatException.class);
+    exceptionRule.expectMessage("Amount is out of range");
+
+    Money.parse("92233720368547758080");
+  }
+
+  @Test
+  public void add() {
+    assertEquals(Money.parse("11.5"), Money.valueOf(10).add(Money.parse("1.50")));
+    assertEquals(Money.parse("-0.25"), Money.parse("0.75").subtract(Money.valueOf(1)));
+  }
+
+  @Test
+  public void add_overflow() {
+    exceptionRule.expect(ArithmeticException.class);
+
+    Money.valueOf(Long.MAX_VALUE).add(Money.valueOf(1));
+  }
+
+  @Test
+  public void toMinorUnits() {
+    assertEquals(1050, Money.parse("10.5").toMinorUnits(2));
+    assertEquals(10, Money.parse("10.00").toMinorUnits(0));
+  }
+
+  @Test
+  public void toMinorUnits_roundingNecessary() {
+    exceptionRule.expect(ArithmeticException.class);
+    exceptionRule.expectMessage("Rounding necessary");
+
+    Money.parse("10.005").toMinorUnits(2);
+  }
+
+  @Test
+  public void equalsIgnoresScale() {
+    assertEquals(Money.valueOf(10), Money.of(1000, 2));
+    assertEquals(Money.valueOf(10).hashCode(), Money.of(1000, 2).hashCode());
+    assertTrue(Money.parse("9.99").compareTo(Money.valueOf(10)) < 0);
+    assertEquals(Money.valueOf(new BigDecimal("1E+3")), Money.valueOf(1000));
+  }
+
+  @Test
+  public void toStringIsPlain() {
+    assertEquals("10", Money.of(1000, 2).toString());
+    assertEquals("10.5", Money.of(1050, 2).toString());
+    assertEquals("-0.05", Money.of(-5, 2).toString());
+  }
+
+  @Test
+  public void json() throws IOException {
+    final Transfer transfer = mapper.readValue("{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":12.50}",
+        Transfer.class);
+
+    assertEquals(Money.of(1250, 2), transfer.getAmount());
+    assertEquals("{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":12.5}", mapper.writeValueAsString(transfer));
+    assertEquals(Money.valueOf(7), mapper.readValue("\"7\"", Money.class));
+  }
+
+  @Test
+  public void json_outOfRange() throws IOException {
+    exceptionRule.expect(JsonMappingException.class);
+    exceptionRule.expectMessage("Amount is out of range");
+
+    mapper.readValue("123456789012345678901234567890", Money.class);
+  }
+}
@@ -0,0 +1,280 @@
+package com.andrew.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class AccountJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replay() throws IOException {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+        throw new AssertionError("Unexpected event " + event);
+      });
+      journal.write(JournalEvent.create(1L, "Andrew", 1000L));
+      journal.write(JournalEvent.deposit(1L, 50L), JournalEvent.withdraw(1L, 20L));
+      journal.write(JournalEvent.transfer(1L, 2L, 30L));
+    }
+
+    final List<JournalEvent> events = replay(directory);
+    assertEquals(4, events.size());
+    assertEquals(JournalEvent.Type.CREATE, events.get(0).getType());
+    assertEquals("Andrew", events.get(0).getName());
+    assertEquals(1000L, events.get(0).getAmount());
+    assertEquals(JournalEvent.Type.DEPOSIT, events.get(1).getType());
+    assertEquals(JournalEvent.Type.WITHDRAW, events.get(2).getType());
+    assertEquals(JournalEvent.Type.TRANSFER, events.get(3).getType());
+    assertEquals(2L, events.get(3).getToAccountId());
+    assertEquals(30L, events.get(3).getAmount());
+  }
+
+  @Test
+  public void replay_currencies() throws IOException {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+        throw new AssertionError("Unexpected event " + event);
+      });
+      journal.write(JournalEvent.create(1L, "Andrew", 1000L, Currency.getInstance("USD")));
+      journal.write(JournalEvent.transfer(1L, 2L, 30L, 25L));
+    }
+
+    final List<JournalEvent> events = replay(directory);
+    assertEquals(2, events.size());
+    assertEquals(JournalEvent.Type.CREATE, events.get(0).getType());
+    assertEquals(Currency.getInstance("USD"), events.get(0).getCurrency());
+    assertEquals(JournalEvent.Type.TRANSFER, events.get(1).getType());
+    assertEquals(30L, events.get(1).getAmount());
+    assertEquals(25L, events.get(1).getToAmount());
+  }
+
+  @Test
+  public void replay_discardsTornFrame() throws IOException {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+      journal.write(JournalEvent.create(1L, "Andrew", 1000L));
+      journal.write(JournalEvent.deposit(1L, 50L));
+    }
+
+    final Path segment = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS).segmentPath(1L);
+    final long size = Files.size(segment);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 3);
+      channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}), size - 3);
+    }
+
+    assertEquals(1, replay(directory).size());
+    assertTrue(Files.size(segment) < size);
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+      journal.write(JournalEvent.deposit(1L, 70L));
+    }
+
+    final List<JournalEvent> events = replay(directory);
+    assertEquals(2, events.size());
+    assertEquals(70L, events.get(1).getAmount());
+  }
+
+  @Test
+  public void groupCommit() throws IOException {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 256, 5, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+
+      final List<CompletableFuture<Void>> futures = new ArrayList<>();
+      for (long i = 0; i < 1000; i++) {
+        futures.add(journal.append(JournalEvent.deposit(1L, i)));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+      assertEquals(1000, journal.getFrames());
+      assertTrue(journal.getCommits() < 1000);
+    }
+
+    assertEquals(1000, replay(directory).size());
+  }
+
+  @Test
+  public void snapshot() {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+      journal.write(JournalEvent.create(1L, "Andrew", 1000L), JournalEvent.create(2L, "Ivan", 0L));
+      journal.write(JournalEvent.transfer(1L, 2L, 300L));
+
+      assertEquals(1L, journal.snapshot());
+      assertFalse(Files.exists(journal.segmentPath(1L)));
+      assertTrue(Files.exists(journal.snapshotPath(1L)));
+
+      journal.write(JournalEvent.deposit(2L, 50L));
+      assertEquals(2L, journal.snapshot());
+      assertFalse(Files.exists(journal.snapshotPath(1L)));
+
+      journal.write(JournalEvent.withdraw(1L, 100L));
+      assertEquals(2, journal.getSnapshots());
+    }
+
+    final List<JournalEvent> events = replay(directory);
+    assertEquals(3, events.size());
+    assertEquals(JournalEvent.Type.CREATE, events.get(0).getType());
+    assertEquals("Andrew", events.get(0).getName());
+    assertEquals(700L, events.get(0).getAmount());
+    assertEquals(JournalEvent.Type.CREATE, events.get(1).getType());
+    assertEquals("Ivan", events.get(1).getName());
+    assertEquals(350L, events.get(1).getAmount());
+    assertEquals(JournalEvent.Type.WITHDRAW, events.get(2).getType());
+  }
+
+  @Test
+  public void snapshot_withoutNewSegments() {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+      assertEquals(0L, journal.snapshot());
+
+      journal.write(JournalEvent.create(1L, "Andrew", 1000L));
+      assertEquals(1L, journal.snapshot());
+      assertEquals(1L, journal.snapshot());
+      assertEquals(1, journal.getSnapshots());
+    }
+  }
+
+  @Test
+  public void rollSegments() {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 64, 1, 0, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(event -> {
+      });
+      journal.write(JournalEvent.create(1L, "Andrew", 0L));
+      for (long i = 1; i <= 20; i++) {
+        journal.write(JournalEvent.deposit(1L, i));
+      }
+
+      assertTrue(Files.exists(journal.segmentPath(2L)));
+      assertTrue(journal.snapshot() > 2L);
+    }
+
+    final List<JournalEvent> events = replay(directory);
+    assertEquals(1, events.size());
+    assertEquals(210L, events.get(0).getAmount());
+  }
+
+  @Test(timeout = 60_000)
+  public void append_whileClosing() throws Exception {
+    for (int attempt = 0; attempt < 20; attempt++) {
+      final AccountJournal journal = new AccountJournal(folder.newFolder().toPath(), 16, 0, TimeUnit.MILLISECONDS);
+      journal.open(event -> {
+      });
+
+      final List<CompletableFuture<Void>> frames = new CopyOnWriteArrayList<>();
+      final Thread[] appenders = new Thread[4];
+      for (int i = 0; i < appenders.length; i++) {
+        appenders[i] = new Thread(() -> {
+          CompletableFuture<Void> frame;
+          do {
+            frame = journal.append(JournalEvent.deposit(1L, 1L));
+            frames.add(frame);
+          } while (!frame.isCompletedExceptionally());
+        });
+        appenders[i].start();
+      }
+      Thread.sleep(5);
+      journal.close();
+      for (Thread appender : appenders) {
+        appender.join();
+      }
+
+      for (CompletableFuture<Void> frame : frames) {
+        frame.handle((ignored, error) -> null).get(10, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  @Test(timeout = 60_000)
+  public void snapshot_whileCommitterStops() throws Exception {
+    for (int attempt = 0; attempt < 20; attempt++) {
+      final AccountJournal journal = new AccountJournal(folder.newFolder().toPath(), 64, 1, 0, 0,
+          TimeUnit.MILLISECONDS);
+      journal.open(event -> {
+      });
+      Files.createFile(journal.segmentPath(2L));
+
+      final Thread snapshots = new Thread(() -> {
+        while (true) {
+          try {
+            journal.snapshot();
+          } catch (RuntimeException e) {
+            return;
+          }
+        }
+      });
+      snapshots.start();
+      while (!journal.append(JournalEvent.deposit(1L, 1L)).handle((ignored, error) -> error != null).join()) {
+        Thread.yield();
+      }
+
+      snapshots.join(10_000);
+      assertFalse(snapshots.isAlive());
+      journal.close();
+    }
+  }
+
+  @Test
+  public void disabled() {
+    final AccountJournal journal = AccountJournal.disabled();
+    journal.open(event -> {
+      throw new AssertionError("Unexpected event " + event);
+    });
+
+    journal.write(JournalEvent.deposit(1L, 1L));
+    assertEquals(0, journal.getFrames());
+  }
+
+  private List<JournalEvent> replay(Path directory) {
+    final List<JournalEvent> events = new ArrayList<>();
+    try (AccountJournal journal = new AccountJournal(directory, 1, 0, TimeUnit.MILLISECONDS)) {
+      journal.open(events::add);
+    }
+
+    return events;
+  }
+}
@@ -0,0 +1,166 @@
+package com.andrew.repository;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author andrew
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class InMemoryAccountRepositoryTest {
+
+  private static InMemoryAccountRepository sut;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUp() {
+    sut = new InMemoryAccountRepository();
+  }
+
+  @After
+  public void tearDown() {
+    sut.clear();
+  }
+
+  @Test
+  public void createAccount() {
+    Account account = sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    assertNotNull(account);
+    assertNotNull(account.getId());
+    assertEquals(Money.valueOf(10), account.getBalance());
+    assertEquals("Andrew", account.getName());
+  }
+
+  @Test
+  public void findById() {
+    Account accountOne = sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    Account accountTwo = sut.create(new CreateAccount("Ivan", null));
+
+    final Account account = sut.findById(accountTwo.getId());
+    assertEquals(account, accountTwo);
+  }
+
+  @Test
+  public void findAll() {
+    Account accountOne = sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    Account accountTwo = sut.create(new CreateAccount("Ivan", null));
+    final List<Account> actual = Arrays.asList(accountOne, accountTwo);
+
+    final Collection<Account> expected = sut.findAll();
+    assertThat(actual, containsInAnyOrder(expected.toArray()));
+  }
+
+  @Test
+  public void findPage() {
+    final List<Account> created = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      created.add(sut.create(new CreateAccount("Account " + i, Money.valueOf(i))));
+    }
+
+    assertEquals(created.subList(0, 2), sut.findPage(0L, 2));
+    assertEquals(created.subList(2, 4), sut.findPage(created.get(1).getId(), 2));
+    assertEquals(created.subList(4, 5), sut.findPage(created.get(3).getId(), 2));
+    assertTrue(sut.findPage(created.get(4).getId(), 2).isEmpty());
+  }
+
+  @Test
+  public void findPage_extremeCursor() {
+    sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+
+    assertTrue(sut.findPage(Long.MAX_VALUE, 2).isEmpty());
+    assertTrue(sut.findPage(Long.MAX_VALUE - 1, 2).isEmpty());
+  }
+
+  @Test
+  public void findPage_stopsBeforeReservedIds() {
+    final long firstId = sut.reserveIds(2);
+    final Account created = sut.create(new CreateAccount("Peter", Money.valueOf(5)));
+    assertTrue(sut.findPage(firstId - 1, 10).isEmpty());
+
+    sut.createAll(firstId, new CreateAccount[]{new CreateAccount("Andrew", Money.valueOf(10)), null});
+    assertEquals(Arrays.asList(sut.findById(firstId), created), sut.findPage(firstId - 1, 10));
+  }
+
+  @Test
+  public void findPage_stopsBeforeAccountStillBeingCreated() throws Exception {
+    final AccountJournal journal = mock(AccountJournal.class);
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch written = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      writing.countDown();
+      written.await();
+      return null;
+    }).doNothing().when(journal).write(any());
+    final InMemoryAccountRepository repository = new InMemoryAccountRepository(journal);
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<Account> first = executor.submit(
+          () -> repository.create(new CreateAccount("Andrew", Money.valueOf(10))));
+      writing.await();
+      final Account second = repository.create(new CreateAccount("Ivan", Money.valueOf(20)));
+
+      assertEquals(second, repository.findById(second.getId()));
+      assertTrue(repository.findPage(0L, 2).isEmpty());
+
+      written.countDown();
+      assertEquals(Arrays.asList(first.get(), second), repository.findPage(0L, 2));
+    } finally {
+      written.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void replayJournal() throws IOException {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      final AccountRepository repository = new InMemoryAccountRepository(journal);
+      repository.create(new CreateAccount("Andrew", Money.valueOf(10)));
+      repository.create(new CreateAccount("Ivan", Money.ZERO));
+      journal.write(JournalEvent.transfer(1L, 2L, 250L));
+      journal.snapshot();
+      journal.write(JournalEvent.deposit(2L, 5L));
+    }
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      final AccountRepository repository = new InMemoryAccountRepository(journal);
+      assertEquals(Money.parse("7.5"), repository.findById(1L).getBalance());
+      assertEquals(Money.parse("2.55"), repository.findById(2L).getBalance());
+      assertEquals("Ivan", repository.findById(2L).getName());
+      assertEquals(Long.valueOf(3L), repository.create(new CreateAccount("Peter", Money.ZERO)).getId());
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.andrew.repository;
+
+import com.andrew.dto.CreateAccount;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author andrew
+ */
+public class OffHeapAccountRepositoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final OffHeapAccountRepository sut = new OffHeapAccountRepository(AccountJournal.disabled(), 2);
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  public void createAccount() {
+    final Account account = sut.create(new CreateAccount("Andrew", Money.parse("10.25")));
+    assertNotNull(account.getId());
+    assertEquals(Money.parse("10.25"), account.getBalance());
+    assertEquals("Andrew", account.getName());
+  }
+
+  @Test
+  public void findById() {
+    sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    final Account created = sut.create(new CreateAccount("Ivan", null));
+
+    final Account account = sut.findById(created.getId());
+    assertEquals(created, account);
+    assertEquals("Ivan", account.getName());
+    assertEquals(Money.ZERO, account.getBalance());
+    assertNull(sut.findById(42L));
+  }
+
+  @Test
+  public void findById_afterResize() {
+    final List<Account> created = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      created.add(sut.create(new CreateAccount("Account " + i, Money.valueOf(i))));
+    }
+
+    for (Account account : created) {
+      final Account found = sut.findById(account.getId());
+      assertEquals(account.getName(), found.getName());
+      assertEquals(account.getBalance(), found.getBalance());
+    }
+  }
+
+  @Test
+  public void creditAndDebit_updateSharedRecord() {
+    final Account account = sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+
+    assertEquals(1500L, sut.findById(account.getId()).credit(500L));
+    assertTrue(sut.findById(account.getId()).debit(1500L));
+    assertFalse(sut.findById(account.getId()).debit(1L));
+    assertEquals(Money.ZERO, account.getBalance());
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void credit_overflow() {
+    final Account account = sut.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    account.credit(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void findAll() {
+    final Set<Account> created = new HashSet<>();
+    created.add(sut.create(new CreateAccount("Andrew", Money.valueOf(10))));
+    created.add(sut.create(new CreateAccount("Ivan", null)));
+
+    assertEquals(created, new HashSet<>(sut.findAll()));
+    assertEquals(2, sut.findAll().size());
+  }
+
+  @Test
+  public void findPage() {
+    final List<Account> created = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      created.add(sut.create(new CreateAccount("Account " + i, Money.valueOf(i))));
+    }
+
+    assertEquals(created.subList(0, 2), sut.findPage(0L, 2));
+    assertEquals(created.subList(2, 4), sut.findPage(created.get(1).getId(), 2));
+    assertEquals(created.subList(4, 5), sut.findPage(created.get(3).getId(), 2));
+    assertTrue(sut.findPage(created.get(4).getId(), 2).isEmpty());
+  }
+
+  @Test
+  public void concurrentCredits() throws Exception {
+    final Account account = sut.create(new CreateAccount("Andrew", Money.ZERO));
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10_000; i++) {
+            sut.findById(account.getId()).credit(1L);
+            sut.create(new CreateAccount("Other", Money.ZERO));
+          }
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(80_000L, account.balanceUnits());
+    assertEquals(80_001, sut.findAll().size());
+  }
+
+  @Test
+  public void replayJournal() {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      final OffHeapAccountRepository repository = new OffHeapAccountRepository(journal, 16);
+      repository.create(new CreateAccount("Andrew", Money.valueOf(10)));
+      repository.create(new CreateAccount("Ivan", Money.ZERO));
+      journal.write(JournalEvent.transfer(1L, 2L, 250L));
+      journal.snapshot();
+      journal.write(JournalEvent.deposit(2L, 5L));
+      repository.close();
+    }
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      final OffHeapAccountRepository repository = new OffHeapAccountRepository(journal, 16);
+      assertEquals(Money.parse("7.5"), repository.findById(1L).getBalance());
+      assertEquals(Money.parse("2.55"), repository.findById(2L).getBalance());
+      assertEquals("Ivan", repository.findById(2L).getName());
+      assertEquals(Long.valueOf(3L), repository.create(new CreateAccount("Peter", Money.ZERO)).getId());
+      repository.close();
+    }
+  }
+
+  @Test
+  public void createAll_reservedIds() {
+    final Path directory = folder.getRoot().toPath();
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      final OffHeapAccountRepository repository = new OffHeapAccountRepository(journal, 2);
+      final long firstId = repository.reserveIds(3);
+      assertEquals(2, repository.createAll(firstId, new CreateAccount[]{
+          new CreateAccount("Andrew", Money.valueOf(10)), null, new CreateAccount("Ivan", null)}));
+
+      assertEquals("Andrew", repository.findById(firstId).getName());
+      assertNull(repository.findById(firstId + 1));
+      assertEquals(Money.ZERO, repository.findById(firstId + 2).getBalance());
+      assertEquals(Long.valueOf(firstId + 3), repository.create(new CreateAccount("Peter", Money.ZERO)).getId());
+      repository.close();
+    }
+
+    try (AccountJournal journal = new AccountJournal(directory, 16, 0, TimeUnit.MILLISECONDS)) {
+      final OffHeapAccountRepository repository = new OffHeapAccountRepository(journal, 16);
+      assertEquals(3, repository.findAll().size());
+      assertEquals(Money.valueOf(10), repository.findById(1L).getBalance());
+      repository.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void createAll_unreservedIds() {
+    sut.createAll(1L, new CreateAccount[]{new CreateAccount("Andrew", Money.ZERO)});
+  }
+}
@@ -0,0 +1,117 @@
+package com.andrew.rpc;
+
+import com.andrew.business.AccountExecutor;
+import com.andrew.business.AccountHandler;
+import com.andrew.business.AccountLedger;
+import com.andrew.business.AccountLockManager;
+import com.andrew.business.AccountMetrics;
+import com.andrew.business.AccountSnapshots;
+import com.andrew.business.DepositCombiner;
+import com.andrew.business.ExchangeRates;
+import com.andrew.business.HotAccounts;
+import com.andrew.business.ShardedTransactionEngine;
+import com.andrew.dto.CreateAccount;
+import com.andrew.exception.AccountNotFoundException;
+import com.andrew.exception.IllegalTransferException;
+import com.andrew.exception.InsufficientBalanceException;
+import com.andrew.model.Account;
+import com.andrew.model.Money;
+import com.andrew.repository.AccountJournal;
+import com.andrew.repository.InMemoryAccountRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author andrew
+ */
+public class RpcServerTest {
+
+  private final AccountExecutor executor = new AccountExecutor(4, 4096, false);
+  private final AccountHandler handler = new AccountHandler(new InMemoryAccountRepository(),
+      new AccountLockManager(1024, 500, TimeUnit.MILLISECONDS), AccountJournal.disabled(),
+      ShardedTransactionEngine.disabled(), executor, new AccountMetrics(), new AccountSnapshots(),
+      AccountLedger.disabled(), HotAccounts.disabled(), ExchangeRates.disabled(), DepositCombiner.disabled());
+  private final RpcServer server = new RpcServer(handler, true, 0, 1, 64);
+  private RpcClient client;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    server.start();
+    client = RpcClient.connect("localhost", server.getPort());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    server.close();
+    executor.close();
+  }
+
+  @Test
+  public void depositWithdrawAndTransfer() throws Exception {
+    final Account andrew = handler.create(new CreateAccount("Andrew", Money.valueOf(10)));
+    final Account ivan = handler.create(new CreateAccount("Ivan", Money.ZERO));
+
+    assertEquals(Money.parse("12.5"), client.deposit(andrew.getId(), Money.parse("2.5")).get().getBalance());
+    assertEquals(Money.parse("11.5"), client.withdraw(andrew.getId(), Money.valueOf(1)).get().getBalance());
+
+    final Account benefactor = client.transfer(andrew.getId(), ivan.getId(), Money.parse("1.5")).get();
+    assertEquals(andrew.getId(), benefactor.getId());
+    assertEquals(Money.valueOf(10), benefactor.getBalance());
+    assertEquals(Money.parse("1.5"), client.findById(ivan.getId()).get().getBalance());
+    assertEquals(4, server.getRequests());
+  }
+
+  @Test
+  public void failures() throws Exception {
+    final Account andrew = handler.create(new CreateAccount("Andrew", Money.valueOf(1)));
+    final Account peter = handler.create(new CreateAccount("Peter", Money.ZERO, Currency.getInstance("GBP")));
+
+    assertFailure(client.findById(42L), AccountNotFoundException.class);
+    assertFailure(client.withdraw(andrew.getId(), Money.valueOf(2)), InsufficientBalanceException.class);
+    assertFailure(client.transfer(andrew.getId(), andrew.getId(), Money.valueOf(1)), IllegalTransferException.class);
+    assertFailure(client.deposit(andrew.getId(), Money.valueOf(-1)), IllegalArgumentException.class);
+    assertFailure(client.transfer(andrew.getId(), peter.getId(), Money.valueOf(1)), IllegalTransferException.class);
+    assertEquals(Money.valueOf(1), andrew.getBalance());
+  }
+
+  @Test(timeout = 30_000)
+  public void pipelinedTransfers() throws Exception {
+    final Account andrew = handler.create(new CreateAccount("Andrew", Money.valueOf(1_000)));
+    final Account ivan = handler.create(new CreateAccount("Ivan", Money.valueOf(1_000)));
+
+    final List<CompletableFuture<Account>> transfers = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      transfers.add(i % 2 == 0
+          ? client.transfer(andrew.getId(), ivan.getId(), Money.parse("0.01"))
+          : client.transfer(ivan.getId(), andrew.getId(), Money.parse("0.02")));
+    }
+    CompletableFuture.allOf(transfers.toArray(new CompletableFuture<?>[0])).get();
+
+    assertEquals(Money.valueOf(1_050), andrew.getBalance());
+    assertEquals(Money.valueOf(950), ivan.getBalance());
+    assertEquals(0, client.getPending());
+  }
+
+  private static void assertFailure(CompletableFuture<Account> call, Class<? extends Throwable> expected)
+      throws InterruptedException {
+    try {
+      call.get();
+      fail("Expected " + expected.getSimpleName());
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().toString(), expected.isInstance(e.getCause()));
+    }
+  }
+}